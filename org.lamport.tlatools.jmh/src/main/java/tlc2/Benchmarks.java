@@ -0,0 +1,37 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks like {@link org.openjdk.jmh.Main} does, but stores
+ * the results as JSON in results/&lt;date&gt;.json unless the arguments choose
+ * a result format (-rf) or file (-rff) themselves. Two result files can be
+ * compared to spot regressions (see README).
+ */
+public class Benchmarks {
+
+	public static void main(final String[] args) throws Exception {
+		final List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+		if (!arguments.contains("-rf") && !arguments.contains("-rff") && !isListing(arguments)) {
+			final File dir = new File(System.getProperty(Benchmarks.class.getName() + ".results", "results"));
+			dir.mkdirs();
+			final String date = new SimpleDateFormat("yy-MM-dd-HH-mm-ss").format(new Date());
+			arguments.add("-rf");
+			arguments.add("json");
+			arguments.add("-rff");
+			arguments.add(new File(dir, date + ".json").getPath());
+		}
+		org.openjdk.jmh.Main.main(arguments.toArray(new String[arguments.size()]));
+	}
+
+	private static boolean isListing(final List<String> arguments) {
+		return arguments.contains("-l") || arguments.contains("-lp") || arguments.contains("-lrf")
+				|| arguments.contains("-lprof") || arguments.contains("-h");
+	}
+}
@@ -0,0 +1,106 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import tlc2.util.FP64;
+import util.SimpleFilenameToStream;
+import util.ToolIO;
+
+/**
+ * A spec of the examples directory loaded into a {@link Tool} together with
+ * some of its reachable states, the input of the benchmarks which need
+ * states.
+ * <p>
+ * The examples are looked up in ../examples relative to the working
+ * directory (the benchmark module), or in the directory given by
+ * -Dtlc2.tool.BenchmarkSpec.examples.
+ */
+public final class BenchmarkSpec {
+
+	/**
+	 * The specs benchmarked by default. The test-model directory holds only
+	 * specs which cannot be checked standalone, which is why these are taken
+	 * from the examples.
+	 */
+	public static final String DIEHARD = "DieHard/DieHard";
+	public static final String SCHEDULING_ALLOCATOR = "allocator/SchedulingAllocator";
+	public static final String SIMPLE_ALLOCATOR = "allocator/SimpleAllocator";
+	public static final String DIEHARDER = "DieHard/MCDieHarder";
+
+	private static final String Examples = System.getProperty(BenchmarkSpec.class.getName() + ".examples",
+			".." + File.separator + "examples");
+
+	private final Tool tool;
+	private final Action[] actions;
+	private final TLCState[] states;
+
+	/**
+	 * @param spec
+	 *            The spec relative to the examples directory, without .tla.
+	 *            Its config file has the same name.
+	 * @param maxStates
+	 *            The maximum number of states to explore (breadth-first)
+	 */
+	public BenchmarkSpec(final String spec, final int maxStates) {
+		FP64.Init(0);
+		final File file = new File(Examples, spec.replace('/', File.separatorChar));
+		// Resolve the modules the spec extends in its directory
+		ToolIO.setUserDir(file.getParent());
+		this.tool = new Tool("", file.getName(), file.getName(), new SimpleFilenameToStream());
+		this.tool.init(true, null);
+		this.actions = this.tool.getActions();
+		this.states = this.explore(maxStates);
+	}
+
+	private TLCState[] explore(final int maxStates) {
+		final List<TLCState> explored = new ArrayList<TLCState>();
+		final Set<Long> seen = new HashSet<Long>();
+		final StateVec init = this.tool.getInitStates();
+		for (int i = 0; i < init.size() && explored.size() < maxStates; i++) {
+			final TLCState state = init.elementAt(i);
+			if (seen.add(state.fingerPrint())) {
+				add(explored, state);
+			}
+		}
+		for (int next = 0; next < explored.size() && explored.size() < maxStates; next++) {
+			final TLCState state = explored.get(next);
+			for (int a = 0; a < this.actions.length; a++) {
+				final StateVec succs = this.tool.getNextStates(this.actions[a], state);
+				for (int i = 0; i < succs.size() && explored.size() < maxStates; i++) {
+					final TLCState succ = succs.elementAt(i);
+					if (seen.add(succ.fingerPrint())) {
+						add(explored, succ);
+					}
+				}
+			}
+		}
+		return explored.toArray(new TLCState[explored.size()]);
+	}
+
+	private static void add(final List<TLCState> explored, final TLCState state) {
+		// The model checker sets the uid to the state's location in the
+		// trace file, it has to be set for a state to be serializable.
+		state.uid = explored.size();
+		explored.add(state);
+	}
+
+	public final Tool getTool() {
+		return this.tool;
+	}
+
+	public final Action[] getActions() {
+		return this.actions;
+	}
+
+	/**
+	 * @return The explored states in breadth-first order
+	 */
+	public final TLCState[] getStates() {
+		return this.states;
+	}
+}
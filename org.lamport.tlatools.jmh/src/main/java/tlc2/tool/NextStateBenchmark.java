@@ -0,0 +1,69 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link Tool#getNextStates(Action, TLCState)} of all actions of a spec, for
+ * the reachable states in turn: The computation of the successors of a state
+ * as done by a worker of the model checker, including the fingerprinting of
+ * the successors. {@link #fingerPrint()} measures the fingerprinting of a
+ * state alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NextStateBenchmark {
+
+	@Param({ BenchmarkSpec.DIEHARD, BenchmarkSpec.SCHEDULING_ALLOCATOR, BenchmarkSpec.SIMPLE_ALLOCATOR,
+			BenchmarkSpec.DIEHARDER })
+	public String spec;
+
+	/**
+	 * The maximum number of states whose successors are computed
+	 */
+	@Param({ "10000" })
+	public int states;
+
+	private Tool tool;
+	private Action[] actions;
+	private TLCState[] reachable;
+	private int next;
+
+	@Setup
+	public void setup() {
+		final BenchmarkSpec bs = new BenchmarkSpec(this.spec, this.states);
+		this.tool = bs.getTool();
+		this.actions = bs.getActions();
+		this.reachable = bs.getStates();
+	}
+
+	@Benchmark
+	public void getNextStates(final Blackhole bh) {
+		final TLCState state = this.reachable[this.next];
+		this.next = (this.next + 1) % this.reachable.length;
+		for (int a = 0; a < this.actions.length; a++) {
+			final StateVec succs = this.tool.getNextStates(this.actions[a], state);
+			for (int i = 0; i < succs.size(); i++) {
+				bh.consume(succs.elementAt(i).fingerPrint());
+			}
+		}
+	}
+
+	@Benchmark
+	public long fingerPrint() {
+		final TLCState state = this.reachable[this.next];
+		this.next = (this.next + 1) % this.reachable.length;
+		return state.fingerPrint();
+	}
+}
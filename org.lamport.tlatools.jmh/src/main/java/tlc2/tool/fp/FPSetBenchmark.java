@@ -0,0 +1,67 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.fp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * {@link FPSet#put(long)} of random fingerprints into the implementations of
+ * {@link FPSetFactory#getImplementations()}. Every iteration starts with an
+ * empty set, which is flushed to disk once its memory (the default ratio of
+ * the heap or of the non-heap memory) fills up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FPSetBenchmark {
+
+	@Param({ "tlc2.tool.fp.MSBDiskFPSet", "tlc2.tool.fp.LSBDiskFPSet", "tlc2.tool.fp.OffHeapDiskFPSet" })
+	public String impl;
+
+	private File metadir;
+	private FPSet fpSet;
+	private long fp;
+
+	@Setup(Level.Iteration)
+	public void setup() throws IOException {
+		this.metadir = File.createTempFile(FPSetBenchmark.class.getSimpleName(), "");
+		this.metadir.delete();
+		this.metadir.mkdirs();
+		System.setProperty(FPSetFactory.IMPL_PROPERTY, this.impl);
+		this.fpSet = FPSetFactory.getFPSet(new FPSetConfiguration());
+		this.fpSet.init(1, this.metadir.getAbsolutePath(), FPSetBenchmark.class.getSimpleName());
+		this.fp = 15041980L;
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		this.fpSet.close();
+		final File[] files = this.metadir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		this.metadir.delete();
+	}
+
+	@Benchmark
+	public boolean put() throws IOException {
+		// xorshift, fingerprints are uniformly distributed
+		this.fp ^= (this.fp << 13);
+		this.fp ^= (this.fp >>> 7);
+		this.fp ^= (this.fp << 17);
+		// Zero is no valid fingerprint for the disk based sets
+		return this.fpSet.put((this.fp & 0x7FFFFFFFFFFFFFFFL) | 1L);
+	}
+}
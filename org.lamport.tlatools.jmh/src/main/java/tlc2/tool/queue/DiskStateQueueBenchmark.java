@@ -0,0 +1,71 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.queue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tlc2.tool.BenchmarkSpec;
+import tlc2.tool.TLCState;
+
+/**
+ * Enqueues a batch of states (reachable states of a spec) into a
+ * {@link DiskStateQueue} and dequeues them again. The batch exceeds the
+ * queue's buffers, the states are thus written to and read from the pool
+ * files. Scores are per state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DiskStateQueueBenchmark {
+
+	private static final int Batch = 100000;
+
+	@Param({ BenchmarkSpec.SCHEDULING_ALLOCATOR, BenchmarkSpec.DIEHARDER })
+	public String spec;
+
+	private File diskdir;
+	private DiskStateQueue queue;
+	private TLCState[] states;
+
+	@Setup
+	public void setup() {
+		this.states = new BenchmarkSpec(this.spec, 10000).getStates();
+		this.diskdir = new File(System.getProperty("java.io.tmpdir"), DiskStateQueueBenchmark.class.getSimpleName()
+				+ "_" + System.currentTimeMillis());
+		this.diskdir.mkdirs();
+		this.queue = new DiskStateQueue(this.diskdir.getAbsolutePath());
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.queue.finishAll();
+		final File[] files = this.diskdir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		this.diskdir.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Batch)
+	public void enqueueDequeue(final Blackhole bh) {
+		for (int i = 0; i < Batch; i++) {
+			this.queue.sEnqueue(this.states[i % this.states.length]);
+		}
+		for (int i = 0; i < Batch; i++) {
+			bh.consume(this.queue.sDequeue());
+		}
+	}
+}
@@ -0,0 +1,84 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Fingerprinting of the primitives values are made of: Values extend a
+ * fingerprint by ints, longs (fingerprints of components) and the characters
+ * of strings, whose fingerprints strings and records take from the cache of
+ * their {@link util.UniqueString}s ({@link FP64#Concat(long, long, int)}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FP64Benchmark {
+
+	/**
+	 * The length of the strings and byte arrays
+	 */
+	@Param({ "8", "1024" })
+	public int length;
+
+	private String string;
+	private byte[] bytes;
+	private long fp;
+	private long raw;
+	private int i;
+
+	@Setup
+	public void setup() {
+		FP64.Init(0);
+		final Random rnd = new Random(15041980L);
+		final char[] chars = new char[this.length];
+		for (int j = 0; j < chars.length; j++) {
+			chars[j] = (char) ('a' + rnd.nextInt(26));
+		}
+		this.string = new String(chars);
+		this.bytes = new byte[this.length];
+		rnd.nextBytes(this.bytes);
+		this.fp = rnd.nextLong();
+		this.raw = FP64.Extend(FP64.Zero, this.string);
+		this.i = rnd.nextInt();
+	}
+
+	@Benchmark
+	public long newString() {
+		return FP64.New(this.string);
+	}
+
+	@Benchmark
+	public long extendBytes() {
+		return FP64.Extend(this.fp, this.bytes, 0, this.bytes.length);
+	}
+
+	@Benchmark
+	public long extendInt() {
+		return FP64.Extend(this.fp, this.i);
+	}
+
+	@Benchmark
+	public long extendLong() {
+		return FP64.Extend(this.fp, this.fp);
+	}
+
+	@Benchmark
+	public long extendKindInt() {
+		return FP64.Extend(this.fp, (byte) 1, this.i);
+	}
+
+	@Benchmark
+	public long concatString() {
+		return FP64.Concat(this.fp, this.raw, this.length);
+	}
+}
@@ -0,0 +1,107 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import tlc2.module.FiniteSets;
+import tlc2.module.Naturals;
+import tlc2.module.Sequences;
+import tlc2.tool.EvalControl;
+
+/**
+ * Calls of Java overrides of standard module operators through
+ * {@link MethodValue#apply(Value[], int)}, either reflectively (as TLC did
+ * before {@link MethodAdapter}) or through the generated adapter (parameter
+ * "dispatch"). The operators themselves are cheap, the difference is the
+ * per-call overhead of the dispatch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MethodValueBenchmark {
+
+	@Param({ "reflection", "adapter" })
+	public String dispatch;
+
+	private Dispatch append;
+	private Dispatch cardinality;
+	private Dispatch plus;
+
+	private Value[] appendArgs;
+	private Value[] cardinalityArgs;
+	private Value[] plusArgs;
+
+	@Setup
+	public void setup() throws NoSuchMethodException {
+		this.append = this.create(Sequences.class.getMethod("Append", new Class[] { Value.class, Value.class }));
+		this.cardinality = this.create(FiniteSets.class.getMethod("Cardinality", new Class[] { Value.class }));
+		this.plus = this.create(Naturals.class.getMethod("Plus", new Class[] { IntValue.class, IntValue.class }));
+
+		this.appendArgs = new Value[] { new TupleValue(new Value[] { IntValue.gen(1), IntValue.gen(2) }), IntValue.gen(3) };
+		this.cardinalityArgs = new Value[] { new IntervalValue(1, 10) };
+		this.plusArgs = new Value[] { IntValue.gen(17), IntValue.gen(4) };
+	}
+
+	private Dispatch create(final Method md) {
+		if ("adapter".equals(this.dispatch)) {
+			if (MethodAdapter.create(md) == null) {
+				throw new IllegalStateException("No adapter for " + md);
+			}
+			final MethodValue mv = new MethodValue(md);
+			return new Dispatch() {
+				public Value apply(final Value[] args) {
+					return mv.apply(args, EvalControl.Clear);
+				}
+			};
+		}
+		return new Reflective(md);
+	}
+
+	@Benchmark
+	public Value append() {
+		return this.append.apply(this.appendArgs);
+	}
+
+	@Benchmark
+	public Value cardinality() {
+		return this.cardinality.apply(this.cardinalityArgs);
+	}
+
+	@Benchmark
+	public Value plus() {
+		return this.plus.apply(this.plusArgs);
+	}
+
+	private interface Dispatch {
+		Value apply(Value[] args);
+	}
+
+	/**
+	 * The dispatch of {@link MethodValue} without an adapter.
+	 */
+	private static class Reflective implements Dispatch {
+		private final Method md;
+
+		Reflective(final Method md) {
+			this.md = md;
+		}
+
+		public Value apply(final Value[] args) {
+			try {
+				return (Value) this.md.invoke(null, (Object[]) args);
+			} catch (Exception e) {
+				throw new RuntimeException(e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import tlc2.util.FP64;
+
+/**
+ * {@link Value#fingerPrint(long)}, {@link Value#normalize()} and
+ * {@link Value#compareTo(Object)} of each kind of value. TLC fingerprints
+ * every new state and normalizes and compares values whenever it builds sets,
+ * records and functions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueBenchmark {
+
+	@Param({ Values.BOOL, Values.INT, Values.STRING, Values.MODEL, Values.INTERVAL, Values.SET, Values.TUPLE,
+			Values.RECORD, Values.FUNCTION, Values.NESTED })
+	public String kind;
+
+	/**
+	 * The number of components of composite values
+	 */
+	@Param({ "10", "1000" })
+	public int size;
+
+	private Value value;
+	private Value equal;
+
+	@Setup
+	public void setup() {
+		FP64.Init(0);
+		this.value = Values.build(this.kind, this.size, true, 0L);
+		// An independently built value, compareTo cannot take a shortcut
+		this.equal = Values.build(this.kind, this.size, true, 0L);
+	}
+
+	@Benchmark
+	public long fingerPrint() {
+		return this.value.fingerPrint(FP64.New());
+	}
+
+	@Benchmark
+	public Value normalize(final Unnormalized state) {
+		state.value.normalize();
+		return state.value;
+	}
+
+	@Benchmark
+	public int compareTo() {
+		return this.value.compareTo(this.equal);
+	}
+
+	/**
+	 * A value which has not been normalized yet, built for every invocation
+	 * as normalization is destructive.
+	 */
+	@State(Scope.Thread)
+	public static class Unnormalized {
+		private Value value;
+		private long seed;
+
+		@Setup(Level.Invocation)
+		public void setup(final ValueBenchmark benchmark) {
+			this.value = Values.build(benchmark.kind, benchmark.size, false, this.seed++);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Round-trips of values through a {@link ValueOutputStream} and a
+ * {@link ValueInputStream}, which (de-)serialize the states in the state
+ * queue, in checkpoints and in the messages of distributed TLC.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueStreamBenchmark {
+
+	@Param({ Values.BOOL, Values.INT, Values.STRING, Values.MODEL, Values.INTERVAL, Values.SET, Values.TUPLE,
+			Values.RECORD, Values.FUNCTION, Values.NESTED })
+	public String kind;
+
+	/**
+	 * The number of components of composite values
+	 */
+	@Param({ "10", "1000" })
+	public int size;
+
+	private Value value;
+	private ByteArrayOutputStream bytes;
+	private ValueOutputStream vos;
+	private byte[] written;
+	private ValueInputStream vis;
+
+	@Setup
+	public void setup() throws IOException {
+		this.value = Values.build(this.kind, this.size, true, 0L);
+		this.bytes = new ByteArrayOutputStream();
+		this.vos = new ValueOutputStream(this.bytes);
+		this.vos.write(this.value);
+		this.vos.reset();
+		this.written = this.bytes.toByteArray();
+		this.vis = new ValueInputStream(new ByteArrayInputStream(this.written));
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		this.bytes.reset();
+		this.vos.write(this.value);
+		this.vos.reset();
+		return this.bytes.size();
+	}
+
+	@Benchmark
+	public Value read() throws IOException {
+		this.vis.reset(new ByteArrayInputStream(this.written));
+		return this.vis.read();
+	}
+
+	@Benchmark
+	public Value roundTrip() throws IOException {
+		this.bytes.reset();
+		this.vos.write(this.value);
+		this.vos.reset();
+		this.vis.reset(new ByteArrayInputStream(this.bytes.toByteArray()));
+		return this.vis.read();
+	}
+}
@@ -0,0 +1,133 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.util.Random;
+
+import util.UniqueString;
+
+/**
+ * Builds the values the value benchmarks operate on: One value per kind,
+ * composite values with size components.
+ */
+final class Values {
+
+	/**
+	 * The kinds of values, the @Param values of the benchmarks.
+	 */
+	static final String BOOL = "bool";
+	static final String INT = "int";
+	static final String STRING = "string";
+	static final String MODEL = "model";
+	static final String INTERVAL = "interval";
+	static final String SET = "set";
+	static final String TUPLE = "tuple";
+	static final String RECORD = "record";
+	static final String FUNCTION = "function";
+	static final String NESTED = "nested";
+
+	private Values() {
+		// no instantiation
+	}
+
+	/**
+	 * @param normalized
+	 *            If false, the components of sets, records and functions are
+	 *            shuffled (with the given seed) and the value still has to be
+	 *            normalized.
+	 * @return A new value of the given kind.
+	 */
+	static Value build(final String kind, final int size, final boolean normalized, final long seed) {
+		final Random rnd = new Random(seed);
+		if (BOOL.equals(kind)) {
+			return new BoolValue(true);
+		} else if (INT.equals(kind)) {
+			return IntValue.gen(size);
+		} else if (STRING.equals(kind)) {
+			return new StringValue("s" + size);
+		} else if (MODEL.equals(kind)) {
+			final ModelValue mv = ModelValue.make("m" + size);
+			// Model values are deserialized by their index
+			ModelValue.setValues();
+			return mv;
+		} else if (INTERVAL.equals(kind)) {
+			return new IntervalValue(1, size);
+		} else if (SET.equals(kind)) {
+			return new SetEnumValue(ints(size, normalized, rnd), normalized);
+		} else if (TUPLE.equals(kind)) {
+			return new TupleValue(ints(size, true, rnd));
+		} else if (RECORD.equals(kind)) {
+			final UniqueString[] names = new UniqueString[size];
+			for (int i = 0; i < size; i++) {
+				names[i] = UniqueString.uniqueStringOf("f" + i);
+			}
+			final Value[] values = ints(size, true, rnd);
+			if (!normalized) {
+				shuffle(names, values, rnd);
+			}
+			final RecordValue rcd = new RecordValue(names, values, false);
+			if (normalized) {
+				rcd.normalize();
+			}
+			return rcd;
+		} else if (FUNCTION.equals(kind)) {
+			final Value[] domain = new Value[size];
+			for (int i = 0; i < size; i++) {
+				domain[i] = new StringValue("d" + i);
+			}
+			final Value[] values = ints(size, true, rnd);
+			if (!normalized) {
+				shuffle(domain, values, rnd);
+			}
+			final FcnRcdValue fcn = new FcnRcdValue(domain, values, false);
+			if (normalized) {
+				fcn.normalize();
+			}
+			return fcn;
+		} else if (NESTED.equals(kind)) {
+			// A function from an interval to records of sets, the shape of
+			// the state of many (PlusCal) specs.
+			final Value[] values = new Value[size];
+			final UniqueString[] names = new UniqueString[] { UniqueString.uniqueStringOf("pc"),
+					UniqueString.uniqueStringOf("set") };
+			for (int i = 0; i < size; i++) {
+				final Value[] fields = new Value[] { new StringValue("l" + (i % 4)),
+						new SetEnumValue(ints(4, normalized, rnd), normalized) };
+				final RecordValue rcd = new RecordValue(names.clone(), fields, false);
+				if (normalized) {
+					rcd.normalize();
+				}
+				values[i] = rcd;
+			}
+			return new FcnRcdValue(new IntervalValue(1, size), values);
+		}
+		throw new IllegalArgumentException("Unknown kind of value: " + kind);
+	}
+
+	private static Value[] ints(final int size, final boolean sorted, final Random rnd) {
+		final Value[] res = new Value[size];
+		for (int i = 0; i < size; i++) {
+			res[i] = IntValue.gen(i);
+		}
+		if (!sorted) {
+			shuffle(res, null, rnd);
+		}
+		return res;
+	}
+
+	/**
+	 * Shuffles keys and values (if not null) alike.
+	 */
+	private static void shuffle(final Object[] keys, final Object[] values, final Random rnd) {
+		for (int i = keys.length - 1; i > 0; i--) {
+			final int j = rnd.nextInt(i + 1);
+			Object tmp = keys[i];
+			keys[i] = keys[j];
+			keys[j] = tmp;
+			if (values != null) {
+				tmp = values[i];
+				values[i] = values[j];
+				values[j] = tmp;
+			}
+		}
+	}
+}
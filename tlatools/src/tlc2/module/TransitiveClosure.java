@@ -5,10 +5,10 @@
 
 package tlc2.module;
 
-import java.util.Hashtable;
-
+import tlc2.TLCGlobals;
 import tlc2.output.EC;
 import tlc2.tool.EvalException;
+import tlc2.util.FP64;
 import tlc2.util.Vect;
 import tlc2.value.Enumerable;
 import tlc2.value.SetEnumValue;
@@ -21,6 +21,17 @@ import tlc2.value.ValueVec;
 public class TransitiveClosure implements ValueConstants
 {
 
+    /**
+     * Relations with at least as many elements are closed by the processors
+     * not occupied by TLC's workers, at most as many as given by
+     * -Dtlc2.module.TransitiveClosure.threads.
+     */
+    private static final int ParallelThreshold = Integer.getInteger(
+            TransitiveClosure.class.getName() + ".threshold", 1024).intValue();
+
+    private static final int Threads = Integer.getInteger(TransitiveClosure.class.getName() + ".threads",
+            Runtime.getRuntime().availableProcessors()).intValue();
+
     /* Implement the Warshall algorithm for transitive closure. */
     public static Value Warshall(Value rel)
     {
@@ -29,12 +40,11 @@ public class TransitiveClosure implements ValueConstants
             throw new EvalException(EC.TLC_MODULE_APPLYING_TO_WRONG_VALUE, new String[] { "TransitiveClosure",
                     "an enumerable set", Value.ppr(rel.toString()) });
         }
-        int maxLen = 2 * rel.size();
-        boolean[][] matrix = new boolean[maxLen][maxLen];
         ValueEnumeration elems = ((Enumerable) rel).elements();
-        Vect elemList = new Vect();
-        Hashtable fps = new Hashtable();
-        int cnt = 0;
+        ElemIndex index = new ElemIndex(2 * rel.size());
+        // The pairs of the relation as indices of their elements.
+        int[] pairs = new int[2 * rel.size()];
+        int npairs = 0;
         Value elem = null;
         while ((elem = elems.nextElement()) != null)
         {
@@ -43,63 +53,260 @@ public class TransitiveClosure implements ValueConstants
             {
                 throw new EvalException(EC.TLC_MODULE_TRANSITIVE_CLOSURE, Value.ppr(elem.toString()));
             }
-            Value elem1 = tv.elems[0];
-            Value elem2 = tv.elems[1];
-            int num1 = cnt;
-            Integer num = (Integer) fps.get(elem1);
-            if (num == null)
+            if (npairs == pairs.length)
             {
-                fps.put(elem1, new Integer(cnt));
-                elemList.addElement(elem1);
-                cnt++;
-            } else
-            {
-                num1 = num.intValue();
+                int[] old = pairs;
+                pairs = new int[2 * old.length + 2];
+                System.arraycopy(old, 0, pairs, 0, npairs);
             }
-            int num2 = cnt;
-            num = (Integer) fps.get(elem2);
-            if (num == null)
-            {
-                fps.put(elem2, new Integer(cnt));
-                elemList.addElement(elem2);
-                cnt++;
-            } else
+            pairs[npairs++] = index.indexOf(tv.elems[0]);
+            pairs[npairs++] = index.indexOf(tv.elems[1]);
+        }
+        int cnt = index.size();
+
+        // The relation as a matrix of bitsets: bit j of row i is set iff
+        // the i-th element is related to the j-th element.
+        int words = (cnt + 63) >>> 6;
+        long[][] matrix = new long[cnt][words];
+        for (int i = 0; i < npairs; i += 2)
+        {
+            matrix[pairs[i]][pairs[i + 1] >>> 6] |= 1L << pairs[i + 1];
+        }
+
+        int nthreads = cnt >= ParallelThreshold ? getThreads() : 1;
+        if (nthreads > 1)
+        {
+            matrix = closeInParallel(matrix, cnt, nthreads);
+        } else
+        {
+            warshall(matrix, cnt);
+        }
+
+        ValueVec newElems = new ValueVec();
+        for (int i = 0; i < cnt; i++)
+        {
+            long[] row = matrix[i];
+            for (int w = 0; w < words; w++)
             {
-                num2 = num.intValue();
+                long word = row[w];
+                while (word != 0)
+                {
+                    int j = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    newElems.addElement(new TupleValue(index.elementAt(i), index.elementAt(j)));
+                }
             }
-            matrix[num1][num2] = true;
         }
+        return new SetEnumValue(newElems, false);
+    }
 
+    /**
+     * @return The number of threads to close a relation by. The workers
+     *         evaluating the spec (each of which may be closing a relation)
+     *         already keep as many processors busy.
+     */
+    private static int getThreads()
+    {
+        return Math.min(Threads, Runtime.getRuntime().availableProcessors() - TLCGlobals.getNumWorkers());
+    }
+
+    /**
+     * Closes the relation (in place). After step y, row x holds all elements
+     * reachable from x via elements 0..y. Row y does not change in step y.
+     */
+    static void warshall(final long[][] matrix, final int cnt)
+    {
         for (int y = 0; y < cnt; y++)
         {
+            final long[] rowY = matrix[y];
+            final int word = y >>> 6;
+            final long bit = 1L << y;
             for (int x = 0; x < cnt; x++)
             {
-                if (matrix[x][y])
+                final long[] rowX = matrix[x];
+                if ((rowX[word] & bit) != 0)
                 {
-                    for (int z = 0; z < cnt; z++)
+                    for (int z = 0; z < rowX.length; z++)
                     {
-                        if (matrix[y][z])
-                            matrix[x][z] = true;
+                        rowX[z] |= rowY[z];
                     }
                 }
             }
         }
+    }
 
-        ValueVec newElems = new ValueVec();
-        for (int i = 0; i < cnt; i++)
+    /**
+     * Closes the relation by a search from each element, the searches are
+     * split among the given number of threads.
+     * 
+     * @return The rows of the closure of the given relation
+     */
+    static long[][] closeInParallel(final long[][] relation, final int cnt, final int nthreads)
+    {
+        final long[][] closure = new long[cnt][];
+        final Thread[] threads = new Thread[nthreads];
+        final Throwable[] errors = new Throwable[1];
+        for (int t = 0; t < threads.length; t++)
+        {
+            final int first = t;
+            threads[t] = new Thread("TransitiveClosure " + t) {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = first; i < cnt; i += threads.length)
+                        {
+                            closure[i] = reachable(relation, i);
+                        }
+                    } catch (Throwable e)
+                    {
+                        errors[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++)
+        {
+            try
+            {
+                threads[t].join();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        if (errors[0] instanceof RuntimeException)
+        {
+            throw (RuntimeException) errors[0];
+        } else if (errors[0] != null)
         {
-            for (int j = 0; j < cnt; j++)
+            throw (Error) errors[0];
+        }
+        return closure;
+    }
+
+    /**
+     * @return The elements reachable from source in one or more steps of
+     *         relation (a breadth first search, a frontier at a time)
+     */
+    private static long[] reachable(final long[][] relation, final int source)
+    {
+        final int words = relation[source].length;
+        final long[] reached = relation[source].clone();
+        long[] frontier = reached.clone();
+        final long[] next = new long[words];
+        boolean more = true;
+        while (more)
+        {
+            for (int w = 0; w < words; w++)
             {
-                if (matrix[i][j])
+                long word = frontier[w];
+                while (word != 0)
                 {
-                    Value elem1 = (Value) elemList.elementAt(i);
-                    Value elem2 = (Value) elemList.elementAt(j);
-                    Value newElem = new TupleValue(elem1, elem2);
-                    newElems.addElement(newElem);
+                    final long[] row = relation[(w << 6) + Long.numberOfTrailingZeros(word)];
+                    word &= word - 1;
+                    for (int z = 0; z < words; z++)
+                    {
+                        next[z] |= row[z];
+                    }
+                }
+            }
+            more = false;
+            for (int z = 0; z < words; z++)
+            {
+                // The newly reached elements are the next frontier.
+                final long fresh = next[z] & ~reached[z];
+                reached[z] |= fresh;
+                frontier[z] = fresh;
+                next[z] = 0;
+                more |= fresh != 0;
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Numbers the elements of a relation in the order they are first seen.
+     * Elements are looked up by their fingerprint (open addressing) and told
+     * apart by equals if their fingerprints collide.
+     */
+    private static final class ElemIndex
+    {
+        private long[] fps;
+        private int[] slots; // index + 1 of the element, 0 marks an empty slot
+        private final Vect elemList = new Vect();
+
+        ElemIndex(int expected)
+        {
+            int capacity = 16;
+            while (capacity < 2 * expected)
+            {
+                capacity <<= 1;
+            }
+            this.fps = new long[capacity];
+            this.slots = new int[capacity];
+        }
+
+        int size()
+        {
+            return this.elemList.size();
+        }
+
+        Value elementAt(int idx)
+        {
+            return (Value) this.elemList.elementAt(idx);
+        }
+
+        /**
+         * @return The index of elem, a new one if elem has not been seen
+         */
+        int indexOf(Value elem)
+        {
+            long fp = elem.fingerPrint(FP64.New());
+            int mask = this.fps.length - 1;
+            int pos = (int) (fp ^ (fp >>> 32)) & mask;
+            while (this.slots[pos] != 0)
+            {
+                if (this.fps[pos] == fp && this.elementAt(this.slots[pos] - 1).equals(elem))
+                {
+                    return this.slots[pos] - 1;
+                }
+                pos = (pos + 1) & mask;
+            }
+            int idx = this.elemList.size();
+            this.elemList.addElement(elem);
+            this.fps[pos] = fp;
+            this.slots[pos] = idx + 1;
+            if (2 * this.elemList.size() > this.fps.length)
+            {
+                this.grow();
+            }
+            return idx;
+        }
+
+        private void grow()
+        {
+            long[] oldFps = this.fps;
+            int[] oldSlots = this.slots;
+            this.fps = new long[2 * oldFps.length];
+            this.slots = new int[2 * oldSlots.length];
+            int mask = this.fps.length - 1;
+            for (int i = 0; i < oldFps.length; i++)
+            {
+                if (oldSlots[i] != 0)
+                {
+                    int pos = (int) (oldFps[i] ^ (oldFps[i] >>> 32)) & mask;
+                    while (this.slots[pos] != 0)
+                    {
+                        pos = (pos + 1) & mask;
+                    }
+                    this.fps[pos] = oldFps[i];
+                    this.slots[pos] = oldSlots[i];
                 }
             }
         }
-        return new SetEnumValue(newElems, false);
     }
 
 }
@@ -183,6 +183,11 @@ public interface EC
     public static final int TLC_STATS = 2199;
     public static final int TLC_STATS_DFID = 2204;
     public static final int TLC_STATS_SIMU = 2210;
+    public static final int TLC_STATS_INTERNING = 2267;
+    public static final int TLC_STATS_ACTION = 2268;
+    public static final int TLC_STATS_INVARIANT = 2269;
+    public static final int TLC_STATS_MEMO = 2270;
+    public static final int TLC_HOISTED_EXPRESSION = 2271;
     public static final int TLC_PROGRESS_STATS = 2200;
     public static final int TLC_COVERAGE_START = 2201;
     public static final int TLC_COVERAGE_END = 2202;
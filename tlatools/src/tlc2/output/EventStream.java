@@ -0,0 +1,405 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.output;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link EventStream} writes the messages printed by {@link MP} as typed
+ * records to a file, one JSON object per line. Contrary to the text output,
+ * the records can be read without parsing the message texts:
+ *
+ * <pre>
+ * {"type":"progress","time":1355312345678,"code":2200,"diameter":12,"generated":4711,"distinct":815,"left":42,"spm":4711,"dspm":815}
+ * {"type":"state","time":1355312345679,"code":2217,"num":2,"action":"&lt;Action line 10, col 3 ...&gt;","state":"/\\ x = 1"}
+ * </pre>
+ *
+ * Every record has a type (progress, stats, coverage, state, checkpoint,
+ * error, warning or message), the time it was published, and the message
+ * code of {@link EC}. The parameters of progress, statistics, coverage,
+ * state and checkpoint records are named, those of all other records are
+ * given as the array "params" together with the message "text".
+ * <p>
+ * The stream is off unless the system property {@link #FILE_PROPERTY} names
+ * the file to write to. Text output is unaffected either way.
+ * <p>
+ * Records are handed to a writer thread through a bounded queue. If the
+ * queue is full, progress and coverage records are dropped, and a record of
+ * type "dropped" with the number of dropped records is written once the
+ * writer has caught up. Publishing any other record (errors, states of a
+ * trace, the final statistics...) waits for the writer instead, since a
+ * reader could not do without them. Once writing has failed, records are
+ * discarded.
+ */
+public final class EventStream implements Runnable {
+
+	/**
+	 * System property naming the file the records are written to.
+	 */
+	public static final String FILE_PROPERTY = EventStream.class.getName() + ".file";
+
+	/**
+	 * The maximum number of records waiting to be written.
+	 */
+	private static final int Capacity = Integer.getInteger(EventStream.class.getName() + ".capacity", 1 << 16);
+
+	private static final EventStream instance = create();
+
+	private static EventStream create() {
+		final String file = System.getProperty(FILE_PROPERTY);
+		if (file == null) {
+			return null;
+		}
+		try {
+			final EventStream stream = new EventStream(new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(file), "UTF-8")), Capacity);
+			Runtime.getRuntime().addShutdownHook(new Thread(EventStream.class.getSimpleName() + "-Shutdown") {
+				public void run() {
+					stream.flush();
+				}
+			});
+			return stream;
+		} catch (IOException e) {
+			MP.printWarning(EC.GENERAL, "Failed to open the event stream " + file + ", no events will be written.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return The stream configured by {@link #FILE_PROPERTY} or null
+	 */
+	public static EventStream getInstance() {
+		return instance;
+	}
+
+	private final BlockingQueue<Object> queue;
+	private final Writer out;
+	private final AtomicLong dropped = new AtomicLong(0);
+	private final Thread writer;
+	/**
+	 * Set once writing failed, no more records are accepted then.
+	 */
+	private volatile boolean failed = false;
+
+	EventStream(final Writer out, final int capacity) {
+		this.out = out;
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+		this.writer = new Thread(this, EventStream.class.getSimpleName());
+		// Does not keep the VM from exiting, the shutdown hook drains the queue.
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Publishes the message with the given severity (see {@link MP#ERROR}
+	 * etc.), code and parameters. Returns immediately unless the queue is
+	 * full and the record must not be dropped.
+	 *
+	 * @param text
+	 *            The formatted message
+	 */
+	public final void publish(final int severity, final int code, final String[] parameters, final String text) {
+		if (this.failed || Thread.currentThread() == this.writer) {
+			// The writer must not wait for itself (e.g. when it reports that
+			// it failed).
+			return;
+		}
+		final Event event = new Event(System.currentTimeMillis(), severity, code, parameters, text);
+		if (this.queue.offer(event)) {
+			return;
+		}
+		if (event.isDroppable()) {
+			this.dropped.incrementAndGet();
+			return;
+		}
+		// Wait for the writer, unless it has failed and will never catch up
+		boolean interrupted = false;
+		try {
+			while (!this.failed && this.writer.isAlive()) {
+				try {
+					if (this.queue.offer(event, 100, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Waits until all records published so far have been written.
+	 */
+	public final void flush() {
+		if (this.failed || Thread.currentThread() == this.writer) {
+			return;
+		}
+		final CountDownLatch latch = new CountDownLatch(1);
+		try {
+			// Give up once the writer has failed, it will not write the
+			// records anymore.
+			while (!this.queue.offer(latch, 100, TimeUnit.MILLISECONDS)) {
+				if (this.failed || !this.writer.isAlive()) {
+					return;
+				}
+			}
+			while (!latch.await(100, TimeUnit.MILLISECONDS)) {
+				if (this.failed || !this.writer.isAlive()) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		final StringBuffer buf = new StringBuffer(256);
+		try {
+			while (true) {
+				Object next = this.queue.poll();
+				if (next == null) {
+					// Nothing to do, write out what has been buffered
+					this.out.flush();
+					next = this.queue.take();
+				}
+				final long cnt = this.dropped.getAndSet(0);
+				if (cnt > 0) {
+					buf.setLength(0);
+					buf.append("{\"type\":\"dropped\",\"time\":").append(System.currentTimeMillis());
+					buf.append(",\"count\":").append(cnt).append("}\n");
+					this.out.write(buf.toString());
+				}
+				if (next instanceof CountDownLatch) {
+					this.out.flush();
+					((CountDownLatch) next).countDown();
+				} else {
+					buf.setLength(0);
+					((Event) next).write(buf);
+					buf.append('\n');
+					this.out.write(buf.toString());
+				}
+			}
+		} catch (InterruptedException e) {
+			// terminate
+		} catch (IOException e) {
+			this.failed = true;
+			MP.printWarning(EC.GENERAL, "Failed to write the event stream, no more events will be written.", e);
+			// Release those waiting for a flush
+			Object next;
+			while ((next = this.queue.poll()) != null) {
+				if (next instanceof CountDownLatch) {
+					((CountDownLatch) next).countDown();
+				}
+			}
+		}
+	}
+
+	private static final class Event {
+		private final long time;
+		private final int severity;
+		private final int code;
+		private final String[] parameters;
+		private final String text;
+
+		Event(final long time, final int severity, final int code, final String[] parameters, final String text) {
+			this.time = time;
+			this.severity = severity;
+			this.code = code;
+			this.parameters = parameters;
+			this.text = text;
+		}
+
+		void write(final StringBuffer buf) {
+			buf.append("{\"type\":\"").append(this.getType()).append("\",\"time\":").append(this.time);
+			buf.append(",\"code\":").append(this.code);
+			switch (this.code) {
+			case EC.TLC_PROGRESS_STATS:
+				this.names(buf, new String[] { "diameter", "generated", "distinct", "left", "spm", "dspm" }, true);
+				break;
+			case EC.TLC_STATS:
+				this.names(buf, new String[] { "generated", "distinct", "left" }, true);
+				break;
+			case EC.TLC_COVERAGE_VALUE:
+				this.names(buf, new String[] { "location" }, false);
+				this.names(buf, new String[] { null, "count" }, true);
+				break;
+			case EC.TLC_STATE_PRINT1:
+				this.names(buf, new String[] { "num" }, true);
+				this.names(buf, new String[] { null, "state" }, false);
+				break;
+			case EC.TLC_STATE_PRINT2:
+				this.names(buf, new String[] { "num" }, true);
+				this.names(buf, new String[] { null, "action", "state" }, false);
+				break;
+			case EC.TLC_STATE_PRINT3:
+				this.names(buf, new String[] { "num" }, true);
+				buf.append(",\"stuttering\":true");
+				break;
+			case EC.TLC_CHECKPOINT_START:
+				buf.append(",\"phase\":\"start\"");
+				this.names(buf, new String[] { "path" }, false);
+				break;
+			case EC.TLC_CHECKPOINT_END:
+				buf.append(",\"phase\":\"end\"");
+				break;
+			case EC.TLC_CHECKPOINT_RECOVER_START:
+				buf.append(",\"phase\":\"recover-start\"");
+				this.names(buf, new String[] { "path" }, false);
+				break;
+			case EC.TLC_CHECKPOINT_RECOVER_END:
+				buf.append(",\"phase\":\"recover-end\"");
+				this.names(buf, new String[] { "distinct", "left" }, true);
+				break;
+			default:
+				buf.append(",\"params\":[");
+				for (int i = 0; i < this.parameters.length; i++) {
+					if (i > 0) {
+						buf.append(',');
+					}
+					quote(buf, this.parameters[i]);
+				}
+				buf.append("],\"text\":");
+				quote(buf, unframe(this.text));
+			}
+			buf.append('}');
+		}
+
+		/**
+		 * @return true iff the record may be dropped if the queue is full
+		 */
+		boolean isDroppable() {
+			final String type = this.getType();
+			return "progress".equals(type) || "coverage".equals(type);
+		}
+
+		private String getType() {
+			switch (this.severity) {
+			case MP.ERROR:
+			case MP.TLCBUG:
+				return "error";
+			case MP.WARNING:
+				return "warning";
+			case MP.STATE:
+				return "state";
+			}
+			switch (this.code) {
+			case EC.TLC_PROGRESS_STATS:
+				return "progress";
+			case EC.TLC_STATS:
+				return "stats";
+			case EC.TLC_COVERAGE_VALUE:
+				return "coverage";
+			case EC.TLC_CHECKPOINT_START:
+			case EC.TLC_CHECKPOINT_END:
+			case EC.TLC_CHECKPOINT_RECOVER_START:
+			case EC.TLC_CHECKPOINT_RECOVER_END:
+				return "checkpoint";
+			default:
+				return "message";
+			}
+		}
+
+		/**
+		 * Appends the parameters as fields with the given names. A null name
+		 * skips the parameter. Numbers are written unquoted if numeric is
+		 * true.
+		 */
+		private void names(final StringBuffer buf, final String[] names, final boolean numeric) {
+			for (int i = 0; i < names.length && i < this.parameters.length; i++) {
+				if (names[i] == null) {
+					continue;
+				}
+				buf.append(",\"").append(names[i]).append("\":");
+				if (numeric && isNumber(this.parameters[i])) {
+					buf.append(this.parameters[i]);
+				} else {
+					quote(buf, this.parameters[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The message without the delimiters which frame it in the
+	 *         output of the -tool mode.
+	 */
+	static String unframe(final String text) {
+		if (text == null || !text.startsWith(MP.DELIM)) {
+			return text;
+		}
+		final int start = text.indexOf('\n');
+		final int end = text.lastIndexOf("\n" + MP.DELIM + MP.ENDMSG);
+		if (start < 0 || end < start) {
+			return text;
+		}
+		return text.substring(start + 1, end);
+	}
+
+	static boolean isNumber(final String s) {
+		if (s == null || s.length() == 0) {
+			return false;
+		}
+		for (int i = (s.charAt(0) == '-' && s.length() > 1) ? 1 : 0; i < s.length(); i++) {
+			if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void quote(final StringBuffer buf, final String s) {
+		if (s == null) {
+			buf.append("null");
+			return;
+		}
+		buf.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				buf.append("\\\"");
+				break;
+			case '\\':
+				buf.append("\\\\");
+				break;
+			case '\n':
+				buf.append("\\n");
+				break;
+			case '\r':
+				buf.append("\\r");
+				break;
+			case '\t':
+				buf.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					final String hex = Integer.toHexString(c);
+					buf.append("\\u");
+					for (int j = hex.length(); j < 4; j++) {
+						buf.append('0');
+					}
+					buf.append(hex);
+				} else {
+					buf.append(c);
+				}
+			}
+		}
+		buf.append('"');
+	}
+}
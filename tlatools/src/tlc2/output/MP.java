@@ -778,6 +778,21 @@ public class MP
         case EC.TLC_STATS:
             b.append("%1% states generated, %2% distinct states found, %3% states left on queue.");
             break;
+        case EC.TLC_STATS_INTERNING:
+            b.append("%1% values interned, %2% of which were replaced by an identical value; %3% distinct values retained.");
+            break;
+        case EC.TLC_STATS_ACTION:
+            b.append("%1%: %2% states generated, %3% distinct states found, %4% us per state on average, 99th percentile %5% us.");
+            break;
+        case EC.TLC_STATS_INVARIANT:
+            b.append("Invariant %1%: %2% evaluations, %3% us on average, 99th percentile %4% us.");
+            break;
+        case EC.TLC_HOISTED_EXPRESSION:
+            b.append("The value of the constant expression at %1% is computed once.");
+            break;
+        case EC.TLC_STATS_MEMO:
+            b.append("%1% operator applications answered from the memo cache, %2% evaluated; %3% results retained.");
+            break;
         case EC.TLC_STATS_DFID:
             b.append("%1% states generated, %2% distinct states found.");
             break;
@@ -1105,7 +1120,9 @@ public class MP
     {
         // write the output
         DebugPrinter.print("entering printError(int, String[]) with errorCode " + errorCode); //$NON-NLS-1$
-        ToolIO.out.println(getMessage(ERROR, errorCode, parameters));
+        final String message = getMessage(ERROR, errorCode, parameters);
+        ToolIO.out.println(message);
+        publish(ERROR, errorCode, parameters, message);
         DebugPrinter.print("leaving printError(int, String[])"); //$NON-NLS-1$
     }
 
@@ -1262,7 +1279,9 @@ public class MP
     {
         DebugPrinter.print("entering printMessage(int, String[]) with errorCode " + errorCode); //$NON-NLS-1$
         // write the output
-        ToolIO.out.println(getMessage(NONE, errorCode, parameters));
+        final String message = getMessage(NONE, errorCode, parameters);
+        ToolIO.out.println(message);
+        publish(NONE, errorCode, parameters, message);
         DebugPrinter.print("leaving printError(int, String[]) with errorCode "); //$NON-NLS-1$
     }
 
@@ -1273,7 +1292,9 @@ public class MP
     public static void printState(int code, String[] parameters)
     {
         DebugPrinter.print("entering printState(String[])"); //$NON-NLS-1$
-        ToolIO.out.println(getMessage(STATE, code, parameters));
+        final String message = getMessage(STATE, code, parameters);
+        ToolIO.out.println(message);
+        publish(STATE, code, parameters, message);
         DebugPrinter.print("leaving printState(String[])"); //$NON-NLS-1$
     }
 
@@ -1287,7 +1308,9 @@ public class MP
     {
         DebugPrinter.print("entering printTLCBug(int, String[]) with errorCode " + errorCode); //$NON-NLS-1$
         // write the output
-        ToolIO.out.println(getMessage(TLCBUG, errorCode, parameters));
+        final String message = getMessage(TLCBUG, errorCode, parameters);
+        ToolIO.out.println(message);
+        publish(TLCBUG, errorCode, parameters, message);
         DebugPrinter.print("leaving printTLCBug(int, String[])"); //$NON-NLS-1$
     }
 
@@ -1316,6 +1339,7 @@ public class MP
             {
                 // print it
                 ToolIO.out.println(message);
+                publish(WARNING, errorCode, parameters, message);
             }
         }
         DebugPrinter.print("leaving printWarning(int, String[])"); //$NON-NLS-1$
@@ -1339,6 +1363,7 @@ public class MP
             {
                 // print it
                 ToolIO.out.println(message);
+                publish(WARNING, errorCode, new String[]{parameters}, message);
             }
             DebugPrinter.print("printing stacktrace in printError(int, Throwable, boolean)"); //$NON-NLS-1$
             e.printStackTrace(ToolIO.out);
@@ -1346,6 +1371,19 @@ public class MP
         DebugPrinter.print("leaving printWarning(int, String[])"); //$NON-NLS-1$
     }
 
+    /**
+     * Publishes the printed message on the {@link EventStream} (if enabled)
+     * @param message the message as printed
+     */
+    private static void publish(int messageClass, int messageCode, String[] parameters, String message)
+    {
+        final EventStream stream = EventStream.getInstance();
+        if (stream != null)
+        {
+            stream.publish(messageClass, messageCode, (parameters == null) ? EMPTY_PARAMS : parameters, message);
+        }
+    }
+
     /**
      * Replaces the place holders by parameters 
      */
@@ -1384,5 +1422,10 @@ public class MP
     {
         ToolIO.out.flush();
         ToolIO.err.flush();
+        final EventStream stream = EventStream.getInstance();
+        if (stream != null)
+        {
+            stream.flush();
+        }
     }
 }
@@ -0,0 +1,291 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import tlc2.output.EC;
+import tlc2.output.MP;
+import tlc2.util.IdThread;
+
+/**
+ * {@link ActionMetrics} count the states each action generates and the new
+ * states it finds, and record how long it takes to compute the successors of
+ * a state with an action ({@link Tool#getNextStates(Action, TLCState)}) and to
+ * evaluate each invariant. They tell which action or invariant is to blame
+ * when a run slows down.
+ * <p>
+ * Each worker records into a {@link Stripe} of its own, so recording is
+ * neither synchronized nor contended. The stripes are summed up when the
+ * metrics are read, which makes the sums approximate while the workers run
+ * (acceptable for statistics). Latencies are kept in histograms of
+ * power-of-two buckets.
+ * <p>
+ * Metrics are off unless -Dtlc2.tool.ActionMetrics.enabled=true as timing
+ * adds two calls to {@link System#nanoTime()} per action and state.
+ */
+public final class ActionMetrics {
+
+	private static final boolean ENABLED = Boolean.getBoolean(ActionMetrics.class.getName() + ".enabled");
+
+	/**
+	 * @return true iff the model checker should record metrics.
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	private static final int Buckets = 64;
+
+	private final String[] actionNames;
+	private final String[] invariantNames;
+	private final Stripe[] stripes;
+
+	/**
+	 * @param workers
+	 *            The number of workers. Threads other than the workers (such
+	 *            as the main thread computing the initial states) share an
+	 *            additional stripe.
+	 */
+	public ActionMetrics(final String[] actionNames, final String[] invariantNames, final int workers) {
+		this.actionNames = actionNames;
+		this.invariantNames = invariantNames;
+		this.stripes = new Stripe[workers + 1];
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new Stripe(actionNames.length, invariantNames.length);
+		}
+	}
+
+	/**
+	 * @return The locations of the given actions, by which they are named
+	 */
+	public static String[] getLocations(final Action[] actions) {
+		final String[] res = new String[actions.length];
+		for (int i = 0; i < actions.length; i++) {
+			res[i] = actions[i].getLocation();
+		}
+		return res;
+	}
+
+	/**
+	 * @return The stripe of the calling thread
+	 */
+	public final Stripe getStripe() {
+		final int last = this.stripes.length - 1;
+		return this.stripes[Math.min(IdThread.GetId(last), last)];
+	}
+
+	public final String[] getActionNames() {
+		return this.actionNames;
+	}
+
+	public final String[] getInvariantNames() {
+		return this.invariantNames;
+	}
+
+	/**
+	 * @return The number of states generated per action
+	 */
+	public final long[] getStatesGenerated() {
+		final long[] res = new long[this.actionNames.length];
+		for (int s = 0; s < this.stripes.length; s++) {
+			add(res, this.stripes[s].generated);
+		}
+		return res;
+	}
+
+	/**
+	 * @return The number of new states found per action
+	 */
+	public final long[] getDistinctStates() {
+		final long[] res = new long[this.actionNames.length];
+		for (int s = 0; s < this.stripes.length; s++) {
+			add(res, this.stripes[s].distinct);
+		}
+		return res;
+	}
+
+	/**
+	 * @return The mean time in nanoseconds it took an action to compute the
+	 *         successors of a state
+	 */
+	public final long[] getNextStatesMeanNanos() {
+		final long[] cnt = new long[this.actionNames.length];
+		final long[] nanos = new long[this.actionNames.length];
+		for (int s = 0; s < this.stripes.length; s++) {
+			add(cnt, this.stripes[s].next.count);
+			add(nanos, this.stripes[s].next.nanos);
+		}
+		return mean(nanos, cnt);
+	}
+
+	/**
+	 * @return An upper bound of the time in nanoseconds within which an
+	 *         action computed the successors of the given fraction (e.g.
+	 *         0.99) of the states.
+	 */
+	public final long[] getNextStatesPercentileNanos(final double fraction) {
+		final long[] hist = new long[this.actionNames.length * Buckets];
+		for (int s = 0; s < this.stripes.length; s++) {
+			add(hist, this.stripes[s].next.buckets);
+		}
+		return percentile(hist, this.actionNames.length, fraction);
+	}
+
+	/**
+	 * @return The number of times each invariant has been evaluated
+	 */
+	public final long[] getInvariantEvaluations() {
+		final long[] res = new long[this.invariantNames.length];
+		for (int s = 0; s < this.stripes.length; s++) {
+			add(res, this.stripes[s].invariant.count);
+		}
+		return res;
+	}
+
+	/**
+	 * @return The mean time in nanoseconds it took to evaluate each invariant
+	 */
+	public final long[] getInvariantMeanNanos() {
+		final long[] cnt = new long[this.invariantNames.length];
+		final long[] nanos = new long[this.invariantNames.length];
+		for (int s = 0; s < this.stripes.length; s++) {
+			add(cnt, this.stripes[s].invariant.count);
+			add(nanos, this.stripes[s].invariant.nanos);
+		}
+		return mean(nanos, cnt);
+	}
+
+	/**
+	 * @see ActionMetrics#getNextStatesPercentileNanos(double)
+	 */
+	public final long[] getInvariantPercentileNanos(final double fraction) {
+		final long[] hist = new long[this.invariantNames.length * Buckets];
+		for (int s = 0; s < this.stripes.length; s++) {
+			add(hist, this.stripes[s].invariant.buckets);
+		}
+		return percentile(hist, this.invariantNames.length, fraction);
+	}
+
+	/**
+	 * Prints a line per action and per invariant.
+	 */
+	public final void printStats() {
+		final long[] generated = this.getStatesGenerated();
+		final long[] distinct = this.getDistinctStates();
+		final long[] nextMean = this.getNextStatesMeanNanos();
+		final long[] next99 = this.getNextStatesPercentileNanos(0.99d);
+		for (int i = 0; i < this.actionNames.length; i++) {
+			MP.printMessage(EC.TLC_STATS_ACTION, new String[] { this.actionNames[i], String.valueOf(generated[i]),
+					String.valueOf(distinct[i]), micros(nextMean[i]), micros(next99[i]) });
+		}
+		final long[] evals = this.getInvariantEvaluations();
+		final long[] invMean = this.getInvariantMeanNanos();
+		final long[] inv99 = this.getInvariantPercentileNanos(0.99d);
+		for (int i = 0; i < this.invariantNames.length; i++) {
+			MP.printMessage(EC.TLC_STATS_INVARIANT, new String[] { this.invariantNames[i], String.valueOf(evals[i]),
+					micros(invMean[i]), micros(inv99[i]) });
+		}
+	}
+
+	private static String micros(final long nanos) {
+		return String.valueOf(Math.round(nanos / 100d) / 10d);
+	}
+
+	private static void add(final long[] sum, final long[] summand) {
+		for (int i = 0; i < sum.length; i++) {
+			sum[i] += summand[i];
+		}
+	}
+
+	private static long[] mean(final long[] nanos, final long[] cnt) {
+		final long[] res = new long[nanos.length];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = (cnt[i] == 0) ? 0 : nanos[i] / cnt[i];
+		}
+		return res;
+	}
+
+	private static long[] percentile(final long[] hist, final int n, final double fraction) {
+		final long[] res = new long[n];
+		for (int i = 0; i < n; i++) {
+			long total = 0;
+			for (int b = 0; b < Buckets; b++) {
+				total += hist[i * Buckets + b];
+			}
+			final long rank = (long) Math.ceil(total * fraction);
+			long cnt = 0;
+			for (int b = 0; b < Buckets && total > 0; b++) {
+				cnt += hist[i * Buckets + b];
+				if (cnt >= rank) {
+					// the upper bound of bucket b
+					res[i] = (1L << b) - 1;
+					break;
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Counts and times n operations (actions or invariants).
+	 */
+	private static final class Histogram {
+		private final long[] count;
+		private final long[] nanos;
+		/**
+		 * Bucket b of operation i at i * {@link ActionMetrics#Buckets} + b
+		 * counts the durations d with 2^(b-1) <= d < 2^b.
+		 */
+		private final long[] buckets;
+
+		Histogram(final int n) {
+			this.count = new long[n];
+			this.nanos = new long[n];
+			this.buckets = new long[n * Buckets];
+		}
+
+		void record(final int i, final long duration) {
+			this.count[i]++;
+			this.nanos[i] += duration;
+			this.buckets[i * Buckets + (64 - Long.numberOfLeadingZeros(Math.max(0, duration)))]++;
+		}
+	}
+
+	/**
+	 * The metrics recorded by a single worker.
+	 */
+	public static final class Stripe {
+		private final long[] generated;
+		private final long[] distinct;
+		private final Histogram next;
+		private final Histogram invariant;
+
+		Stripe(final int actions, final int invariants) {
+			this.generated = new long[actions];
+			this.distinct = new long[actions];
+			this.next = new Histogram(actions);
+			this.invariant = new Histogram(invariants);
+		}
+
+		/**
+		 * Records that action generated states successors of a state in
+		 * nanos nanoseconds.
+		 */
+		public final void recordNextStates(final int action, final int states, final long nanos) {
+			this.generated[action] += states;
+			this.next.record(action, nanos);
+		}
+
+		/**
+		 * Records that action found a new state.
+		 */
+		public final void recordDistinct(final int action) {
+			this.distinct[action]++;
+		}
+
+		/**
+		 * Records that an evaluation of invariant took nanos nanoseconds.
+		 */
+		public final void recordInvariant(final int invariant, final long nanos) {
+			this.invariant.record(invariant, nanos);
+		}
+	}
+}
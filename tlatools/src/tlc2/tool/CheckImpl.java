@@ -10,7 +10,7 @@ import tlc2.output.StatePrinter;
 import tlc2.tool.fp.FPSet;
 import tlc2.tool.fp.FPSetConfiguration;
 import tlc2.tool.fp.FPSetFactory;
-import tlc2.tool.queue.DiskStateQueue;
+import tlc2.tool.queue.StateQueueFactory;
 import util.ToolIO;
 
 /**
@@ -90,7 +90,7 @@ public abstract class CheckImpl extends ModelChecker {
    */
   public final void makeStateSpace(TLCState st, int depth) throws Exception {
     int depth1= this.trace.getLevel(st.uid) + depth;
-    this.theStateQueue = new DiskStateQueue(this.metadir);
+    this.theStateQueue = StateQueueFactory.getStateQueue(this.metadir);
     this.theStateQueue.enqueue(st);
     if (!this.runTLC(depth1)) {
       System.exit(1);
@@ -0,0 +1,374 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import tla2sany.semantic.APSubstInNode;
+import tla2sany.semantic.ASTConstants;
+import tla2sany.semantic.AtNode;
+import tla2sany.semantic.ExprNode;
+import tla2sany.semantic.FormalParamNode;
+import tla2sany.semantic.FrontEnd;
+import tla2sany.semantic.LetInNode;
+import tla2sany.semantic.OpApplNode;
+import tla2sany.semantic.OpArgNode;
+import tla2sany.semantic.OpDefNode;
+import tla2sany.semantic.SemanticNode;
+import tla2sany.semantic.SubstInNode;
+import tla2sany.semantic.SymbolNode;
+import tla2sany.semantic.ThmOrAssumpDefNode;
+import tlc2.TLCGlobals;
+import tlc2.output.EC;
+import tlc2.output.MP;
+import tlc2.util.Context;
+import tlc2.util.Vect;
+import tlc2.value.Enumerable;
+import tlc2.value.FcnLambdaValue;
+import tlc2.value.FcnRcdValue;
+import tlc2.value.SetEnumValue;
+import tlc2.value.Value;
+
+/**
+ * The {@link ConstantHoister} finds the maximal subexpressions of constant
+ * level (see {@link tla2sany.semantic.LevelNode#getLevel()}) in the initial
+ * predicate, the next-state actions, the invariants, the implied initial
+ * predicates and actions and the constraints, and in the definitions they
+ * apply. Such a subexpression, e.g. [p \in Proc |-> ...] over constants or
+ * Permutations(S), has the same value in every state. Tool computes it the
+ * first time it is evaluated and afterwards uses the computed value (see
+ * {@link Tool#eval(SemanticNode, Context, TLCState, TLCState, int)}).
+ * Spec#processConstantDefns does the same for the definitions of constants
+ * only.
+ * <p>
+ * A subexpression is hoisted only if it does not refer to identifiers bound
+ * outside of it (whose level is constant too, but whose values come from
+ * the context), to @, to the definitions of a module instantiated with
+ * substitutions, or to Print, PrintT, RandomElement, TLCGet, TLCSet or
+ * JavaTime. Its value is kept only if it is plain data, or a function or
+ * set of at most {@link #BOUND} elements which is then enumerated. Other
+ * values (e.g. infinite sets) are computed anew each time as before.
+ * <p>
+ * Hoisting is off while coverage is reported and if
+ * -Dtlc2.tool.ConstantHoister.disabled=true. With
+ * -Dtlc2.tool.ConstantHoister.report=true, the location of each hoisted
+ * subexpression is reported.
+ */
+public final class ConstantHoister implements ASTConstants {
+
+	public static final boolean DISABLED = Boolean.getBoolean(ConstantHoister.class.getName() + ".disabled");
+
+	private static final boolean REPORT = Boolean.getBoolean(ConstantHoister.class.getName() + ".report");
+
+	/**
+	 * The maximum number of elements of a lazy function or set that is
+	 * enumerated to be kept.
+	 */
+	public static final int BOUND = Integer.getInteger(ConstantHoister.class.getName() + ".bound", 10000).intValue();
+
+	/**
+	 * The tool id under which the {@link Hoisted} of a hoisted subexpression
+	 * is stored at its {@link OpApplNode}.
+	 */
+	public static final int ToolId = FrontEnd.getToolId();
+
+	/**
+	 * The value of a hoisted subexpression, computed when it is first
+	 * evaluated.
+	 */
+	public static final class Hoisted {
+		private final OpApplNode expr;
+		private volatile Value val = null;
+		private volatile boolean isUncachable = false;
+
+		Hoisted(final OpApplNode expr) {
+			this.expr = expr;
+		}
+
+		/**
+		 * @return The value of the subexpression, evaluated in the given
+		 *         context and states on the first call (none of which it
+		 *         depends on).
+		 */
+		public final Value eval(final Tool tool, final Context c, final TLCState s0, final TLCState s1,
+				final int control) {
+			final Value res = this.val;
+			if (res != null) {
+				return res;
+			}
+			final Value computed = tool.evalAppl(this.expr, c, s0, s1, control);
+			if (this.isUncachable) {
+				return computed;
+			}
+			final Value shared = share(computed);
+			if (shared == null) {
+				this.isUncachable = true;
+				return computed;
+			}
+			// Benign race: Workers which evaluate the subexpression
+			// concurrently compute equal values.
+			this.val = shared;
+			return shared;
+		}
+	}
+
+	/**
+	 * @return val, or the enumerated function or set of val, normalized such
+	 *         that it can be shared by the workers. null if val is to be
+	 *         computed anew each time.
+	 */
+	static Value share(Value val) {
+		try {
+			if (val instanceof FcnLambdaValue) {
+				if (val.size() > BOUND) {
+					return null;
+				}
+				val = FcnRcdValue.convert(val);
+			} else if (!MemoCache.isData(val) && val instanceof Enumerable) {
+				if (!val.isFinite() || val.size() > BOUND) {
+					return null;
+				}
+				val = SetEnumValue.convert(val);
+			}
+			if (val == null || !MemoCache.isData(val)) {
+				return null;
+			}
+			val.deepNormalize();
+			return val;
+		} catch (RuntimeException e) {
+			// e.g. the domain of the function is not enumerable
+			return null;
+		}
+	}
+
+	private final OpDefAnalysis analysis;
+	private final Map<OpDefNode, OpDefNode> visited = new IdentityHashMap<OpDefNode, OpDefNode>();
+	private int count = 0;
+
+	private ConstantHoister(final Tool tool) {
+		this.analysis = new OpDefAnalysis(tool.moduleTbl.getModuleNodes());
+	}
+
+	/**
+	 * Marks the maximal constant subexpressions of the specification
+	 * processed by tool.
+	 *
+	 * @return The number of subexpressions hoisted
+	 */
+	public static int hoist(final Tool tool) {
+		if (DISABLED || TLCGlobals.coverageInterval >= 0) {
+			return 0;
+		}
+		final ConstantHoister hoister = new ConstantHoister(tool);
+		final Vect inits = tool.getInitStateSpec();
+		for (int i = 0; inits != null && i < inits.size(); i++) {
+			hoister.walk(((Action) inits.elementAt(i)).pred);
+		}
+		if (tool.getNextStateSpec() != null) {
+			hoister.walk(tool.getNextStateSpec().pred);
+		}
+		hoister.walk(tool.getInvariants());
+		hoister.walk(tool.getImpliedInits());
+		hoister.walk(tool.getImpliedActions());
+		final ExprNode[] modelConstraints = tool.getModelConstraints();
+		for (int i = 0; i < modelConstraints.length; i++) {
+			hoister.walk(modelConstraints[i]);
+		}
+		final ExprNode[] actionConstraints = tool.getActionConstraints();
+		for (int i = 0; i < actionConstraints.length; i++) {
+			hoister.walk(actionConstraints[i]);
+		}
+		return hoister.count;
+	}
+
+	private void walk(final Action[] actions) {
+		for (int i = 0; actions != null && i < actions.length; i++) {
+			this.walk(actions[i].pred);
+		}
+	}
+
+	/**
+	 * Hoists the maximal constant subexpressions of node and of the bodies of
+	 * the operators it applies.
+	 */
+	private void walk(final SemanticNode node) {
+		if (node == null) {
+			return;
+		}
+		if (node instanceof OpApplNode) {
+			final OpApplNode appl = (OpApplNode) node;
+			if (appl.getToolObject(ToolId) != null) {
+				return;
+			}
+			if (this.isHoistable(appl)) {
+				appl.setToolObject(ToolId, new Hoisted(appl));
+				this.count++;
+				if (REPORT) {
+					MP.printMessage(EC.TLC_HOISTED_EXPRESSION, appl.getLocation().toString());
+				}
+				return;
+			}
+			this.walkBody(appl.getOperator());
+		} else if (node instanceof OpArgNode) {
+			this.walkBody(((OpArgNode) node).getOp());
+		} else if (isSubstitution(node)) {
+			// The substituted parameters are part of the context.
+			return;
+		}
+		final SemanticNode[] children = node.getChildren();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				this.walk(children[i]);
+			}
+		}
+	}
+
+	/**
+	 * Walks the body of the module-level operator op (once).
+	 */
+	private void walkBody(final SymbolNode op) {
+		if (!(op instanceof OpDefNode) || op.getKind() != UserDefinedOpKind) {
+			return;
+		}
+		OpDefNode opDef = (OpDefNode) op;
+		final Object override = opDef.getToolObject(TLCGlobals.ToolId);
+		if (override instanceof OpDefNode) {
+			opDef = (OpDefNode) override;
+		} else if (override != null) {
+			return;
+		}
+		if (this.visited.containsKey(opDef) || opDef.getBody() == null
+				|| opDef.getBody().getToolObject(TLCGlobals.ToolId) != null) {
+			return;
+		}
+		this.visited.put(opDef, opDef);
+		if (this.analysis.isModuleLevel(opDef) && !this.analysis.isSubstituted(opDef)) {
+			this.walk(opDef.getBody());
+		}
+	}
+
+	private static boolean isSubstitution(final SemanticNode node) {
+		return (node instanceof SubstInNode && ((SubstInNode) node).getSubsts().length > 0)
+				|| (node instanceof APSubstInNode && ((APSubstInNode) node).getSubsts().length > 0);
+	}
+
+	private static int levelOf(final OpApplNode node) {
+		try {
+			return node.getLevel();
+		} catch (RuntimeException e) {
+			// Not level checked
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * @return true iff appl computes something (rather than naming a value)
+	 *         and is of constant level and closed.
+	 */
+	private boolean isHoistable(final OpApplNode appl) {
+		if (appl.getArgs().length == 0 && appl.getBdedQuantBounds().length == 0
+				&& appl.getUnbdedQuantSymbols() == null) {
+			return false;
+		}
+		if (levelOf(appl) != 0) {
+			return false;
+		}
+		final Closure closure = new Closure();
+		return closure.scan(appl) && closure.isClosed();
+	}
+
+	/**
+	 * The identifiers bound and referred to by an expression.
+	 */
+	private final class Closure {
+		private final Map<SymbolNode, SymbolNode> bound = new IdentityHashMap<SymbolNode, SymbolNode>();
+		private final Map<SymbolNode, SymbolNode> referred = new IdentityHashMap<SymbolNode, SymbolNode>();
+
+		/**
+		 * @return false iff node refers to @, a theorem or assumption, an
+		 *         impure or substituted operator or contains a substitution
+		 */
+		boolean scan(final SemanticNode node) {
+			if (node == null) {
+				return true;
+			}
+			if (node instanceof AtNode || isSubstitution(node)) {
+				return false;
+			}
+			if (node instanceof OpApplNode) {
+				final OpApplNode appl = (OpApplNode) node;
+				if (!this.refer(appl.getOperator())) {
+					return false;
+				}
+				final FormalParamNode[][] lists = appl.getBdedQuantSymbolLists();
+				for (int i = 0; lists != null && i < lists.length; i++) {
+					this.bind(lists[i]);
+				}
+				this.bind(appl.getUnbdedQuantSymbols());
+			} else if (node instanceof OpArgNode) {
+				final SymbolNode op = ((OpArgNode) node).getOp();
+				if (op instanceof OpDefNode && !ConstantHoister.this.analysis.isModuleLevel((OpDefNode) op)
+						&& op.getName().toString().equals("LAMBDA")) {
+					return this.scan(op);
+				}
+				return this.refer(op);
+			} else if (node instanceof LetInNode) {
+				final OpDefNode[] lets = ((LetInNode) node).getLets();
+				for (int i = 0; i < lets.length; i++) {
+					this.bound.put(lets[i], lets[i]);
+				}
+			} else if (node instanceof OpDefNode) {
+				// A LET or LAMBDA definition
+				final OpDefNode opDef = (OpDefNode) node;
+				if (ConstantHoister.this.analysis.isImpure(opDef)) {
+					return false;
+				}
+				this.bound.put(opDef, opDef);
+				this.bind(opDef.getParams());
+			}
+			final SemanticNode[] children = node.getChildren();
+			if (children != null) {
+				for (int i = 0; i < children.length; i++) {
+					if (!this.scan(children[i])) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		private void bind(final FormalParamNode[] params) {
+			for (int i = 0; params != null && i < params.length; i++) {
+				this.bound.put(params[i], params[i]);
+			}
+		}
+
+		private boolean refer(final SymbolNode op) {
+			if (op instanceof ThmOrAssumpDefNode) {
+				return false;
+			}
+			if (op instanceof FormalParamNode) {
+				this.referred.put(op, op);
+			} else if (op instanceof OpDefNode && op.getKind() != BuiltInKind) {
+				final OpDefNode opDef = (OpDefNode) op;
+				final OpDefAnalysis analysis = ConstantHoister.this.analysis;
+				if (analysis.isImpure(opDef) || analysis.isSubstituted(opDef)) {
+					return false;
+				}
+				if (!analysis.isModuleLevel(opDef)) {
+					// A LET definition, which may refer to identifiers bound
+					// around it unless it is defined in the expression
+					this.referred.put(op, op);
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return true iff all identifiers referred to are bound
+		 */
+		boolean isClosed() {
+			return this.bound.keySet().containsAll(this.referred.keySet());
+		}
+	}
+}
@@ -10,8 +10,9 @@ import tla2sany.semantic.ExprNode;
 import tlc2.TLCGlobals;
 import tlc2.output.EC;
 import tlc2.output.MP;
+import tlc2.tool.fp.FPSetConfiguration;
 import tlc2.tool.fp.dfid.FPIntSet;
-import tlc2.tool.fp.dfid.MemFPIntSet;
+import tlc2.tool.fp.dfid.FPIntSetFactory;
 import tlc2.tool.liveness.LiveCheck;
 import tlc2.tool.liveness.LiveException;
 import tlc2.util.IdThread;
@@ -38,19 +39,40 @@ public class DFIDModelChecker extends AbstractChecker
     public FPIntSet theFPSet; // the set of reachable states (SZ: note the type)
     protected DFIDWorker[] workers; // the workers
 
+    /**
+     * The time an idle worker waits for another worker to have a subtree to
+     * steal (in milliseconds).
+     */
+    private static final long StealInterval = 10;
+
+    private final Object stealLock = new Object();
+    private int idle; // the number of idle workers, guarded by stealLock
+
     /** 
      * Constructor for running DFID   
      * @param resolver 
      */
     public DFIDModelChecker(String specFile, String configFile, String dumpFile, boolean deadlock, String fromChkpt,
             boolean preprocess, FilenameToStream resolver, SpecObj specObj) throws EvalException, IOException
+    {
+        this(specFile, configFile, dumpFile, deadlock, fromChkpt, preprocess, resolver, specObj,
+                new FPSetConfiguration());
+    }
+
+    /** 
+     * Constructor for running DFID   
+     * @param fpSetConfig the memory of a disk-based state set, see {@link FPIntSetFactory}
+     */
+    public DFIDModelChecker(String specFile, String configFile, String dumpFile, boolean deadlock, String fromChkpt,
+            boolean preprocess, FilenameToStream resolver, SpecObj specObj, FPSetConfiguration fpSetConfig)
+            throws EvalException, IOException
     {
         // call the abstract constructor
         super(specFile, configFile, dumpFile, deadlock, fromChkpt, preprocess, resolver, specObj);
 
         this.theInitStates = null;
         this.theInitFPs = null;
-        this.theFPSet = new MemFPIntSet(); // init the state set
+        this.theFPSet = FPIntSetFactory.getFPIntSet(fpSetConfig); // init the state set
         this.theFPSet.init(TLCGlobals.getNumWorkers(), this.metadir, specFile);
 
         // Initialize all the workers:
@@ -722,20 +744,56 @@ public class DFIDModelChecker extends AbstractChecker
      */
     protected IdThread[] startWorkers(AbstractChecker checker, int checkIndex)
     {
+        // Reset done before the workers start: A worker sets it when it
+        // completes the level, possibly before runTLC enters its loop.
+        this.done = false;
+        this.idle = 0;
         for (int i = 0; i < this.workers.length; i++)
         {
             this.workers[i] = new DFIDWorker(i, checkIndex, checker);
+        }
+        for (int i = 0; i < this.workers.length; i++)
+        {
             this.workers[i].start();
         }
         return this.workers;
     }
 
     /**
-     * Run prior the worker loop
+     * Hands an unexplored subtree of another worker to the idle worker
+     * thief. Waits until a worker has one, or until all workers are idle
+     * (the level is completed) or stopped.
+     * @return the depth of the root of the subtree in the stack of the thief, 
+     * or -1 if there is no more work
      */
-    protected void runTLCPreLoop()
+    final int steal(DFIDWorker thief) throws InterruptedException
     {
-        this.done = false;
+        synchronized (this.stealLock)
+        {
+            this.idle++;
+            while (!thief.isStopped())
+            {
+                for (int i = 0; i < this.workers.length; i++)
+                {
+                    if (this.workers[i] != thief)
+                    {
+                        int depth = this.workers[i].giveWork(thief);
+                        if (depth != -1)
+                        {
+                            this.idle--;
+                            return depth;
+                        }
+                    }
+                }
+                if (this.idle == this.workers.length)
+                {
+                    this.stealLock.notifyAll();
+                    return -1;
+                }
+                this.stealLock.wait(StealInterval);
+            }
+            return -1;
+        }
     }
 
     /**
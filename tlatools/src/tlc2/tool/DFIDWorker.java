@@ -68,6 +68,8 @@ public class DFIDWorker extends IdThread implements IWorker {
 
   public final boolean isTerminated() { return this.stopCode == 2; }
 
+  public final boolean isStopped() { return this.stopCode != 0; }
+
   public final boolean hasMoreLevel() { return this.moreLevel; }
   
   /**
@@ -98,7 +100,7 @@ public class DFIDWorker extends IdThread implements IWorker {
    * Return the index of the chosen state. Return -1 if there is no
    * such kind of next states.
    */
-  private final int getNext(TLCState curState, long cfp) {
+  private final synchronized int getNext() {
     StateVec succStates = this.succStateStack[this.curLevel-1];
     LongVec succFPs = this.succFPStack[this.curLevel-1];
     int len = succFPs.size();
@@ -120,6 +122,54 @@ public class DFIDWorker extends IdThread implements IWorker {
     return -1;
   }
 
+  /**
+   * Removes the successor at index, which has been explored, from the
+   * successors of the top of the stack.
+   */
+  private final synchronized void removeNext(int index) {
+    this.succStateStack[this.curLevel-1].removeElement(index);
+    this.succFPStack[this.curLevel-1].removeElement(index);
+  }
+
+  private final synchronized void setCurLevel(int level) {
+    this.curLevel = level;
+  }
+
+  /**
+   * Gives a successor that this worker has not explored yet to the
+   * (idle) thief. The successor is taken from the bottom of the stack,
+   * where the largest subtrees are. The successors at the top of the
+   * stack, the ones this worker chooses from next, are not given away.
+   * Return the depth of the successor in the stack of the thief, or -1
+   * if there is no such successor.
+   */
+  final synchronized int giveWork(DFIDWorker thief) {
+    for (int i = 0; i < this.curLevel-1; i++) {
+      StateVec succStates = this.succStateStack[i];
+      LongVec succFPs = this.succFPStack[i];
+      // This worker is exploring the successor above i on the stack:
+      long busy = this.fpStack[i+1];
+      for (int j = succFPs.size()-1; j >= 0; j--) {
+	long fp = succFPs.elementAt(j);
+	if (fp == busy) continue;
+	TLCState state = succStates.elementAt(j);
+	succStates.removeElement(j);
+	succFPs.removeElement(j);
+	// The same test as the one of getNext:
+	int status = this.theFPSet.getStatus(fp);
+	if (!FPIntSet.isCompleted(status) && i+1 < FPIntSet.getLevel(status)) {
+	  // The thief gets the path to the successor for its traces.
+	  System.arraycopy(this.stateStack, 0, thief.stateStack, 0, i+1);
+	  System.arraycopy(this.fpStack, 0, thief.fpStack, 0, i+1);
+	  thief.stateStack[i+1] = state;
+	  thief.fpStack[i+1] = fp;
+	  return i+1;
+	}
+      }
+    }
+    return -1;
+  }
+
   /**
    * Prints the stacktrace
    * @param code error code
@@ -142,64 +192,84 @@ public class DFIDWorker extends IdThread implements IWorker {
       }
   }
 
-  /* This method does a depth-first search up to the depth of toLevel. */
+  /**
+   * This method does a depth-first search up to the depth of toLevel.
+   * Once there is no initial state left to start from, it continues
+   * with subtrees stolen from other workers.
+   */
   public final void run() {
     TLCState curState = null;
 
     try {
       while (this.stopCode == 0) {
-	// Choose a random initial state and compute its successors:
+	// Choose a random initial state, or steal a subtree, and compute
+	// its successors:
+	int base = 0;
 	int index = this.getInit();
-	if (index == -1) {
-	  this.tlc.setStop(1);
-	  synchronized(this.tlc) {
-	    this.tlc.setDone();
-	    this.tlc.notifyAll();
+	if (index != -1) {
+	  this.stateStack[0] = this.theInitStates[index];
+	  this.fpStack[0] = this.theInitFPs[index];
+	}
+	else {
+	  base = this.tlc.steal(this);
+	  if (base == -1) {
+	    // All workers are idle, the level is completed:
+	    synchronized(this.tlc) {
+	      this.tlc.setDone();
+	      this.tlc.notifyAll();
+	    }
+	    return;
 	  }
-	  return;
 	}
-	
-	curState = this.theInitStates[index];
-	long cfp = this.theInitFPs[index];
-	this.stateStack[0] = curState;
-	this.fpStack[0] = cfp;
-	this.succStateStack[0].reset();
-	this.succFPStack[0].reset();
-	boolean isLeaf = this.toLevel < 2;
+
+	curState = this.stateStack[base];
+	long cfp = this.fpStack[base];
+	this.succStateStack[base].reset();
+	this.succFPStack[base].reset();
+	boolean isLeaf = (base >= this.toLevel-1);
 	boolean noLeaf = this.tlc.doNext(curState, cfp, isLeaf,
 					 this.astCounts,
-					 this.succStateStack[0],
-					 this.succFPStack[0]);
+					 this.succStateStack[base],
+					 this.succFPStack[base]);
 	this.moreLevel = this.moreLevel || !noLeaf;
-	this.curLevel = 1;
+	this.setCurLevel(base+1);
 
 	// Start the depth-first search:
-	while (!isLeaf) {
-	  index = this.getNext(curState, cfp);
+	while (!isLeaf && this.stopCode == 0) {
+	  index = this.getNext();
 	  if (index == -1) {
 	    // No need to explore further from curState. So, backtrack:
 	    this.theFPSet.setLeveled(cfp);
-	    if (this.curLevel == 1) break;
-	    this.curLevel--;
+	    if (this.curLevel == base+1) break;
+	    this.setCurLevel(this.curLevel-1);
 	    curState = this.stateStack[this.curLevel-1];
 	    cfp = this.fpStack[this.curLevel-1];
 	  }
 	  else {
-	    curState = this.succStateStack[this.curLevel-1].elementAt(index);
-	    cfp = this.succFPStack[this.curLevel-1].elementAt(index);
-	    this.stateStack[this.curLevel] = curState;
-	    this.fpStack[this.curLevel] = cfp;
+	    TLCState succState = this.succStateStack[this.curLevel-1].elementAt(index);
+	    long sfp = this.succFPStack[this.curLevel-1].elementAt(index);
+	    this.stateStack[this.curLevel] = succState;
+	    this.fpStack[this.curLevel] = sfp;
 	    this.succStateStack[this.curLevel].reset();
 	    this.succFPStack[this.curLevel].reset();
-	    isLeaf = (this.curLevel >= this.toLevel-1);
-	    noLeaf = this.tlc.doNext(curState, cfp, isLeaf,
+	    boolean succIsLeaf = (this.curLevel >= this.toLevel-1);
+	    noLeaf = this.tlc.doNext(succState, sfp, succIsLeaf,
 				     this.astCounts,
 				     this.succStateStack[this.curLevel],
 				     this.succFPStack[this.curLevel]);
 	    this.moreLevel = this.moreLevel || !noLeaf;
-    	    this.curLevel++;
+	    if (succIsLeaf) {
+	      // Continue with the next successor of curState:
+	      this.removeNext(index);
+	    }
+	    else {
+	      curState = succState;
+	      cfp = sfp;
+	      this.setCurLevel(this.curLevel+1);
+	    }
 	  }
 	}
+	this.setCurLevel(0);
       }
     }
     catch (Throwable e) {
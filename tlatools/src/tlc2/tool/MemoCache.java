@@ -0,0 +1,333 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tla2sany.semantic.ASTConstants;
+import tla2sany.semantic.FormalParamNode;
+import tla2sany.semantic.FrontEnd;
+import tla2sany.semantic.ModuleNode;
+import tla2sany.semantic.OpApplNode;
+import tla2sany.semantic.OpDefNode;
+import tla2sany.semantic.SemanticNode;
+import tla2sany.semantic.SymbolNode;
+import tlc2.TLCGlobals;
+import tlc2.output.EC;
+import tlc2.output.MP;
+import tlc2.util.FP64;
+import tlc2.value.Value;
+import tlc2.value.ValueConstants;
+
+/**
+ * A {@link MemoCache} remembers the values of applications of user-defined
+ * operators. An operator defined at the top level of a module whose body is
+ * of constant level (see {@link tla2sany.semantic.LevelNode#getLevel()}) has
+ * the same value whenever it is applied to the same arguments, an operator
+ * of state level the same value in the same state. Helper operators applied
+ * to the same arguments in many states, such as recursive functions or
+ * computations of quorums, are then evaluated once per distinct arguments
+ * (and state) rather than once per application.
+ * <p>
+ * Results are looked up by the fingerprint of the operator, its arguments
+ * and, for state-level operators, the values of the state variables. Like
+ * states, two distinct applications thus collide if their fingerprints do.
+ * The arguments of a memoized application are evaluated eagerly rather than
+ * lazily, operators whose bodies do not use all of their parameters are thus
+ * not memoized. An application is evaluated without the cache if its
+ * arguments cannot be fingerprinted (e.g. Nat).
+ * <p>
+ * Not memoized are operators with operator arguments, operators which are
+ * overridden by the configuration or a Java class, operators which
+ * (transitively) apply Print, PrintT, RandomElement, TLCGet, TLCSet or
+ * JavaTime, LET definitions (whose bodies may refer to the bound identifiers
+ * around them) and the operators of a module instantiated with substitutions
+ * (whose bodies refer to the substituted parameters). Results other than
+ * plain data (e.g. lazily evaluated functions or sets) are not kept.
+ * <p>
+ * The cache keeps at most {@link #CAPACITY} results. It is split into
+ * independently locked segments, each of which evicts its least recently
+ * used results.
+ * <p>
+ * Off unless -Dtlc2.tool.MemoCache.enabled=true.
+ */
+public final class MemoCache implements ValueConstants {
+
+	public static final boolean ENABLED = Boolean.getBoolean(MemoCache.class.getName() + ".enabled");
+
+	/**
+	 * The maximum number of results kept.
+	 */
+	public static final int CAPACITY = Integer.getInteger(MemoCache.class.getName() + ".capacity", 1 << 17)
+			.intValue();
+
+	/**
+	 * The tool id under which the {@link Op} of a memoized operator is stored
+	 * at its {@link OpDefNode}.
+	 */
+	public static final int ToolId = FrontEnd.getToolId();
+
+	private static final MemoCache Default = new MemoCache(64, CAPACITY);
+
+	/**
+	 * @return The cache shared by all workers.
+	 */
+	public static MemoCache getDefault() {
+		return Default;
+	}
+
+	/**
+	 * A memoized operator.
+	 */
+	public static final class Op {
+		private final long fp;
+		final boolean isStateLevel;
+
+		Op(final OpDefNode opDef) {
+			this.fp = FP64.Extend(FP64.Extend(FP64.New(), opDef.getName().toString()), opDef.getUid());
+			this.isStateLevel = opDef.getLevel() > 0;
+		}
+	}
+
+	private final Segment[] segments;
+	private final int segmentMask;
+
+	/**
+	 * @param segmentCnt
+	 *            The number of segments, a power of two
+	 * @param capacity
+	 *            The maximum number of results kept
+	 */
+	public MemoCache(final int segmentCnt, final int capacity) {
+		this.segments = new Segment[segmentCnt];
+		this.segmentMask = segmentCnt - 1;
+		final int segmentCapacity = Math.max(1, capacity / segmentCnt);
+		for (int i = 0; i < segmentCnt; i++) {
+			this.segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	/**
+	 * Marks the operators defined in the given modules which may be memoized
+	 * (see the class comment). Must be called after the configuration and the
+	 * Java overrides have been applied to the definitions.
+	 *
+	 * @return The number of operators marked
+	 */
+	public static int prepare(final ModuleNode[] mods) {
+		final OpDefAnalysis analysis = new OpDefAnalysis(mods);
+		int cnt = 0;
+		for (int i = 0; i < mods.length; i++) {
+			final OpDefNode[] opDefs = mods[i].getOpDefs();
+			for (int j = 0; j < opDefs.length; j++) {
+				final OpDefNode opDef = opDefs[j];
+				if (isMemoizable(opDef) && !analysis.isImpure(opDef) && !analysis.isSubstituted(opDef)) {
+					opDef.setToolObject(ToolId, new Op(opDef));
+					cnt++;
+				}
+			}
+		}
+		return cnt;
+	}
+
+	private static boolean isMemoizable(final OpDefNode opDef) {
+		if (opDef.getKind() != ASTConstants.UserDefinedOpKind || opDef.getBody() == null
+				|| opDef.getLevel() > 1) {
+			return false;
+		}
+		// Overridden by the configuration (or a Java class)
+		if (opDef.getToolObject(TLCGlobals.ToolId) != null
+				|| opDef.getBody().getToolObject(TLCGlobals.ToolId) != null) {
+			return false;
+		}
+		final FormalParamNode[] params = opDef.getParams();
+		for (int i = 0; i < params.length; i++) {
+			if (params[i].getArity() > 0) {
+				return false;
+			}
+		}
+		// The arguments are evaluated eagerly, which must not evaluate an
+		// argument the body does not use.
+		final Map<SemanticNode, SemanticNode> used = new IdentityHashMap<SemanticNode, SemanticNode>();
+		collectParams(opDef.getBody(), used);
+		for (int i = 0; i < params.length; i++) {
+			if (!used.containsKey(params[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the formal parameters referred to in node to used.
+	 */
+	private static void collectParams(final SemanticNode node, final Map<SemanticNode, SemanticNode> used) {
+		if (node == null) {
+			return;
+		}
+		if (node instanceof OpApplNode) {
+			final SymbolNode op = ((OpApplNode) node).getOperator();
+			if (op instanceof FormalParamNode) {
+				used.put(op, op);
+			}
+		}
+		final SemanticNode[] children = node.getChildren();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				collectParams(children[i], used);
+			}
+		}
+	}
+
+	/**
+	 * @return The fingerprint of the application of op to args (in state s),
+	 *         or 0 if args are not plain data or s is not a complete state.
+	 */
+	public static long fingerPrint(final Op op, final Value[] args, final TLCState s) {
+		long fp = op.fp;
+		for (int i = 0; i < args.length; i++) {
+			if (!isData(args[i])) {
+				return 0;
+			}
+			fp = args[i].fingerPrint(fp);
+		}
+		if (op.isStateLevel) {
+			if (s == null || TLCState.vars == null || !s.allAssigned()) {
+				return 0;
+			}
+			for (int i = 0; i < TLCState.vars.length; i++) {
+				fp = s.lookup(TLCState.vars[i].getName()).fingerPrint(fp);
+			}
+		}
+		return fp == 0 ? 1 : fp;
+	}
+
+	/**
+	 * @return true iff val is a value which does not refer to a context (and
+	 *         is cheap to fingerprint).
+	 */
+	static boolean isData(final Value val) {
+		switch (val.getKind()) {
+		case BOOLVALUE:
+		case INTVALUE:
+		case STRINGVALUE:
+		case MODELVALUE:
+		case RECORDVALUE:
+		case FCNRCDVALUE:
+		case TUPLEVALUE:
+		case SETENUMVALUE:
+		case INTERVALVALUE:
+		case INTSETVALUE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return The result of the application with fingerprint fp, null if it
+	 *         is not in the cache.
+	 */
+	public final Value get(final long fp) {
+		final Segment segment = this.segments[(int) (fp ^ (fp >>> 32)) & this.segmentMask];
+		synchronized (segment) {
+			final Value res = segment.get(Long.valueOf(fp));
+			if (res == null) {
+				segment.misses++;
+			} else {
+				segment.hits++;
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * Keeps res as the result of the application with fingerprint fp.
+	 *
+	 * @return false iff res is no plain data and has not been kept
+	 */
+	public final boolean put(final long fp, final Value res) {
+		if (!isData(res)) {
+			return false;
+		}
+		// Normalized now, it can be shared by the workers.
+		res.deepNormalize();
+		final Segment segment = this.segments[(int) (fp ^ (fp >>> 32)) & this.segmentMask];
+		synchronized (segment) {
+			segment.put(Long.valueOf(fp), res);
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of lookups answered from the cache.
+	 */
+	public final long getHits() {
+		long cnt = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				cnt += this.segments[i].hits;
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * @return The number of lookups not answered from the cache.
+	 */
+	public final long getMisses() {
+		long cnt = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				cnt += this.segments[i].misses;
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * @return The number of results kept.
+	 */
+	public final long size() {
+		long cnt = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				cnt += this.segments[i].size();
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * Prints the number of hits, misses and results kept.
+	 */
+	public final void printStats() {
+		MP.printMessage(EC.TLC_STATS_MEMO, new String[] { String.valueOf(this.getHits()),
+				String.valueOf(this.getMisses()), String.valueOf(this.size()) });
+	}
+
+	/**
+	 * A segment evicts its least recently used result once it exceeds its
+	 * capacity.
+	 */
+	private static final class Segment extends LinkedHashMap<Long, Value> {
+		private static final long serialVersionUID = 3582471027531914036L;
+
+		private final int capacity;
+		long hits = 0;
+		long misses = 0;
+
+		Segment(final int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+		 */
+		protected boolean removeEldestEntry(final Map.Entry<Long, Value> eldest) {
+			return this.size() > this.capacity;
+		}
+	}
+}
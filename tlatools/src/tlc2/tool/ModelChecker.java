@@ -17,12 +17,13 @@ import tlc2.tool.fp.FPSet;
 import tlc2.tool.fp.FPSetConfiguration;
 import tlc2.tool.fp.FPSetFactory;
 import tlc2.tool.liveness.LiveCheck;
-import tlc2.tool.queue.DiskStateQueue;
 import tlc2.tool.queue.IStateQueue;
+import tlc2.tool.queue.StateQueueFactory;
 import tlc2.util.IdThread;
 import tlc2.util.LongVec;
 import tlc2.util.ObjLongTable;
 import tlc2.value.Value;
+import tlc2.value.ValueInterner;
 import util.DebugPrinter;
 import util.FileUtil;
 import util.FilenameToStream;
@@ -45,6 +46,8 @@ public class ModelChecker extends AbstractChecker
     // used to calculate the spm metric
     public long distinctStatesPerMinute, statesPerMinute = 0L;
     protected long oldNumOfGenStates, oldFPSetSize = 0L;
+    // per-action metrics (null unless enabled)
+    public final ActionMetrics actionMetrics;
 
     /* Constructors  */
     /**
@@ -61,7 +64,7 @@ public class ModelChecker extends AbstractChecker
         super(specFile, configFile, dumpFile, deadlock, fromChkpt, true, resolver, specObj);
 
         // SZ Feb 20, 2009: this is a selected alternative
-        this.theStateQueue = new DiskStateQueue(this.metadir);
+        this.theStateQueue = StateQueueFactory.getStateQueue(this.metadir);
         // this.theStateQueue = new MemStateQueue(this.metadir);
 
         //TODO why used to div by 20?
@@ -73,6 +76,9 @@ public class ModelChecker extends AbstractChecker
         // Finally, initialize the trace file:
         this.trace = new TLCTrace(this.metadir, specFile, this.tool);
 
+        this.actionMetrics = ActionMetrics.isEnabled() ? new ActionMetrics(ActionMetrics.getLocations(this.actions),
+                this.tool.getInvNames(), TLCGlobals.getNumWorkers()) : null;
+
         // Initialize all the workers:
         this.workers = new Worker[TLCGlobals.getNumWorkers()];
         for (int i = 0; i < this.workers.length; i++)
@@ -223,7 +229,7 @@ public class ModelChecker extends AbstractChecker
                 this.tool.setCallStack();
                 try
                 {
-                    this.doNext(this.predErrState, new ObjLongTable(10));
+                    this.doNext(this.predErrState, new ObjLongTable(10), new StateVec(0));
                 } catch (Throwable e)
                 {
                     // Assert.printStack(e);
@@ -289,6 +295,7 @@ public class ModelChecker extends AbstractChecker
 
         try
         {
+            final ActionMetrics.Stripe metrics = (this.actionMetrics == null) ? null : this.actionMetrics.getStripe();
             // Generate the initial states:
             StateVec theInitStates = this.tool.getInitStates();
             this.numOfGenStates.set(theInitStates.size());
@@ -314,6 +321,10 @@ public class ModelChecker extends AbstractChecker
                             this.allStateWriter.writeState(curState);
                         }
                         curState.uid = this.trace.writeState(fp);
+                        if (ValueInterner.isEnabled())
+                        {
+                            curState.intern(ValueInterner.getDefault());
+                        }
                         this.theStateQueue.enqueue(curState);
 
                         // build behavior graph for liveness checking
@@ -328,7 +339,7 @@ public class ModelChecker extends AbstractChecker
                 {
                     for (int j = 0; j < this.invariants.length; j++)
                     {
-                        if (!this.tool.isValid(this.invariants[j], curState))
+                        if (!this.isValidInvariant(j, curState, metrics))
                         {
                             // We get here because of invariant violation:
                             MP.printError(EC.TLC_INVARIANT_VIOLATED_INITIAL, new String[] {
@@ -369,9 +380,11 @@ public class ModelChecker extends AbstractChecker
      * that it satisfies the constraints, and enqueue it in the state queue.
      * Return true if the model checking should stop.
      * 
-     * This method is called from the workers on every step
+     * This method is called from the workers on every step. The next states
+     * are generated into the worker's nextStates, and the successors which
+     * are never enqueued are recycled into it for the next step.
      */
-    public final boolean doNext(TLCState curState, ObjLongTable counts) throws Throwable
+    public final boolean doNext(TLCState curState, ObjLongTable counts, StateVec nextStates) throws Throwable
     {
         // SZ Feb 23, 2009: cancel the calculation
         if (this.cancellationFlag)
@@ -383,6 +396,7 @@ public class ModelChecker extends AbstractChecker
         TLCState succState = null;
         StateVec liveNextStates = null;
         LongVec liveNextFPs = null;
+        final ActionMetrics.Stripe metrics = (this.actionMetrics == null) ? null : this.actionMetrics.getStripe();
 
         if (this.checkLiveness)
         {
@@ -403,8 +417,14 @@ public class ModelChecker extends AbstractChecker
                     return false;
                 }
 
-                StateVec nextStates = this.tool.getNextStates(this.actions[i], curState);
+                final long start = (metrics == null) ? 0L : System.nanoTime();
+                nextStates.clear();
+                this.tool.getNextStates(this.actions[i], curState, nextStates);
                 int sz = nextStates.size();
+                if (metrics != null)
+                {
+                    metrics.recordNextStates(i, sz, System.nanoTime() - start);
+                }
                 this.incNumOfGenStates(sz);
                 deadLocked = deadLocked && (sz == 0);
 
@@ -446,8 +466,18 @@ public class ModelChecker extends AbstractChecker
                                 this.allStateWriter.writeState(succState);
                             }
                             // Enqueue succState only if it satisfies the model constraints:
-                            long loc = this.trace.writeState(curState, fp);
+                            long loc = this.trace.writeState(curState, fp, i);
                             succState.uid = loc;
+                            if (metrics != null)
+                            {
+                                metrics.recordDistinct(i);
+                            }
+                            // Share the values of succState with identical
+                            // values of the states in the queue:
+                            if (ValueInterner.isEnabled())
+                            {
+                                succState.intern(ValueInterner.getDefault());
+                            }
                             this.theStateQueue.sEnqueue(succState);
                         }
                         // For liveness checking:
@@ -471,7 +501,7 @@ public class ModelChecker extends AbstractChecker
                                     return false;
                                 }
 
-                                if (!tool.isValid(this.invariants[k], succState))
+                                if (!this.isValidInvariant(k, succState, metrics))
                                 {
                                     // We get here because of invariant violation:
                                     synchronized (this)
@@ -567,6 +597,14 @@ public class ModelChecker extends AbstractChecker
                         }
                         throw e;
                     }
+                    // A state which has never been enqueued is garbage unless
+                    // it is kept for liveness checking, reuse it. Enqueued
+                    // states are not: they are dequeued (and may be printed
+                    // in a trace) by other workers.
+                    if (!(inModel && !seen) && !this.checkLiveness)
+                    {
+                        nextStates.recycle(succState);
+                    }
                 }
                 // Must set state to null!!!
                 succState = null;
@@ -720,12 +758,40 @@ public class ModelChecker extends AbstractChecker
 
         MP.printMessage(EC.TLC_STATS, new String[] { String.valueOf(this.numOfGenStates),
                 String.valueOf(this.theFPSet.size()), String.valueOf(this.theStateQueue.size()) });
+        if (ValueInterner.isEnabled())
+        {
+            ValueInterner.getDefault().printStats();
+        }
+        if (MemoCache.ENABLED)
+        {
+            MemoCache.getDefault().printStats();
+        }
+        if (this.actionMetrics != null)
+        {
+            this.actionMetrics.printStats();
+        }
         if (success)
         {
             MP.printMessage(EC.TLC_SEARCH_DEPTH, String.valueOf(this.trace.getLevelForReporting()));
         }
     }
     
+    /**
+     * Evaluates the invariant with the given index and times it, if
+     * metrics is not null.
+     */
+    private final boolean isValidInvariant(final int idx, final TLCState state, final ActionMetrics.Stripe metrics)
+    {
+        if (metrics == null)
+        {
+            return this.tool.isValid(this.invariants[idx], state);
+        }
+        final long start = System.nanoTime();
+        final boolean valid = this.tool.isValid(this.invariants[idx], state);
+        metrics.recordInvariant(idx, System.nanoTime() - start);
+        return valid;
+    }
+
     private final void printProgresStats(final long startTime) throws IOException {
         final long fpSetSize = this.theFPSet.size();
         
@@ -748,6 +814,9 @@ public class ModelChecker extends AbstractChecker
 		MP.printMessage(EC.TLC_PROGRESS_STATS, new String[] { String.valueOf(this.trace.getLevelForReporting()),
                 String.valueOf(this.numOfGenStates), String.valueOf(fpSetSize),
                 String.valueOf(this.theStateQueue.size()), String.valueOf(statesPerMinute), String.valueOf(distinctStatesPerMinute) });
+        if (this.actionMetrics != null && startTime < 0) {
+        	this.actionMetrics.printStats();
+        }
     }
 
     public static final void reportSuccess(final FPSet anFpSet, final long numOfGenStates) throws IOException
@@ -0,0 +1,221 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import tla2sany.semantic.APSubstInNode;
+import tla2sany.semantic.ModuleNode;
+import tla2sany.semantic.OpApplNode;
+import tla2sany.semantic.OpArgNode;
+import tla2sany.semantic.OpDefNode;
+import tla2sany.semantic.SemanticNode;
+import tla2sany.semantic.SubstInNode;
+import tla2sany.semantic.SymbolNode;
+import tlc2.TLCGlobals;
+import tlc2.module.TLC;
+import tlc2.value.MethodValue;
+
+/**
+ * An {@link OpDefAnalysis} records which operator definitions (transitively)
+ * apply an impure operator of the TLC module or an operator overridden by a
+ * user-supplied Java method, and which are applied in the scope of the
+ * substitutions of an INSTANCE. Neither the value of the former nor of the
+ * latter is determined by its arguments (and the state) alone.
+ */
+final class OpDefAnalysis {
+
+	/**
+	 * The names of the operators of the TLC module whose values are not
+	 * determined by their arguments or which have side effects.
+	 */
+	private static final String[] IMPURE = new String[] { "Print", "PrintT", "RandomElement", "TLCGet", "TLCSet",
+			"JavaTime" };
+
+	private static final String STANDARD_MODULES = TLC.class.getPackage().getName() + ".";
+
+	private final Map<OpDefNode, List<OpDefNode>> callees = new IdentityHashMap<OpDefNode, List<OpDefNode>>();
+	private final Map<OpDefNode, OpDefNode> impure = new IdentityHashMap<OpDefNode, OpDefNode>();
+	private final Map<OpDefNode, OpDefNode> substituted = new IdentityHashMap<OpDefNode, OpDefNode>();
+	private final Map<OpDefNode, OpDefNode> moduleLevel = new IdentityHashMap<OpDefNode, OpDefNode>();
+	private final Set<String> impureNames = new HashSet<String>();
+
+	/**
+	 * Analyzes the operators defined in the given modules and the operators
+	 * they apply. Must be called after the configuration and the Java
+	 * overrides have been applied to the definitions.
+	 */
+	OpDefAnalysis(final ModuleNode[] mods) {
+		for (int i = 0; i < IMPURE.length; i++) {
+			this.impureNames.add(IMPURE[i]);
+		}
+		for (int i = 0; i < mods.length; i++) {
+			final OpDefNode[] opDefs = mods[i].getOpDefs();
+			for (int j = 0; j < opDefs.length; j++) {
+				this.moduleLevel.put(opDefs[j], opDefs[j]);
+				this.scan(opDefs[j]);
+			}
+		}
+		this.propagate();
+	}
+
+	/**
+	 * @return true iff opDef is defined at the top level of a module (rather
+	 *         than by a LET or LAMBDA)
+	 */
+	final boolean isModuleLevel(final OpDefNode opDef) {
+		return this.moduleLevel.containsKey(opDef);
+	}
+
+	/**
+	 * @return true iff opDef (transitively) applies Print, PrintT,
+	 *         RandomElement, TLCGet, TLCSet or JavaTime
+	 */
+	final boolean isImpure(final OpDefNode opDef) {
+		return this.impure.containsKey(opDef);
+	}
+
+	/**
+	 * @return true iff the expression expr (of the definitions analyzed)
+	 *         transitively applies Print, PrintT, RandomElement, TLCGet,
+	 *         TLCSet or JavaTime
+	 */
+	final boolean isImpure(final SemanticNode expr) {
+		final List<OpDefNode> found = new ArrayList<OpDefNode>();
+		this.collect(expr, found, false);
+		for (final OpDefNode opDef : found) {
+			// Operators not analyzed are impure as far as we know
+			if (this.impure.containsKey(opDef) || !this.callees.containsKey(opDef)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true iff opDef is (transitively) applied in the scope of the
+	 *         substitutions of an INSTANCE. Its body may then refer to the
+	 *         substituted parameters, whose values are part of the context.
+	 */
+	final boolean isSubstituted(final OpDefNode opDef) {
+		return this.substituted.containsKey(opDef);
+	}
+
+	/**
+	 * Scans the body of opDef and of the operators it applies. An operator
+	 * overridden by a Java method other than those of TLC's standard modules
+	 * is impure, nothing is known about what the method does.
+	 */
+	private void scan(final OpDefNode opDef) {
+		final List<OpDefNode> todo = new ArrayList<OpDefNode>();
+		todo.add(opDef);
+		while (!todo.isEmpty()) {
+			final OpDefNode def = todo.remove(todo.size() - 1);
+			if (this.callees.containsKey(def)) {
+				continue;
+			}
+			final List<OpDefNode> found = new ArrayList<OpDefNode>();
+			this.callees.put(def, found);
+			if (this.impureNames.contains(def.getName().toString())) {
+				this.impure.put(def, def);
+			}
+			final Object override = def.getToolObject(TLCGlobals.ToolId);
+			if (override instanceof OpDefNode) {
+				found.add((OpDefNode) override);
+			} else if (override instanceof MethodValue && !isStandard((MethodValue) override)) {
+				this.impure.put(def, def);
+			}
+			if (def.getBody() != null) {
+				this.collect(def.getBody(), found, false);
+			}
+			todo.addAll(found);
+		}
+	}
+
+	/**
+	 * @return true iff mv is implemented by one of TLC's standard modules
+	 *         (whose impure operators are listed in {@link #IMPURE})
+	 */
+	private static boolean isStandard(final MethodValue mv) {
+		return mv.md.getDeclaringClass().getName().startsWith(STANDARD_MODULES);
+	}
+
+	/**
+	 * Adds the operators applied in node (but not in their bodies) to
+	 * found.
+	 */
+	private void collect(final SemanticNode node, final List<OpDefNode> found, boolean inSubst) {
+		if (node == null) {
+			return;
+		}
+		SymbolNode op = null;
+		if (node instanceof OpApplNode) {
+			op = ((OpApplNode) node).getOperator();
+		} else if (node instanceof OpArgNode) {
+			op = ((OpArgNode) node).getOp();
+		} else if (node instanceof OpDefNode) {
+			// A LET definition
+			op = (OpDefNode) node;
+		} else if (node instanceof SubstInNode) {
+			inSubst |= ((SubstInNode) node).getSubsts().length > 0;
+		} else if (node instanceof APSubstInNode) {
+			inSubst |= ((APSubstInNode) node).getSubsts().length > 0;
+		}
+		if (op instanceof OpDefNode) {
+			found.add((OpDefNode) op);
+			if (inSubst) {
+				this.substituted.put((OpDefNode) op, (OpDefNode) op);
+			}
+			if (node instanceof OpDefNode) {
+				return;
+			}
+		}
+		final SemanticNode[] children = node.getChildren();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				this.collect(children[i], found, inSubst);
+			}
+		}
+	}
+
+	/**
+	 * Marks the operators which apply impure or are applied by
+	 * substituted operators.
+	 */
+	private void propagate() {
+		// Callers of impure operators are impure.
+		final Map<OpDefNode, List<OpDefNode>> callers = new IdentityHashMap<OpDefNode, List<OpDefNode>>();
+		for (final Map.Entry<OpDefNode, List<OpDefNode>> entry : this.callees.entrySet()) {
+			for (final OpDefNode callee : entry.getValue()) {
+				List<OpDefNode> list = callers.get(callee);
+				if (list == null) {
+					list = new ArrayList<OpDefNode>();
+					callers.put(callee, list);
+				}
+				list.add(entry.getKey());
+			}
+		}
+		close(this.impure, callers);
+		// Callees of substituted operators are substituted.
+		close(this.substituted, this.callees);
+	}
+
+	private static void close(final Map<OpDefNode, OpDefNode> marked, final Map<OpDefNode, List<OpDefNode>> edges) {
+		final List<OpDefNode> todo = new ArrayList<OpDefNode>(marked.keySet());
+		while (!todo.isEmpty()) {
+			final List<OpDefNode> next = edges.get(todo.remove(todo.size() - 1));
+			if (next != null) {
+				for (final OpDefNode opDef : next) {
+					if (!marked.containsKey(opDef)) {
+						marked.put(opDef, opDef);
+						todo.add(opDef);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,586 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import tla2sany.semantic.FormalParamNode;
+import tla2sany.semantic.FrontEnd;
+import tla2sany.semantic.ModuleNode;
+import tla2sany.semantic.OpApplNode;
+import tla2sany.semantic.OpDefNode;
+import tla2sany.semantic.SemanticNode;
+import tlc2.output.EC;
+import tlc2.util.Context;
+import tlc2.value.BoolValue;
+import tlc2.value.LazyValue;
+import tlc2.value.TupleValue;
+import tlc2.value.Value;
+import tlc2.value.ValueConstants;
+import tlc2.value.ValueEnumeration;
+import tlc2.value.ValueVec;
+import util.Assert;
+
+/**
+ * The {@link ParallelEvaluator} evaluates the body of a bounded quantifier
+ * (\E x \in S : P(x), \A x \in S : P(x)) or of a set comprehension
+ * ({e(x) : x \in S}, {x \in S : P(x)}) for the elements of S on a pool of
+ * threads. It lets a single worker make use of all cores when it checks an
+ * invariant quantifying over a huge set, e.g. while the other workers idle at
+ * the end of a BFS level.
+ * <p>
+ * The first {@link #THRESHOLD} elements are evaluated by the calling thread as
+ * before, so small domains do not pay for the hand off. The elements beyond
+ * are enumerated by the calling thread in chunks of {@link #CHUNK} elements,
+ * each chunk is evaluated by a thread of the pool. The results of the chunks
+ * are combined in the order of the enumeration: A quantifier is decided by the
+ * first element in enumeration order which decides it, comprehensions list
+ * their elements in enumeration order and the first error in enumeration order
+ * is reported. Results are thus the same as those of the sequential
+ * evaluation. Chunks following a chunk that decided a quantifier are
+ * cancelled, but (unlike the sequential evaluation) elements after the
+ * deciding one may have been evaluated. Bodies which (transitively) apply
+ * Print, PrintT, RandomElement, TLCGet, TLCSet or JavaTime are therefore
+ * always evaluated sequentially (see {@link #prepare(Tool)}): their side
+ * effects would differ, and TLCGet and TLCSet would refer to the values of
+ * the threads of the pool rather than those of the worker.
+ * <p>
+ * Each chunk evaluates the body in its own copies of the contexts, such that
+ * the lazy values bound in them (e.g. the arguments of an operator) are not
+ * evaluated and cached by several threads at once. The values shared by the
+ * chunks are normalized before the chunks are handed to the pool. While the
+ * call stack is recorded to locate an error, and for evaluations other than
+ * {@link EvalControl#Clear}, the body is evaluated sequentially.
+ * <p>
+ * Nested quantifiers are evaluated sequentially by the thread of the pool
+ * evaluating the outer one.
+ * <p>
+ * Off unless -Dtlc2.tool.ParallelEvaluator.enabled=true.
+ */
+public final class ParallelEvaluator implements ValueConstants, ToolGlobals {
+
+	public static final boolean ENABLED = Boolean.getBoolean(ParallelEvaluator.class.getName() + ".enabled");
+
+	/**
+	 * The number of elements evaluated sequentially before the remaining ones
+	 * are handed to the pool.
+	 */
+	public static final int THRESHOLD = Integer.getInteger(ParallelEvaluator.class.getName() + ".threshold", 10000)
+			.intValue();
+
+	/**
+	 * The number of elements evaluated by a single task of the pool.
+	 */
+	public static final int CHUNK = Integer.getInteger(ParallelEvaluator.class.getName() + ".chunk", 1024).intValue();
+
+	/**
+	 * The number of threads of the pool.
+	 */
+	public static final int THREADS = Integer.getInteger(ParallelEvaluator.class.getName() + ".threads",
+			Runtime.getRuntime().availableProcessors()).intValue();
+
+	/**
+	 * The tool id under which the quantifiers and comprehensions whose bodies
+	 * may be evaluated by the pool are marked.
+	 */
+	public static final int ToolId = FrontEnd.getToolId();
+
+	private static final int EXISTS = 0;
+	private static final int FORALL = 1;
+	private static final int SET_OF_ALL = 2;
+	private static final int SUBSET_OF = 3;
+
+	private static ExecutorService executor;
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+				private int cnt = 0;
+
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new PoolThread(r, "TLC Parallel Evaluator " + (cnt++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Marks the bounded quantifiers and comprehensions in the definitions of
+	 * the spec processed by tool whose bodies apply no impure operator of the
+	 * TLC module (see {@link OpDefAnalysis}). Must be called after the
+	 * configuration and the Java overrides have been applied to the
+	 * definitions.
+	 *
+	 * @return The number of expressions marked
+	 */
+	public static int prepare(final Tool tool) {
+		final ModuleNode[] mods = tool.moduleTbl.getModuleNodes();
+		final OpDefAnalysis analysis = new OpDefAnalysis(mods);
+		final Map<SemanticNode, SemanticNode> visited = new IdentityHashMap<SemanticNode, SemanticNode>();
+		int cnt = 0;
+		for (int i = 0; i < mods.length; i++) {
+			final OpDefNode[] opDefs = mods[i].getOpDefs();
+			for (int j = 0; j < opDefs.length; j++) {
+				cnt += mark(opDefs[j].getBody(), analysis, visited);
+			}
+		}
+		return cnt;
+	}
+
+	private static int mark(final SemanticNode node, final OpDefAnalysis analysis,
+			final Map<SemanticNode, SemanticNode> visited) {
+		if (node == null || visited.put(node, node) != null) {
+			return 0;
+		}
+		int cnt = 0;
+		if (node instanceof OpApplNode) {
+			final OpApplNode appl = (OpApplNode) node;
+			switch (BuiltInOPs.getOpCode(appl.getOperator().getName())) {
+			case OPCODE_be:
+			case OPCODE_bf:
+			case OPCODE_soa:
+			case OPCODE_sso:
+				if (!analysis.isImpure(appl.getArgs()[0])) {
+					appl.setToolObject(ToolId, appl);
+					cnt++;
+				}
+			}
+		}
+		final SemanticNode[] children = node.getChildren();
+		for (int i = 0; children != null && i < children.length; i++) {
+			cnt += mark(children[i], analysis, visited);
+		}
+		return cnt;
+	}
+
+	/**
+	 * @return true iff the body of expr may be evaluated by the pool. It may
+	 *         not while tool records the call stack (which is not thread-safe)
+	 *         to locate an error, or if control is not
+	 *         {@link EvalControl#Clear}.
+	 */
+	public static boolean isParallel(final Tool tool, final OpApplNode expr, final int control) {
+		return ENABLED && tool.getCallStack() == null && control == EvalControl.Clear
+				&& expr.getToolObject(ToolId) != null;
+	}
+
+	private final Tool tool;
+	private final int kind;
+	private final OpApplNode expr;
+	private final SemanticNode body;
+	private final TLCState s0;
+	private final TLCState s1;
+	private final int control;
+
+	/**
+	 * The index of the first chunk which decided the quantifier or failed.
+	 * Chunks with a greater index stop early.
+	 */
+	private volatile int decided = Integer.MAX_VALUE;
+
+	/**
+	 * The contexts whose values have been normalized (see {@link #share}),
+	 * accessed by the calling thread only.
+	 */
+	private final Map<Context, Context> shared = new IdentityHashMap<Context, Context>();
+
+	private ParallelEvaluator(final Tool tool, final int kind, final OpApplNode expr, final SemanticNode body,
+			final TLCState s0, final TLCState s1, final int control) {
+		this.tool = tool;
+		this.kind = kind;
+		this.expr = expr;
+		this.body = body;
+		this.s0 = s0;
+		this.s1 = s1;
+		this.control = control;
+	}
+
+	/**
+	 * @return The value of \E (exists) or \A (!exists) whose bound variables
+	 *         range over Enum.
+	 */
+	public static Value quantify(final Tool tool, final OpApplNode expr, final SemanticNode body,
+			final ContextEnumerator Enum, final TLCState s0, final TLCState s1, final int control,
+			final boolean exists) {
+		final ParallelEvaluator eval = new ParallelEvaluator(tool, exists ? EXISTS : FORALL, expr, body, s0, s1,
+				control);
+		// An element decides \E to be true and \A to be false.
+		return (eval.evaluate(new ContextSource(Enum), null) == exists) ? ValTrue : ValFalse;
+	}
+
+	/**
+	 * @return The elements of {body : Enum}, unnormalized.
+	 */
+	public static ValueVec setOfAll(final Tool tool, final OpApplNode expr, final SemanticNode body,
+			final ContextEnumerator Enum, final TLCState s0, final TLCState s1, final int control) {
+		final ValueVec vals = new ValueVec();
+		new ParallelEvaluator(tool, SET_OF_ALL, expr, body, s0, s1, control).evaluate(new ContextSource(Enum), vals);
+		return vals;
+	}
+
+	/**
+	 * @return The elements of enumSet which satisfy pred, in the order of
+	 *         enumSet.
+	 */
+	public static ValueVec subsetOf(final Tool tool, final OpApplNode expr, final SemanticNode pred,
+			final ValueEnumeration enumSet, final Context c, final FormalParamNode[] bvars, final boolean isTuple,
+			final TLCState s0, final TLCState s1, final int control) {
+		final ValueVec vals = new ValueVec();
+		new ParallelEvaluator(tool, SUBSET_OF, expr, pred, s0, s1, control).evaluate(new ElementSource(enumSet, c,
+				bvars, isTuple), vals);
+		return vals;
+	}
+
+	/**
+	 * @return For quantifiers, true iff an element decided the quantifier.
+	 */
+	private boolean evaluate(final Source source, final ValueVec vals) {
+		// The first elements (or all if evaluated by the pool already)
+		// sequentially.
+		final int limit = Thread.currentThread() instanceof PoolThread ? Integer.MAX_VALUE : THRESHOLD;
+		final Chunk first = new Chunk(0, limit, source);
+		first.run();
+		if (first.complete(vals)) {
+			return true;
+		}
+		if (first.len < limit) {
+			return false;
+		}
+
+		final ExecutorService pool = getExecutor();
+		// As many chunks in flight as keep the pool busy.
+		final int inFlight = 4 * THREADS;
+		int idx = 1;
+		while (true) {
+			final List<Chunk> chunks = new ArrayList<Chunk>(inFlight);
+			final List<Future<?>> futures = new ArrayList<Future<?>>(inFlight);
+			while (chunks.size() < inFlight) {
+				final Chunk chunk = new Chunk(idx++, CHUNK, null);
+				chunk.fill(source);
+				if (chunk.error != null) {
+					// The enumeration failed, report it after the errors of
+					// the chunks before.
+					chunks.add(chunk);
+					break;
+				}
+				if (chunk.len == 0) {
+					break;
+				}
+				chunks.add(chunk);
+				futures.add(pool.submit(chunk));
+				if (chunk.len < CHUNK) {
+					break;
+				}
+			}
+			final int n = chunks.size();
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					// Chunk.run catches everything.
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				if (chunks.get(i).complete(vals)) {
+					return true;
+				}
+			}
+			if (n < inFlight || chunks.get(n - 1).len < CHUNK) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Normalizes the values of con (and of the contexts of its lazy values)
+	 * which have not been normalized before. The values shared by the
+	 * chunks can then be read by the pool concurrently.
+	 */
+	private void share(final Context con) {
+		for (Context cur = con; cur != null && cur != Context.Empty; cur = cur.getNext()) {
+			if (this.shared.put(cur, cur) != null) {
+				// The rest has been normalized already
+				return;
+			}
+			final Object val = cur.getValue();
+			if (val instanceof LazyValue) {
+				final LazyValue lv = (LazyValue) val;
+				if (lv.val != null && lv.val != ValUndef) {
+					lv.val.deepNormalize();
+				}
+				this.share(lv.con);
+			} else if (val instanceof Value) {
+				((Value) val).deepNormalize();
+			}
+		}
+	}
+
+	private final synchronized void decide(final int idx) {
+		if (idx < this.decided) {
+			this.decided = idx;
+		}
+	}
+
+	/**
+	 * A chunk of consecutive elements of the domain.
+	 */
+	private final class Chunk implements Runnable {
+		private final int idx;
+		private final int size;
+		/**
+		 * The domain if the elements of this chunk are enumerated as they are
+		 * evaluated (the chunk evaluated by the calling thread), null if the
+		 * chunk is filled beforehand.
+		 */
+		private final Source source;
+		private final Context[] cons;
+		private final Value[] elems;
+		private int len = 0;
+
+		/**
+		 * The results of the elements evaluated (SET_OF_ALL) or the elements
+		 * which satisfy the predicate (SUBSET_OF).
+		 */
+		private final ValueVec results = new ValueVec();
+		private boolean isDecided = false;
+		private Throwable error;
+
+		Chunk(final int idx, final int size, final Source source) {
+			this.idx = idx;
+			this.size = size;
+			this.source = source;
+			this.cons = (source == null) ? new Context[size] : null;
+			this.elems = (source == null) ? new Value[size] : null;
+		}
+
+		/**
+		 * Enumerates the elements of this chunk. The chunk gets its own
+		 * copies of their contexts, such that the lazy values of a context
+		 * are not evaluated (and cached) by several threads.
+		 */
+		void fill(final Source source) {
+			final ContextCopier copier = new ContextCopier();
+			try {
+				while (this.len < this.size && source.next()) {
+					share(source.con);
+					this.cons[this.len] = copier.copy(source.con);
+					this.elems[this.len++] = source.elem;
+				}
+			} catch (RuntimeException e) {
+				this.error = e;
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			try {
+				if (this.source != null) {
+					while (this.len < this.size && this.source.next()) {
+						this.len++;
+						if (this.eval(this.source.con, this.source.elem)) {
+							return;
+						}
+					}
+					return;
+				}
+				for (int i = 0; i < this.len; i++) {
+					if (decided < this.idx) {
+						// An earlier chunk decided or failed.
+						return;
+					}
+					if (this.eval(this.cons[i], this.elems[i])) {
+						return;
+					}
+				}
+			} catch (Throwable e) {
+				this.error = e;
+				decide(this.idx);
+			}
+		}
+
+		/**
+		 * @return true iff the element decided the quantifier.
+		 */
+		private boolean eval(final Context con, final Value elem) {
+			final Value val = tool.eval(body, con, s0, s1, control);
+			if (kind == SET_OF_ALL) {
+				this.results.addElement(val);
+				return false;
+			}
+			if (!(val instanceof BoolValue)) {
+				if (kind == SUBSET_OF) {
+					Assert.fail(EC.GENERAL, "Attempted to evaluate an expression of form {x \\in S : P(x)}"
+							+ " when P was " + val.getKindString() + ".\n" + body);
+				}
+				Assert.fail(EC.TLC_EXPECTED_VALUE, new String[] { "boolean", expr.toString() });
+			}
+			final boolean b = ((BoolValue) val).val;
+			if (kind == SUBSET_OF) {
+				if (b) {
+					this.results.addElement(elem);
+				}
+				return false;
+			}
+			if (b == (kind == EXISTS)) {
+				this.isDecided = true;
+				decide(this.idx);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Rethrows the error of this chunk or appends its results to vals.
+		 *
+		 * @return true iff this chunk decided the quantifier.
+		 */
+		boolean complete(final ValueVec vals) {
+			if (this.error instanceof RuntimeException) {
+				throw (RuntimeException) this.error;
+			} else if (this.error instanceof Error) {
+				throw (Error) this.error;
+			} else if (this.error != null) {
+				throw new RuntimeException(this.error);
+			}
+			if (vals != null) {
+				for (int i = 0; i < this.results.size(); i++) {
+					vals.addElement(this.results.elementAt(i));
+				}
+			}
+			return this.isDecided;
+		}
+	}
+
+	/**
+	 * Copies contexts and their lazy values. Contexts (and lazy values)
+	 * shared by the contexts copied are shared by the copies too.
+	 */
+	private static final class ContextCopier {
+		private final Map<Context, Context> contexts = new IdentityHashMap<Context, Context>();
+		private final Map<LazyValue, LazyValue> lazies = new IdentityHashMap<LazyValue, LazyValue>();
+
+		Context copy(final Context con) {
+			final List<Context> todo = new ArrayList<Context>();
+			Context cur = con;
+			Context res = Context.Empty;
+			while (cur != Context.Empty) {
+				final Context copy = this.contexts.get(cur);
+				if (copy != null) {
+					res = copy;
+					break;
+				}
+				todo.add(cur);
+				cur = cur.getNext();
+			}
+			for (int i = todo.size() - 1; i >= 0; i--) {
+				final Context orig = todo.get(i);
+				if (orig.getName() == null) {
+					res = Context.branch(res);
+				} else {
+					res = res.cons(orig.getName(), this.copy(orig.getValue()));
+				}
+				this.contexts.put(orig, res);
+			}
+			return res;
+		}
+
+		private Object copy(final Object val) {
+			if (!(val instanceof LazyValue)) {
+				return val;
+			}
+			final LazyValue lv = (LazyValue) val;
+			LazyValue res = this.lazies.get(lv);
+			if (res == null) {
+				res = new LazyValue(lv.expr, null);
+				res.val = lv.val;
+				this.lazies.put(lv, res);
+				res.con = this.copy(lv.con);
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * The contexts (and elements) of the domain in enumeration order.
+	 */
+	private static abstract class Source {
+		Context con;
+		Value elem;
+
+		/**
+		 * @return false iff all contexts have been enumerated.
+		 */
+		abstract boolean next();
+	}
+
+	private static final class ContextSource extends Source {
+		private final ContextEnumerator Enum;
+
+		ContextSource(final ContextEnumerator Enum) {
+			this.Enum = Enum;
+		}
+
+		boolean next() {
+			this.con = this.Enum.nextElement();
+			return this.con != null;
+		}
+	}
+
+	private static final class ElementSource extends Source {
+		private final ValueEnumeration enumSet;
+		private final Context c;
+		private final FormalParamNode[] bvars;
+		private final boolean isTuple;
+
+		ElementSource(final ValueEnumeration enumSet, final Context c, final FormalParamNode[] bvars,
+				final boolean isTuple) {
+			this.enumSet = enumSet;
+			this.c = c;
+			this.bvars = bvars;
+			this.isTuple = isTuple;
+		}
+
+		boolean next() {
+			this.elem = this.enumSet.nextElement();
+			if (this.elem == null) {
+				return false;
+			}
+			if (this.isTuple) {
+				Context c1 = this.c;
+				final Value[] tuple = ((TupleValue) this.elem).elems;
+				for (int i = 0; i < this.bvars.length; i++) {
+					c1 = c1.cons(this.bvars[i], tuple[i]);
+				}
+				this.con = c1;
+			} else {
+				this.con = this.c.cons(this.bvars[0], this.elem);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * The threads of the pool, they evaluate nested quantifiers sequentially.
+	 */
+	private static final class PoolThread extends Thread {
+		PoolThread(final Runnable r, final String name) {
+			super(r, name);
+		}
+	}
+}
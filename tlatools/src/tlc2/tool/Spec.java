@@ -487,6 +487,12 @@ public class Spec implements ValueConstants, ToolGlobals, Serializable
                 Assert.fail(EC.TLC_NO_MODULES, modName.toString());
             }
         }
+
+        // Mark the operators whose applications are memoized.
+        if (MemoCache.ENABLED)
+        {
+            MemoCache.prepare(mods);
+        }
     }
 
     /*************************************************************************
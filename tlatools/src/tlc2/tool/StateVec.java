@@ -22,6 +22,13 @@ public final class StateVec {
   private TLCState v[];
   private int size;
 
+  /*
+   * States handed back by the owner of this vector (see recycle) which
+   * copyOf and createEmpty reuse.
+   */
+  private TLCState free[] = emptyStateArr;
+  private int freeCnt = 0;
+
   private static final TLCState[] emptyStateArr = new TLCState[0];
 
   public StateVec(TLCState item0) {
@@ -137,6 +144,41 @@ public final class StateVec {
   }
 
   public final void reset() { this.size = 0; }
+
+  /**
+   * Hands state back for reuse by copyOf and createEmpty. The caller
+   * guarantees that state is no longer referenced (e.g. it has been
+   * found in the state set and is not needed for liveness checking).
+   * A state which has ever been enqueued must not be recycled, other
+   * threads may still refer to it.
+   */
+  public final void recycle(TLCState state) {
+    if (this.freeCnt >= this.free.length) {
+      if (this.freeCnt >= TLCGlobals.setBound) return;
+      TLCState[] free = new TLCState[Math.max(8, 2*this.freeCnt)];
+      System.arraycopy(this.free, 0, free, 0, this.freeCnt);
+      this.free = free;
+    }
+    this.free[this.freeCnt++] = state;
+  }
+
+  /* Returns a copy of state, stored into a recycled state if there is one. */
+  public final TLCState copyOf(TLCState state) {
+    if (this.freeCnt == 0) {
+      return state.copy();
+    }
+    TLCState res = this.free[--this.freeCnt];
+    this.free[this.freeCnt] = null;
+    return state.copy(res);
+  }
+
+  /* Returns an empty state, a recycled one if there is one. */
+  public final TLCState createEmpty() {
+    if (this.freeCnt == 0) {
+      return TLCState.Empty.createEmpty();
+    }
+    return this.copyOf(TLCState.Empty);
+  }
   
   public final void deepNormalize() {
     for (int i = 0; i < this.size; i++) {
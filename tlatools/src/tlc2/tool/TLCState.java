@@ -13,6 +13,7 @@ import tla2sany.semantic.SemanticNode;
 import tla2sany.semantic.SymbolNode;
 import tlc2.value.Value;
 import tlc2.value.ValueInputStream;
+import tlc2.value.ValueInterner;
 import tlc2.value.ValueOutputStream;
 import util.UniqueString;
 
@@ -60,6 +61,22 @@ public abstract class TLCState implements Cloneable, Serializable {
   public abstract boolean allAssigned();
   public abstract TLCState createEmpty();
 
+  /**
+   * Replaces the (normalized) values of this state by their canonical
+   * instances in the given table. Does nothing by default.
+   */
+  public void intern(ValueInterner interner) {
+  }
+
+  /**
+   * Returns a copy of this state. The copy may be stored into state, a
+   * state of the same kind no longer in use, rather than be allocated.
+   * Returns this.copy() by default.
+   */
+  public TLCState copy(TLCState state) {
+    return this.copy();
+  }
+
   /* Returns a string representation of this state.  */
   public abstract String toString();
   public abstract String toString(TLCState lastState);
@@ -16,6 +16,7 @@ import tlc2.util.FP64;
 import tlc2.value.MVPerm;
 import tlc2.value.Value;
 import tlc2.value.ValueInputStream;
+import tlc2.value.ValueInterner;
 import tlc2.value.ValueOutputStream;
 import util.UniqueString;
 import util.WrongInvocationException;
@@ -111,6 +112,16 @@ public final class TLCStateMut extends TLCState implements Cloneable, Serializab
     return new TLCStateMut(vals);
   }
 
+  public final TLCState copy(TLCState state) {
+    if (!(state instanceof TLCStateMut)) {
+      return this.copy();
+    }
+    TLCStateMut res = (TLCStateMut)state;
+    System.arraycopy(this.values, 0, res.values, 0, this.values.length);
+    res.uid = -1;
+    return res;
+  }
+
   public final TLCState deepCopy() {
     int len = this.values.length;
     Value[] vals = new Value[len];
@@ -136,6 +147,15 @@ public final class TLCStateMut extends TLCState implements Cloneable, Serializab
     }
   }
 
+  public final void intern(ValueInterner interner) {
+    for (int i = 0; i < this.values.length; i++) {
+      Value val = this.values[i];
+      if (val != null) {
+	this.values[i] = interner.intern(val);
+      }
+    }
+  }
+
   /**
    * This method returns the fingerprint of this state. We fingerprint
    * the values in the state according to the order given by vars.
@@ -10,31 +10,74 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import tlc2.output.EC;
 import tlc2.output.MP;
 import tlc2.output.StatePrinter;
 import tlc2.util.BufferedRandomAccessFile;
 import tlc2.util.LongVec;
+import util.Assert;
 import util.FileUtil;
 
 public class TLCTrace {
 
+  /**
+   * Trace files start with this header if each record includes the index of
+   * the action which generated the state. A record is the location of the
+   * predecessor, the finger print and the action index + 1 (0 if unknown).
+   * Files written by older versions have no header and their records lack
+   * the action index. The first record of such a file starts with the
+   * predecessor location 1 (of an initial state).
+   */
+  private static final int ACTIONS_HEADER = 0x54524131;
+
   private static String filename;
   private BufferedRandomAccessFile raf;
   private long lastPtr;
   private TraceApp tool;
+  /**
+   * true iff the records of the trace file include the action index
+   */
+  private final boolean hasActions;
 
   public TLCTrace(String metadir, String specFile, TraceApp tool)
   throws IOException {
     filename = metadir + FileUtil.separator + specFile + ".st";
     this.raf = new BufferedRandomAccessFile(filename, "rw");
+    if (this.raf.length() == 0) {
+      this.raf.writeInt(ACTIONS_HEADER);
+      this.hasActions = true;
+    } else {
+      // existing file to be recovered (see recover())
+      this.hasActions = readHeader(this.raf);
+    }
     this.lastPtr = 1L;
     this.tool = tool;
   }
 
+  /**
+   * Positions raf at the first record.
+   * 
+   * @return true iff the records of the trace file include the action index
+   */
+  private static boolean readHeader(final BufferedRandomAccessFile raf) throws IOException {
+    raf.seek(0);
+    if (raf.length() >= 4 && raf.readInt() == ACTIONS_HEADER) {
+      return true;
+    }
+    raf.seek(0);
+    return false;
+  }
+
   /**
    * @param fp A finger print of a state without a predecessor (init state)
    * @return The new location (pointer) for the given finger print (state)
@@ -42,7 +85,7 @@ public class TLCTrace {
    */
   public final synchronized long writeState(final long aFingerprint)
   throws IOException {
-	  return writeState(1, aFingerprint);
+	  return writeState(1, aFingerprint, -1);
   }
 
   /**
@@ -53,24 +96,62 @@ public class TLCTrace {
    */
   public final synchronized long writeState(final TLCState predecessor, final long aFingerprint)
   throws IOException {
-	  return writeState(predecessor.uid, aFingerprint);
+	  return writeState(predecessor.uid, aFingerprint, -1);
+  }
+
+  /**
+   * @param predecessor The predecessor state
+   * @param fp A finger print
+   * @param action The index of the action (see Tool#getActions()) which generated the state
+   * @return The new location (pointer) for the given finger print (state)
+   * @throws IOException
+   */
+  public final synchronized long writeState(final TLCState predecessor, final long aFingerprint, final int action)
+  throws IOException {
+	  return writeState(predecessor.uid, aFingerprint, action);
   }
   
   /**
    * @param predecessorLoc The location of the state predecessor
    * @param fp A finger print
+   * @param action The action index or -1 if unknown
    * @return The new location (pointer) for the given finger print (state)
    * @throws IOException
    */
-  private final synchronized long writeState(long predecessorLoc, long fp)
+  private final synchronized long writeState(long predecessorLoc, long fp, int action)
   throws IOException {
 	//TODO Remove synchronization as all threads content for this lock
     this.lastPtr = this.raf.getFilePointer();
     this.raf.writeLongNat(predecessorLoc);
     this.raf.writeLong(fp);
+    if (this.hasActions) {
+      this.raf.writeNat(action + 1);
+    }
     return this.lastPtr;
   }
 
+  /**
+   * Writes a block of states while holding the lock only once. Each state
+   * is assigned its new location (uid) in the order of the block.
+   * 
+   * @param states The states whose uid is the location of their predecessor
+   * @param fps The finger prints of the states
+   * @throws IOException
+   */
+  public final synchronized void writeStates(final TLCState[] states, final long[] fps)
+  throws IOException {
+    for (int i = 0; i < states.length; i++) {
+      this.lastPtr = this.raf.getFilePointer();
+      this.raf.writeLongNat(states[i].uid);
+      this.raf.writeLong(fps[i]);
+      if (this.hasActions) {
+        // the action is unknown
+        this.raf.writeNat(0);
+      }
+      states[i].uid = this.lastPtr;
+    }
+  }
+
   public final void close() throws IOException {
     this.raf.close();
   }
@@ -86,6 +167,20 @@ public class TLCTrace {
     return this.raf.readLong();
   }
 
+  /**
+   * @return The index of the action which generated the state at loc or -1
+   *         if unknown.
+   */
+  private synchronized int getAction(long loc) throws IOException {
+    if (!this.hasActions) {
+      return -1;
+    }
+    this.raf.seek(loc);
+    this.raf.readLongNat();    /*drop*/
+    this.raf.readLong();       /*drop*/
+    return this.raf.readNat() - 1;
+  }
+
   /**
    * Returns the level (monotonically increasing)!
    * 
@@ -154,49 +249,191 @@ public class TLCTrace {
   /**
    * @return All states in the trace file
    * @throws IOException
+   * @see TLCTrace#reconstruct(int, StateListener)
    */
   public final TLCStateInfo[] getTrace() throws IOException {
-		final Map<Long, TLCStateInfo> locToState = new HashMap<Long, TLCStateInfo>();
-
-		synchronized (this) {
-			final long curLoc = this.raf.getFilePointer();
-			try {
-				long length = this.raf.length();
-				// go to first byte
-				this.raf.seek(0);
-				
-				// read init state
-				this.raf.readLongNat(); /* drop predecessor of init state*/
-				TLCStateInfo state = this.tool.getState(this.raf.readLong());
-				locToState.put(0L, state);
-				
-				for (long location = 12; location < length; location+=12) {
-					final long predecessorLocation = this.raf.readLongNat();
-					final long fp = this.raf.readLong();
-					
-					// read predecessor from map
-					final TLCStateInfo predecessor = locToState.get(predecessorLocation);
-
-					// reconstruct current state
-					state = this.tool.getState(fp, predecessor.state);
-
-					// chain to predecessor
-					state.predecessorState = predecessor;
-					state.stateNumber = location / 12;
-					
-					// store in map
-					locToState.put(location, state);
-				}
-
-			} finally {
-				// rewind
-				this.raf.seek(curLoc);
-			}
-		}
-		
-		return locToState.values().toArray(new TLCStateInfo[locToState.size()]);
+    final List<TLCStateInfo> states = new ArrayList<TLCStateInfo>();
+    reconstruct(Runtime.getRuntime().availableProcessors(), new StateListener() {
+      public void reconstructed(final TLCStateInfo state) {
+        states.add(state);
+      }
+    });
+    return states.toArray(new TLCStateInfo[states.size()]);
   }
-  
+
+  /**
+   * Receives the states reconstructed by
+   * {@link TLCTrace#reconstruct(int, StateListener)}.
+   */
+  public interface StateListener {
+    /**
+     * Called for every state after its predecessor. The state is chained to
+     * its predecessor (see {@link TLCStateInfo#predecessorState}).
+     */
+    void reconstructed(TLCStateInfo state) throws IOException;
+  }
+
+  /**
+   * Reconstructs all states in the trace file and streams them to the given
+   * listener. The states are reconstructed level by level (distance from an
+   * initial state): The states of a level only depend on the states of the
+   * previous level and are reconstructed by numThreads threads in parallel.
+   * Apart from a compact index of the trace file, only the states of the
+   * current and the previous level are kept in memory.
+   * 
+   * @param numThreads The number of threads to reconstruct states with
+   * @param listener Receives the states level by level (in the order of the
+   *                 trace file within a level)
+   * @throws IOException
+   */
+  public final void reconstruct(final int numThreads, final StateListener listener)
+  throws IOException {
+    // Index the trace file without holding the lock for the reconstruction
+    final long length;
+    synchronized (this) {
+      this.raf.flush();
+      length = this.raf.length();
+    }
+    final LongVec locs = new LongVec();
+    final LongVec preds = new LongVec();
+    final LongVec fps = new LongVec();
+    int[] actions = new int[1024];
+    int[] levels = new int[1024];
+    int maxLevel = -1;
+    final BufferedRandomAccessFile indexRaf = new BufferedRandomAccessFile(filename, "r");
+    try {
+      final boolean withActions = readHeader(indexRaf);
+      for (int i = 0; indexRaf.getFilePointer() < length; i++) {
+        if (i == levels.length) {
+          actions = grow(actions);
+          levels = grow(levels);
+        }
+        final long location = indexRaf.getFilePointer();
+        final long predecessorLocation = indexRaf.readLongNat();
+        locs.addElement(location);
+        preds.addElement(predecessorLocation);
+        fps.addElement(indexRaf.readLong());
+        actions[i] = withActions ? indexRaf.readNat() - 1 : -1;
+        // a predecessor precedes its successors in the file and locations
+        // are thus sorted
+        levels[i] = predecessorLocation == 1 ? 0 : levels[find(locs, i, predecessorLocation)] + 1;
+        maxLevel = Math.max(maxLevel, levels[i]);
+      }
+    } finally {
+      indexRaf.close();
+    }
+
+    // order the states by level (counting sort keeps the file order)
+    final int size = locs.size();
+    final int[] offsets = new int[maxLevel + 2];
+    for (int i = 0; i < size; i++) {
+      offsets[levels[i] + 1]++;
+    }
+    for (int l = 0; l <= maxLevel; l++) {
+      offsets[l + 1] += offsets[l];
+    }
+    final int[] order = new int[size];
+    final int[] next = new int[maxLevel + 1];
+    System.arraycopy(offsets, 0, next, 0, maxLevel + 1);
+    for (int i = 0; i < size; i++) {
+      order[next[levels[i]]++] = i;
+    }
+
+    final int[] actionIdx = actions;
+    final ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, numThreads));
+    try {
+      Map<Long, TLCStateInfo> previous = new HashMap<Long, TLCStateInfo>();
+      for (int l = 0; l <= maxLevel; l++) {
+        final int from = offsets[l];
+        final int to = offsets[l + 1];
+        final TLCStateInfo[] states = new TLCStateInfo[to - from];
+        final Map<Long, TLCStateInfo> predecessors = previous;
+        final int chunk = Math.max(1, (states.length + numThreads - 1) / Math.max(1, numThreads));
+
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int lo = from; lo < to; lo += chunk) {
+          final int start = lo;
+          final int end = Math.min(to, lo + chunk);
+          futures.add(executorService.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+              for (int j = start; j < end; j++) {
+                final int i = order[j];
+                final long predecessorLocation = preds.elementAt(i);
+                final TLCStateInfo predecessor = predecessors.get(predecessorLocation);
+                final TLCStateInfo state = predecessorLocation == 1 ? tool.getState(fps
+                    .elementAt(i)) : tool.getState(fps.elementAt(i), predecessor.state, actionIdx[i]);
+                Assert.check(state != null, EC.TLC_FAILED_TO_RECOVER_INIT);
+                // chain to predecessor (null for an init state)
+                state.predecessorState = predecessor;
+                state.stateNumber = i;
+                states[j - from] = state;
+              }
+              return null;
+            }
+          }));
+        }
+        for (Future<Void> future : futures) {
+          try {
+            future.get();
+          } catch (InterruptedException e) {
+            throw toIOException(e);
+          } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+              throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+              throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+              throw (Error) cause;
+            }
+            throw toIOException(cause);
+          }
+        }
+
+        // stream the level and keep it for the next one
+        final Map<Long, TLCStateInfo> current = new HashMap<Long, TLCStateInfo>(states.length * 2);
+        for (int j = 0; j < states.length; j++) {
+          listener.reconstructed(states[j]);
+          current.put(locs.elementAt(order[from + j]), states[j]);
+        }
+        previous = current;
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * @return The index of loc in the first len (sorted) elements of locs
+   */
+  private static int find(final LongVec locs, final int len, final long loc) {
+    int lo = 0, hi = len - 1;
+    while (lo <= hi) {
+      final int mid = (lo + hi) >>> 1;
+      final long midLoc = locs.elementAt(mid);
+      if (midLoc < loc) {
+        lo = mid + 1;
+      } else if (midLoc > loc) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    throw new IllegalStateException("No state at location " + loc);
+  }
+
+  private static IOException toIOException(final Throwable cause) {
+    final IOException e = new IOException(cause.getMessage());
+    e.initCause(cause);
+    return e;
+  }
+
+  private static int[] grow(final int[] a) {
+    final int[] res = new int[a.length * 2];
+    System.arraycopy(a, 0, res, 0, a.length);
+    return res;
+  }
+
   /**
    * @param loc The start location (pointer) from where the trace should be computed
    * @param included true if the start location state should be included
@@ -206,12 +443,14 @@ public class TLCTrace {
   public final TLCStateInfo[] getTrace(long loc, boolean included)
   throws IOException {
     LongVec fps = new LongVec();
+    LongVec actions = new LongVec();
 
     synchronized(this) {
       long curLoc = this.raf.getFilePointer();
       long loc1 = (included) ? loc : this.getPrev(loc);
       for (long ploc = loc1; ploc != 1; ploc = this.getPrev(ploc)) {
 	fps.addElement(this.getFP(ploc));
+	actions.addElement(this.getAction(ploc));
       }
       this.raf.seek(curLoc);
     }
@@ -231,7 +470,7 @@ public class TLCTrace {
       res[stateNum++] = sinfo;
       for (int i = len - 2; i >= 0; i--) {
 	fp = fps.elementAt(i);
-	sinfo = this.tool.getState(fp, sinfo.state);
+	sinfo = this.tool.getState(fp, sinfo.state, (int) actions.elementAt(i));
 	if (sinfo == null) {
 	    /*
 	     * The following error message is misleading, because it's triggered
@@ -248,6 +487,14 @@ public class TLCTrace {
     return res;
   }
 
+  /**
+   * Serializes the output of concurrent invocations of printTrace (e.g.
+   * with -continue). The states are reconstructed before acquiring this lock
+   * and without holding the trace's monitor. Thus, several traces are
+   * reconstructed concurrently while workers keep writing new states.
+   */
+  private static final Object printLock = new Object();
+
   /**
    * Write out a sequence of states that reaches s2 from an initial
    * state, according to the spec. s2 is a next state of s1.
@@ -257,67 +504,74 @@ public class TLCTrace {
    * @throws IOException
    * @throws WorkerException
    */
-  public synchronized final void printTrace(final TLCState s1, final TLCState s2)
+  public final void printTrace(final TLCState s1, final TLCState s2)
   throws IOException, WorkerException 
   {
-      MP.printError(EC.TLC_BEHAVIOR_UP_TO_THIS_POINT);
-      // Print the prefix leading to s1:
-      long loc1 = s1.uid; 
-      TLCState lastState = null;
-      TLCStateInfo[] prefix = this.getTrace(loc1, false);
-      int idx = 0;
-      while (idx < prefix.length) 
-      {
-          StatePrinter.printState(prefix[idx], lastState, idx+1);
-          lastState = prefix[idx].state;
-          idx++;
-      }
-
-      // Print s1:
-      TLCStateInfo sinfo;
+      // Reconstruct the prefix leading to s1, s1 and s2 without holding
+      // any lock (except for reading the trace file):
+      final long loc1 = s1.uid; 
+      final TLCStateInfo[] prefix = this.getTrace(loc1, false);
+      final TLCStateInfo sinfo1;
       if (prefix.length == 0) {
-          sinfo = this.tool.getState(s1.fingerPrint());
-          if (sinfo == null) 
-          {
-              MP.printError(EC.TLC_FAILED_TO_RECOVER_INIT);
-              MP.printError(EC.TLC_BUG, "3");
-              System.exit(1);
-          }
+          sinfo1 = this.tool.getState(s1.fingerPrint());
       }
       else 
       {
+          final int action;
+          synchronized (this) {
+              long curLoc = this.raf.getFilePointer();
+              action = this.getAction(loc1);
+              this.raf.seek(curLoc);
+          }
           TLCState s0 = prefix[prefix.length-1].state;
-          sinfo = this.tool.getState(s1.fingerPrint(), s0);
-          if (sinfo == null) 
+          sinfo1 = this.tool.getState(s1.fingerPrint(), s0, action);
+      }
+      final TLCStateInfo sinfo2 = (sinfo1 != null && s2 != null) ? this.tool.getState(s2, s1) : null;
+
+      synchronized (printLock) {
+          MP.printError(EC.TLC_BEHAVIOR_UP_TO_THIS_POINT);
+          // Print the prefix leading to s1:
+          TLCState lastState = null;
+          int idx = 0;
+          while (idx < prefix.length) 
           {
-              MP.printError(EC.TLC_FAILED_TO_RECOVER_INIT);
-              MP.printError(EC.TLC_BUG, "4");
-              StatePrinter.printState(s1); 
-              System.exit(1);
+              StatePrinter.printState(prefix[idx], lastState, idx+1);
+              lastState = prefix[idx].state;
+              idx++;
           }
-      }
-      if (s2 == null) 
-      { 
-          lastState = null; 
-      }
-      StatePrinter.printState(sinfo, lastState, ++idx);
-      lastState = sinfo.state;
 
-      // Print s2:
-      if (s2 != null) {
-          sinfo = this.tool.getState(s2, s1);
-          if (sinfo == null) 
+          // Print s1:
+          if (sinfo1 == null) 
           {
               MP.printError(EC.TLC_FAILED_TO_RECOVER_INIT);
-              MP.printError(EC.TLC_BUG, "5");
-              StatePrinter.printState(s2);
+              if (prefix.length == 0) {
+                  MP.printError(EC.TLC_BUG, "3");
+              } else {
+                  MP.printError(EC.TLC_BUG, "4");
+                  StatePrinter.printState(s1); 
+              }
               System.exit(1);
           }
-          StatePrinter.printState(sinfo, null, ++idx);
+          if (s2 == null) 
+          { 
+              lastState = null; 
+          }
+          StatePrinter.printState(sinfo1, lastState, ++idx);
+
+          // Print s2:
+          if (s2 != null) {
+              if (sinfo2 == null) 
+              {
+                  MP.printError(EC.TLC_FAILED_TO_RECOVER_INIT);
+                  MP.printError(EC.TLC_BUG, "5");
+                  StatePrinter.printState(s2);
+                  System.exit(1);
+              }
+              StatePrinter.printState(sinfo2, null, ++idx);
+          }
       }
   }
 
-
   /**
    * Returns a sequence of states that reaches, but excludes the
    * state with fingerprint fp.
@@ -325,10 +579,13 @@ public class TLCTrace {
   @SuppressWarnings("unused")
   private final TLCStateInfo[] printPrefix(long fp) throws IOException {
     // First, find the location for fp:
-    this.raf.seek(0);
+    readHeader(this.raf);
     this.raf.readLongNat();    /*drop*/
 
     while (this.raf.readLong() != fp) {
+      if (this.hasActions) {
+        this.raf.readNat();    /*drop*/
+      }
       this.raf.readLongNat();  /*drop*/
     }
     
@@ -386,7 +643,7 @@ public class TLCTrace {
   private long[] addBlock(long fp[], long prev[]) throws IOException {
     // Reuse prev.
     for (int i = 0; i < fp.length; i++) {
-      prev[i] = this.writeState(prev[i], fp[i]);
+      prev[i] = this.writeState(prev[i], fp[i], -1);
     }
     return prev;
   }
@@ -402,6 +659,7 @@ public class TLCTrace {
     Enumerator() throws IOException {
       this.len = raf.length();
       this.enumRaf = new BufferedRandomAccessFile(filename, "r");
+      readHeader(this.enumRaf);
     }
 
     final void reset(long pos) throws IOException {
@@ -421,7 +679,45 @@ public class TLCTrace {
 
     final long nextFP() throws IOException {
       this.enumRaf.readLongNat();    /*drop*/
-      return this.enumRaf.readLong();
+      final long fp = this.enumRaf.readLong();
+      if (hasActions) {
+        this.enumRaf.readNat();      /*drop*/
+      }
+      return fp;
+    }
+  }
+
+  /**
+   * Enumerates the finger prints of the trace file up to the last
+   * checkpoint (see getRecoverPtr()). This is used to recover the finger
+   * print set.
+   */
+  public static final class RecoveryEnumerator {
+    private final BufferedRandomAccessFile braf;
+    private final boolean hasActions;
+    private final long recoverPtr;
+
+    public RecoveryEnumerator() throws IOException {
+      this.recoverPtr = getRecoverPtr();
+      this.braf = new BufferedRandomAccessFile(filename, "r");
+      this.hasActions = readHeader(this.braf);
+    }
+
+    public final boolean hasMoreElements() {
+      return this.braf.getFilePointer() < this.recoverPtr;
+    }
+
+    public final long nextFP() throws IOException {
+      this.braf.readLongNat();    /*drop*/
+      final long fp = this.braf.readLong();
+      if (this.hasActions) {
+        this.braf.readNat();      /*drop*/
+      }
+      return fp;
+    }
+
+    public final void close() throws IOException {
+      this.braf.close();
     }
   }
 
@@ -33,6 +33,7 @@ import tlc2.value.Enumerable;
 import tlc2.value.FcnLambdaValue;
 import tlc2.value.FcnParams;
 import tlc2.value.FcnRcdValue;
+import tlc2.value.IntSetValue;
 import tlc2.value.LazyValue;
 import tlc2.value.MVPerm;
 import tlc2.value.MethodValue;
@@ -121,6 +122,17 @@ public class Tool
 
       // Finally, process the config file.
       super.processConfig();
+
+      // Evaluate the constant subexpressions of the actions and
+      // invariants only once.
+      if (preprocess) {
+          ConstantHoister.hoist(this);
+      }
+
+      // Find the quantifiers whose bodies can be evaluated in parallel.
+      if (ParallelEvaluator.ENABLED) {
+          ParallelEvaluator.prepare(this);
+      }
   }
 
   public final void setCallStack() 
@@ -699,13 +711,28 @@ public class Tool
    * in the given state.
    */
   public final StateVec getNextStates(Action action, TLCState state) {
-    ActionItemList acts = ActionItemList.Empty;
-    TLCState s1 = TLCState.Empty.createEmpty();
     StateVec nss = new StateVec(0);
-    this.getNextStates(action.pred, acts, action.con, state, s1, nss);
+    this.getNextStates(action, state, nss);
     return nss;
   }
 
+  /**
+   * This method adds the next states when taking the action in the
+   * given state to nss. The states are built in the states recycled
+   * into nss (see StateVec.recycle) as long as there are any, such
+   * that a worker which reuses nss allocates states only for the
+   * successors it keeps.
+   */
+  public final void getNextStates(Action action, TLCState state, StateVec nss) {
+    ActionItemList acts = ActionItemList.Empty;
+    TLCState s1 = nss.createEmpty();
+    TLCState last = this.getNextStates(action.pred, acts, action.con, state, s1, nss);
+    // The state under construction when the action was exhausted is
+    // not one of the next states (those added to nss are copied before
+    // the construction continues) and is referenced no more.
+    nss.recycle(last);
+  }
+
   private final TLCState getNextStates(SemanticNode pred, ActionItemList acts, Context c,
                                        TLCState s0, TLCState s1, StateVec nss) {
     switch (pred.getKind()) {
@@ -769,7 +796,7 @@ public class Tool
 
     if (acts.isEmpty()) {
       nss.addElement(s1);
-      resState = s1.copy();
+      resState = nss.copyOf(s1);
     }
     else {
       int kind = acts.carKind();
@@ -1219,6 +1246,10 @@ public class Tool
     case OpApplKind:
       {
         OpApplNode expr1 = (OpApplNode)expr;
+        Object hoisted = expr1.getToolObject(ConstantHoister.ToolId);
+        if (hoisted != null) {
+          return ((ConstantHoister.Hoisted)hoisted).eval(this, c, s0, s1, control);
+        }
         return this.evalAppl(expr1, c, s0, s1, control);
       }
     case LetInKind:
@@ -1294,6 +1325,42 @@ public class Tool
     }
   }
 
+  /**
+   * Evaluates the application of the memoized operator opDef to args. The
+   * arguments are evaluated eagerly (the body uses all of them). If they
+   * are not plain data, opDef is applied to them without the cache.
+   */
+  private final Value evalMemoized(MemoCache.Op memo, OpDefNode opDef, ExprOrOpArgNode[] args,
+                                   Context c, TLCState s0, TLCState s1, int control) {
+    Value[] argVals = new Value[args.length];
+    for (int i = 0; i < args.length; i++) {
+      argVals[i] = this.eval(args[i], c, s0, s1, control);
+    }
+    long fp = 0;
+    try {
+      fp = MemoCache.fingerPrint(memo, argVals, s0);
+    }
+    catch (RuntimeException e) {
+      // An argument cannot be fingerprinted.
+      fp = 0;
+    }
+    FormalParamNode[] formals = opDef.getParams();
+    Context c1 = c;
+    for (int i = 0; i < argVals.length; i++) {
+      c1 = c1.cons(formals[i], argVals[i]);
+    }
+    if (fp == 0) {
+      return this.eval(opDef.getBody(), c1, s0, s1, control);
+    }
+    MemoCache cache = MemoCache.getDefault();
+    Value res = cache.get(fp);
+    if (res == null) {
+      res = this.eval(opDef.getBody(), c1, s0, s1, control);
+      cache.put(fp, res);
+    }
+    return res;
+  }
+
   public final Value evalAppl(OpApplNode expr, Context c, TLCState s0,
                               TLCState s1, int control) {
     ExprOrOpArgNode[] args = expr.getArgs();
@@ -1329,8 +1396,14 @@ public class Tool
         OpDefNode opDef = (OpDefNode)val;
         opcode = BuiltInOPs.getOpCode(opDef.getName());
         if (opcode == 0) {
-          Context c1 = this.getOpContext(opDef, args, c, true);
-          res = this.eval(opDef.getBody(), c1, s0, s1, control);
+          Object memo = MemoCache.ENABLED ? opDef.getToolObject(MemoCache.ToolId) : null;
+          if (memo != null && this.callStack == null && control == EvalControl.Clear) {
+            res = this.evalMemoized((MemoCache.Op)memo, opDef, args, c, s0, s1, control);
+          }
+          else {
+            Context c1 = this.getOpContext(opDef, args, c, true);
+            res = this.eval(opDef.getBody(), c1, s0, s1, control);
+          }
         }
       }
       else if (val instanceof Value) {
@@ -1396,15 +1469,15 @@ public class Tool
         // was replaced by the following by LL on 7 Mar 2012.  This fix has not yet received
         // the blessing of Yuan Yu, so it should be considered to be provisional.
         //
-        Value convertedVal = SetEnumValue.convert(inVal);
-        if (convertedVal != null) {
-            inVal = convertedVal;
-        } else {
+        // SUBSET and function sets are enumerated in the order of the
+        // converted and normalized set without being converted.
+        ValueEnumeration enumSet = SetEnumValue.elementsNormalized(inVal);
+        if (enumSet == null) {
             inVal.normalize();
+            enumSet = ((Enumerable)inVal).elements();
         }
         // end of fix.
         
-        ValueEnumeration enumSet = ((Enumerable)inVal).elements();
         FormalParamNode[] bvars = expr.getBdedQuantSymbolLists()[0]; 
         boolean isTuple = expr.isBdedQuantATuple()[0];
         if (isTuple) {
@@ -1450,6 +1523,9 @@ public class Tool
       {
         ContextEnumerator Enum = this.contexts(expr, c, s0, s1, control);
         SemanticNode body = args[0];
+        if (ParallelEvaluator.isParallel(this, expr, control)) {
+          return ParallelEvaluator.quantify(this, expr, body, Enum, s0, s1, control, true);
+        }
         Context c1;
         while ((c1 = Enum.nextElement()) != null) {
           Value bval = this.eval(body, c1, s0, s1, control);
@@ -1464,6 +1540,9 @@ public class Tool
       {
         ContextEnumerator Enum = this.contexts(expr, c, s0, s1, control);
         SemanticNode body = args[0];
+        if (ParallelEvaluator.isParallel(this, expr, control)) {
+          return ParallelEvaluator.quantify(this, expr, body, Enum, s0, s1, control, false);
+        }
         Context c1;
         while ((c1 = Enum.nextElement()) != null) {
           Value bval = this.eval(body, c1, s0, s1, control);
@@ -1676,13 +1755,16 @@ public class Tool
         for (int i = 0; i < alen; i++) {
           vals.addElement(this.eval(args[i], c, s0, s1, control));
         }
-        return new SetEnumValue(vals, false);
+        return IntSetValue.create(vals, false);
       }
     case OPCODE_soa:    // SetOfAll: {e(x) : x \in S} 
       {
-        ValueVec vals = new ValueVec();
         ContextEnumerator Enum = this.contexts(expr, c, s0, s1, control);
         SemanticNode body = args[0];
+        if (ParallelEvaluator.isParallel(this, expr, control)) {
+          return new SetEnumValue(ParallelEvaluator.setOfAll(this, expr, body, Enum, s0, s1, control), false);
+        }
+        ValueVec vals = new ValueVec();
         Context c1;
         while ((c1 = Enum.nextElement()) != null) {
           Value val = this.eval(body, c1, s0, s1, control);
@@ -1718,8 +1800,13 @@ public class Tool
         boolean isTuple = expr.isBdedQuantATuple()[0];
         FormalParamNode[] bvars = expr.getBdedQuantSymbolLists()[0];
         if (inVal instanceof Reducible) {
-          ValueVec vals = new ValueVec();
           ValueEnumeration enumSet = ((Enumerable)inVal).elements();
+          if (ParallelEvaluator.isParallel(this, expr, control)) {
+            ValueVec vals = ParallelEvaluator.subsetOf(this, expr, pred, enumSet, c, bvars, isTuple,
+                                                       s0, s1, control);
+            return new SetEnumValue(vals, inVal.isNormalized());
+          }
+          ValueVec vals = new ValueVec();
           Value elem;
           if (isTuple) {
             while ((elem = enumSet.nextElement()) != null) {
@@ -2730,6 +2817,26 @@ public class Tool
     return null;
   }
 
+  /*
+   * Reconstruct the next state of state s whose fingerprint is fp. Only
+   * the given action (the index into getActions()) is evaluated if it
+   * generates the state. Otherwise, or if the action is unknown (-1),
+   * all actions are tried.
+   */
+  public final TLCStateInfo getState(long fp, TLCState s, int action) {
+    if (action >= 0 && action < this.actions.length) {
+      Action curAction = this.actions[action];
+      StateVec nextStates = this.getNextStates(curAction, s);
+      for (int j = 0; j < nextStates.size(); j++) {
+        TLCState state = nextStates.elementAt(j);
+        if (fp == state.fingerPrint()) {
+          return new TLCStateInfo(state, curAction.getLocation());
+        }
+      }
+    }
+    return this.getState(fp, s);
+  }
+
   /* Reconstruct the info for s1.   */
   public final TLCStateInfo getState(TLCState s1, TLCState s) {
     for (int i = 0; i < this.actions.length; i++) {
@@ -13,6 +13,12 @@ public interface TraceApp {
   /* Reconstruct the next state of state s whose fingerprint is fp. */
   public TLCStateInfo getState(long fp, TLCState s);
 
+  /*
+   * Reconstruct the next state of state s whose fingerprint is fp
+   * by evaluating the given action first (-1 if unknown).
+   */
+  public TLCStateInfo getState(long fp, TLCState s, int action);
+
   /* Reconstruct the info for the transition from s to s1. */
   public TLCStateInfo getState(TLCState s1, TLCState s);
 
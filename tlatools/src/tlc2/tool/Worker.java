@@ -23,6 +23,7 @@ public class Worker extends IdThread implements IWorker {
 	private IStateQueue squeue;
 	private ObjLongTable astCounts;
 	private Value[] localValues;
+	private StateVec nextStates;
 
 	// SZ Feb 20, 2009: changed due to super type introduction
 	public Worker(int id, AbstractChecker tlc) {
@@ -33,6 +34,7 @@ public class Worker extends IdThread implements IWorker {
 		this.squeue = this.tlc.theStateQueue;
 		this.astCounts = new ObjLongTable(10);
 		this.localValues = new Value[4];
+		this.nextStates = new StateVec(0);
 		this.setName("TLCWorkerThread-" + String.format("%03d", id));
 	}
 
@@ -72,7 +74,7 @@ public class Worker extends IdThread implements IWorker {
 					this.squeue.finishAll();
 					return;
 				}
-	if (this.tlc.doNext(curState, this.astCounts)) return;
+	if (this.tlc.doNext(curState, this.astCounts, this.nextStates)) return;
 				}
 			}
     catch (Throwable e) {
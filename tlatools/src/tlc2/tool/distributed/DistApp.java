@@ -7,10 +7,14 @@ package tlc2.tool.distributed;
 
 import java.rmi.RemoteException;
 
+import tlc2.tool.StateVec;
 import tlc2.tool.TLCState;
 import tlc2.tool.TLCStateInfo;
 import tlc2.tool.TraceApp;
 import tlc2.tool.WorkerException;
+import tlc2.tool.liveness.LiveRecord;
+import tlc2.util.LongObjTable;
+import tlc2.util.LongVec;
 
 /**
  * @author Simon Zambrovski
@@ -54,6 +58,21 @@ public abstract class DistApp implements TraceApp {
 	// TLCWorker
 	public abstract boolean isInActions(TLCState s1, TLCState s2);
 
+	// Checks if the spec has liveness properties.
+	// TLCServer, TLCWorker
+	public abstract boolean checkLiveness();
+
+	// Prepares the evaluation of the liveness properties.
+	// TLCWorker
+	public abstract void initLiveness();
+
+	// Evaluates the liveness predicates and actions for the state s and its
+	// successors (which satisfy the state and action constraints). The
+	// tableau consistency of the successors already in known is reused.
+	// TLCWorker
+	public abstract LiveRecord getLiveRecord(TLCState s, long fp,
+			StateVec nextStates, LongVec nextFPs, LongObjTable known);
+
 	// Reconstruct the initial state whose fingerprint is fp.
 	// TLCTrace
 	/* (non-Javadoc)
@@ -68,6 +87,14 @@ public abstract class DistApp implements TraceApp {
 	 */
 	public abstract TLCStateInfo getState(long fp, TLCState s);
 
+	// Reconstruct the next state of state s whose fingerprint is fp, trying
+	// the given action first.
+	// TLCTrace
+	/* (non-Javadoc)
+	 * @see tlc2.tool.TraceApp#getState(long, tlc2.tool.TLCState, int)
+	 */
+	public abstract TLCStateInfo getState(long fp, TLCState s, int action);
+
 	// Reconstruct the info for the transition from s to s1. /
 	// TLCTrace
 	/* (non-Javadoc)
@@ -60,6 +60,16 @@ public class DistributedFPSetTLCServer extends TLCServer {
 	 */
 	public synchronized void registerFPSet(FPSetRMI fpSet, String hostname) throws RemoteException {
 		this.fpSetManager.register(fpSet, hostname);
+		
+		// A FPSet joining a running model checker (only accepted by a
+		// consistent hashing DynamicFPSetManager)
+		if (latch.getCount() == 0) {
+			final String numOfServers = Integer.toString(this.fpSetManager.numOfServers());
+			MP.printMessage(EC.TLC_DISTRIBUTED_SERVER_FPSET_REGISTERED,
+					new String[] { numOfServers, numOfServers });
+			return;
+		}
+		
 		latch.countDown();
 		
 		long diff = this.expectedFPSetCount - latch.getCount();
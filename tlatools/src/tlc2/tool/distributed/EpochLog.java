@@ -0,0 +1,151 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.distributed;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import tlc2.tool.TLCState;
+import tlc2.tool.TLCTrace;
+import tlc2.tool.queue.IStateQueue;
+import tlc2.value.ValueInputStream;
+import tlc2.value.ValueOutputStream;
+import util.FileUtil;
+
+/**
+ * An {@link EpochLog} makes it possible to checkpoint the (remote) fingerprint
+ * sets while model checking continues.
+ * <p>
+ * A checkpoint starts with an epoch marker: With all {@link TLCServerThread}s
+ * suspended, the {@link IStateQueue} is checkpointed and the log is opened.
+ * From then on, every new state is appended to the log while the fingerprint
+ * sets are checkpointed one after another. Each fingerprint set thus contains
+ * the fingerprints as of the marker plus an arbitrary subset of the logged
+ * ones. Once all fingerprint sets are done, the log is closed together with
+ * the trace checkpoint.
+ * <p>
+ * Upon recovery, the logged states are appended to the recovered queue and
+ * their fingerprints are added to the fingerprint sets again. This yields
+ * the state of the marker plus the logged states, which is a consistent
+ * snapshot: The states explored while the checkpoint was in progress are
+ * explored once more, but no state is lost.
+ */
+public class EpochLog {
+
+	private final String filePrefix;
+	/**
+	 * Adding a new state to the fingerprint set, the trace and the queue has
+	 * to happen atomically with regards to closing the log. Otherwise, a
+	 * fingerprint set might include a fingerprint whose state is neither in
+	 * the queue checkpoint nor in the log.
+	 */
+	private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+	/**
+	 * null unless a checkpoint is in progress
+	 */
+	private ValueOutputStream vos;
+	private long size;
+
+	public EpochLog(final String metadir) {
+		this.filePrefix = metadir + FileUtil.separator;
+	}
+
+	/**
+	 * @return The lock to hold while adding new states (see
+	 *         {@link EpochLog#append(TLCState[], long[])}).
+	 */
+	public Lock getLock() {
+		return rwLock.readLock();
+	}
+
+	/**
+	 * Opens a new log. The caller has to make sure that no new states are
+	 * added concurrently (see {@link IStateQueue#suspendAll()}).
+	 */
+	public void begin() throws IOException {
+		final Lock lock = rwLock.writeLock();
+		lock.lock();
+		try {
+			this.vos = new ValueOutputStream(this.filePrefix + "epoch.tmp");
+			this.size = 0L;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Appends the new states to the log if a checkpoint is in progress. The
+	 * caller has to hold the lock returned by {@link EpochLog#getLock()}.
+	 */
+	public void append(final TLCState[] states, final long[] fps) throws IOException {
+		if (this.vos == null) {
+			return;
+		}
+		synchronized (this) {
+			for (int i = 0; i < states.length; i++) {
+				this.vos.writeInt(1);
+				this.vos.writeLong(fps[i]);
+				states[i].write(this.vos);
+			}
+			this.size += states.length;
+		}
+	}
+
+	/**
+	 * Closes the log once the fingerprint sets have been checkpointed. The
+	 * trace is checkpointed at the same time, so that it covers the logged
+	 * states.
+	 * 
+	 * @return The number of states in the log
+	 */
+	public long end(final TLCTrace trace) throws IOException {
+		final Lock lock = rwLock.writeLock();
+		lock.lock();
+		try {
+			trace.beginChkpt();
+			this.vos.writeInt(0);
+			this.vos.close();
+			this.vos = null;
+			return this.size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void commitChkpt() throws IOException {
+		final File oldChkpt = new File(this.filePrefix + "epoch.chkpt");
+		final File newChkpt = new File(this.filePrefix + "epoch.tmp");
+		if ((oldChkpt.exists() && !oldChkpt.delete()) || !newChkpt.renameTo(oldChkpt)) {
+			throw new IOException("EpochLog.commitChkpt: cannot delete " + oldChkpt);
+		}
+	}
+
+	/**
+	 * Appends the states of the last committed log to the (recovered) queue.
+	 *
+	 * @param fps
+	 *            The fingerprints of the logged states, which have to be
+	 *            added to the fingerprint set.
+	 */
+	public void recover(final IStateQueue stateQueue, final Set<Long> fps) throws IOException {
+		final File chkpt = new File(this.filePrefix + "epoch.chkpt");
+		if (!chkpt.exists()) {
+			// checkpoint written by a version without an EpochLog
+			return;
+		}
+		final ValueInputStream vis = new ValueInputStream(chkpt);
+		try {
+			while (vis.readInt() != 0) {
+				final long fp = vis.readLong();
+				final TLCState state = TLCState.Empty.createEmpty();
+				state.read(vis);
+				stateQueue.enqueue(state);
+				fps.add(fp);
+			}
+		} finally {
+			vis.close();
+		}
+	}
+}
@@ -4,6 +4,7 @@ package tlc2.tool.distributed;
 import java.io.Serializable;
 
 import tlc2.tool.TLCStateVec;
+import tlc2.tool.liveness.LiveRecord;
 import tlc2.util.LongVec;
 
 @SuppressWarnings("serial")
@@ -13,11 +14,22 @@ public class NextStateResult implements Serializable {
 	private final long statesComputed;
 	private final TLCStateVec[] nextStates;
 	private final LongVec[] nextFingerprints;
+	/**
+	 * The behavior graph records of the states handed to the worker (in the
+	 * same order) or null if liveness is not checked.
+	 */
+	private final LiveRecord[] liveRecords;
 	
 	public NextStateResult(TLCStateVec[] nextStates, LongVec[] nextFingerprints, 
 			long computationTime, long statesComputed) {
+		this(nextStates, nextFingerprints, null, computationTime, statesComputed);
+	}
+
+	public NextStateResult(TLCStateVec[] nextStates, LongVec[] nextFingerprints,
+			LiveRecord[] liveRecords, long computationTime, long statesComputed) {
 		this.nextStates = nextStates;
 		this.nextFingerprints = nextFingerprints;
+		this.liveRecords = liveRecords;
 		this.computationTime = computationTime;
 		this.statesComputed = statesComputed;
 	}
@@ -37,4 +49,8 @@ public class NextStateResult implements Serializable {
 	public TLCStateVec[] getNextStates() {
 		return nextStates;
 	}
+
+	public LiveRecord[] getLiveRecords() {
+		return liveRecords;
+	}
 }
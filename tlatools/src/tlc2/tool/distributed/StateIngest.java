@@ -0,0 +1,98 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.distributed;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+
+import tlc2.tool.TLCState;
+import tlc2.tool.TLCStateVec;
+import tlc2.tool.TLCTrace;
+import tlc2.tool.queue.IStateQueue;
+import tlc2.util.BitVector;
+import tlc2.util.LongVec;
+import tlc2.value.ValueInterner;
+
+/**
+ * The {@link StateIngest} is the server-side stage that hands the new states
+ * of a {@link NextStateResult} over to the {@link TLCTrace} and the
+ * {@link IStateQueue}.
+ * <p>
+ * All {@link TLCServerThread}s share the trace and the queue. Adding the new
+ * states one at a time made the server threads contend for the trace's and
+ * the queue's monitor for every single state. The ingest stage instead
+ * collects the new states of a result into a block, reserves the trace
+ * locations for the complete block at once and enqueues the block as a
+ * single unit. Each monitor is thus acquired once per result.
+ */
+final class StateIngest {
+
+	private final TLCServer tlcServer;
+
+	StateIngest(final TLCServer tlcServer) {
+		this.tlcServer = tlcServer;
+	}
+
+	/**
+	 * Adds the fingerprints of the given result to the fingerprint set and
+	 * ingests the states whose fingerprints have not been seen before.
+	 *
+	 * @param newStates
+	 *            The successor states as computed by a {@link TLCWorker}. The
+	 *            uid of each state is the trace location of its predecessor.
+	 * @param newFps
+	 *            The fingerprints of newStates
+	 */
+	void ingest(final TLCStateVec[] newStates, final LongVec[] newFps,
+			final ExecutorService executorService) throws IOException {
+		// A checkpoint of the fingerprint sets might be in progress.
+		// Adding the fingerprints and enqueueing the states thus has
+		// to be atomic with regards to the end of its epoch.
+		final Lock epochLock = this.tlcServer.epochLog.getLock();
+		epochLock.lock();
+		try {
+			// add fingerprints to fingerprint manager (delegates to
+			// corresponding fingerprint server)
+			// (Why isn't this done by workers directly?
+			// -> because if the worker crashes while computing states, the
+			// fp set would be inconsistent => making it an "atomic"
+			// operation)
+			final BitVector[] visited = this.tlcServer.fpSetManager.putBlock(
+					newFps, executorService);
+
+			// collect the newly computed states into a single block
+			int len = 0;
+			for (int i = 0; i < visited.length; i++) {
+				len += visited[i].trueCnt();
+			}
+			if (len == 0) {
+				return;
+			}
+			final TLCState[] block = new TLCState[len];
+			final long[] fps = new long[len];
+			// Share the values of the new states with identical values of
+			// the states in the queue (the interner is thread-safe)
+			final ValueInterner interner = ValueInterner.isEnabled() ? ValueInterner.getDefault() : null;
+			int idx = 0;
+			for (int i = 0; i < visited.length; i++) {
+				final BitVector.Iter iter = new BitVector.Iter(visited[i]);
+				int index;
+				while ((index = iter.next()) != -1) {
+					block[idx] = newStates[i].elementAt(index);
+					if (interner != null) {
+						block[idx].intern(interner);
+					}
+					fps[idx++] = newFps[i].elementAt(index);
+				}
+			}
+
+			// write state ids and state fps to .st file for checkpointing
+			this.tlcServer.trace.writeStates(block, fps);
+			this.tlcServer.epochLog.append(block, fps);
+			// add states to state queue for further processing
+			this.tlcServer.stateQueue.sEnqueue(block);
+		} finally {
+			epochLock.unlock();
+		}
+	}
+}
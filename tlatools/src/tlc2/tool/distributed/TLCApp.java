@@ -17,7 +17,11 @@ import tlc2.tool.Tool;
 import tlc2.tool.WorkerException;
 import tlc2.tool.fp.FPSet;
 import tlc2.tool.fp.FPSetConfiguration;
+import tlc2.tool.liveness.LiveCheck;
+import tlc2.tool.liveness.LiveRecord;
 import tlc2.util.FP64;
+import tlc2.util.LongObjTable;
+import tlc2.util.LongVec;
 import tlc2.value.Value;
 import util.FileUtil;
 import util.FilenameToStream;
@@ -229,6 +233,28 @@ public class TLCApp extends DistApp {
 		return this.tool.isInActions((TLCState) s1, (TLCState) s2);
 	}
 
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.DistApp#checkLiveness()
+	 */
+	public final boolean checkLiveness() {
+		return !this.tool.livenessIsTrue();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.DistApp#initLiveness()
+	 */
+	public final void initLiveness() {
+		LiveCheck.initRecording(this.tool, this.actions);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.DistApp#getLiveRecord(tlc2.tool.TLCState, long, tlc2.tool.StateVec, tlc2.util.LongVec, tlc2.util.LongObjTable)
+	 */
+	public final LiveRecord getLiveRecord(TLCState s, long fp,
+			StateVec nextStates, LongVec nextFPs, LongObjTable known) {
+		return LiveCheck.createRecord(s, fp, nextStates, nextFPs, known);
+	}
+
 	/* Reconstruct the initial state whose fingerprint is fp. */
 	/* (non-Javadoc)
 	 * @see tlc2.tool.distributed.DistApp#getState(long)
@@ -245,6 +271,13 @@ public class TLCApp extends DistApp {
 		return this.tool.getState(fp, s);
 	}
 
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.DistApp#getState(long, tlc2.tool.TLCState, int)
+	 */
+	public final TLCStateInfo getState(long fp, TLCState s, int action) {
+		return this.tool.getState(fp, s, action);
+	}
+
 	/* Reconstruct the info for the transition from s to s1. */
 	/* (non-Javadoc)
 	 * @see tlc2.tool.distributed.DistApp#getState(tlc2.tool.TLCState, tlc2.tool.TLCState)
@@ -43,10 +43,12 @@ import tlc2.tool.distributed.selector.BlockSelectorFactory;
 import tlc2.tool.distributed.selector.IBlockSelector;
 import tlc2.tool.fp.FPSet;
 import tlc2.tool.fp.FPSetFactory;
+import tlc2.tool.liveness.LiveCheck;
 import tlc2.tool.management.TLCStandardMBean;
-import tlc2.tool.queue.DiskStateQueue;
 import tlc2.tool.queue.IStateQueue;
+import tlc2.tool.queue.StateQueueFactory;
 import tlc2.util.FP64;
+import tlc2.value.ValueInterner;
 import util.Assert;
 import util.FileUtil;
 import util.SimpleFilenameToStream;
@@ -77,6 +79,12 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 	 */
 	private static final int REPORT_INTERVAL = Integer.getInteger(TLCServer.class.getName() + ".report", 1 * 60 * 1000);
 
+	/**
+	 * The interval between two checkpoints in seconds. Overrides the
+	 * -checkpoint option (minutes) if set, 0 disables checkpoints.
+	 */
+	private static final int CHKPT_INTERVAL = Integer.getInteger(TLCServer.class.getName() + ".chkptInterval", -1);
+
 	/**
 	 * If the state/ dir should be cleaned up after a successful model run
 	 */
@@ -112,6 +120,15 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 	public final IFPSetManager fpSetManager;
 	public final IStateQueue stateQueue;
 	public final TLCTrace trace;
+	/**
+	 * Records the new states while a checkpoint is in progress.
+	 */
+	final EpochLog epochLog;
+	/**
+	 * Hands the new states computed by the workers over to the trace and the
+	 * state queue.
+	 */
+	final StateIngest ingest;
 
 	private final DistApp work;
 	private final String metadir;
@@ -120,6 +137,23 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 	private TLCState errState = null;
 	private boolean done = false;
 	private boolean keepCallStack = false;
+
+	/**
+	 * true iff the spec has liveness properties. The {@link TLCWorker}s then
+	 * evaluate the liveness predicates and the {@link TLCServer} maintains
+	 * the behavior graph (see {@link LiveCheck}).
+	 */
+	private final boolean checkLiveness;
+	/**
+	 * The number of distinct states at which the next liveness check on the
+	 * partial behavior graph is due.
+	 */
+	private long nextLiveCheck = 1000;
+	/**
+	 * true iff a liveness property has been found violated. Contrary to
+	 * safety violations, there is no {@link TLCServer#errState} in this case.
+	 */
+	private boolean livenessViolated = false;
 	
 	/**
 	 * Main data structure used to maintain the list of active workers (ref
@@ -161,15 +195,23 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 		this.work = work;
 
 		// State Queue of unexplored states
-		this.stateQueue = new DiskStateQueue(this.metadir);
+		this.stateQueue = StateQueueFactory.getStateQueue(this.metadir);
 
 		// State trace file
 		this.trace = new TLCTrace(this.metadir, this.work.getFileName(),
 				this.work);
+		this.epochLog = new EpochLog(this.metadir);
+		this.ingest = new StateIngest(this);
 
 		// FPSet
 		this.fpSetManager = getFPSetManagerImpl(work, metadir, expectedFPSetCount);
 		
+		// Behavior graph for liveness checking
+		this.checkLiveness = work.checkLiveness();
+		if (this.checkLiveness) {
+			LiveCheck.init(work.tool, work.actions, this.metadir);
+		}
+		
 		// Determines the size of the state queue subset handed out to workers
 		blockSelector = BlockSelectorFactory.getBlockSelector(this);
 	}
@@ -322,7 +364,13 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 	}
 
 	/**
-	 * Creates a checkpoint for the currently running model run
+	 * Creates a checkpoint for the currently running model run.
+	 * <p>
+	 * Model checking is only suspended to checkpoint the state queue (and the
+	 * behavior graph). The fingerprint sets, which are the bulk of the
+	 * checkpoint, are checkpointed while model checking continues. The
+	 * {@link EpochLog} records the states found in the meantime.
+	 * 
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
@@ -332,17 +380,28 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 			MP.printMessage(EC.TLC_CHECKPOINT_START, "-- Checkpointing of run " + this.metadir
 					+ " compl");
 
-			// start checkpointing:
+			// start checkpointing (epoch marker):
 			this.stateQueue.beginChkpt();
-			this.trace.beginChkpt();
-			this.fpSetManager.checkpoint(this.filename);
+			if (this.checkLiveness) {
+				LiveCheck.beginChkpt();
+			}
+			this.epochLog.begin();
 			this.stateQueue.resumeAll();
+			
+			// checkpoint the fingerprint sets concurrently to model checking 
+			this.fpSetManager.checkpoint(this.filename);
+			this.epochLog.end(this.trace);
 			UniqueString.internTbl.beginChkpt(this.metadir);
+
 			// commit:
 			this.stateQueue.commitChkpt();
+			this.epochLog.commitChkpt();
 			this.trace.commitChkpt();
 			UniqueString.internTbl.commitChkpt(this.metadir);
 			this.fpSetManager.commitChkpt();
+			if (this.checkLiveness) {
+				LiveCheck.commitChkpt();
+			}
 			MP.printMessage(EC.TLC_CHECKPOINT_END, "eted.");
 		}
 	}
@@ -356,6 +415,46 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 		this.trace.recover();
 		this.stateQueue.recover();
 		this.fpSetManager.recover(this.filename);
+		if (this.checkLiveness) {
+			LiveCheck.recover();
+		}
+	}
+
+	/**
+	 * Checks the liveness properties on the partial behavior graph once the
+	 * number of distinct states has reached {@link TLCServer#nextLiveCheck}.
+	 * All {@link TLCServerThread}s are suspended during the check because
+	 * they add to the behavior graph.
+	 * 
+	 * @see ModelChecker#doPeriodicWork()
+	 */
+	private void doPeriodicLiveCheck() throws Exception {
+		final long stateNum = this.fpSetManager.size();
+		if (stateNum < this.nextLiveCheck || !this.stateQueue.suspendAll()) {
+			return;
+		}
+		try {
+			MP.printMessage(EC.TLC_CHECKING_TEMPORAL_PROPS, "current");
+			if (!LiveCheck.check()) {
+				setLivenessViolated();
+				return;
+			}
+			this.nextLiveCheck = (stateNum <= 640000) ? stateNum * 2 : stateNum + 640000;
+		} finally {
+			this.stateQueue.resumeAll();
+		}
+	}
+
+	/**
+	 * Stops model checking after {@link LiveCheck} has reported a
+	 * counter-example.
+	 */
+	private void setLivenessViolated() {
+		synchronized (this) {
+			this.livenessViolated = true;
+			this.done = true;
+		}
+		this.stateQueue.finishAll();
 	}
 
 	/**
@@ -376,6 +475,10 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 					if (!seen) {
 						initStates[i].uid = trace.writeState(fp);
 						stateQueue.enqueue(initStates[i]);
+						// build behavior graph for liveness checking
+						if (checkLiveness) {
+							LiveCheck.addInitState(initStates[i], fp);
+						}
 					}
 				}
 				if (!inConstraints || !seen) {
@@ -402,6 +505,9 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 	public final void close(boolean cleanup) throws IOException {
 		this.trace.close();
 		this.fpSetManager.close(cleanup);
+		if (this.checkLiveness) {
+			LiveCheck.close();
+		}
 		if (cleanup && !VETO_CLEANUP) {
 			FileUtil.deleteDir(new File(this.metadir), true);
 		}
@@ -409,19 +515,21 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 
 	/**
 	 * @param server
-	 * @throws IOException
-	 * @throws InterruptedException
-	 * @throws NotBoundException
+	 * @throws Exception
 	 */
-	protected void modelCheck() throws IOException, InterruptedException, NotBoundException {
+	protected void modelCheck() throws Exception {
 		/*
 		 * Before we initialize the server, we check if recovery is requested 
 		 */
 
+		//TODO if init states is huge, this might go OOM
+		Set<Long> initFPs = new TreeSet<Long>();
 		boolean recovered = false;
 		if (work.canRecover()) {
             MP.printMessage(EC.TLC_CHECKPOINT_RECOVER_START, metadir);
 			recover();
+			// Re-add the states found while the last checkpoint was taken
+			epochLog.recover(stateQueue, initFPs);
 			MP.printMessage(EC.TLC_CHECKPOINT_RECOVER_END, new String[] { String.valueOf(fpSetManager.size()),
                     String.valueOf(stateQueue.size())});
 			recovered = true;
@@ -431,8 +539,6 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 		 * Start initializing the server by calculating the init state(s)
 		 */
 
-		//TODO if init states is huge, this might go OOM
-		Set<Long> initFPs = new TreeSet<Long>();
 		if (!recovered) {
 			// Initialize with the initial states:
 			try {
@@ -494,22 +600,31 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
         long oldFPSetSize = 0;
 		
 		// Wait for completion, but print out progress report and checkpoint
-		// periodically.
+		// periodically. Wake up often enough to checkpoint in intervals
+		// shorter than the report interval.
+		final long interval = TLCGlobals.chkptDuration > 0 ? Math.min(
+				REPORT_INTERVAL, TLCGlobals.chkptDuration) : REPORT_INTERVAL;
+		long lastReport = System.currentTimeMillis();
     	synchronized (this) { //TODO convert to do/while to move initial wait into loop
-    		wait(REPORT_INTERVAL);
+    		wait(interval);
     	}
 		while (true) {
 			if (TLCGlobals.doCheckPoint()) {
 				// Periodically create a checkpoint assuming it is activated
 				checkpoint();
 			}
+			final boolean doReport = System.currentTimeMillis() - lastReport >= REPORT_INTERVAL;
+			if (doReport && checkLiveness) {
+				doPeriodicLiveCheck();
+			}
 			synchronized (this) {
-				if (!done) {
+				final long now = System.currentTimeMillis();
+				if (!done && doReport) {
 					final long numOfGenStates = getStatesGenerated();
 					final long fpSetSize = fpSetManager.size();
 					
 			        // print progress showing states per minute metric (spm)
-			        final double factor = REPORT_INTERVAL / 60000d;
+			        final double factor = (now - lastReport) / 60000d;
 					statesPerMinute = (long) ((numOfGenStates - oldNumOfGenStates) / factor);
 					distinctStatesPerMinute = (long) ((fpSetSize - oldFPSetSize) / factor);
 			        
@@ -518,16 +633,17 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 			                String.valueOf(numOfGenStates), String.valueOf(fpSetSize),
 			                String.valueOf(getNewStates()), String.valueOf(statesPerMinute), String.valueOf(distinctStatesPerMinute) });
 					
-					// Make the TLCServer main thread sleep for one report interval
-					wait(REPORT_INTERVAL);
-					
 					// keep current values as old values
 					oldFPSetSize = fpSetSize;
 					oldNumOfGenStates = numOfGenStates;
+					lastReport = now;
 				}
 				if (done) {
 					break;
 				}
+				// Make the TLCServer main thread sleep until the next report
+				// or checkpoint
+				wait(interval);
 			}
 		}
 		
@@ -564,6 +680,14 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 			}
 		}
 		
+		// Always check liveness properties at the end:
+		if (hasNoErrors() && checkLiveness) {
+			MP.printMessage(EC.TLC_CHECKING_TEMPORAL_PROPS, "complete");
+			if (!LiveCheck.check()) {
+				setLivenessViolated();
+			}
+		}
+		
 		// Only shutdown the thread pool if we exit gracefully
 		es.shutdown();
 		
@@ -626,7 +750,7 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 	 * @return true iff model checking has not found an error state
 	 */
 	private boolean hasNoErrors() {
-		return errState == null;
+		return errState == null && !livenessViolated;
 	}
 
 	/**
@@ -660,6 +784,9 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 
         MP.printMessage(EC.TLC_STATS, new String[] { String.valueOf(statesGenerated),
                 String.valueOf(distinctStates), String.valueOf(statesLeftInQueue) });
+        if (ValueInterner.isEnabled()) {
+            ValueInterner.getDefault().printStats();
+        }
         if (success) {
             MP.printMessage(EC.TLC_SEARCH_DEPTH, String.valueOf(level));
         }
@@ -672,6 +799,9 @@ public class TLCServer extends UnicastRemoteObject implements TLCServerRMI,
 		try {
 			TLCGlobals.setNumWorkers(0);
 			final TLCApp app = TLCApp.create(argv);
+			if (CHKPT_INTERVAL >= 0) {
+				TLCGlobals.chkptDuration = CHKPT_INTERVAL * 1000L;
+			}
 			if (expectedFPSetCount > 0) {
 				server = new DistributedFPSetTLCServer(app, expectedFPSetCount);
 			} else {
@@ -24,9 +24,10 @@ import tlc2.tool.TLCStateVec;
 import tlc2.tool.WorkerException;
 import tlc2.tool.distributed.selector.IBlockSelector;
 import tlc2.tool.fp.FPSet;
+import tlc2.tool.liveness.LiveCheck;
+import tlc2.tool.liveness.LiveRecord;
 import tlc2.tool.queue.IStateQueue;
 import tlc2.tool.queue.StateQueue;
-import tlc2.util.BitVector;
 import tlc2.util.IdThread;
 import tlc2.util.LongVec;
 
@@ -179,9 +180,10 @@ public class TLCServerThread extends IdThread {
 				// real work happens here:
 				// worker computes next states for states
 				boolean workDone = false;
+				NextStateResult res = null;
 				while (!workDone) {
 					try {
-						final NextStateResult res = this.worker.getNextStates(states);
+						res = this.worker.getNextStates(states);
 						newStates = res.getNextStates();
 						receivedStates += newStates[0].size();
 						newFps = res.getNextFingerprints();
@@ -224,29 +226,19 @@ public class TLCServerThread extends IdThread {
 					}
 				}
 
-				// add fingerprints to fingerprint manager (delegates to
-				// corresponding fingerprint server)
-				// (Why isn't this done by workers directly?
-				// -> because if the worker crashes while computing states, the
-				// fp set would be inconsistent => making it an "atomic"
-				// operation)
-				BitVector[] visited = this.tlcServer.fpSetManager
-						.putBlock(newFps, executorService);
-
-				// recreate newly computed states and add them to queue
-				for (int i = 0; i < visited.length; i++) {
-					BitVector.Iter iter = new BitVector.Iter(visited[i]);
-					int index;
-					while ((index = iter.next()) != -1) {
-						TLCState state = newStates[i].elementAt(index);
-						// write state id and state fp to .st file for
-						// checkpointing
-						long fp = newFps[i].elementAt(index);
-						state.uid = this.tlcServer.trace.writeState(state, fp);
-						// add state to state queue for further processing
-						stateQueue.sEnqueue(state);
+				// add the transitions of the states handed to the worker to
+				// the behavior graph. This happens before the new states get
+				// enqueued to have them recorded before they are done.
+				final LiveRecord[] liveRecords = res.getLiveRecords();
+				if (liveRecords != null) {
+					for (int i = 0; i < liveRecords.length; i++) {
+						LiveCheck.addNextState(states[i], liveRecords[i]);
 					}
 				}
+
+				// add the new states to the fingerprint set, the trace and
+				// the state queue
+				this.tlcServer.ingest.ingest(newStates, newFps, executorService);
 			}
 		} catch (Throwable e) {
 			TLCState state1 = null, state2 = null;
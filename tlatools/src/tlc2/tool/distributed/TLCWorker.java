@@ -28,13 +28,16 @@ import java.util.concurrent.RejectedExecutionException;
 import tlc2.TLCGlobals;
 import tlc2.output.EC;
 import tlc2.output.MP;
+import tlc2.tool.StateVec;
 import tlc2.tool.TLCState;
 import tlc2.tool.TLCStateVec;
 import tlc2.tool.WorkerException;
 import tlc2.tool.distributed.fp.IFPSetManager;
+import tlc2.tool.liveness.LiveRecord;
 import tlc2.util.BitVector;
 import tlc2.util.Cache;
 import tlc2.util.FP64;
+import tlc2.util.LongObjTable;
 import tlc2.util.LongVec;
 import tlc2.util.SimpleCache;
 import util.Assert;
@@ -47,7 +50,6 @@ public class TLCWorker extends UnicastRemoteObject implements TLCWorkerRMI {
 	
 	private static Timer keepAliveTimer;
 	private static RMIFilenameToStreamResolver fts;
-	private static final ExecutorService executorService = Executors.newCachedThreadPool();
 	private static TLCWorkerRunnable[] runnables = new TLCWorkerRunnable[0];
 	
 	private DistApp work;
@@ -61,6 +63,12 @@ public class TLCWorker extends UnicastRemoteObject implements TLCWorkerRMI {
 	private long overallStatesComputed;
 	
 	private final Cache cache;
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	/**
+	 * true iff the spec has liveness properties. The worker then evaluates
+	 * the behavior graph of the states it computes the successors for.
+	 */
+	private final boolean checkLiveness;
 	
 
 	public TLCWorker(final int threadId, DistApp work, IFPSetManager fpSetManager, String aHostname)
@@ -71,6 +79,7 @@ public class TLCWorker extends UnicastRemoteObject implements TLCWorkerRMI {
 				+ threadId);
 		
 		this.cache = new SimpleCache();
+		this.checkLiveness = work.checkLiveness();
 	}
 	
 	//TODO Remove once performance tests show superiority of TreeSet
@@ -99,18 +108,39 @@ public class TLCWorker extends UnicastRemoteObject implements TLCWorkerRMI {
 		try {
 			TLCState[] nstates;
 			final Set<Holder> treeSet = getSet();
+			// The behavior graph has to contain all transitions, not just
+			// those leading to new states. Thus, the liveness predicates
+			// are evaluated prior to the cache and fingerprint set lookups.
+			final LiveRecord[] liveRecords = checkLiveness ? new LiveRecord[states.length] : null;
+			// The tableau consistency of the distinct successors of the block
+			final LongObjTable known = checkLiveness ? new LongObjTable(states.length * 4) : null;
 			// Compute all of the next states of this block of states.
 			for (int i = 0; i < states.length; i++) {
 				state1 = states[i];
 				nstates = this.work.getNextStates(state1);
 				// Keep statistics about states computed during this invocation
 				statesComputed += nstates.length;
+				final StateVec liveNextStates = checkLiveness ? new StateVec(nstates.length + 1) : null;
+				final LongVec liveNextFPs = checkLiveness ? new LongVec(nstates.length + 1) : null;
 				// add all succ states/fps to the array designated for the corresponding fp server
 				for (int j = 0; j < nstates.length; j++) {
 					long fp = nstates[j].fingerPrint();
 					if (!cache.hit(fp)) {
 						treeSet.add(new Holder(fp, nstates[j], state1));
 					}
+					if (checkLiveness && this.work.isInModel(nstates[j])
+							&& this.work.isInActions(state1, nstates[j])) {
+						liveNextStates.addElement(nstates[j]);
+						liveNextFPs.addElement(fp);
+					}
+				}
+				if (checkLiveness) {
+					// Add the stuttering step (as ModelChecker does)
+					final long fp0 = state1.fingerPrint();
+					liveNextStates.addElement(state1);
+					liveNextFPs.addElement(fp0);
+					liveRecords[i] = this.work.getLiveRecord(state1,
+							fp0, liveNextStates, liveNextFPs, known);
 				}
 			}
 			
@@ -181,7 +211,7 @@ public class TLCWorker extends UnicastRemoteObject implements TLCWorkerRMI {
 			
 			// Prepare the return value.
 			final long computationTime = System.currentTimeMillis() - lastInvocation;
-			return new NextStateResult(newStates, newFps, computationTime, statesComputed);
+			return new NextStateResult(newStates, newFps, liveRecords, computationTime, statesComputed);
 		} catch (WorkerException e) {
 			throw e;
 		} catch (OutOfMemoryError e) {
@@ -206,7 +236,11 @@ public class TLCWorker extends UnicastRemoteObject implements TLCWorkerRMI {
 		
 		executorService.shutdown();
 		
-		keepAliveTimer.cancel();
+		// The timer is only scheduled by main, not by workers created in
+		// the server's VM.
+		if (keepAliveTimer != null) {
+			keepAliveTimer.cancel();
+		}
 		
 		UnicastRemoteObject.unexportObject(TLCWorker.this, true);
 	}
@@ -338,6 +372,10 @@ public class TLCWorker extends UnicastRemoteObject implements TLCWorkerRMI {
 					server.getConfigFileName(), server.getCheckDeadlock(),
 					server.getPreprocess(), fts);
 
+			if (work.checkLiveness()) {
+				work.initLiveness();
+			}
+
 			final IFPSetManager fpSetManager = server.getFPSetManager();
 			
 			// spawn twice as many worker threads as we have cores unless user
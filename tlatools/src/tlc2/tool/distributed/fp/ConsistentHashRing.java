@@ -0,0 +1,200 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.distributed.fp;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A consistent hashing ring which maps fingerprints to the index of the
+ * {@link FPSetRMI} responsible for it. Each fingerprint server occupies
+ * {@link ConsistentHashRing#getVirtualNodes()} points on the ring. A
+ * fingerprint belongs to the server owning the first point at or after the
+ * (mixed) fingerprint.
+ * <p>
+ * Contrary to the modulo partitioning of {@link FPSetManager}, removing a
+ * (crashed) server hands each of its arcs to a different successor. Its load
+ * thus spreads evenly across the remaining servers instead of doubling the
+ * load of a single neighbor. Adding a server only moves the arcs it takes over
+ * and leaves all other assignments untouched.
+ * <p>
+ * A ring is immutable. {@link ConsistentHashRing#add(int)} and
+ * {@link ConsistentHashRing#remove(int)} return a new generation which allows
+ * callers to keep older generations around to find where a fingerprint has
+ * been stored before.
+ */
+@SuppressWarnings("serial")
+public class ConsistentHashRing implements Serializable {
+
+	private final int virtualNodes;
+	/**
+	 * The ring points in ascending order.
+	 */
+	private final long[] points;
+	/**
+	 * owners[i] is the index of the server owning points[i].
+	 */
+	private final int[] owners;
+
+	public ConsistentHashRing(final int virtualNodes) {
+		this(virtualNodes, new long[0], new int[0]);
+	}
+
+	private ConsistentHashRing(final int virtualNodes, final long[] points, final int[] owners) {
+		if (virtualNodes <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.virtualNodes = virtualNodes;
+		this.points = points;
+		this.owners = owners;
+	}
+
+	/**
+	 * @return A new ring generation where the given server index owns
+	 *         {@link ConsistentHashRing#getVirtualNodes()} additional points.
+	 */
+	public ConsistentHashRing add(final int server) {
+		if (contains(server)) {
+			throw new IllegalArgumentException("Server " + server + " already on ring");
+		}
+		final int len = points.length;
+		final long[] newPoints = new long[len + virtualNodes];
+		final int[] newOwners = new int[len + virtualNodes];
+
+		// Points of the new server (sorted) merged into the existing points.
+		final long[] added = new long[virtualNodes];
+		for (int i = 0; i < virtualNodes; i++) {
+			added[i] = mix(((long) server << 32) | i);
+		}
+		Arrays.sort(added);
+
+		int i = 0, j = 0, k = 0;
+		while (i < len || j < virtualNodes) {
+			if (j >= virtualNodes || (i < len && points[i] <= added[j])) {
+				newPoints[k] = points[i];
+				newOwners[k++] = owners[i++];
+			} else {
+				newPoints[k] = added[j++];
+				newOwners[k++] = server;
+			}
+		}
+		return new ConsistentHashRing(virtualNodes, newPoints, newOwners);
+	}
+
+	/**
+	 * @return A new ring generation without the points of the given server.
+	 */
+	public ConsistentHashRing remove(final int server) {
+		int cnt = 0;
+		for (int i = 0; i < owners.length; i++) {
+			if (owners[i] != server) {
+				cnt++;
+			}
+		}
+		final long[] newPoints = new long[cnt];
+		final int[] newOwners = new int[cnt];
+		for (int i = 0, k = 0; i < owners.length; i++) {
+			if (owners[i] != server) {
+				newPoints[k] = points[i];
+				newOwners[k++] = owners[i];
+			}
+		}
+		return new ConsistentHashRing(virtualNodes, newPoints, newOwners);
+	}
+
+	/**
+	 * @return The index of the server responsible for the given fingerprint
+	 *         or <code>-1</code> if the ring is empty.
+	 */
+	public int getOwner(final long fp) {
+		if (points.length == 0) {
+			return -1;
+		}
+		int idx = Arrays.binarySearch(points, mix(fp));
+		if (idx < 0) {
+			// the insertion point is the first point greater than the key
+			idx = -(idx + 1);
+		}
+		// wrap around
+		if (idx == points.length) {
+			idx = 0;
+		}
+		return owners[idx];
+	}
+
+	/**
+	 * @return The indices of (at most) n distinct servers responsible for the
+	 *         given fingerprint. The first element is the owner (see
+	 *         {@link ConsistentHashRing#getOwner(long)}), the others are the
+	 *         servers owning the subsequent points clockwise. If the owner is
+	 *         taken off the ring, the second element becomes the owner.
+	 */
+	public int[] getOwners(final long fp, final int n) {
+		final int cnt = Math.min(n, size());
+		final int[] res = new int[cnt];
+		if (cnt == 0) {
+			return res;
+		}
+		int idx = Arrays.binarySearch(points, mix(fp));
+		if (idx < 0) {
+			idx = -(idx + 1);
+		}
+		int found = 0;
+		for (int i = 0; found < cnt && i < points.length; i++) {
+			final int owner = owners[(idx + i) % points.length];
+			boolean duplicate = false;
+			for (int j = 0; j < found; j++) {
+				if (res[j] == owner) {
+					duplicate = true;
+					break;
+				}
+			}
+			if (!duplicate) {
+				res[found++] = owner;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return true iff the given server owns points on this ring
+	 */
+	public boolean contains(final int server) {
+		for (int i = 0; i < owners.length; i++) {
+			if (owners[i] == server) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The number of points a single server occupies on the ring.
+	 */
+	public int getVirtualNodes() {
+		return virtualNodes;
+	}
+
+	/**
+	 * @return The number of servers on this ring.
+	 */
+	public int size() {
+		return points.length / virtualNodes;
+	}
+
+	/**
+	 * Fingerprints are placed on the ring through a bijective bit mixer. Arcs
+	 * are contiguous on the ring, but the fingerprints of an arc still spread
+	 * across the full fingerprint space. This matters because the
+	 * {@link FPSetRMI} implementations index their tables by the high bits of
+	 * a fingerprint and would only fill a fraction of their table otherwise.
+	 */
+	static long mix(long x) {
+		// Finalizer of MurmurHash3
+		x ^= x >>> 33;
+		x *= 0xff51afd7ed558ccdL;
+		x ^= x >>> 33;
+		x *= 0xc4ceb3fe1a85ec53L;
+		x ^= x >>> 33;
+		return x;
+	}
+}
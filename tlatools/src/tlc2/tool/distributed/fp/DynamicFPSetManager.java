@@ -1,11 +1,28 @@
 // Copyright (c) 2012 Markus Alexander Kuppe. All rights reserved.
 package tlc2.tool.distributed.fp;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import tlc2.output.EC;
+import tlc2.output.MP;
 import tlc2.tool.distributed.TLCWorker;
+import tlc2.util.BitVector;
+import tlc2.util.LongVec;
+import util.ToolIO;
 
 /**
  * Contrary to {@link FPSetManager}, this class is a {@link UnicastRemoteObject}
@@ -13,38 +30,154 @@ import tlc2.tool.distributed.TLCWorker;
  * and thus a single point of failure and bottleneck.<br>
  * On the up side, it results in {@link TLCWorker}s seeing a consistent
  * distributed fingerprint set at all times.
+ * <p>
+ * If virtual nodes are configured (see
+ * {@link DynamicFPSetManager#VIRTUAL_NODES}), the fingerprint space is
+ * partitioned with a {@link ConsistentHashRing} instead of modulo the number of
+ * servers. A crashed server's range is then spread across all remaining
+ * servers, and additional {@link FPSetRMI}s may register while model checking
+ * is running. Fingerprints stored before a server joined stay with their
+ * previous owner which is consulted (read-through) until the end of the run.
+ * <p>
+ * The {@link TLCWorker}s obtain a serialized copy of this manager when they
+ * connect. Their copies therefore never see the servers which join later in
+ * the run (nor the ranges those take over). This only weakens the workers'
+ * {@link #containsBlock(LongVec[])} filter: a fingerprint stored at a server
+ * unknown to a worker's copy is not found there, and the worker sends the
+ * state to the server, whose manager's put finds it.
+ * <p>
+ * Additionally, each fingerprint can be replicated to the next servers
+ * clockwise on the ring (see {@link DynamicFPSetManager#REPLICAS}). Replicas
+ * are written asynchronously after the owner has answered a put. If the owner
+ * fails, outstanding replica writes are completed first and the fingerprints
+ * are then looked up at the first replica, which has become the owner. Thus,
+ * losing a fingerprint server neither causes states to be explored again nor
+ * the number of distinct states to be wrong. Replicas lost with a failed
+ * server are not re-created.
  */
 @SuppressWarnings("serial")
 public class DynamicFPSetManager extends FPSetManager implements Serializable {
 
+	/**
+	 * The number of points each fingerprint server occupies on the consistent
+	 * hashing ring. <code>0</code> (the default) selects the modulo
+	 * partitioning of {@link FPSetManager}.
+	 */
+	public static final int VIRTUAL_NODES = Integer.getInteger(DynamicFPSetManager.class.getName() + ".virtualNodes", 0);
+
+	/**
+	 * The number of fingerprint servers each fingerprint is stored at.
+	 * Replication implies consistent hashing with
+	 * {@link DynamicFPSetManager#DEFAULT_VIRTUAL_NODES} unless
+	 * {@link DynamicFPSetManager#VIRTUAL_NODES} is set.
+	 */
+	public static final int REPLICAS = Integer.getInteger(DynamicFPSetManager.class.getName() + ".replicas", 1);
+
+	static final int DEFAULT_VIRTUAL_NODES = 64;
+
 	private int expectedNumOfServers;
 
+	/**
+	 * The current ring generation or <code>null</code> if modulo partitioning is used.
+	 */
+	private volatile ConsistentHashRing ring;
+	/**
+	 * Ring generations which have been superseded by servers joining after
+	 * model checking started (newest last). Fingerprints put while they were
+	 * current have been stored with their owners.
+	 */
+	private final List<ConsistentHashRing> history = new ArrayList<ConsistentHashRing>();
+	/**
+	 * Block operations acquire the read lock, a server joining the ring the
+	 * write lock. This guarantees that no fingerprint is put into the owner of
+	 * an outdated generation after its successor has checked it.
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final int replicas;
+	/**
+	 * The number of distinct fingerprints. With replication, the sum of the
+	 * sizes of the individual servers over-counts.
+	 */
+	private final AtomicLong distinct = new AtomicLong(0L);
+	/**
+	 * Executes the asynchronous replica writes (created lazily because only
+	 * the master's instance puts fingerprints).
+	 */
+	private transient ExecutorService replicator;
+	/**
+	 * Replica writes not yet known to be completed.
+	 */
+	private transient LinkedBlockingQueue<Future<?>> pendingReplicas;
+
 	public DynamicFPSetManager(int expectedNumOfServers) throws RemoteException {
+		this(expectedNumOfServers, REPLICAS > 1 && VIRTUAL_NODES == 0 ? DEFAULT_VIRTUAL_NODES : VIRTUAL_NODES,
+				REPLICAS);
+	}
+
+	public DynamicFPSetManager(int expectedNumOfServers, int virtualNodes) throws RemoteException {
+		this(expectedNumOfServers, virtualNodes, 1);
+	}
+
+	public DynamicFPSetManager(int expectedNumOfServers, int virtualNodes, int replicas) throws RemoteException {
 		super();
 		this.expectedNumOfServers = expectedNumOfServers;
-		
+		this.replicas = replicas;
+
 		// Guard against invalid values
-		if (expectedNumOfServers <= 0) {
+		if (expectedNumOfServers <= 0 || virtualNodes < 0 || replicas <= 0
+				|| (replicas > 1 && virtualNodes == 0)) {
 			throw new IllegalArgumentException();
 		}
-		
+
 		// Round expectedNumOfServers to power of 2
 		int log = 0;
 		while (expectedNumOfServers > 0) {
 			expectedNumOfServers = expectedNumOfServers / 2;
 			log++;
 		}
-		
+
 		// Zero upper bits of mask which won't be used when addressing the
 		// fingerprint servers anyway.
 		this.mask = (1L << log) - 1L;
+
+		if (virtualNodes > 0) {
+			this.ring = new ConsistentHashRing(virtualNodes);
+		}
 	}
 
 
 	/* (non-Javadoc)
 	 * @see tlc2.tool.distributed.IFPSetManager#register(tlc2.tool.distributed.FPSetRMI)
 	 */
-	public synchronized void register(FPSetRMI aFPSet, String hostname) throws FPSetManagerException {
+	public void register(FPSetRMI aFPSet, String hostname) throws FPSetManagerException {
+		if (ring != null) {
+			// With consistent hashing, servers may join at any time. Only
+			// those joining after the expected servers have registered (model
+			// checking might have started) move fingerprint ranges.
+			// (The write lock has to be acquired before the monitor. A block
+			// operation holding the read lock calls the synchronized reassign
+			// when a server fails, or waits for a replica write which does.)
+			lock.writeLock().lock();
+			try {
+				synchronized (this) {
+					if (fpSets.size() >= expectedNumOfServers) {
+						history.add(ring);
+					}
+					fpSets.add(new FPSets(aFPSet, hostname));
+					ring = ring.add(fpSets.size() - 1);
+					managerIsBroken = false;
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+			return;
+		}
+		registerModulo(aFPSet, hostname);
+	}
+
+	private synchronized void registerModulo(FPSetRMI aFPSet, String hostname) throws FPSetManagerException {
+
 		// Only accept additional FPSets as long as we haven't reached the
 		// expected number of FPSets. Adding more FPSets to the set than
 		// expected, would screw up the fail over code in reassign() as workers
@@ -59,4 +192,570 @@ public class DynamicFPSetManager extends FPSetManager implements Serializable {
 		                                        + "). Cannot handle additional servers");
 		}
 	}
+
+	/**
+	 * @return true iff the fingerprint space is partitioned by a
+	 *         {@link ConsistentHashRing}
+	 */
+	public boolean isConsistentHashing() {
+		return ring != null;
+	}
+
+	/**
+	 * @return The number of servers each fingerprint is stored at.
+	 */
+	public int getReplicas() {
+		return replicas;
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#reassign(int)
+	 */
+	public synchronized int reassign(final int index) {
+		if (ring == null) {
+			return super.reassign(index);
+		}
+		if (index < 0 || index >= this.fpSets.size()) {
+			throw new IllegalArgumentException("index not within bounds");
+		}
+
+		// Take the broken FPSet off the ring. Its arcs fall to the successors
+		// of its individual points which are (most likely) distinct servers.
+		this.fpSets.get(index).setUnavailable();
+		ring = ring.remove(index);
+
+		for (int i = 0; i < this.fpSets.size(); i++) {
+			if (ring.contains(i)) {
+				return i;
+			}
+		}
+		managerIsBroken = true;
+		return -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#getIndex(long)
+	 */
+	protected int getIndex(long fp) {
+		final ConsistentHashRing r = ring;
+		if (r == null) {
+			return super.getIndex(fp);
+		}
+		return Math.max(r.getOwner(fp), 0);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#getFPSetIndex(long)
+	 */
+	public int getFPSetIndex(long fp) {
+		if (ring == null) {
+			return super.getFPSetIndex(fp);
+		}
+		return getIndex(fp);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#put(long)
+	 */
+	public boolean put(long fp) {
+		if (ring == null) {
+			return super.put(fp);
+		}
+		return !route(toBlock(fp), null, true)[0].get(0);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#contains(long)
+	 */
+	public boolean contains(long fp) {
+		if (ring == null) {
+			return super.contains(fp);
+		}
+		return !route(toBlock(fp), null, false)[0].get(0);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#putBlock(tlc2.util.LongVec[])
+	 */
+	public BitVector[] putBlock(LongVec[] fps) {
+		if (ring == null) {
+			return super.putBlock(fps);
+		}
+		return route(fps, null, true);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#putBlock(tlc2.util.LongVec[], java.util.concurrent.ExecutorService)
+	 */
+	public BitVector[] putBlock(LongVec[] fps, ExecutorService executorService) {
+		if (ring == null) {
+			return super.putBlock(fps, executorService);
+		}
+		return route(fps, executorService, true);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#containsBlock(tlc2.util.LongVec[])
+	 */
+	public BitVector[] containsBlock(LongVec[] fps) {
+		if (ring == null) {
+			return super.containsBlock(fps);
+		}
+		return route(fps, null, false);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#containsBlock(tlc2.util.LongVec[], java.util.concurrent.ExecutorService)
+	 */
+	public BitVector[] containsBlock(LongVec[] fps, ExecutorService executorService) {
+		if (ring == null) {
+			return super.containsBlock(fps, executorService);
+		}
+		return route(fps, executorService, false);
+	}
+
+	private static LongVec[] toBlock(final long fp) {
+		final LongVec vec = new LongVec(1);
+		vec.addElement(fp);
+		return new LongVec[] { vec };
+	}
+
+	/**
+	 * Contrary to the modulo partitioning, the caller's pre-sorting of
+	 * fingerprints is not trusted. A {@link TLCWorker} might have sorted them
+	 * with an outdated copy of this manager (the copy does not learn about
+	 * servers joining later). Thus, each fingerprint is routed to its owner in
+	 * the current ring generation. The result is scattered back to match the
+	 * order of the given {@link LongVec}s.
+	 *
+	 * @return bits are set for fingerprints which have _not_ been seen before
+	 */
+	private BitVector[] route(final LongVec[] fps, final ExecutorService executorService, final boolean put) {
+		// Flatten the input
+		int total = 0;
+		for (int i = 0; i < fps.length; i++) {
+			total += fps[i].size();
+		}
+		final long[] flat = new long[total];
+		for (int i = 0, k = 0; i < fps.length; i++) {
+			for (int j = 0; j < fps[i].size(); j++) {
+				flat[k++] = fps[i].elementAt(j);
+			}
+		}
+		final boolean[] isNew = new boolean[total];
+
+		lock.readLock().lock();
+		try {
+			int[] pending = readThrough(flat, executorService);
+			while (pending.length > 0) {
+				final ConsistentHashRing current = ring;
+				if (current.size() == 0) {
+					ToolIO.out.println("Warning: there is no fp server available.");
+					// Indicate for all fingerprints of the lost fpsets that
+					// they are new.
+					for (int i = 0; i < pending.length; i++) {
+						isNew[pending[i]] = true;
+					}
+					break;
+				}
+				// Group the pending fingerprints by their owner
+				final int[][] groups = group(pending, flat, current);
+				final BitVector[] results = execute(groups, flat, executorService, put);
+				if (put && replicas > 1) {
+					replicate(groups, results, flat, current);
+				}
+
+				// Collect the fingerprints of failed servers and re-route
+				// them to their new owners in the next round.
+				final IntList failed = new IntList();
+				for (int s = 0; s < groups.length; s++) {
+					if (groups[s] == null) {
+						continue;
+					}
+					if (results[s] == null) {
+						failed.addAll(groups[s]);
+						continue;
+					}
+					for (int i = 0; i < groups[s].length; i++) {
+						isNew[groups[s][i]] = results[s].get(i);
+					}
+				}
+				pending = failed.toArray();
+				if (pending.length > 0 && replicas > 1) {
+					// The first replica takes over the fingerprints of a failed
+					// owner. Make sure it has seen all of them.
+					flush();
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (put) {
+			int cnt = 0;
+			for (int i = 0; i < isNew.length; i++) {
+				if (isNew[i]) {
+					cnt++;
+				}
+			}
+			distinct.addAndGet(cnt);
+		}
+
+		// Scatter the result back
+		final BitVector[] res = new BitVector[fps.length];
+		for (int i = 0, k = 0; i < fps.length; i++) {
+			res[i] = new BitVector(fps[i].size());
+			for (int j = 0; j < fps[i].size(); j++) {
+				if (isNew[k++]) {
+					res[i].set(j);
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Looks up the fingerprints whose owner has changed with a server joining
+	 * at the previous owners.
+	 *
+	 * @return The indices of the fingerprints not known to a previous owner.
+	 */
+	private int[] readThrough(final long[] flat, final ExecutorService executorService) {
+		final boolean[] seen = new boolean[flat.length];
+		if (!history.isEmpty()) {
+			final ConsistentHashRing current = ring;
+			final int[] checked = new int[flat.length];
+			for (int i = 0; i < flat.length; i++) {
+				checked[i] = current.getOwner(flat[i]);
+			}
+			for (int g = history.size() - 1; g >= 0; g--) {
+				final ConsistentHashRing previous = history.get(g);
+				final IntList candidates = new IntList();
+				for (int i = 0; i < flat.length; i++) {
+					if (seen[i]) {
+						continue;
+					}
+					final int owner = previous.getOwner(flat[i]);
+					if (owner != checked[i] && fpSets.get(owner).isAvailable()) {
+						checked[i] = owner;
+						candidates.add(i);
+					}
+				}
+				if (candidates.size() == 0) {
+					continue;
+				}
+				final int[][] groups = group(candidates.toArray(), flat, previous);
+				final BitVector[] results = execute(groups, flat, executorService, false);
+				for (int s = 0; s < groups.length; s++) {
+					// A failed previous owner has lost its fingerprints anyway
+					if (groups[s] != null && results[s] != null) {
+						for (int i = 0; i < groups[s].length; i++) {
+							// containsBlock sets the bit if _not_ contained
+							seen[groups[s][i]] = !results[s].get(i);
+						}
+					}
+				}
+			}
+		}
+		final IntList pending = new IntList();
+		for (int i = 0; i < flat.length; i++) {
+			if (!seen[i]) {
+				pending.add(i);
+			}
+		}
+		return pending.toArray();
+	}
+
+	/**
+	 * @return groups[s] holds the indices of the fingerprints owned by server
+	 *         s in the given ring, <code>null</code> if s owns none
+	 */
+	private int[][] group(final int[] indices, final long[] flat, final ConsistentHashRing r) {
+		final int[] owners = new int[indices.length];
+		final int[] counts = new int[fpSets.size()];
+		for (int i = 0; i < indices.length; i++) {
+			owners[i] = r.getOwner(flat[indices[i]]);
+			counts[owners[i]]++;
+		}
+		final int[][] groups = new int[counts.length][];
+		for (int s = 0; s < counts.length; s++) {
+			if (counts[s] > 0) {
+				groups[s] = new int[counts[s]];
+				counts[s] = 0;
+			}
+		}
+		for (int i = 0; i < indices.length; i++) {
+			groups[owners[i]][counts[owners[i]]++] = indices[i];
+		}
+		return groups;
+	}
+
+	/**
+	 * Sends each group to its server (concurrently if an
+	 * {@link ExecutorService} is given).
+	 *
+	 * @return results[s] is <code>null</code> if server s failed (it has been
+	 *         taken off the ring)
+	 */
+	private BitVector[] execute(final int[][] groups, final long[] flat,
+			final ExecutorService executorService, final boolean put) {
+		final BitVector[] results = new BitVector[groups.length];
+		final List<Future<BitVector>> futures = new ArrayList<Future<BitVector>>(groups.length);
+		for (int s = 0; s < groups.length; s++) {
+			if (groups[s] == null) {
+				futures.add(null);
+				continue;
+			}
+			final LongVec block = new LongVec(groups[s].length);
+			for (int i = 0; i < groups[s].length; i++) {
+				block.addElement(flat[groups[s][i]]);
+			}
+			final FPSets fpSet = this.fpSets.get(s);
+			final Callable<BitVector> callable = new Callable<BitVector>() {
+				public BitVector call() throws Exception {
+					return put ? fpSet.putBlock(block) : fpSet.containsBlock(block);
+				}
+			};
+			if (executorService == null) {
+				try {
+					results[s] = callable.call();
+				} catch (Exception e) {
+					handleFailure(s, e);
+				}
+				futures.add(null);
+			} else {
+				futures.add(executorService.submit(callable));
+			}
+		}
+		for (int s = 0; s < futures.size(); s++) {
+			final Future<BitVector> future = futures.get(s);
+			if (future == null) {
+				continue;
+			}
+			try {
+				results[s] = future.get();
+			} catch (InterruptedException e) {
+				handleFailure(s, e);
+			} catch (ExecutionException e) {
+				handleFailure(s, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Asynchronously writes the fingerprints new to their owner to the replica
+	 * servers. The fingerprints of a block are batched into a single
+	 * {@link FPSetRMI#putBlock(LongVec)} invocation per replica server.
+	 */
+	private void replicate(final int[][] groups, final BitVector[] results, final long[] flat,
+			final ConsistentHashRing current) {
+		final LongVec[] blocks = new LongVec[fpSets.size()];
+		for (int s = 0; s < groups.length; s++) {
+			if (groups[s] == null || results[s] == null) {
+				continue;
+			}
+			for (int i = 0; i < groups[s].length; i++) {
+				if (!results[s].get(i)) {
+					// Not new to its owner, thus written to replicas before
+					continue;
+				}
+				final long fp = flat[groups[s][i]];
+				final int[] owners = current.getOwners(fp, replicas);
+				for (int r = 1; r < owners.length; r++) {
+					if (blocks[owners[r]] == null) {
+						blocks[owners[r]] = new LongVec();
+					}
+					blocks[owners[r]].addElement(fp);
+				}
+			}
+		}
+		for (int r = 0; r < blocks.length; r++) {
+			if (blocks[r] == null) {
+				continue;
+			}
+			final int index = r;
+			final FPSets fpSet = this.fpSets.get(r);
+			final LongVec block = blocks[r];
+			getPendingReplicas().add(getReplicator().submit(new Runnable() {
+				public void run() {
+					try {
+						fpSet.putBlock(block);
+					} catch (Exception e) {
+						handleFailure(index, e);
+					}
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Waits for all outstanding replica writes to complete. If the calling
+	 * thread is interrupted, it still waits for the writes to complete and
+	 * returns with its interrupt flag set.
+	 */
+	public void flush() {
+		if (replicas <= 1) {
+			return;
+		}
+		boolean interrupted = false;
+		Future<?> future;
+		while ((future = getPendingReplicas().peek()) != null) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				// Wait for the write once more, callers rely on all of them
+				// having completed
+				interrupted = true;
+				continue;
+			} catch (ExecutionException e) {
+				// not expected to happen, failures are handled by the task
+				MP.printError(EC.GENERAL, "writing fingerprint replicas", e.getCause());
+			}
+			getPendingReplicas().remove(future);
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized ExecutorService getReplicator() {
+		if (replicator == null) {
+			replicator = Executors.newFixedThreadPool(Math.max(1, Math.min(fpSets.size(), 4)));
+		}
+		return replicator;
+	}
+
+	private synchronized LinkedBlockingQueue<Future<?>> getPendingReplicas() {
+		if (pendingReplicas == null) {
+			pendingReplicas = new LinkedBlockingQueue<Future<?>>();
+		}
+		return pendingReplicas;
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#checkpoint(java.lang.String)
+	 */
+	public void checkpoint(String fname) throws InterruptedException, IOException {
+		// A checkpoint has to include the replicas
+		flush();
+		super.checkpoint(fname);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#recover(java.lang.String)
+	 */
+	public void recover(String fname) throws InterruptedException, IOException {
+		super.recover(fname);
+		if (replicas > 1) {
+			// Each fingerprint has been written to all of its replicas
+			// before the checkpoint was taken (this is exact unless a server
+			// failed before the checkpoint).
+			long sum = 0L;
+			for (int i = 0; i < this.fpSets.size(); i++) {
+				sum += this.fpSets.get(i).size();
+			}
+			distinct.set(sum / Math.min(replicas, Math.max(1, ring.size())));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#close(boolean)
+	 */
+	public void close(boolean cleanup) throws IOException {
+		flush();
+		synchronized (this) {
+			if (replicator != null) {
+				replicator.shutdown();
+			}
+		}
+		super.close(cleanup);
+	}
+
+	private void handleFailure(final int index, final Exception e) {
+		ToolIO.out.println("Warning: Failed to connect from "
+				+ this.getHostName() + " to the fp server at "
+				+ this.fpSets.get(index).getHostname() + ".\n" + e.getMessage());
+		reassign(index);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#size()
+	 */
+	public long size() {
+		if (ring == null) {
+			return super.size();
+		}
+		if (replicas > 1) {
+			return distinct.get();
+		}
+		// Do not ask dead servers (it would re-assign them over and over again)
+		long res = 0;
+		for (int i = 0; i < this.fpSets.size(); i++) {
+			final FPSets fpSet = this.fpSets.get(i);
+			if (!fpSet.isAvailable()) {
+				continue;
+			}
+			try {
+				res += fpSet.size();
+			} catch (IOException e) {
+				handleFailure(i, e);
+			}
+		}
+		return res;
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.distributed.fp.FPSetManager#getStatesSeen()
+	 */
+	public long getStatesSeen() {
+		if (ring == null) {
+			return super.getStatesSeen();
+		}
+		long res = 1; // the initial state
+		for (int i = 0; i < this.fpSets.size(); i++) {
+			final FPSets fpSet = this.fpSets.get(i);
+			if (!fpSet.isAvailable()) {
+				continue;
+			}
+			try {
+				res += fpSet.getStatesSeen();
+			} catch (RemoteException e) {
+				handleFailure(i, e);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * A minimal growable int array.
+	 */
+	private static class IntList {
+		private int[] elems = new int[16];
+		private int size = 0;
+
+		void add(final int i) {
+			if (size == elems.length) {
+				final int[] newElems = new int[size * 2];
+				System.arraycopy(elems, 0, newElems, 0, size);
+				elems = newElems;
+			}
+			elems[size++] = i;
+		}
+
+		void addAll(final int[] is) {
+			for (int i = 0; i < is.length; i++) {
+				add(is[i]);
+			}
+		}
+
+		int size() {
+			return size;
+		}
+
+		int[] toArray() {
+			final int[] res = new int[size];
+			System.arraycopy(elems, 0, res, 0, size);
+			return res;
+		}
+	}
 }
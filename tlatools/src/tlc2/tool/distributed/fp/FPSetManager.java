@@ -176,7 +176,10 @@ public abstract class FPSetManager implements IFPSetManager {
 			FPSets next = this.fpSets.get(i);
 			if (next != null && next != curr) {
 				try {
-					curr.exit(cleanup);
+					// A dead FPSet cannot be exited anymore
+					if (curr.isAvailable()) {
+						curr.exit(cleanup);
+					}
 				} catch (UnmarshalException e) {
 					// happens when the DiskFPSet closes it calls System.exit
 				} catch (Exception e) {
@@ -185,7 +188,7 @@ public abstract class FPSetManager implements IFPSetManager {
 				curr = next;
 			}
 		}
-		if (curr != null) {
+		if (curr != null && curr.isAvailable()) {
 			try {
 				curr.exit(cleanup);
 			} catch (UnmarshalException e) {
@@ -433,12 +436,17 @@ public abstract class FPSetManager implements IFPSetManager {
 			// Start checkFP on all FPSets concurrently
 			// (checkFPs scans the full set sequentially!)
 			final CompletionService<Double> ecs = new ExecutorCompletionService<Double>(executorService);
+			int submitted = 0;
 			for (int i = 0; i < len; i++) {
-				ecs.submit(new CheckFPsCallable(fpSets.get(i).getFpset()));
+				// Skip dead FPSets (they are not replaced in the list with consistent hashing)
+				if (fpSets.get(i).isAvailable()) {
+					ecs.submit(new CheckFPsCallable(fpSets.get(i).getFpset()));
+					submitted++;
+				}
 			}
 			// Return minimum value
 			double res = Double.MAX_VALUE;
-			for (int i = 0; i < len; i++) {
+			for (int i = 0; i < submitted; i++) {
 				try {
 					res = Math.min(res, ecs.take().get());
 				} catch (InterruptedException e) {
@@ -521,7 +529,7 @@ public abstract class FPSetManager implements IFPSetManager {
 			curr = this.fpSets.get(idx);
 			if (curr != null) {
 				chkpts[cnt] = new Checkpoint(idx, fname, chkpt);
-				chkpts[cnt].run();
+				chkpts[cnt].start();
 				cnt++;
 				break;
 			}
@@ -540,7 +548,7 @@ public abstract class FPSetManager implements IFPSetManager {
 			if (next != null && next != curr) {
 				curr = next;
 				chkpts[cnt] = new Checkpoint(i, fname, chkpt);
-				chkpts[cnt].run();
+				chkpts[cnt].start();
 				cnt++;
 			}
 		}
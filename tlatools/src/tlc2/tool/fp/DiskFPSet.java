@@ -72,10 +72,15 @@ public abstract class DiskFPSet extends FPSet implements FPSetStatistic {
 	 */
 	protected String metadir;
 	/**
-	 * name of backing file
+	 * name of backing file. It is either {@link #liveFilename} or the name of
+	 * a checkpoint (see {@link DiskFPSet#beginChkpt(String)}).
 	 */
 	protected String fpFilename;
 	protected String tmpFilename;
+	/**
+	 * name of the file a flush merges into
+	 */
+	protected String liveFilename;
 
 	/**
 	 * Number of locks in the striped lock (#StripeLocks = 2^LogLockCnt).<br>
@@ -257,6 +262,7 @@ public abstract class DiskFPSet extends FPSet implements FPSetStatistic {
 		filename = metadir + FileUtil.separator + filename;
 		this.tmpFilename = filename + ".tmp";
 		this.fpFilename = filename + ".fp";
+		this.liveFilename = this.fpFilename;
 		
 		// allocate array of BufferedRAF objects (+1 for main thread)
 		this.braf = new BufferedRandomAccessFile[numThreads];
@@ -765,21 +771,32 @@ public abstract class DiskFPSet extends FPSet implements FPSetStatistic {
 		return (1.0 / dis);
 	}
 
-	/* (non-Javadoc)
+	/**
+	 * A checkpoint is incremental: The backing disk file is immutable until
+	 * the next flush replaces it. Rather than copying the file, it is renamed
+	 * to the checkpoint and keeps backing the set. The next flush merges it
+	 * into a new file and leaves it to the checkpoint. If nothing has been
+	 * flushed since the previous checkpoint, the previous checkpoint still
+	 * backs the set and is reused as is. Either way the locks are only held
+	 * to flush the in-memory table and to rename the file.
+	 * 
 	 * @see tlc2.tool.fp.FPSet#beginChkpt(java.lang.String)
 	 */
 	public final void beginChkpt(String fname) throws IOException {
-		
 		this.flusherChosen.set(true);
 		rwLock.acquireAllLocks();
-		
-		flusher.flushTable();
-		FileUtil.copyFile(this.fpFilename,
-				this.getChkptName(fname, "tmp"));
-		checkPointMark++;
+		try {
+			flusher.flushTable();
+			checkPointMark++;
 
-		rwLock.releaseAllLocks();
-		this.flusherChosen.set(false);
+			if (this.fpFilename.equals(this.liveFilename)) {
+				// new fingerprints since the previous checkpoint
+				this.reopenFiles(this.getChkptName(fname, "tmp"));
+			}
+		} finally {
+			rwLock.releaseAllLocks();
+			this.flusherChosen.set(false);
+		}
 	}
 
 	/* (non-Javadoc)
@@ -788,10 +805,60 @@ public abstract class DiskFPSet extends FPSet implements FPSetStatistic {
 	public final void commitChkpt(String fname) throws IOException {
 		File oldChkpt = new File(this.getChkptName(fname, "chkpt"));
 		File newChkpt = new File(this.getChkptName(fname, "tmp"));
-		if (!newChkpt.renameTo(oldChkpt)) {
-			throw new IOException("DiskFPSet.commitChkpt: cannot delete "
-					+ oldChkpt);
+		if (!newChkpt.exists()) {
+			// beginChkpt has reused the previous checkpoint
+			return;
 		}
+		rwLock.acquireAllLocks();
+		try {
+			final boolean backing = this.fpFilename.equals(newChkpt.getPath());
+			if (backing) {
+				this.closeFiles();
+			}
+			if ((oldChkpt.exists() && !oldChkpt.delete()) || !newChkpt.renameTo(oldChkpt)) {
+				throw new IOException("DiskFPSet.commitChkpt: cannot delete "
+						+ oldChkpt);
+			}
+			if (backing) {
+				this.fpFilename = oldChkpt.getPath();
+				this.openFiles();
+			}
+		} finally {
+			rwLock.releaseAllLocks();
+		}
+	}
+
+	/**
+	 * Renames the backing disk file to newName. All locks have to be held.
+	 */
+	private void reopenFiles(final String newName) throws IOException {
+		this.closeFiles();
+		final File newFile = new File(newName);
+		newFile.delete();
+		if (!new File(this.fpFilename).renameTo(newFile)) {
+			throw new IOException("DiskFPSet: cannot rename " + this.fpFilename + " to " + newName);
+		}
+		this.fpFilename = newName;
+		this.openFiles();
+	}
+
+	private void closeFiles() throws IOException {
+		for (int i = 0; i < this.braf.length; i++) {
+			this.braf[i].close();
+		}
+		for (int i = 0; i < this.brafPool.length; i++) {
+			this.brafPool[i].close();
+		}
+	}
+
+	private void openFiles() throws IOException {
+		for (int i = 0; i < this.braf.length; i++) {
+			this.braf[i] = new BufferedRandomAccessFile(this.fpFilename, "r");
+		}
+		for (int i = 0; i < this.brafPool.length; i++) {
+			this.brafPool[i] = new BufferedRandomAccessFile(this.fpFilename, "r");
+		}
+		this.poolIndex = 0;
 	}
 
 	/* (non-Javadoc)
@@ -800,6 +867,7 @@ public abstract class DiskFPSet extends FPSet implements FPSetStatistic {
 	public final void recover(String fname) throws IOException {
 		RandomAccessFile chkptRAF = new BufferedRandomAccessFile(
 				this.getChkptName(fname, "chkpt"), "r");
+		this.fpFilename = this.liveFilename;
 		RandomAccessFile currRAF = new BufferedRandomAccessFile(
 				this.fpFilename, "rw");
 
@@ -920,18 +988,11 @@ public abstract class DiskFPSet extends FPSet implements FPSetStatistic {
 	public final void recover() throws IOException {
 		this.prepareRecovery();
 
-		long recoverPtr = TLCTrace.getRecoverPtr();
-		@SuppressWarnings("resource")
-		RandomAccessFile braf = new BufferedRandomAccessFile(
-				TLCTrace.getFilename(), "r");
-		while (braf.getFilePointer() < recoverPtr) {
-			// drop readLongNat
-			if (braf.readInt() < 0)
-				braf.readInt();
-
-			long fp = braf.readLong();
-			this.recoverFP(fp);
+		final TLCTrace.RecoveryEnumerator elements = new TLCTrace.RecoveryEnumerator();
+		while (elements.hasMoreElements()) {
+			this.recoverFP(elements.nextFP());
 		}
+		elements.close();
 
 		this.completeRecovery();
 	}
@@ -1261,22 +1322,10 @@ public abstract class DiskFPSet extends FPSet implements FPSetStatistic {
 			// clean up
 			raf.close();
 			tmpRAF.close();
-			String realName = fpFilename;
-			File currFile = new File(realName);
-			currFile.delete();
-			boolean status = tmpFile.renameTo(currFile);
-			Assert.check(status, EC.SYSTEM_UNABLE_NOT_RENAME_FILE);
+			replaceDiskFile(tmpFile);
 
 			// reopen a BufferedRAF for each thread
-			for (int i = 0; i < braf.length; i++) {
-				// Better way would be to provide method BRAF.open
-				braf[i] = new BufferedRandomAccessFile(realName, "r");
-			}
-			for (int i = 0; i < brafPool.length; i++) {
-				// Better way would be to provide method BRAF.open
-				brafPool[i] = new BufferedRandomAccessFile(realName, "r");
-			}
-			poolIndex = 0;
+			openFiles();
 		}
 
 		public final void mergeNewEntries(long[] buff, int buffLen)
@@ -1294,9 +1343,21 @@ public abstract class DiskFPSet extends FPSet implements FPSetStatistic {
 			// clean up
 			currRAF.close();
 			tmpRAF.close();
-			currFile.delete();
+			replaceDiskFile(tmpFile);
+		}
+
+		/**
+		 * Replaces the backing disk file with tmpFile. A backing file which is
+		 * a checkpoint is left to the checkpoint.
+		 */
+		private void replaceDiskFile(final File tmpFile) {
+			File currFile = new File(liveFilename);
+			if (fpFilename.equals(liveFilename)) {
+				currFile.delete();
+			}
 			boolean status = tmpFile.renameTo(currFile);
 			Assert.check(status, EC.SYSTEM_UNABLE_NOT_RENAME_FILE);
+			fpFilename = liveFilename;
 		}
 		
 		protected abstract void mergeNewEntries(RandomAccessFile inRAF, RandomAccessFile outRAF) throws IOException;
@@ -292,19 +292,19 @@ public class MSBDiskFPSet extends HeapBasedDiskFPSet {
 	     * @exception NoSuchElementException if iteration is empty.
 		 */
 		public long getLast() {
-			int len = buff.length - 1;
-			long[] bucket = buff[len];
-
 			// find last bucket containing elements, buff elements might be null if
 			// no fingerprint for such an index has been added to the DiskFPSet
-			while (bucket == null) {
-				bucket = buff[--len];
-			}
-			
-			// find last element > 0 in bucket
-			for (int i = bucket.length - 1; i >= 0 ;i--) {
-				if (bucket[i] > 0) {
-					return bucket[i];
+			// or only contain fingerprints flushed by a previous flush
+			for (int len = buff.length - 1; len >= 0; len--) {
+				final long[] bucket = buff[len];
+				if (bucket == null) {
+					continue;
+				}
+				// find last element > 0 in bucket
+				for (int i = bucket.length - 1; i >= 0 ;i--) {
+					if (bucket[i] > 0) {
+						return bucket[i];
+					}
 				}
 			}
 			throw new NoSuchElementException();
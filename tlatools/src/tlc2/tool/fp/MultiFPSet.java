@@ -11,7 +11,6 @@ import java.rmi.server.UnicastRemoteObject;
 
 import tlc2.output.EC;
 import tlc2.tool.TLCTrace;
-import tlc2.util.BufferedRandomAccessFile;
 import util.Assert;
 
 /**
@@ -190,13 +189,12 @@ public class MultiFPSet extends FPSet {
 			this.sets[i].prepareRecovery();
 		}
 
-		long recoverPtr = TLCTrace.getRecoverPtr();
-		BufferedRandomAccessFile braf = new BufferedRandomAccessFile(TLCTrace.getFilename(), "r");
-		while (braf.getFilePointer() < recoverPtr) {
-			braf.readLongNat(); /* drop */
-			long fp = braf.readLong();
+		final TLCTrace.RecoveryEnumerator elements = new TLCTrace.RecoveryEnumerator();
+		while (elements.hasMoreElements()) {
+			long fp = elements.nextFP();
 			getFPSet(fp).recoverFP(fp);
 		}
+		elements.close();
 
 		for (int i = 0; i < this.sets.length; i++) {
 			this.sets[i].completeRecovery();
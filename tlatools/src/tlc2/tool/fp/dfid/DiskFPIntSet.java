@@ -0,0 +1,613 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.fp.dfid;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tlc2.output.EC;
+import tlc2.output.MP;
+import util.Assert;
+import util.BufferedDataInputStream;
+import util.BufferedDataOutputStream;
+import util.FileUtil;
+import util.WrongInvocationException;
+
+/**
+ * A <code>DiskFPIntSet</code> is a disk-based <code>FPIntSet</code>
+ * for the depth-first iterative deepening model checker. The
+ * fingerprints are partitioned by their most significant bits into
+ * segments, which are locked independently of each other. Each
+ * segment keeps a hash table in memory and a file of fingerprints
+ * (with their status) sorted on disk.
+ *
+ * When the hash table of a segment fills up, its DONE fingerprints are
+ * merged into the disk file first: their status does not change
+ * anymore, whereas the fingerprints that still have to be explored at
+ * the current level are looked up and updated frequently. Only if that
+ * does not free half of the table, all its fingerprints are moved to
+ * disk. A fingerprint on disk whose status changes is copied back into
+ * the table, where it shadows its copy on disk until the next merge.
+ *
+ * The memory of the hash tables is given by the constructor; the number
+ * of segments by the system property
+ * tlc2.tool.fp.dfid.DiskFPIntSet.segments (a power of two, 64 by
+ * default).
+ */
+public class DiskFPIntSet extends FPIntSet {
+
+  /**
+   * A fingerprint and its status take 12 bytes in memory and on disk.
+   */
+  private static final int RecordSize = 12;
+
+  /**
+   * The disk file is read in pages of this many records. The first
+   * fingerprint of every page is kept in memory.
+   */
+  private static final int PageSize = 256;
+
+  private static final int MinCapacity = 1 << 10;
+
+  private final Segment[] segments;
+  private final int shift;
+  private final int capacity;
+  private final AtomicLong count = new AtomicLong(0);
+  private String metadir;
+  private String filename;
+
+  public DiskFPIntSet(long memoryInBytes) throws RemoteException {
+    this(memoryInBytes, Integer.getInteger(DiskFPIntSet.class.getName() + ".segments", 64).intValue());
+  }
+
+  /* The following constructor is provided for test programs only. */
+  DiskFPIntSet(long memoryInBytes, int segments) throws RemoteException {
+    // The hash tables live on the heap, leave some of it to the workers.
+    memoryInBytes = Math.min(memoryInBytes, Runtime.getRuntime().maxMemory() / 2);
+    int len = Math.max(1, Integer.highestOneBit(segments));
+    this.segments = new Segment[len];
+    this.shift = 64 - Integer.numberOfTrailingZeros(len);
+    long perSegment = memoryInBytes / RecordSize / len;
+    this.capacity = (int)Math.max(MinCapacity, Long.highestOneBit(Math.min(perSegment, 1 << 30)));
+  }
+
+  public final void init(int numThreads, String metadir, String filename) {
+    this.metadir = metadir;
+    this.filename = filename;
+    for (int i = 0; i < this.segments.length; i++) {
+      File file = new File(metadir + FileUtil.separator + filename + "_" + i + ".fpi");
+      this.segments[i] = new Segment(file, this.capacity);
+    }
+  }
+
+  private final Segment segment(long fp) {
+    // A shift by 64 is a shift by 0 in Java.
+    return (this.shift == 64) ? this.segments[0] : this.segments[(int)(fp >>> this.shift)];
+  }
+
+  public final long size() { return this.count.get(); }
+
+  public final void setLeveled(long fp) {
+    if (!this.segment(fp).setLeveled(fp)) {
+      throw new WrongInvocationException("DiskFPIntSet.setLeveled: The fp must have been in the set.");
+    }
+  }
+
+  public final int setStatus(long fp, int status) {
+    Segment seg = this.segment(fp);
+    int old = seg.setStatus(fp, status);
+    if (old == NEW) {
+      this.count.incrementAndGet();
+    }
+    return old;
+  }
+
+  public final int getStatus(long fp) {
+    return this.segment(fp).getStatus(fp);
+  }
+
+  /**
+   * DONE fingerprints on disk are not leveled again (see
+   * Segment.setLeveled), they count as leveled.
+   */
+  public final boolean allLeveled() {
+    for (int i = 0; i < this.segments.length; i++) {
+      if (!this.segments[i].allLeveled()) {
+	return false;
+      }
+    }
+    return true;
+  }
+
+  public final void close() {
+    for (int i = 0; i < this.segments.length; i++) {
+      if (this.segments[i] != null) {
+	this.segments[i].close();
+      }
+    }
+  }
+
+  public final void exit(boolean cleanup) throws IOException {
+    this.close();
+    if (cleanup) {
+      // Delete the metadata directory:
+      File file = new File(this.metadir);
+      FileUtil.deleteDir(file, true);
+    }
+    String hostname = InetAddress.getLocalHost().getHostName();
+    MP.printMessage(EC.TLC_FP_COMPLETED, hostname);
+    System.exit(0);
+  }
+
+  public final double checkFPs() throws IOException {
+    long dis = Long.MAX_VALUE;
+    for (int i = 0; i < this.segments.length; i++) {
+      dis = Math.min(dis, this.segments[i].minDistance());
+    }
+    return (1.0/dis);
+  }
+
+  // Checkpoint: The same format as the one of MemFPIntSet.
+  public final void beginChkpt(String fname) throws IOException {
+    BufferedDataOutputStream dos =
+      new BufferedDataOutputStream(this.chkptName(fname, "tmp"));
+    for (int i = 0; i < this.segments.length; i++) {
+      this.segments[i].writeChkpt(dos);
+    }
+    dos.close();
+  }
+
+  public final void beginChkpt() throws IOException {
+    this.beginChkpt(this.filename);
+  }
+
+  public final void commitChkpt(String fname) throws IOException {
+    File oldChkpt = new File(this.chkptName(fname, "chkpt"));
+    File newChkpt = new File(this.chkptName(fname, "tmp"));
+    if ((oldChkpt.exists() && !oldChkpt.delete()) ||
+	!newChkpt.renameTo(oldChkpt)) {
+      throw new IOException("DiskFPIntSet.commitChkpt: cannot delete " + oldChkpt);
+    }
+  }
+
+  public final void commitChkpt() throws IOException {
+    this.commitChkpt(this.filename);
+  }
+
+  public final void recover(String fname) throws IOException {
+    BufferedDataInputStream dis =
+      new BufferedDataInputStream(this.chkptName(fname, "chkpt"));
+    while (!dis.atEOF()) {
+      long fhi = dis.readInt();
+      long flo = dis.readInt();
+      long fp = (fhi << 32) | (flo & 0xFFFFFFFFL);
+      int status = dis.readInt();
+      if (this.segment(fp).recover(fp, status)) {
+	this.count.incrementAndGet();
+      }
+    }
+    dis.close();
+  }
+
+  public final void recover() throws IOException {
+    this.recover(this.filename);
+  }
+
+  private final String chkptName(String fname, String ext) {
+    return this.metadir + FileUtil.separator + fname + ".fp." + ext;
+  }
+
+  /**
+   * The fingerprints with the same most significant bits. A status of
+   * 0 marks an empty slot of the hash table: The status of a
+   * fingerprint in the set always includes its level, which is at
+   * least 1.
+   */
+  private static final class Segment {
+    private final File file;
+    private long[] fps;
+    private int[] status;
+    private int count;
+    private final int mask;
+    private final int threshold;
+
+    private RandomAccessFile raf;
+    private long diskCount;
+    private long[] index;
+    private final byte[] page;
+
+    Segment(File file, int capacity) {
+      this.file = file;
+      this.fps = new long[capacity];
+      this.status = new int[capacity];
+      this.mask = capacity - 1;
+      this.threshold = capacity - (capacity >> 2);
+      this.index = new long[0];
+      this.page = new byte[PageSize * RecordSize];
+    }
+
+    /**
+     * Returns the slot of fp in the hash table, or -(slot + 1) for the
+     * empty slot fp would be stored in.
+     */
+    private final int find(long fp) {
+      int i = (int)fp & this.mask;
+      while (this.status[i] != 0) {
+	if (this.fps[i] == fp) {
+	  return i;
+	}
+	i = (i + 1) & this.mask;
+      }
+      return -i - 1;
+    }
+
+    synchronized final int getStatus(long fp) {
+      int slot = this.find(fp);
+      if (slot >= 0) {
+	return this.status[slot];
+      }
+      return this.diskStatus(fp);
+    }
+
+    synchronized final int setStatus(long fp, int st) {
+      int slot = this.find(fp);
+      if (slot >= 0) {
+	int old = this.status[slot];
+	this.status[slot] = old | st;
+	return old;
+      }
+      int old = this.diskStatus(fp);
+      if (old != NEW) {
+	if ((old | st) != old) {
+	  this.insert(fp, old | st);
+	}
+	return old;
+      }
+      this.insert(fp, (Level << 2) | Leveled | st);
+      return NEW;
+    }
+
+    synchronized final boolean setLeveled(long fp) {
+      int slot = this.find(fp);
+      if (slot >= 0) {
+	this.status[slot] = (this.status[slot] & ~LeveledMask) | Leveled;
+	return true;
+      }
+      int old = this.diskStatus(fp);
+      if (old == NEW) {
+	return false;
+      }
+      // A DONE fingerprint is completed at every level, there is no
+      // need to bring it back into memory.
+      if (!isDone(old) && (old & LeveledMask) != Leveled) {
+	this.insert(fp, (old & ~LeveledMask) | Leveled);
+      }
+      return true;
+    }
+
+    /**
+     * Adds fp, which is neither in the table nor in the file with a
+     * different status, to the table.
+     */
+    private final void insert(long fp, int st) {
+      if (this.count >= this.threshold) {
+	this.flush();
+      }
+      int slot = -this.find(fp) - 1;
+      this.fps[slot] = fp;
+      this.status[slot] = st;
+      this.count++;
+    }
+
+    synchronized final boolean recover(long fp, int st) {
+      int slot = this.find(fp);
+      if (slot >= 0) {
+	this.status[slot] = st;
+	return false;
+      }
+      boolean isNew = this.diskStatus(fp) == NEW;
+      this.insert(fp, st);
+      return isNew;
+    }
+
+    /**
+     * Merges the DONE fingerprints, or all of them if most are not
+     * DONE, into the file.
+     */
+    private final void flush() {
+      int done = 0;
+      for (int i = 0; i < this.status.length; i++) {
+	if (this.status[i] != 0 && isDone(this.status[i])) {
+	  done++;
+	}
+      }
+      boolean all = (this.count - done) > (this.threshold >> 1);
+      long[] evict = new long[all ? this.count : done];
+      int[] keep = new int[this.count - evict.length];
+      int n = 0, k = 0;
+      for (int i = 0; i < this.status.length; i++) {
+	if (this.status[i] != 0) {
+	  if (all || isDone(this.status[i])) {
+	    evict[n++] = this.fps[i];
+	  }
+	  else {
+	    keep[k++] = i;
+	  }
+	}
+      }
+      Arrays.sort(evict);
+      int[] evictStatus = new int[evict.length];
+      for (int i = 0; i < evict.length; i++) {
+	evictStatus[i] = this.status[this.find(evict[i])];
+      }
+      try {
+	this.merge(evict, evictStatus);
+      }
+      catch (IOException e) {
+	Assert.fail(EC.SYSTEM_DISK_IO_ERROR_FOR_FILE, e);
+      }
+
+      // Rebuild the table from the fingerprints kept in memory:
+      long[] oldFps = this.fps;
+      int[] oldStatus = this.status;
+      this.fps = new long[oldFps.length];
+      this.status = new int[oldStatus.length];
+      this.count = 0;
+      for (int i = 0; i < keep.length; i++) {
+	int slot = -this.find(oldFps[keep[i]]) - 1;
+	this.fps[slot] = oldFps[keep[i]];
+	this.status[slot] = oldStatus[keep[i]];
+	this.count++;
+      }
+    }
+
+    /**
+     * Writes the sorted fingerprints together with the ones in the file
+     * into a new file which replaces it. A fingerprint in fps shadows
+     * the same fingerprint in the file.
+     */
+    private final void merge(long[] fps, int[] status) throws IOException {
+      File tmp = new File(this.file.getPath() + ".tmp");
+      BufferedDataOutputStream out = new BufferedDataOutputStream(tmp);
+      BufferedDataInputStream in = null;
+      long[] newIndex = new long[(int)((this.diskCount + fps.length + PageSize - 1) / PageSize)];
+      long written = 0;
+      long read = 0;
+      long dfp = 0;
+      int dst = 0;
+      if (this.diskCount > 0) {
+	in = new BufferedDataInputStream(this.file);
+	dfp = in.readLong();
+	dst = in.readInt();
+	read++;
+      }
+      boolean hasDisk = this.diskCount > 0;
+      int m = 0;
+      while (hasDisk || m < fps.length) {
+	long fp;
+	int st;
+	boolean fromDisk = !(m < fps.length && (!hasDisk || fps[m] <= dfp));
+	if (fromDisk) {
+	  fp = dfp;
+	  st = dst;
+	}
+	else {
+	  fp = fps[m];
+	  st = status[m++];
+	}
+	if (hasDisk && (fromDisk || fp == dfp)) {
+	  if (read < this.diskCount) {
+	    dfp = in.readLong();
+	    dst = in.readInt();
+	    read++;
+	  }
+	  else {
+	    hasDisk = false;
+	  }
+	}
+	if (written % PageSize == 0) {
+	  newIndex[(int)(written / PageSize)] = fp;
+	}
+	out.writeLong(fp);
+	out.writeInt(st);
+	written++;
+      }
+      out.close();
+      if (in != null) in.close();
+      if (this.raf != null) {
+	this.raf.close();
+      }
+      if ((this.file.exists() && !this.file.delete()) || !tmp.renameTo(this.file)) {
+	throw new IOException("DiskFPIntSet.merge: cannot replace " + this.file);
+      }
+      this.raf = new RandomAccessFile(this.file, "r");
+      this.diskCount = written;
+      this.index = new long[(int)((written + PageSize - 1) / PageSize)];
+      System.arraycopy(newIndex, 0, this.index, 0, this.index.length);
+    }
+
+    /**
+     * Returns the status of fp in the file, NEW if it is not in the
+     * file.
+     */
+    private final int diskStatus(long fp) {
+      if (this.diskCount == 0 || fp < this.index[0]) {
+	return NEW;
+      }
+      // The last page whose first fingerprint is not larger than fp:
+      int lo = 0, hi = this.index.length - 1;
+      while (lo < hi) {
+	int mid = (lo + hi + 1) >>> 1;
+	if (this.index[mid] <= fp) {
+	  lo = mid;
+	}
+	else {
+	  hi = mid - 1;
+	}
+      }
+      long first = (long)lo * PageSize;
+      int len = (int)Math.min(PageSize, this.diskCount - first);
+      try {
+	this.raf.seek(first * RecordSize);
+	this.raf.readFully(this.page, 0, len * RecordSize);
+      }
+      catch (IOException e) {
+	Assert.fail(EC.SYSTEM_DISK_IO_ERROR_FOR_FILE, e);
+      }
+      lo = 0;
+      hi = len - 1;
+      while (lo <= hi) {
+	int mid = (lo + hi) >>> 1;
+	long fp1 = this.readLong(mid * RecordSize);
+	if (fp1 < fp) {
+	  lo = mid + 1;
+	}
+	else if (fp1 > fp) {
+	  hi = mid - 1;
+	}
+	else {
+	  return this.readInt(mid * RecordSize + 8);
+	}
+      }
+      return NEW;
+    }
+
+    /* Reads the (big-endian) long at offset from page. */
+    private final long readLong(int offset) {
+      return ((long)this.readInt(offset) << 32) | (this.readInt(offset + 4) & 0xFFFFFFFFL);
+    }
+
+    /* Reads the (big-endian) int at offset from page. */
+    private final int readInt(int offset) {
+      return ((this.page[offset] & 0xFF) << 24) | ((this.page[offset + 1] & 0xFF) << 16) |
+	((this.page[offset + 2] & 0xFF) << 8) | (this.page[offset + 3] & 0xFF);
+    }
+
+    synchronized final boolean allLeveled() {
+      for (int i = 0; i < this.status.length; i++) {
+	int st = this.status[i];
+	if (st != 0 && !isDone(st) && (st & LeveledMask) != Leveled) {
+	  return false;
+	}
+      }
+      if (this.diskCount == 0) {
+	return true;
+      }
+      try {
+	BufferedDataInputStream in = new BufferedDataInputStream(this.file);
+	try {
+	  for (long i = 0; i < this.diskCount; i++) {
+	    long fp = in.readLong();
+	    int st = in.readInt();
+	    if (!isDone(st) && (st & LeveledMask) != Leveled && this.find(fp) < 0) {
+	      return false;
+	    }
+	  }
+	}
+	finally {
+	  in.close();
+	}
+      }
+      catch (IOException e) {
+	Assert.fail(EC.SYSTEM_DISK_IO_ERROR_FOR_FILE, e);
+      }
+      return true;
+    }
+
+    /* Returns the minimum distance between two fingerprints. */
+    synchronized final long minDistance() throws IOException {
+      long[] mem = new long[this.count];
+      int n = 0;
+      for (int i = 0; i < this.status.length; i++) {
+	if (this.status[i] != 0) {
+	  mem[n++] = this.fps[i];
+	}
+      }
+      Arrays.sort(mem);
+      BufferedDataInputStream in = (this.diskCount > 0) ? new BufferedDataInputStream(this.file) : null;
+      long dis = Long.MAX_VALUE;
+      boolean first = true;
+      long last = 0;
+      long read = 0;
+      int m = 0;
+      long dfp = 0;
+      if (in != null) {
+	dfp = in.readLong();
+	in.readInt();
+	read++;
+      }
+      boolean hasDisk = in != null;
+      while (hasDisk || m < mem.length) {
+	long fp;
+	if (m < mem.length && (!hasDisk || mem[m] <= dfp)) {
+	  fp = mem[m++];
+	  if (hasDisk && fp == dfp) continue;
+	}
+	else {
+	  fp = dfp;
+	  if (read < this.diskCount) {
+	    dfp = in.readLong();
+	    in.readInt();
+	    read++;
+	  }
+	  else {
+	    hasDisk = false;
+	  }
+	}
+	long dis1 = fp - last;
+	if (!first && dis1 >= 0) {
+	  dis = Math.min(dis, dis1);
+	}
+	first = false;
+	last = fp;
+      }
+      if (in != null) in.close();
+      return dis;
+    }
+
+    /* Writes fhi, flo and status of each fingerprint to dos. */
+    synchronized final void writeChkpt(BufferedDataOutputStream dos) throws IOException {
+      if (this.diskCount > 0) {
+	BufferedDataInputStream in = new BufferedDataInputStream(this.file);
+	for (long i = 0; i < this.diskCount; i++) {
+	  long fp = in.readLong();
+	  int st = in.readInt();
+	  // Written below if shadowed by the table
+	  if (this.find(fp) < 0) {
+	    dos.writeInt((int)(fp >>> 32));
+	    dos.writeInt((int)fp);
+	    dos.writeInt(st);
+	  }
+	}
+	in.close();
+      }
+      for (int i = 0; i < this.status.length; i++) {
+	if (this.status[i] != 0) {
+	  dos.writeInt((int)(this.fps[i] >>> 32));
+	  dos.writeInt((int)this.fps[i]);
+	  dos.writeInt(this.status[i]);
+	}
+      }
+    }
+
+    synchronized final void close() {
+      try {
+	if (this.raf != null) {
+	  this.raf.close();
+	  this.raf = null;
+	}
+      }
+      catch (IOException e) {
+	// SKIP
+      }
+      // The file is of no use without the table, the checkpoints are
+      // what a run is recovered from.
+      this.file.delete();
+      this.diskCount = 0;
+    }
+  }
+}
@@ -0,0 +1,28 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.fp.dfid;
+
+import java.rmi.RemoteException;
+
+import tlc2.tool.fp.FPSetConfiguration;
+
+public abstract class FPIntSetFactory {
+
+	/**
+	 * System property with which a consumer defines the class name of the
+	 * {@link FPIntSet} implementation to use. Defaults to {@link MemFPIntSet}.
+	 */
+	public static final String IMPL_PROPERTY = FPIntSet.class.getName() + ".impl";
+
+	/**
+	 * @param fpSetConfig
+	 *            The memory a {@link DiskFPIntSet} keeps its hash tables in
+	 * @return A new {@link FPIntSet} as defined by {@link #IMPL_PROPERTY}
+	 */
+	public static FPIntSet getFPIntSet(final FPSetConfiguration fpSetConfig) throws RemoteException {
+		final String impl = System.getProperty(IMPL_PROPERTY, MemFPIntSet.class.getName());
+		if (DiskFPIntSet.class.getName().equals(impl)) {
+			return new DiskFPIntSet(fpSetConfig.getMemoryInBytes());
+		}
+		return new MemFPIntSet();
+	}
+}
@@ -14,9 +14,12 @@ import java.io.IOException;
 import tlc2.output.EC;
 import tlc2.output.MP;
 import tlc2.util.BitVector;
+import tlc2.util.BlockRandomAccessFile;
 import tlc2.util.BufferedRandomAccessFile;
+import tlc2.util.IRandomAccessFile;
 import tlc2.util.LongVec;
 import tlc2.util.MemIntQueue;
+import util.BlockCodec;
 import util.FileUtil;
 
 public class DiskGraph {
@@ -46,7 +49,7 @@ public class DiskGraph {
   
   private String metadir;
   private String chkptName;
-  private BufferedRandomAccessFile nodeRAF;
+  private IRandomAccessFile nodeRAF;
   private BufferedRandomAccessFile nodePtrRAF;
   private NodePtrTable nodePtrTbl;
   private LongVec initNodes;
@@ -58,7 +61,15 @@ public class DiskGraph {
     this.metadir = metadir;
     this.chkptName = metadir + FileUtil.separator + "dgraph_" + soln;
     String fnameForNodes = metadir + FileUtil.separator + "nodes_" + soln;
-    this.nodeRAF = new BufferedRandomAccessFile(fnameForNodes, "rw");
+    // The node file is block compressed if a codec is configured. Its file
+    // pointers are virtual then, see BlockRandomAccessFile.
+    final BlockCodec codec = BlockCodec.getConfigured();
+    if (codec == null) {
+      this.nodeRAF = new BufferedRandomAccessFile(fnameForNodes, "rw");
+    }
+    else {
+      this.nodeRAF = new BlockRandomAccessFile(fnameForNodes, codec);
+    }
     String fnameForPtrs = metadir + FileUtil.separator + "ptrs_" + soln;
     this.nodePtrRAF = new BufferedRandomAccessFile(fnameForPtrs, "rw");
     this.nodePtrTbl = new NodePtrTable(255, hasTableau);
@@ -13,6 +13,7 @@ import tlc2.tool.Action;
 import tlc2.tool.StateVec;
 import tlc2.tool.TLCState;
 import tlc2.tool.Tool;
+import tlc2.util.LongObjTable;
 import tlc2.util.LongVec;
 
 public class LiveCheck {
@@ -42,6 +43,20 @@ public class LiveCheck {
     }    
   }
 
+  /**
+   * This method only processes the liveness properties, but does not
+   * create the behavior graphs. It is sufficient to create LiveRecords
+   * (see createRecord) on a (remote) worker. If the liveness properties
+   * have been processed already (the worker runs in the same VM as the
+   * server), they are left untouched.
+   */
+  public static synchronized void initRecording(Tool tool, Action[] acts) {
+    if (solutions != null) return;
+    myTool = tool;
+    actions = acts;
+    solutions = Liveness.processLiveness(myTool, null);
+  }
+
   /**
    * This method records that state is an initial state in the
    * behavior graph. It is called when a new initial state is
@@ -164,6 +179,142 @@ public class LiveCheck {
     }
   }
 
+  /**
+   * This method evaluates the liveness predicates and actions for s0 and
+   * its successors. Contrary to addNextState, it does not access the
+   * behavior graph. Hence, it can run on a (remote) worker, and the
+   * server adds the result to the graph by addNextState(s0, record).
+   *
+   * Whether a successor is consistent with a tableau node only depends on
+   * the successor. Evaluating it for every tableau node is the bulk of the
+   * cost of a record, thus it is done once per distinct successor: known
+   * maps the fingerprints of the successors evaluated so far (e.g. by
+   * the other states of a block) to their rows of tableau consistency.
+   */
+  public static LiveRecord createRecord(TLCState s0, long fp0,
+					StateVec nextStates,
+					LongVec nextFPs,
+					LongObjTable known) {
+    int succCnt = nextStates.size();
+    long[] fps = new long[succCnt];
+    for (int sidx = 0; sidx < succCnt; sidx++) {
+      fps[sidx] = nextFPs.elementAt(sidx);
+    }
+    boolean[][] checkStateRes = new boolean[solutions.length][];
+    boolean[][][] checkActionRes = new boolean[solutions.length][succCnt][];
+    boolean[][][] consistent = new boolean[solutions.length][succCnt][];
+    for (int soln = 0; soln < solutions.length; soln++) {
+      OrderOfSolution oos = solutions[soln];
+      int slen = oos.checkState.length;
+      int alen = oos.checkAction.length;
+      checkStateRes[soln] = new boolean[slen];
+      for (int i = 0; i < slen; i++) {
+	checkStateRes[soln][i] = oos.checkState[i].eval(myTool, s0, null);
+      }
+      for (int sidx = 0; sidx < succCnt; sidx++) {
+	TLCState s1 = nextStates.elementAt(sidx);
+	checkActionRes[soln][sidx] = new boolean[alen];
+	for (int i = 0; i < alen; i++) {
+	  checkActionRes[soln][sidx][i] = oos.checkAction[i].eval(myTool, s0, s1);
+	}
+      }
+    }
+    for (int sidx = 0; sidx < succCnt; sidx++) {
+      boolean[][] rows = (boolean[][])known.get(fps[sidx]);
+      if (rows == null) {
+	TLCState s1 = nextStates.elementAt(sidx);
+	rows = new boolean[solutions.length][];
+	for (int soln = 0; soln < solutions.length; soln++) {
+	  TBGraph tableau = solutions[soln].tableau;
+	  if (tableau != null) {
+	    rows[soln] = new boolean[tableau.size()];
+	    for (int tidx = 0; tidx < tableau.size(); tidx++) {
+	      rows[soln][tidx] = tableau.getNode(tidx).isConsistent(s1, myTool);
+	    }
+	  }
+	}
+	known.put(fps[sidx], rows);
+      }
+      for (int soln = 0; soln < solutions.length; soln++) {
+	consistent[soln][sidx] = rows[soln];
+      }
+    }
+    return new LiveRecord(fp0, fps, checkStateRes, checkActionRes, consistent);
+  }
+
+  /**
+   * This method adds new nodes into the behavior graph induced by s0
+   * using the values precomputed by createRecord. It does the same as
+   * addNextState(s0, fp0, nextStates, nextFPs) except that successor
+   * states are only recomputed in the rare case that a new node (s1, t)
+   * is found after s1 has been done.
+   */
+  public static void addNextState(TLCState s0, LiveRecord record)
+  throws IOException {
+    long fp0 = record.getFP();
+    int succCnt = record.size();
+    for (int soln = 0; soln < solutions.length; soln++) {
+      OrderOfSolution oos = solutions[soln];
+      DiskGraph dgraph = dgraphs[soln];
+      int slen = oos.checkState.length;
+      int alen = oos.checkAction.length;
+      boolean[] checkStateRes = record.getCheckState(soln);
+      synchronized(oos) {
+	if (oos.tableau == null) {
+	  // if there is no tableau ...
+	  GraphNode node0 = new GraphNode(fp0, -1);
+	  node0.setCheckState(checkStateRes);
+	  for (int sidx = 0; sidx < succCnt; sidx++) {
+	    long fp1 = record.getNextFP(sidx);
+	    long ptr1 = dgraph.getPtr(fp1);
+	    if (ptr1 == -1 || !node0.transExists(fp1, -1)) {
+	      node0.addTransition(fp1, -1, slen, alen, record.getCheckAction(soln, sidx));
+	    }
+	  }
+	  // Add a node for the current state:
+	  dgraph.addNode(node0);
+	}
+	else {
+	  // if there is tableau ...
+	  int loc0 = dgraph.setDone(fp0);
+	  int[] nodes = dgraph.getNodesByLoc(loc0);
+	  if (nodes == null) continue;
+	  for (int nidx = 2; nidx < nodes.length; nidx += 3) {
+	    int tidx0 = nodes[nidx];
+	    TBGraphNode tnode0 = oos.tableau.getNode(tidx0);
+	    GraphNode node0 = new GraphNode(fp0, tidx0);
+	    node0.setCheckState(checkStateRes);
+	    for (int sidx = 0; sidx < succCnt; sidx++) {
+	      long fp1 = record.getNextFP(sidx);
+	      boolean[] checkActionRes = record.getCheckAction(soln, sidx);
+	      boolean isDone = dgraph.isDone(fp1);
+	      for (int k = 0; k < tnode0.nextSize(); k++) {
+		TBGraphNode tnode1 = tnode0.nextAt(k);
+		long ptr1 = dgraph.getPtr(fp1, tnode1.index);
+		if (ptr1 == -1) {
+		  if (record.isConsistent(soln, sidx, tnode1.index)) {
+		    node0.addTransition(fp1, tnode1.index, slen, alen, checkActionRes);
+		    // Record that we have seen <fp1, tnode1>.  If fp1 is done, we have
+		    // to compute the next states for <fp1, tnode1>.
+		    dgraph.recordNode(fp1, tnode1.index);
+		    if (isDone) {
+		      TLCState s1 = (fp1 == fp0) ? s0 : myTool.getState(fp1, s0).state;
+		      addNextState(s1, fp1, tnode1, oos, dgraph);
+		    }
+		  }
+		}
+		else if (!node0.transExists(fp1, tnode1.index)) {
+		  node0.addTransition(fp1, tnode1.index, slen, alen, checkActionRes);
+		}
+	      }
+	    }
+	    dgraph.addNode(node0);
+	  }
+	}
+      }
+    }
+  }
+
   /**
    * This method takes care of the case that a new node (s, t) is
    * generated after s has been done. In this case, we will have to
@@ -265,7 +416,10 @@ public class LiveCheck {
    */
   public static boolean check() throws Exception {
     int slen = solutions.length;
-    int wNum = Math.min(slen, TLCGlobals.getNumWorkers());
+    // The number of workers is zero for a distributed server whose
+    // workers have all exited.
+    int wNum = Math.max(1, Math.min(slen, TLCGlobals.getNumWorkers()));
+    LiveWorker.reset();
 
     if (wNum == 1) {
       LiveWorker worker = new LiveWorker(0);
@@ -0,0 +1,63 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+
+package tlc2.tool.liveness;
+
+import java.io.Serializable;
+
+/**
+ * A LiveRecord holds the truth values of all liveness predicates and
+ * actions for a state and its successors. It contains everything needed to
+ * add the state to the behavior graph without evaluating any TLA+
+ * expression. In distributed mode, the (remote) workers create the records
+ * while computing the successors, and the server adds them to its graph
+ * (see LiveCheck.addNextState(TLCState, LiveRecord)).
+ *
+ * For every order of solution, the record stores the values of the state
+ * predicates (checkState) for the state, the values of the action
+ * predicates (checkAction) for every transition and, if the order of
+ * solution has a tableau, whether the successor is consistent with each
+ * tableau node.
+ */
+@SuppressWarnings("serial")
+public class LiveRecord implements Serializable {
+
+  private final long fp;
+  private final long[] nextFPs;
+  private final boolean[][] checkState;     // [soln][state pred]
+  private final boolean[][][] checkAction;  // [soln][succ][action pred]
+  private final boolean[][][] consistent;   // [soln][succ][tableau node]
+
+  public LiveRecord(long fp, long[] nextFPs, boolean[][] checkState,
+		    boolean[][][] checkAction, boolean[][][] consistent) {
+    this.fp = fp;
+    this.nextFPs = nextFPs;
+    this.checkState = checkState;
+    this.checkAction = checkAction;
+    this.consistent = consistent;
+  }
+
+  /* The fingerprint of the state. */
+  public final long getFP() { return this.fp; }
+
+  /* The number of successors (including duplicates). */
+  public final int size() { return this.nextFPs.length; }
+
+  public final long getNextFP(int sidx) { return this.nextFPs[sidx]; }
+
+  public final boolean[] getCheckState(int soln) {
+    return this.checkState[soln];
+  }
+
+  public final boolean[] getCheckAction(int soln, int sidx) {
+    return this.checkAction[soln][sidx];
+  }
+
+  /**
+   * Returns true iff the successor sidx is consistent with the tableau
+   * node tidx of the order of solution soln.
+   */
+  public final boolean isConsistent(int soln, int sidx, int tidx) {
+    return this.consistent[soln][sidx][tidx];
+  }
+
+}
@@ -30,6 +30,18 @@ public class LiveWorker extends IdThread {
 
   public LiveWorker(int id) { super(id); }
   
+  /**
+   * Makes the next check start over with the first order of solution.
+   * Otherwise, every check after the first (periodic) one would find all
+   * of them taken and check nothing.
+   */
+  public synchronized static void reset() {
+    nextOOS = 0;
+    synchronized(workerLock) {
+      errFoundByThread = -1;
+    }
+  }
+
   public synchronized static int getNextOOS() {
     if (nextOOS < LiveCheck.solutions.length) {
       return nextOOS++;
@@ -0,0 +1,61 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.management;
+
+import tlc2.tool.ActionMetrics;
+import tlc2.tool.distributed.management.TLCStatisticsMXBean;
+
+/**
+ * The per-action and per-invariant metrics of a model checker run. The arrays
+ * are indexed like {@link #getActionNames()} and {@link #getInvariantNames()}
+ * respectively. They are empty unless {@link ActionMetrics} are enabled.
+ */
+public interface ActionStatisticsMXBean extends TLCStatisticsMXBean {
+
+	/**
+	 * @return The locations of the actions
+	 */
+	String[] getActionNames();
+
+	/**
+	 * @return The number of states generated by each action
+	 */
+	long[] getActionStatesGenerated();
+
+	/**
+	 * @return The number of distinct states found by each action
+	 */
+	long[] getActionDistinctStatesGenerated();
+
+	/**
+	 * @return The mean time in nanoseconds an action took to compute the
+	 *         successors of a state
+	 */
+	long[] getActionMeanNanos();
+
+	/**
+	 * @return The 99th percentile of the time in nanoseconds an action took to
+	 *         compute the successors of a state
+	 */
+	long[] getActionP99Nanos();
+
+	/**
+	 * @return The names of the invariants
+	 */
+	String[] getInvariantNames();
+
+	/**
+	 * @return The number of times each invariant has been evaluated
+	 */
+	long[] getInvariantEvaluations();
+
+	/**
+	 * @return The mean time in nanoseconds an evaluation of an invariant took
+	 */
+	long[] getInvariantMeanNanos();
+
+	/**
+	 * @return The 99th percentile of the time in nanoseconds an evaluation of
+	 *         an invariant took
+	 */
+	long[] getInvariantP99Nanos();
+}
@@ -7,20 +7,23 @@ import java.io.IOException;
 import javax.management.NotCompliantMBeanException;
 
 import tlc2.TLCGlobals;
+import tlc2.tool.ActionMetrics;
 import tlc2.tool.ModelChecker;
-import tlc2.tool.distributed.management.TLCStatisticsMXBean;
 import tlc2.tool.fp.DiskFPSet;
 
 /**
  * @author Markus Alexander Kuppe
  */
-public class ModelCheckerMXWrapper extends TLCStandardMBean implements TLCStatisticsMXBean {
+public class ModelCheckerMXWrapper extends TLCStandardMBean implements ActionStatisticsMXBean {
+
+	private static final String[] NO_NAMES = new String[0];
+	private static final long[] NO_VALUES = new long[0];
 
 	private final ModelChecker modelChecker;
 
 	public ModelCheckerMXWrapper(final ModelChecker aModelChecker)
 			throws NotCompliantMBeanException {
-		super(TLCStatisticsMXBean.class);
+		super(ActionStatisticsMXBean.class);
 		this.modelChecker = aModelChecker;
 		// register all TLCStatisticsMXBeans under the same name
 		registerMBean("tlc2.tool:type=ModelChecker");
@@ -102,4 +105,76 @@ public class ModelCheckerMXWrapper extends TLCStandardMBean implements TLCStatis
 		//TODO adapt once Workers can support units of work greater than 1 
 		return 1;
 	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.management.ActionStatisticsMXBean#getActionNames()
+	 */
+	public String[] getActionNames() {
+		final ActionMetrics metrics = modelChecker.actionMetrics;
+		return metrics == null ? NO_NAMES : metrics.getActionNames();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.management.ActionStatisticsMXBean#getActionStatesGenerated()
+	 */
+	public long[] getActionStatesGenerated() {
+		final ActionMetrics metrics = modelChecker.actionMetrics;
+		return metrics == null ? NO_VALUES : metrics.getStatesGenerated();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.management.ActionStatisticsMXBean#getActionDistinctStatesGenerated()
+	 */
+	public long[] getActionDistinctStatesGenerated() {
+		final ActionMetrics metrics = modelChecker.actionMetrics;
+		return metrics == null ? NO_VALUES : metrics.getDistinctStates();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.management.ActionStatisticsMXBean#getActionMeanNanos()
+	 */
+	public long[] getActionMeanNanos() {
+		final ActionMetrics metrics = modelChecker.actionMetrics;
+		return metrics == null ? NO_VALUES : metrics.getNextStatesMeanNanos();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.management.ActionStatisticsMXBean#getActionP99Nanos()
+	 */
+	public long[] getActionP99Nanos() {
+		final ActionMetrics metrics = modelChecker.actionMetrics;
+		return metrics == null ? NO_VALUES : metrics.getNextStatesPercentileNanos(0.99d);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.management.ActionStatisticsMXBean#getInvariantNames()
+	 */
+	public String[] getInvariantNames() {
+		final ActionMetrics metrics = modelChecker.actionMetrics;
+		return metrics == null ? NO_NAMES : metrics.getInvariantNames();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.management.ActionStatisticsMXBean#getInvariantEvaluations()
+	 */
+	public long[] getInvariantEvaluations() {
+		final ActionMetrics metrics = modelChecker.actionMetrics;
+		return metrics == null ? NO_VALUES : metrics.getInvariantEvaluations();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.management.ActionStatisticsMXBean#getInvariantMeanNanos()
+	 */
+	public long[] getInvariantMeanNanos() {
+		final ActionMetrics metrics = modelChecker.actionMetrics;
+		return metrics == null ? NO_VALUES : metrics.getInvariantMeanNanos();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.management.ActionStatisticsMXBean#getInvariantP99Nanos()
+	 */
+	public long[] getInvariantP99Nanos() {
+		final ActionMetrics metrics = modelChecker.actionMetrics;
+		return metrics == null ? NO_VALUES : metrics.getInvariantPercentileNanos(0.99d);
+	}
 }
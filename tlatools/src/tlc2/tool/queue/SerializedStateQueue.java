@@ -0,0 +1,312 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.queue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+
+import tlc2.output.EC;
+import tlc2.tool.TLCState;
+import tlc2.value.ValueInputStream;
+import tlc2.value.ValueOutputStream;
+import util.Assert;
+import util.BufferedDataInputStream;
+import util.BufferedDataOutputStream;
+import util.FileUtil;
+
+/**
+ * A {@link SerializedStateQueue} keeps its states in serialized form only.
+ * <p>
+ * A {@link DiskStateQueue} buffers {@link TLCState} objects whose value graphs
+ * easily take several hundred bytes per state, and serializes them once more
+ * when it swaps its buffers to disk. The {@link SerializedStateQueue} instead
+ * encodes a state with a {@link ValueOutputStream} when it is enqueued, and
+ * appends the encoding as a length-prefixed byte record to a large segment.
+ * States are decoded again when they are dequeued. An in-flight state thus
+ * costs no more than its encoding, which is a few dozen bytes for most specs.
+ * <p>
+ * Each record is encoded independently (see {@link ValueOutputStream#reset()})
+ * and records never span segments. Segments are memory-mapped files in the
+ * meta directory (or direct buffers if
+ * {@link SerializedStateQueue}{@link #MAPPED} is false). This moves the
+ * states out of the Java heap and lets the operating system page them to
+ * disk. Segments which have been read completely are recycled.
+ */
+public final class SerializedStateQueue extends StateQueue {
+
+	/**
+	 * The size of a segment in bytes. A record which is larger than a segment
+	 * gets a segment of its own.
+	 */
+	private final static int SegmentSize = Integer.getInteger(
+			SerializedStateQueue.class.getName() + ".SegmentSize", 1 << 26);
+
+	/**
+	 * The maximum number of segments kept for recycling.
+	 */
+	private final static int MaxFreeSegments = Integer.getInteger(
+			SerializedStateQueue.class.getName() + ".MaxFreeSegments", 4);
+
+	/**
+	 * true iff segments are backed by memory-mapped files.
+	 */
+	private final static boolean MAPPED = !Boolean.getBoolean(SerializedStateQueue.class
+			.getName() + ".direct");
+
+	/* Fields */
+	private final String filePrefix;
+
+	/**
+	 * The segments in FIFO order. The head is read from, the tail is appended
+	 * to.
+	 */
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+	/**
+	 * Segments which have been read completely.
+	 */
+	private final LinkedList<Segment> free = new LinkedList<Segment>();
+	private int segmentCnt = 0;
+
+	/**
+	 * Encodes a single state before it is copied into a segment.
+	 */
+	private final RecordOutputStream record = new RecordOutputStream();
+	private final ValueOutputStream vos = new ValueOutputStream(this.record);
+	/**
+	 * Decodes a single record.
+	 */
+	private byte[] scratch = new byte[1024];
+	private ValueInputStream vis;
+
+	/**
+	 * The records of the checkpoint in progress (see {@link #beginChkpt()}).
+	 */
+	private Segment[] chkptSegments;
+	private ByteBuffer[] chkptRecords;
+	private long chkptLen;
+
+	/* Constructors */
+	public SerializedStateQueue(final String diskdir) {
+		this.filePrefix = diskdir + FileUtil.separator;
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.queue.StateQueue#enqueueInner(tlc2.tool.TLCState)
+	 */
+	final void enqueueInner(final TLCState state) {
+		try {
+			this.record.reset();
+			state.write(this.vos);
+			this.vos.reset();
+			this.append(this.record.buffer(), this.record.size());
+		} catch (IOException e) {
+			Assert.fail(EC.SYSTEM_ERROR_WRITING_STATES,
+					new String[] { "queue", (e.getMessage() == null) ? e.toString() : e.getMessage() });
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.queue.StateQueue#dequeueInner()
+	 */
+	final TLCState dequeueInner() {
+		try {
+			final int n = this.next();
+			final TLCState state = TLCState.Empty.createEmpty();
+			final ByteArrayInputStream in = new ByteArrayInputStream(this.scratch, 0, n);
+			if (this.vis == null) {
+				this.vis = new ValueInputStream(in);
+			} else {
+				this.vis.reset(in);
+			}
+			state.read(this.vis);
+			return state;
+		} catch (IOException e) {
+			Assert.fail(EC.SYSTEM_ERROR_READING_STATES,
+					new String[] { "queue", (e.getMessage() == null) ? e.toString() : e.getMessage() });
+			return null; // make compiler happy
+		}
+	}
+
+	/**
+	 * Appends the record b[0, n) to the tail segment.
+	 */
+	private final void append(final byte[] b, final int n) throws IOException {
+		Segment tail = this.segments.isEmpty() ? null : this.segments.getLast();
+		if (tail == null || tail.write.remaining() < n + 4) {
+			tail = this.newSegment(n + 4);
+			this.segments.addLast(tail);
+		}
+		tail.write.putInt(n);
+		tail.write.put(b, 0, n);
+		tail.read.limit(tail.write.position());
+	}
+
+	/**
+	 * Copies the head record into {@link #scratch} and removes it from its
+	 * segment.
+	 *
+	 * @return The length of the record
+	 */
+	private final int next() {
+		Segment head = this.segments.getFirst();
+		while (!head.read.hasRemaining()) {
+			// Only the tail segment can be read completely but still be
+			// appended to. Since this queue is not empty, head is not the tail.
+			this.recycle(this.segments.removeFirst());
+			head = this.segments.getFirst();
+		}
+		final int n = head.read.getInt();
+		if (n > this.scratch.length) {
+			this.scratch = new byte[Math.max(n, this.scratch.length * 2)];
+		}
+		head.read.get(this.scratch, 0, n);
+		if (!head.read.hasRemaining() && this.segments.size() == 1 && !head.pinned) {
+			// The queue has run empty, start over at the beginning.
+			head.clear();
+		}
+		return n;
+	}
+
+	private final Segment newSegment(final int minSize) throws IOException {
+		if (minSize <= SegmentSize && !this.free.isEmpty()) {
+			return this.free.removeFirst();
+		}
+		final int size = Math.max(minSize, SegmentSize);
+		if (MAPPED) {
+			final File file = new File(this.filePrefix + "segment" + this.segmentCnt++);
+			final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				return new Segment(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+			} finally {
+				// The mapping remains valid after the file has been closed.
+				raf.close();
+				if (!file.delete()) {
+					file.deleteOnExit();
+				}
+			}
+		}
+		return new Segment(ByteBuffer.allocateDirect(size));
+	}
+
+	private final void recycle(final Segment segment) {
+		if (!segment.pinned && segment.write.capacity() == SegmentSize && this.free.size() < MaxFreeSegments) {
+			segment.clear();
+			this.free.addLast(segment);
+		}
+	}
+
+	/* Checkpoint. */
+	/**
+	 * Only takes a snapshot of the records while the workers are suspended.
+	 * The segments of the snapshot are pinned: Records are only appended to
+	 * them and they are not recycled before {@link #commitChkpt()} has
+	 * written the snapshot. The workers thus continue while the records are
+	 * written.
+	 * 
+	 * @see tlc2.tool.queue.StateQueue#beginChkpt()
+	 */
+	public final void beginChkpt() throws IOException {
+		this.chkptSegments = this.segments.toArray(new Segment[this.segments.size()]);
+		this.chkptRecords = new ByteBuffer[this.chkptSegments.length];
+		for (int i = 0; i < this.chkptSegments.length; i++) {
+			this.chkptSegments[i].pinned = true;
+			this.chkptRecords[i] = this.chkptSegments[i].read.duplicate();
+		}
+		this.chkptLen = this.len;
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.queue.StateQueue#commitChkpt()
+	 */
+	public final void commitChkpt() throws IOException {
+		// The records are written as is. Contrary to the other queues, there
+		// is no need to serialize the states once more.
+		final BufferedDataOutputStream dos = FileUtil.newBdFOS(false, this.filePrefix + "queue.tmp");
+		try {
+			dos.writeLong(this.chkptLen);
+			byte[] buf = new byte[8192];
+			for (int i = 0; i < this.chkptRecords.length; i++) {
+				final ByteBuffer read = this.chkptRecords[i];
+				while (read.hasRemaining()) {
+					final int n = Math.min(buf.length, read.remaining());
+					read.get(buf, 0, n);
+					dos.write(buf, 0, n);
+				}
+			}
+			dos.close();
+		} finally {
+			synchronized (this) {
+				for (int i = 0; i < this.chkptSegments.length; i++) {
+					this.chkptSegments[i].pinned = false;
+				}
+			}
+			this.chkptSegments = null;
+			this.chkptRecords = null;
+		}
+
+		final File oldChkpt = new File(this.filePrefix + "queue.chkpt");
+		final File newChkpt = new File(this.filePrefix + "queue.tmp");
+		if ((oldChkpt.exists() && !oldChkpt.delete()) || !newChkpt.renameTo(oldChkpt)) {
+			throw new IOException("SerializedStateQueue.commitChkpt: cannot delete " + oldChkpt);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.queue.StateQueue#recover()
+	 */
+	public final void recover() throws IOException {
+		final BufferedDataInputStream dis = FileUtil.newBdFIS(false, this.filePrefix + "queue.chkpt");
+		final long size = dis.readLong();
+		for (long i = 0; i < size; i++) {
+			final int n = dis.readInt();
+			if (n > this.scratch.length) {
+				this.scratch = new byte[Math.max(n, this.scratch.length * 2)];
+			}
+			dis.readFully(this.scratch, 0, n);
+			this.append(this.scratch, n);
+		}
+		dis.close();
+		this.len = size;
+	}
+
+	/**
+	 * A segment is appended to through {@link #write} and read from through
+	 * {@link #read}. The records of a segment are those between the read's
+	 * position and the write's position.
+	 */
+	private static final class Segment {
+		private final ByteBuffer write;
+		private final ByteBuffer read;
+		/**
+		 * true iff a checkpoint is being written from this segment.
+		 */
+		private boolean pinned = false;
+
+		Segment(final ByteBuffer buf) {
+			this.write = buf;
+			this.read = buf.duplicate();
+			this.read.limit(0);
+		}
+
+		void clear() {
+			this.write.clear();
+			this.read.clear();
+			this.read.limit(0);
+		}
+	}
+
+	/**
+	 * Exposes the buffer of a {@link ByteArrayOutputStream} to avoid a copy
+	 * per record.
+	 */
+	private static final class RecordOutputStream extends ByteArrayOutputStream {
+		byte[] buffer() {
+			return this.buf;
+		}
+	}
+}
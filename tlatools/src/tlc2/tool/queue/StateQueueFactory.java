@@ -0,0 +1,28 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.queue;
+
+public abstract class StateQueueFactory {
+
+	/**
+	 * System property with which a consumer defines the class name of the
+	 * {@link IStateQueue} implementation to use. Defaults to
+	 * {@link DiskStateQueue}.
+	 */
+	public static final String IMPL_PROPERTY = IStateQueue.class.getName() + ".impl";
+
+	/**
+	 * @param metadir
+	 *            The directory a queue stores its checkpoints (and possibly
+	 *            its states) in
+	 * @return A new {@link IStateQueue} as defined by {@link #IMPL_PROPERTY}
+	 */
+	public static IStateQueue getStateQueue(final String metadir) {
+		final String impl = System.getProperty(IMPL_PROPERTY, DiskStateQueue.class.getName());
+		if (SerializedStateQueue.class.getName().equals(impl)) {
+			return new SerializedStateQueue(metadir);
+		} else if (MemStateQueue.class.getName().equals(impl)) {
+			return new MemStateQueue(metadir);
+		}
+		return new DiskStateQueue(metadir);
+	}
+}
@@ -132,15 +132,12 @@ public class BitVector implements Serializable {
 	 * @return The number of bits set true
 	 */
 	public int trueCnt() {
+		if (this.word == null) {
+			return 0;
+		}
 		int res = 0;
-		for (int i = 0; i < this.word.length * 64; i++) {
-			// addr in long[]
-			int wd = i / 64;
-			// addr in long[x]
-			int bit = i % 64;
-			if ((this.word[wd] & (1L << bit)) != 0L) {
-				res++;
-			}
+		for (int wd = 0; wd < this.word.length; wd++) {
+			res += Long.bitCount(this.word[wd]);
 		}
 		return res;
 	}
@@ -166,7 +163,7 @@ public class BitVector implements Serializable {
   }
 
   /** Write the bit vector to a file. */
-  public void write(BufferedRandomAccessFile raf) throws IOException {
+  public void write(IRandomAccessFile raf) throws IOException {
     int len = this.word.length;
     raf.writeNat(len);
     for (int i = 0; i < len; i++) {
@@ -175,7 +172,7 @@ public class BitVector implements Serializable {
   }
 
   /** Read a bit vector from a file */
-  public void read(BufferedRandomAccessFile raf) throws IOException {
+  public void read(IRandomAccessFile raf) throws IOException {
     int len = raf.readNat();
     this.word = new long[len];
     for (int i = 0; i < len; i++) {
@@ -0,0 +1,243 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import util.BlockCodec;
+import util.BlockOutputStream;
+
+/**
+ * A {@link BlockRandomAccessFile} is an append-only file whose contents are
+ * stored in blocks encoded by a {@link BlockCodec}. It can be read at random.
+ * <p>
+ * A file pointer of a {@link BlockRandomAccessFile} is a virtual pointer: The
+ * high bits are the offset of a block in the file, the low
+ * {@link #OffsetBits} bits are the offset into the decoded block. Pointers
+ * thus grow monotonically as in an uncompressed file, but are not the length
+ * of the contents up to the pointer.
+ * <p>
+ * Bytes can only be written at the end of the file. Seeking back to the end
+ * (as returned by {@link #getFilePointer()} before a read) ends reading. The
+ * block being written is kept in memory and read from there. Like
+ * {@link BufferedRandomAccessFile}, the operations of this class are
+ * unmonitored.
+ */
+public final class BlockRandomAccessFile implements IRandomAccessFile {
+
+	private static final int OffsetBits = 16;
+	private static final long OffsetMask = (1L << OffsetBits) - 1;
+	private static final int HeaderSize = 5;
+
+	private final RandomAccessFile raf;
+	private final BlockCodec codec;
+	private final byte[] header = new byte[BlockCodec.HeaderSize];
+
+	/* the block being written */
+	private final byte[] wbuf;
+	private final byte[] frame;
+	private int wlen;
+	private long wblock;
+
+	/* the block being read */
+	private boolean reading;
+	private final byte[] rbuf;
+	private byte[] rdata; // either rbuf or wbuf
+	private int rpos, rlen;
+	private long rblock, rnext;
+
+	/**
+	 * Opens the given file for reading and writing. The file pointer is set
+	 * to the beginning of the file as with a {@link BufferedRandomAccessFile}.
+	 * The codec of an existing file takes precedence over the given one.
+	 */
+	public BlockRandomAccessFile(final String name, final BlockCodec codec) throws IOException {
+		this.raf = new RandomAccessFile(name, "rw");
+		if (this.raf.length() < HeaderSize) {
+			this.raf.setLength(0);
+			this.raf.writeInt(BlockOutputStream.MAGIC);
+			this.raf.writeByte(codec.getId());
+			this.codec = codec;
+		} else {
+			if (this.raf.readInt() != BlockOutputStream.MAGIC) {
+				throw new IOException(name + " is not a block encoded file");
+			}
+			this.codec = BlockCodec.get(this.raf.readByte());
+		}
+		this.wbuf = new byte[BlockCodec.BlockSize];
+		this.frame = new byte[this.codec.maxFrameLength(BlockCodec.BlockSize)];
+		this.rbuf = new byte[BlockCodec.BlockSize];
+		this.wlen = 0;
+		this.wblock = HeaderSize;
+		this.reading = false;
+		this.rblock = -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.util.IRandomAccessFile#getFilePointer()
+	 */
+	public long getFilePointer() {
+		if (this.reading) {
+			return (this.rblock << OffsetBits) | this.rpos;
+		}
+		return (this.wblock << OffsetBits) | this.wlen;
+	}
+
+	/**
+	 * Seeks to the virtual pointer pos to read from there. If pos is the end
+	 * of the file, subsequent writes append to the file. A pointer beyond the
+	 * end (such as a pointer recovered from a checkpoint) has to be at the
+	 * beginning of a block. The file is truncated at it and it becomes the new
+	 * end.
+	 *
+	 * @see tlc2.util.IRandomAccessFile#seek(long)
+	 */
+	public void seek(final long pos) throws IOException {
+		final long block = pos >>> OffsetBits;
+		final int off = (int) (pos & OffsetMask);
+		if (block == this.wblock && off == this.wlen) {
+			this.reading = false;
+		} else if (block > this.wblock || (block == this.wblock && off > this.wlen)) {
+			if (off != 0 || this.wlen != 0) {
+				throw new IOException("BlockRandomAccessFile: cannot seek beyond the end " + pos);
+			}
+			this.raf.setLength(block);
+			this.wblock = block;
+			this.rblock = -1;
+			this.reading = false;
+		} else {
+			this.load(block);
+			if (off > this.rlen) {
+				throw new IOException("BlockRandomAccessFile: invalid pointer " + pos);
+			}
+			this.rpos = off;
+			this.reading = true;
+		}
+	}
+
+	private void load(final long block) throws IOException {
+		if (block == this.wblock) {
+			this.rdata = this.wbuf;
+			this.rlen = this.wlen;
+			this.rnext = -1;
+		} else if (block != this.rblock || this.rdata != this.rbuf) {
+			this.raf.seek(block);
+			this.raf.readFully(this.header);
+			final int stored = BlockCodec.getStoredLength(this.header);
+			this.raf.readFully(this.frame, 0, stored);
+			this.rlen = this.codec.decodeBlock(this.header, this.frame, this.rbuf);
+			this.rdata = this.rbuf;
+			this.rnext = block + BlockCodec.HeaderSize + stored;
+		}
+		this.rblock = block;
+	}
+
+	private int read() throws IOException {
+		if (this.rpos == this.rlen) {
+			if (this.rblock == this.wblock) {
+				throw new EOFException();
+			}
+			this.load(this.rnext);
+			this.rpos = 0;
+		}
+		return this.rdata[this.rpos++] & 0xff;
+	}
+
+	private void write(final int b) throws IOException {
+		if (this.reading) {
+			throw new IOException("BlockRandomAccessFile: can only write at the end");
+		}
+		this.wbuf[this.wlen++] = (byte) b;
+		if (this.wlen == this.wbuf.length) {
+			// Flush eagerly to keep the offset of a pointer within OffsetBits
+			this.writeBlock();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		if (this.wlen > 0) {
+			final int n = this.codec.encodeBlock(this.wbuf, this.wlen, this.frame);
+			this.raf.seek(this.wblock);
+			this.raf.write(this.frame, 0, n);
+			this.wblock += n;
+			this.wlen = 0;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.util.IRandomAccessFile#readInt()
+	 */
+	public int readInt() throws IOException {
+		return (this.read() << 24) | (this.read() << 16) | (this.read() << 8) | this.read();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.util.IRandomAccessFile#readLong()
+	 */
+	public long readLong() throws IOException {
+		return ((long) this.readInt() << 32) | (this.readInt() & 0xffffffffL);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.util.IRandomAccessFile#readNat()
+	 */
+	public int readNat() throws IOException {
+		int res = (short) ((this.read() << 8) | this.read());
+		if (res >= 0) return res;
+		res = (res << 16) | (this.read() << 8) | this.read();
+		return -res;
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.util.IRandomAccessFile#writeInt(int)
+	 */
+	public void writeInt(final int x) throws IOException {
+		this.write(x >>> 24);
+		this.write(x >>> 16);
+		this.write(x >>> 8);
+		this.write(x);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.util.IRandomAccessFile#writeLong(long)
+	 */
+	public void writeLong(final long x) throws IOException {
+		this.writeInt((int) (x >>> 32));
+		this.writeInt((int) x);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.util.IRandomAccessFile#writeNat(int)
+	 */
+	public void writeNat(final int x) throws IOException {
+		if (x <= 0x7fff) {
+			this.write(x >>> 8);
+			this.write(x);
+		} else {
+			this.writeInt(-x);
+		}
+	}
+
+	/**
+	 * Writes the block being written, even if it is not full. Subsequent
+	 * writes start a new block.
+	 *
+	 * @see tlc2.util.IRandomAccessFile#flush()
+	 */
+	public void flush() throws IOException {
+		if (this.reading) {
+			return;
+		}
+		this.writeBlock();
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.util.IRandomAccessFile#close()
+	 */
+	public void close() throws IOException {
+		this.reading = false;
+		this.writeBlock();
+		this.raf.close();
+	}
+}
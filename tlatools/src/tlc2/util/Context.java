@@ -33,6 +33,14 @@ public final class Context {
     return new Context(name, value, this);
   }
 
+  /* The name of the first pair, null if this is Empty or a branch. */
+  public final SymbolNode getName() { return this.name; }
+
+  public final Object getValue() { return this.value; }
+
+  /* The rest of this context, null if this is Empty. */
+  public final Context getNext() { return this.next; }
+
   /**
    * This method returns the value for the name var. It returns null
    * if this context does not contain var.
@@ -59,35 +59,61 @@ public class FP64 {
         characters of <code>s</code>. */
     public static long Extend(long fp, String s)
     {
-    	final long[] mod = ByteModTable_7;
-    	final int mask = 0xFF;
-    	final int len = s.length();
-	for (int i = 0; i < len; i++) {
+	final long[] mod = ByteModTable_7;
+	final long[] shift = ShiftTable;
+	final int len = s.length();
+	int i = 0;
+	for (; i + 8 <= len; i += 8) {
+	  long v = (s.charAt(i) & 0xFFL) | (s.charAt(i+1) & 0xFFL) << 8 |
+	    (s.charAt(i+2) & 0xFFL) << 16 | (s.charAt(i+3) & 0xFFL) << 24 |
+	    (s.charAt(i+4) & 0xFFL) << 32 | (s.charAt(i+5) & 0xFFL) << 40 |
+	    (s.charAt(i+6) & 0xFFL) << 48 | (s.charAt(i+7) & 0xFFL) << 56;
+	  fp = Shift8(shift, fp ^ v);
+	}
+	for (; i < len; i++) {
 	  char c = s.charAt(i);
-	  fp = ((fp >>> 8) ^ (mod[(((int)c) ^ ((int)fp)) & mask]));
-    	}
+	  fp = ((fp >>> 8) ^ (mod[(((int)c) ^ ((int)fp)) & 0xFF]));
+	}
 	return fp;
     }
 
     /** Extend the fingerprint <code>fp</code> by the characters of 
         <code>chars</code>. */
     public static long Extend(long fp, char[] chars, int start, int len) {
-    	final long[] mod = ByteModTable_7;
-    	int end = start + len;
-	for (int i = start; i < end; i++) {
+	final long[] mod = ByteModTable_7;
+	final long[] shift = ShiftTable;
+	final int end = start + len;
+	int i = start;
+	for (; i + 8 <= end; i += 8) {
+	  long v = (chars[i] & 0xFFL) | (chars[i+1] & 0xFFL) << 8 |
+	    (chars[i+2] & 0xFFL) << 16 | (chars[i+3] & 0xFFL) << 24 |
+	    (chars[i+4] & 0xFFL) << 32 | (chars[i+5] & 0xFFL) << 40 |
+	    (chars[i+6] & 0xFFL) << 48 | (chars[i+7] & 0xFFL) << 56;
+	  fp = Shift8(shift, fp ^ v);
+	}
+	for (; i < end; i++) {
 	  fp = ((fp >>> 8) ^ (mod[(((int)chars[i]) ^ ((int)fp)) & 0xFF]));
-    	}
+	}
 	return fp;
     }
 
     /** Extend the fingerprint <code>fp</code> by the
         bytes in the array <code>bytes</code>. */
     public static long Extend(long fp, byte[] bytes, int start, int len) {
-    	final long[] mod = ByteModTable_7;
-    	int end = start + len;
-	for (int i = start; i < end; i++) {
+	final long[] mod = ByteModTable_7;
+	final long[] shift = ShiftTable;
+	final int end = start + len;
+	int i = start;
+	for (; i + 8 <= end; i += 8) {
+	  long v = (bytes[i] & 0xFFL) | (bytes[i+1] & 0xFFL) << 8 |
+	    (bytes[i+2] & 0xFFL) << 16 | (bytes[i+3] & 0xFFL) << 24 |
+	    (bytes[i+4] & 0xFFL) << 32 | (bytes[i+5] & 0xFFL) << 40 |
+	    (bytes[i+6] & 0xFFL) << 48 | (bytes[i+7] & 0xFFL) << 56;
+	  fp = Shift8(shift, fp ^ v);
+	}
+	for (; i < end; i++) {
 	  fp = (fp >>> 8) ^ mod[(bytes[i] ^ (int)fp) & 0xFF];
-    	}
+	}
 	return fp;
     }
 
@@ -129,13 +155,27 @@ public class FP64 {
      */
     public static long Extend(long fp, int x)
     {
-        long[] mod = ByteModTable_7;
-	for (int i = 0; i < 4; i++) {
-	  byte b = (byte)(x & 0xFF);
-	  fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	  x = x >>> 8;
-	}
-	return fp;
+	final long[] shift = ShiftTable;
+	final long v = fp ^ (x & 0xFFFFFFFFL);
+	return (v >>> 32) ^
+	  shift[0x400 | ((int)v & 0xFF)] ^ shift[0x500 | ((int)(v >>> 8) & 0xFF)] ^
+	  shift[0x600 | ((int)(v >>> 16) & 0xFF)] ^ shift[0x700 | ((int)(v >>> 24) & 0xFF)];
+    }
+
+    /*
+     * Extend the fingerprint <code>fp</code> by a byte <code>b</code>
+     * and then by an integer <code>x</code>, i.e. Extend(Extend(fp, b), x).
+     * Values extend fingerprints by their kind followed by a size or an
+     * integer.
+     */
+    public static long Extend(long fp, byte b, int x)
+    {
+	final long[] shift = ShiftTable;
+	final long v = fp ^ ((b & 0xFFL) | (x & 0xFFFFFFFFL) << 8);
+	return (v >>> 40) ^
+	  shift[0x300 | ((int)v & 0xFF)] ^ shift[0x400 | ((int)(v >>> 8) & 0xFF)] ^
+	  shift[0x500 | ((int)(v >>> 16) & 0xFF)] ^ shift[0x600 | ((int)(v >>> 24) & 0xFF)] ^
+	  shift[0x700 | ((int)(v >>> 32) & 0xFF)];
     }
 
     /*
@@ -144,54 +184,46 @@ public class FP64 {
      */
     public static long Extend(long fp, long fp1)
     {
-        long[] mod = ByteModTable_7;
-
-	byte b = (byte)(fp1 & 0xFF);
-	fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	fp1 = fp1 >>> 8;
-
-	b = (byte)(fp1 & 0xFF);
-	fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	fp1 = fp1 >>> 8;
-
-	b = (byte)(fp1 & 0xFF);
-	fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	fp1 = fp1 >>> 8;
-
-	b = (byte)(fp1 & 0xFF);
-	fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	fp1 = fp1 >>> 8;
-
-	b = (byte)(fp1 & 0xFF);
-	fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	fp1 = fp1 >>> 8;
-
-	b = (byte)(fp1 & 0xFF);
-	fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	fp1 = fp1 >>> 8;
-
-	b = (byte)(fp1 & 0xFF);
-	fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	fp1 = fp1 >>> 8;
-
-	b = (byte)(fp1 & 0xFF);
-	fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	/*fp1 = fp1 >>> 8;*/
-
-	return fp;
+	return Shift8(ShiftTable, fp ^ fp1);
     }
-/*
-    public static long Extend(long fp, long fp1)
+
+    /**
+     * Extend the fingerprint <code>fp</code> by the <code>len</code>
+     * characters (or bytes) whose extension of the fingerprint
+     * <code>Zero</code> is <code>raw</code>, i.e.
+     * Extend(fp, s) == Concat(fp, Extend(Zero, s), s.length()).
+     * The extension is linear in the fingerprint, so raw can be
+     * computed once for strings which are extended by often.
+     */
+    public static long Concat(long fp, long raw, int len)
     {
-        long[] mod = ByteModTable_7;
-	for (int i = 0; i < 8; i++) {
-	  byte b = (byte)(fp1 & 0xFF);
-	  fp = ((fp >>> 8) ^ (mod[(b ^ ((int)fp)) & 0xFF]));
-	  fp1 = fp1 >>> 8;
+	final long[] shift = ShiftTable;
+	for (; len >= 8; len -= 8) {
+	  fp = Shift8(shift, fp);
 	}
-	return fp;
+	if (len > 0) {
+	  long res = fp >>> (len << 3);
+	  for (int i = 0; i < len; i++) {
+	    res ^= shift[((i + 8 - len) << 8) | ((int)(fp >>> (i << 3)) & 0xFF)];
+	  }
+	  fp = res;
+	}
+	return fp ^ raw;
+    }
+
+    /*
+     * The extension of the fingerprint v by eight 0 bytes: The extension
+     * by a byte is linear in the fingerprint, thus the sum of the
+     * extensions of the bytes of v (of ShiftTable), which, unlike eight
+     * successive extensions, do not depend on each other.
+     */
+    private static long Shift8(long[] shift, long v)
+    {
+	return shift[(int)v & 0xFF] ^ shift[0x100 | ((int)(v >>> 8) & 0xFF)] ^
+	  shift[0x200 | ((int)(v >>> 16) & 0xFF)] ^ shift[0x300 | ((int)(v >>> 24) & 0xFF)] ^
+	  shift[0x400 | ((int)(v >>> 32) & 0xFF)] ^ shift[0x500 | ((int)(v >>> 40) & 0xFF)] ^
+	  shift[0x600 | ((int)(v >>> 48) & 0xFF)] ^ shift[0x700 | (int)(v >>> 56)];
     }
-*/
 
     /** Return a hash value of the fingerprint <code>fp</code>. */
     public static int Hash(long fp)
@@ -370,6 +402,11 @@ public class FP64 {
        extend a byte at a time, we need just "ByteModeTable[7]". */
     private static long[] ByteModTable_7;
 
+    /* ShiftTable[(k << 8) | b] is the extension of the fingerprint
+       b << 8*k by eight 0 bytes. Extending a fingerprint by up to
+       eight bytes at once takes one lookup per byte, all independent. */
+    private static long[] ShiftTable;
+
     /* This is the irreducible polynomial used as seed.  */
     private static long IrredPoly;
 
@@ -408,6 +445,18 @@ public class FP64 {
 	}
 	ByteModTable_7[j] = v;
       }
+
+      long[] shift = new long[8 * 256];
+      for (int k = 0; k < 8; k++) {
+	for (int b = 0; b <= 255; b++) {
+	  long v = ((long)b) << (8*k);
+	  for (int i = 0; i < 8; i++) {
+	    v = (v >>> 8) ^ ByteModTable_7[(int)v & 0xFF];
+	  }
+	  shift[(k << 8) | b] = v;
+	}
+      }
+      ShiftTable = shift;
     }
   
 }
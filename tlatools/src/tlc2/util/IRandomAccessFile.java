@@ -0,0 +1,33 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.util;
+
+import java.io.IOException;
+
+/**
+ * The operations of a {@link BufferedRandomAccessFile} which the liveness
+ * checker's node file relies on. Besides {@link BufferedRandomAccessFile},
+ * they are implemented by the block compressed
+ * {@link BlockRandomAccessFile}.
+ */
+public interface IRandomAccessFile {
+
+	long getFilePointer() throws IOException;
+
+	void seek(long pos) throws IOException;
+
+	int readInt() throws IOException;
+
+	long readLong() throws IOException;
+
+	int readNat() throws IOException;
+
+	void writeInt(int x) throws IOException;
+
+	void writeLong(long x) throws IOException;
+
+	void writeNat(int x) throws IOException;
+
+	void flush() throws IOException;
+
+	void close() throws IOException;
+}
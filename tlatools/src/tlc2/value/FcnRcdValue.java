@@ -147,6 +147,8 @@ public class FcnRcdValue extends Value implements Applicable {
   }
 
   public final boolean equals(Object obj) {
+    // short-circuit for shared (e.g. interned, see ValueInterner) values
+    if (this == obj) return true;
     FcnRcdValue fcn = convert(obj);
     if (fcn == null) {
       if (obj instanceof ModelValue) 
@@ -483,8 +485,7 @@ public class FcnRcdValue extends Value implements Applicable {
   public final long fingerPrint(long fp) {
     this.normalize();
     int flen = this.values.length;
-    fp = FP64.Extend(fp, FCNRCDVALUE);
-    fp = FP64.Extend(fp, flen);
+    fp = FP64.Extend(fp, FCNRCDVALUE, flen);
     if (this.intv == null) {
       for (int i = 0; i < flen; i++) {
 	fp = this.domain[i].fingerPrint(fp);
@@ -493,8 +494,7 @@ public class FcnRcdValue extends Value implements Applicable {
     }
     else {
       for (int i = 0; i < flen; i++) {
-	fp = FP64.Extend(fp, INTVALUE);
-	fp = FP64.Extend(fp, i + this.intv.low);
+	fp = FP64.Extend(fp, INTVALUE, i + this.intv.low);
 	fp = this.values[i].fingerPrint(fp);
       }
     }
@@ -0,0 +1,324 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.util.Arrays;
+
+import tlc2.TLCGlobals;
+import tlc2.output.EC;
+import tlc2.util.FP64;
+import util.Assert;
+
+/**
+ * An IntSetValue is a finite set of integers stored as a bitset: The set
+ * contains low + 64*i + j iff bit j of words[i] is set. Sets of integers
+ * which are dense, such as sets of process ids and subsets of 1..N, are
+ * created as IntSetValues (see {@link #create(ValueVec, boolean)}) rather
+ * than as {@link SetEnumValue}s of {@link IntValue}s. Membership is a bit
+ * test, and \cup, \cap and \ of two IntSetValues are computed a word at a
+ * time.
+ * <p>
+ * An IntSetValue is immutable. It is indistinguishable from the
+ * {@link SetEnumValue} of its elements: both have the same fingerprint,
+ * compare as equal and print the same way.
+ */
+public class IntSetValue extends Value implements Enumerable, Reducible {
+  private static final long serialVersionUID = -4393128627391465384L;
+
+  /*
+   * low is a multiple of 64, words[0] and words[words.length-1] are not 0. Of
+   * two equal IntSetValues, low and words are thus equal too.
+   */
+  final int low;
+  final long[] words;
+  private final int size;
+
+  private IntSetValue(int low, long[] words, int size) {
+    this.low = low;
+    this.words = words;
+    this.size = size;
+  }
+
+  /**
+   * @return The set of elems as an IntSetValue if elems are integers which
+   *         occupy at least as many words as there are elements, as a
+   *         SetEnumValue otherwise.
+   */
+  public static Value create(ValueVec elems, boolean isNorm) {
+    IntSetValue set = convert(elems);
+    if (set != null) return set;
+    return new SetEnumValue(elems, isNorm);
+  }
+
+  /**
+   * @return The IntSetValue of elems or null if elems are empty, not all
+   *         integers or not dense.
+   */
+  static IntSetValue convert(ValueVec elems) {
+    int sz = elems.size();
+    if (sz == 0 || !(elems.elementAt(0) instanceof IntValue)) return null;
+    int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+    for (int i = 0; i < sz; i++) {
+      Value elem = elems.elementAt(i);
+      if (!(elem instanceof IntValue)) return null;
+      int x = ((IntValue)elem).val;
+      if (x < min) min = x;
+      if (x > max) max = x;
+    }
+    int low = min & ~63;
+    long nwords = (((long)max - low) >>> 6) + 1;
+    if (nwords > sz) return null;
+    long[] words = new long[(int)nwords];
+    for (int i = 0; i < sz; i++) {
+      int off = ((IntValue)elems.elementAt(i)).val - low;
+      words[off >>> 6] |= 1L << off;
+    }
+    return new IntSetValue(low, words, count(words));
+  }
+
+  /**
+   * @return val as an IntSetValue, null if val is no set of integers which
+   *         converts cheaply.
+   */
+  static IntSetValue convert(Value val) {
+    if (val instanceof IntSetValue) {
+      return (IntSetValue)val;
+    }
+    if (val instanceof IntervalValue) {
+      IntervalValue intv = (IntervalValue)val;
+      int sz = intv.size();
+      if (sz == 0 || sz > TLCGlobals.setBound) return null;
+      int low = intv.low & ~63;
+      long[] words = new long[(int)((((long)intv.high - low) >>> 6) + 1)];
+      for (int x = intv.low; x <= intv.high; x++) {
+        int off = x - low;
+        words[off >>> 6] |= 1L << off;
+      }
+      return new IntSetValue(low, words, sz);
+    }
+    if (val instanceof SetEnumValue) {
+      return convert(((SetEnumValue)val).elems);
+    }
+    return null;
+  }
+
+  /* The set read from a ValueInputStream. */
+  static IntSetValue read(int low, long[] words) {
+    return new IntSetValue(low, words, count(words));
+  }
+
+  /**
+   * @return The set of the bits of words (starting at low), as an
+   *         IntSetValue if it is dense, as a SetEnumValue otherwise.
+   */
+  private static Value make(int low, long[] words) {
+    int first = 0, last = words.length - 1;
+    while (first <= last && words[first] == 0) first++;
+    while (last >= first && words[last] == 0) last--;
+    if (first > last) {
+      return new SetEnumValue(new ValueVec(0), true);
+    }
+    if (first != 0 || last != words.length - 1) {
+      long[] trimmed = new long[last - first + 1];
+      System.arraycopy(words, first, trimmed, 0, trimmed.length);
+      words = trimmed;
+      low += first << 6;
+    }
+    IntSetValue set = new IntSetValue(low, words, count(words));
+    if (words.length > set.size) {
+      return set.toSetEnum();
+    }
+    return set;
+  }
+
+  private static int count(long[] words) {
+    int cnt = 0;
+    for (int i = 0; i < words.length; i++) {
+      cnt += Long.bitCount(words[i]);
+    }
+    return cnt;
+  }
+
+  public final byte getKind() { return INTSETVALUE; }
+
+  public final int compareTo(Object obj) {
+    if (obj instanceof IntSetValue) {
+      IntSetValue set = (IntSetValue)obj;
+      int cmp = this.size - set.size;
+      if (cmp != 0) return cmp;
+      // Lexicographically, as SetEnumValue compares its IntValues.
+      ValueEnumeration Enum1 = this.elements();
+      ValueEnumeration Enum2 = set.elements();
+      IntValue x;
+      while ((x = (IntValue)Enum1.nextElement()) != null) {
+        cmp = x.val - ((IntValue)Enum2.nextElement()).val;
+        if (cmp != 0) return cmp;
+      }
+      return 0;
+    }
+    return this.toSetEnum().compareTo(obj);
+  }
+
+  public final boolean equals(Object obj) {
+    if (obj instanceof IntSetValue) {
+      IntSetValue set = (IntSetValue)obj;
+      return this.low == set.low && Arrays.equals(this.words, set.words);
+    }
+    return this.toSetEnum().equals(obj);
+  }
+
+  public final boolean member(Value elem) {
+    if (elem instanceof IntValue) {
+      long off = (long)((IntValue)elem).val - this.low;
+      return off >= 0 && (off >>> 6) < this.words.length &&
+        (this.words[(int)(off >>> 6)] & (1L << off)) != 0;
+    }
+    // Fails (or not) as for the SetEnumValue.
+    return this.toSetEnum().member(elem);
+  }
+
+  public final boolean isFinite() { return true; }
+
+  public final int size() { return this.size; }
+
+  /* Return this \ val. */
+  public final Value diff(Value val) {
+    IntSetValue set = convert(val);
+    if (set == null) {
+      return this.toSetEnum().diff(val);
+    }
+    long[] res = this.words.clone();
+    int shift = (int)(((long)set.low - this.low) >> 6);
+    for (int i = Math.max(0, shift); i < res.length && i - shift < set.words.length; i++) {
+      res[i] &= ~set.words[i - shift];
+    }
+    return make(this.low, res);
+  }
+
+  /* Return this \cap val. */
+  public final Value cap(Value val) {
+    IntSetValue set = convert(val);
+    if (set == null) {
+      return this.toSetEnum().cap(val);
+    }
+    long[] res = this.words.clone();
+    int shift = (int)(((long)set.low - this.low) >> 6);
+    for (int i = 0; i < res.length; i++) {
+      int j = i - shift;
+      res[i] &= (j >= 0 && j < set.words.length) ? set.words[j] : 0;
+    }
+    return make(this.low, res);
+  }
+
+  /* Return this \cup val. */
+  public final Value cup(Value val) {
+    IntSetValue set = convert(val);
+    if (set == null) {
+      return this.toSetEnum().cup(val);
+    }
+    int low = Math.min(this.low, set.low);
+    long high = Math.max((long)this.low + ((long)this.words.length << 6),
+                         (long)set.low + ((long)set.words.length << 6));
+    long nwords = (high - low) >>> 6;
+    if (nwords > this.size + set.size) {
+      // Too sparse to be an IntSetValue.
+      return this.toSetEnum().cup(set.toSetEnum());
+    }
+    long[] res = new long[(int)nwords];
+    int shift1 = (int)(((long)this.low - low) >> 6);
+    for (int i = 0; i < this.words.length; i++) {
+      res[i + shift1] = this.words[i];
+    }
+    int shift2 = (int)(((long)set.low - low) >> 6);
+    for (int i = 0; i < set.words.length; i++) {
+      res[i + shift2] |= set.words[i];
+    }
+    return make(low, res);
+  }
+
+  public final Value takeExcept(ValueExcept ex) {
+    if (ex.idx < ex.path.length) {
+      Assert.fail(EC.GENERAL, "Attempted to apply EXCEPT to the set " + ppr(this.toString()) + ".");
+    }
+    return ex.value;
+  }
+
+  public final Value takeExcept(ValueExcept[] exs) {
+    if (exs.length != 0) {
+      Assert.fail(EC.GENERAL, "Attempted to apply EXCEPT to the set " + ppr(this.toString()) + ".");
+    }
+    return this;
+  }
+
+  public final boolean isNormalized() { return true; }
+
+  public final void normalize() { /*nop*/ }
+
+  public final boolean isDefined() { return true; }
+
+  public final Value deepCopy() { return this; }
+
+  public final boolean assignable(Value val) { return this.equals(val); }
+
+  /* The fingerprint method: the one of the SetEnumValue. */
+  public final long fingerPrint(long fp) {
+    fp = FP64.Extend(fp, SETENUMVALUE, this.size);
+    for (int i = 0; i < this.words.length; i++) {
+      long word = this.words[i];
+      while (word != 0) {
+        fp = FP64.Extend(fp, INTVALUE, this.low + (i << 6) + Long.numberOfTrailingZeros(word));
+        word &= word - 1;
+      }
+    }
+    return fp;
+  }
+
+  public final Value permute(MVPerm perm) {
+    return this;
+  }
+
+  /* The string representation: the one of the SetEnumValue. */
+  public final StringBuffer toString(StringBuffer sb, int offset) {
+    return this.toSetEnum().toString(sb, offset);
+  }
+
+  /**
+   * @return The normalized SetEnumValue of the elements of this set.
+   */
+  final SetEnumValue toSetEnum() {
+    Value[] vals = new Value[this.size];
+    ValueEnumeration Enum = this.elements();
+    for (int i = 0; i < vals.length; i++) {
+      vals[i] = Enum.nextElement();
+    }
+    return new SetEnumValue(vals, true);
+  }
+
+  /* The elements in ascending order, the order of the normalized set. */
+  public final ValueEnumeration elements() {
+    return new Enumerator();
+  }
+
+  final class Enumerator implements ValueEnumeration {
+    private int idx = 0;
+    private long word = words[0];
+
+    public final void reset() {
+      this.idx = 0;
+      this.word = words[0];
+    }
+
+    public final Value nextElement() {
+      while (this.word == 0) {
+        if (++this.idx >= words.length) {
+          this.idx = words.length;
+          return null;
+        }
+        this.word = words[this.idx];
+      }
+      int x = low + (this.idx << 6) + Long.numberOfTrailingZeros(this.word);
+      this.word &= this.word - 1;
+      return IntValue.gen(x);
+    }
+  }
+
+}
@@ -116,7 +116,7 @@ public class IntValue extends Value {
 
   /* The fingerprint methods */
   public final long fingerPrint(long fp) {
-    return FP64.Extend(FP64.Extend(fp, INTVALUE), this.val);
+    return FP64.Extend(fp, INTVALUE, this.val);
   }
 
   public final Value permute(MVPerm perm) { return this; }
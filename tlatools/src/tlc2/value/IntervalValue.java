@@ -70,7 +70,7 @@ implements Enumerable, Reducible {
       Value elem = IntValue.gen(i);      
       if (!val.member(elem)) diffElems.addElement(elem);
     }
-    return new SetEnumValue(diffElems, true);
+    return IntSetValue.create(diffElems, true);
   }
 
   /* Return this \cap val. */
@@ -80,13 +80,16 @@ implements Enumerable, Reducible {
       Value elem = IntValue.gen(i);
       if (val.member(elem)) capElems.addElement(elem);
     }
-    return new SetEnumValue(capElems, true);
+    return IntSetValue.create(capElems, true);
   }
 
   /* Return this \cup val.  */
   public final Value cup(Value set) {
     if (this.size() == 0) return set;
 
+    if (set instanceof IntSetValue) {
+      return ((IntSetValue)set).cup(this);
+    }
     if (set instanceof Reducible) {
       ValueVec cupElems = new ValueVec();
       for (int i = this.low; i <= this.high; i++) {
@@ -134,11 +137,9 @@ implements Enumerable, Reducible {
 
   /* The fingerprint method */
   public final long fingerPrint(long fp) {
-    fp = FP64.Extend(fp, SETENUMVALUE);
-    fp = FP64.Extend(fp, this.size()) ;
+    fp = FP64.Extend(fp, SETENUMVALUE, this.size());
     for (int i = this.low; i <= this.high; i++) {
-      fp = FP64.Extend(fp, INTVALUE);
-      fp = FP64.Extend(fp, i);
+      fp = FP64.Extend(fp, INTVALUE, i);
     }
     return fp;
   }
@@ -0,0 +1,269 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MethodAdapter calls a static Java method which overrides a TLA+ operator
+ * (see {@link MethodValue}) directly, i.e. without going through
+ * {@link Method#invoke(Object, Object...)}. The adapter of a method is a
+ * class generated at runtime whose {@link #apply(Value[])} unpacks the fixed
+ * number of arguments of the method, casts them to the parameter types and
+ * invokes the method (invokestatic).
+ * <p>
+ * Exceptions thrown by the method are passed on unwrapped.
+ */
+public abstract class MethodAdapter {
+
+  /**
+   * System property to disable the generation of adapters, overrides are
+   * then invoked reflectively.
+   */
+  public static final boolean DISABLED = Boolean.getBoolean(MethodAdapter.class.getName() + ".disabled");
+
+  private static final String VALUE = "tlc2/value/Value";
+  private static final String SUPER = "tlc2/value/MethodAdapter";
+  private static final String APPLY_DESC = "([L" + VALUE + ";)L" + VALUE + ";";
+
+  private static int count = 0;
+
+  protected MethodAdapter() {
+    // Instantiated by the generated subclasses only
+  }
+
+  /**
+   * @param args
+   *            The arguments of the method, exactly as many as it has
+   *            parameters
+   * @return The result of the method
+   */
+  public abstract Value apply(Value[] args);
+
+  /**
+   * @return A new adapter of md or null if md cannot be invoked directly:
+   *         it is not public, not static, of a class not public or has
+   *         parameters or a result which are no values.
+   */
+  public static MethodAdapter create(final Method md) {
+    if (DISABLED || !isAdaptable(md)) {
+      return null;
+    }
+    final String name;
+    synchronized (MethodAdapter.class) {
+      name = MethodAdapter.class.getName() + "$" + (count++);
+    }
+    try {
+      final byte[] bytes = generate(name.replace('.', '/'), md);
+      ClassLoader parent = md.getDeclaringClass().getClassLoader();
+      if (parent == null) {
+        parent = MethodAdapter.class.getClassLoader();
+      }
+      final Class<?> cl = new Loader(parent).define(name, bytes);
+      return (MethodAdapter) cl.getDeclaredConstructor().newInstance();
+    } catch (Throwable e) {
+      // Verification or linkage of the adapter failed (e.g. the class of
+      // the method is not visible to the loader). Fall back to reflection.
+      return null;
+    }
+  }
+
+  private static boolean isAdaptable(final Method md) {
+    final int mod = md.getModifiers();
+    if (!Modifier.isPublic(mod) || !Modifier.isStatic(mod)
+        || !Modifier.isPublic(md.getDeclaringClass().getModifiers())) {
+      return false;
+    }
+    if (!isAccessible(md.getReturnType())) {
+      return false;
+    }
+    final Class<?>[] params = md.getParameterTypes();
+    for (int i = 0; i < params.length; i++) {
+      if (!isAccessible(params[i])) {
+        return false;
+      }
+    }
+    return params.length < 128;
+  }
+
+  private static boolean isAccessible(final Class<?> type) {
+    return !type.isPrimitive() && !type.isArray() && Modifier.isPublic(type.getModifiers());
+  }
+
+  /**
+   * @return True iff the adapter of md can be applied to args, i.e. args
+   *         are as many and of the parameter types of md. Otherwise
+   *         {@link #apply(Value[])} fails before md is invoked.
+   */
+  public static boolean accepts(final Method md, final Value[] args) {
+    final Class<?>[] params = md.getParameterTypes();
+    if (params.length != args.length) {
+      return false;
+    }
+    for (int i = 0; i < params.length; i++) {
+      if (args[i] != null && !params[i].isInstance(args[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return The class file (version 49, no stack maps) of the adapter
+   */
+  private static byte[] generate(final String name, final Method md) throws IOException {
+    final ConstantPool pool = new ConstantPool();
+    final int thisClass = pool.addClass(name);
+    final int superClass = pool.addClass(SUPER);
+    final int superInit = pool.addMethodref(superClass, "<init>", "()V");
+    final int applyName = pool.addUtf8("apply");
+    final int applyDesc = pool.addUtf8(APPLY_DESC);
+    final int initName = pool.addUtf8("<init>");
+    final int initDesc = pool.addUtf8("()V");
+    final int codeName = pool.addUtf8("Code");
+
+    // apply: args[0], ..., args[n-1] cast to the parameter types
+    final Class<?>[] params = md.getParameterTypes();
+    final StringBuffer desc = new StringBuffer("(");
+    final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+    final DataOutputStream code = new DataOutputStream(codeBytes);
+    for (int i = 0; i < params.length; i++) {
+      desc.append(descriptor(params[i]));
+      code.writeByte(0x2B); // aload_1
+      if (i <= 5) {
+        code.writeByte(0x03 + i); // iconst_i
+      } else {
+        code.writeByte(0x10); // bipush
+        code.writeByte(i);
+      }
+      code.writeByte(0x32); // aaload
+      if (!params[i].isAssignableFrom(Value.class)) {
+        code.writeByte(0xC0); // checkcast
+        code.writeShort(pool.addClass(internalName(params[i])));
+      }
+    }
+    desc.append(')').append(descriptor(md.getReturnType()));
+    final int target = pool.addMethodref(pool.addClass(internalName(md.getDeclaringClass())), md.getName(),
+        desc.toString());
+    code.writeByte(0xB8); // invokestatic
+    code.writeShort(target);
+    if (!Value.class.isAssignableFrom(md.getReturnType())) {
+      code.writeByte(0xC0); // checkcast
+      code.writeShort(pool.addClass(VALUE));
+    }
+    code.writeByte(0xB0); // areturn
+    code.flush();
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0xCAFEBABE);
+    out.writeShort(0);
+    out.writeShort(49);
+    pool.write(out);
+    out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+    out.writeShort(thisClass);
+    out.writeShort(superClass);
+    out.writeShort(0); // interfaces
+    out.writeShort(0); // fields
+    out.writeShort(2); // methods
+
+    // public <init>() { super(); }
+    writeMethod(out, 0x0001, initName, initDesc, codeName, 1, 1,
+        new byte[] { 0x2A, (byte) 0xB7, (byte) (superInit >> 8), (byte) superInit, (byte) 0xB1 });
+    // public final Value apply(Value[] args)
+    writeMethod(out, 0x0001 | 0x0010, applyName, applyDesc, codeName, Math.max(1, params.length + 1), 2,
+        codeBytes.toByteArray());
+
+    out.writeShort(0); // attributes
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static void writeMethod(final DataOutputStream out, final int access, final int name, final int desc,
+      final int codeName, final int maxStack, final int maxLocals, final byte[] code) throws IOException {
+    out.writeShort(access);
+    out.writeShort(name);
+    out.writeShort(desc);
+    out.writeShort(1); // attributes
+    out.writeShort(codeName);
+    out.writeInt(12 + code.length);
+    out.writeShort(maxStack);
+    out.writeShort(maxLocals);
+    out.writeInt(code.length);
+    out.write(code);
+    out.writeShort(0); // exception table
+    out.writeShort(0); // attributes
+  }
+
+  private static String internalName(final Class<?> cl) {
+    return cl.getName().replace('.', '/');
+  }
+
+  private static String descriptor(final Class<?> cl) {
+    return "L" + internalName(cl) + ";";
+  }
+
+  private static class ConstantPool {
+    private final List<String> entries = new ArrayList<String>();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(this.bytes);
+
+    /**
+     * @return The index of the entry (starting at 1), identical entries are
+     *         shared
+     */
+    private int add(final String key, final int tag, final Object[] content) throws IOException {
+      final int idx = this.entries.indexOf(key);
+      if (idx >= 0) {
+        return idx + 1;
+      }
+      this.out.writeByte(tag);
+      for (int i = 0; i < content.length; i++) {
+        if (content[i] instanceof String) {
+          this.out.writeUTF((String) content[i]);
+        } else {
+          this.out.writeShort(((Integer) content[i]).intValue());
+        }
+      }
+      this.entries.add(key);
+      return this.entries.size();
+    }
+
+    int addUtf8(final String s) throws IOException {
+      return this.add("U" + s, 1, new Object[] { s });
+    }
+
+    int addClass(final String name) throws IOException {
+      final int utf8 = this.addUtf8(name);
+      return this.add("C" + name, 7, new Object[] { Integer.valueOf(utf8) });
+    }
+
+    int addMethodref(final int owner, final String name, final String desc) throws IOException {
+      final int nameAndType = this.add("N" + name + " " + desc, 12, new Object[] {
+          Integer.valueOf(this.addUtf8(name)), Integer.valueOf(this.addUtf8(desc)) });
+      return this.add("M" + owner + " " + name + " " + desc, 10, new Object[] { Integer.valueOf(owner),
+          Integer.valueOf(nameAndType) });
+    }
+
+    void write(final DataOutputStream dos) throws IOException {
+      this.out.flush();
+      dos.writeShort(this.entries.size() + 1);
+      dos.write(this.bytes.toByteArray());
+    }
+  }
+
+  private static class Loader extends ClassLoader {
+    Loader(final ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(final String name, final byte[] bytes) {
+      return this.defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+}
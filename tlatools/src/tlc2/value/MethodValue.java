@@ -15,9 +15,14 @@ import util.WrongInvocationException;
 
 public class MethodValue extends OpValue implements Applicable {
   public Method md;
+  /* Invokes md directly, null if md has to be invoked reflectively. */
+  private final MethodAdapter adapter;
   
   /* Constructor */
-  public MethodValue(Method md) { this.md = md; }
+  public MethodValue(Method md) {
+    this.md = md;
+    this.adapter = MethodAdapter.create(md);
+  }
 
   public final byte getKind() { return METHODVALUE; }
 
@@ -50,6 +55,22 @@ public class MethodValue extends OpValue implements Applicable {
   }
 
   public final Value apply(Value[] args, int control) {
+      if (this.adapter != null) {
+          try {
+              return this.adapter.apply(args);
+          } catch (Throwable e) {
+              if (!MethodAdapter.accepts(this.md, args)) {
+                  // md has not been invoked, report the wrong number or types
+                  // of arguments as reflection does.
+                  return this.invoke(args);
+              }
+              throw new EvalException(EC.TLC_MODULE_VALUE_JAVA_METHOD_OVERRIDE, new String[]{this.md.toString(), e.getMessage()});
+          }
+      }
+      return this.invoke(args);
+  }
+
+  private final Value invoke(Value[] args) {
       Value res = null;
       try 
       {
@@ -211,7 +211,7 @@ public class ModelValue extends Value {
 
   /* The fingerprint methods */
   public final long fingerPrint(long fp) {
-    return this.val.fingerPrint(FP64.Extend(fp, MODELVALUE));
+    return FP64.Extend(fp, MODELVALUE, this.val.getTok());
   }
 
   public final Value permute(MVPerm perm) {
@@ -48,6 +48,8 @@ public class RecordValue extends Value implements Applicable {
   }
 
   public final boolean equals(Object obj) {
+    // short-circuit for shared (e.g. interned, see ValueInterner) values
+    if (this == obj) return true;
     RecordValue rcd = convert(obj);
     if (rcd == null) {
       if (obj instanceof ModelValue) 
@@ -281,13 +283,11 @@ public class RecordValue extends Value implements Applicable {
   public final long fingerPrint(long fp) {
     this.normalize();
     int rlen = this.names.length;
-    fp = FP64.Extend(fp, FCNRCDVALUE);
-    fp = FP64.Extend(fp, rlen);
+    fp = FP64.Extend(fp, FCNRCDVALUE, rlen);
     for (int i = 0; i < rlen; i++) {
-      String str = this.names[i].toString();
-      fp = FP64.Extend(fp, STRINGVALUE);
-      fp = FP64.Extend(fp, str.length());
-      fp = FP64.Extend(fp, str);
+      UniqueString str = this.names[i];
+      fp = FP64.Extend(fp, STRINGVALUE, str.length());
+      fp = str.fingerPrintChars(fp);
       fp = this.values[i].fingerPrint(fp);
     }
     return fp;
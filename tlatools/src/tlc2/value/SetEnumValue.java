@@ -5,6 +5,7 @@
 
 package tlc2.value;
 
+import tlc2.TLCGlobals;
 import tlc2.util.FP64;
 import util.Assert;
 
@@ -13,6 +14,25 @@ implements Enumerable, Reducible {
   public ValueVec elems;         // the elements of the set
   private boolean isNorm;        // normalized?
 
+  /**
+   * Sets with at least this many elements get a hash index for their
+   * membership tests.
+   */
+  private static final int IndexThreshold =
+    Math.max(1, Integer.getInteger(SetEnumValue.class.getName() + ".indexThreshold", 64).intValue());
+
+  /**
+   * The index is built lazily by member, possibly by several threads at
+   * once. It is only published (through the volatile field) once it is
+   * complete. It is not serialized, but rebuilt if needed.
+   */
+  private transient volatile Index index;
+  /**
+   * The membership tests without index. Unsynchronized on purpose: A lost
+   * update only delays building the index.
+   */
+  private transient int queries;
+
   /* Constructor */
   public SetEnumValue(Value[] elems, boolean isNorm) {
     this.elems = new ValueVec(elems);
@@ -46,6 +66,8 @@ implements Enumerable, Reducible {
   }
   
   public final boolean equals(Object obj) {
+    // short-circuit for shared (e.g. interned, see ValueInterner) values
+    if (this == obj) return true;
     SetEnumValue set = convert(obj);
     if (set == null) {
       if (obj instanceof ModelValue)  
@@ -68,12 +90,59 @@ implements Enumerable, Reducible {
   }
 
   public final boolean member(Value elem) {
+    Index idx = this.index;
+    if (idx == null) {
+      int sz = this.elems.size();
+      // Hashing all elements costs about as much as sz/log(sz) binary
+      // searches, build the index once this set has been searched as
+      // often.
+      if (sz < IndexThreshold) {
+	return this.elems.search(elem, this.isNorm);
+      }
+      int cnt = this.queries + 1;
+      if (cnt < sz / (32 - Integer.numberOfLeadingZeros(sz))) {
+	this.queries = cnt;
+	return this.elems.search(elem, this.isNorm);
+      }
+      idx = Index.build(this.elems);
+      this.index = idx;
+    }
+    if (idx != Index.None) {
+      try {
+	if (idx.contains(elem)) {
+	  return true;
+	}
+      }
+      catch (RuntimeException e) {
+	// elem cannot be fingerprinted
+	return this.elems.search(elem, this.isNorm);
+      }
+      // A search would have compared elem with the elements, which
+      // fails for elements elem cannot be compared with.
+      if (this.isNorm) {
+	elem.compareTo(this.elems.elementAt(0));
+      }
+      else {
+	this.elems.elementAt(0).equals(elem);
+      }
+      return false;
+    }
     return this.elems.search(elem, this.isNorm);
   }
 
   public final boolean isFinite() { return true; }
   
   public final Value diff(Value val) {
+    if (val instanceof IntSetValue) {
+      IntSetValue ints = IntSetValue.convert(this.elems);
+      if (ints != null) return ints.diff(val);
+    }
+    if (val instanceof SetEnumValue || val instanceof IntSetValue) {
+      SetEnumValue set = convert(val);
+      this.normalize();
+      set.normalize();
+      return new SetEnumValue(diff(this.elems, set.elems), true);
+    }
     int sz = this.elems.size();
     ValueVec diffElems = new ValueVec();
     for (int i = 0; i < sz; i++) {
@@ -86,6 +155,16 @@ implements Enumerable, Reducible {
   }
 
   public final Value cap(Value val) {
+    if (val instanceof IntSetValue) {
+      IntSetValue ints = IntSetValue.convert(this.elems);
+      if (ints != null) return ints.cap(val);
+    }
+    if (val instanceof SetEnumValue || val instanceof IntSetValue) {
+      SetEnumValue set = convert(val);
+      this.normalize();
+      set.normalize();
+      return new SetEnumValue(cap(this.elems, set.elems), true);
+    }
     int sz = this.elems.size();
     ValueVec capElems = new ValueVec();
     for (int i = 0; i < sz; i++) {
@@ -101,6 +180,16 @@ implements Enumerable, Reducible {
     int sz = this.elems.size();
     if (sz == 0) return set;
 
+    if (set instanceof IntSetValue) {
+      IntSetValue ints = IntSetValue.convert(this.elems);
+      if (ints != null) return ints.cup(set);
+    }
+    if (set instanceof SetEnumValue || set instanceof IntSetValue) {
+      SetEnumValue set1 = convert(set);
+      this.normalize();
+      set1.normalize();
+      return new SetEnumValue(cup(this.elems, set1.elems), true);
+    }
     if (set instanceof Reducible) {
       ValueVec cupElems = new ValueVec();
       for (int i = 0; i < sz; i++) {
@@ -136,6 +225,118 @@ implements Enumerable, Reducible {
     return this.elems.size();
   }
 
+  /**
+   * Returns the index of elem in the sorted elems at or after from, or
+   * -(insertion point)-1 if elem is not in it. The search gallops from
+   * from, which makes merging two sorted vectors of sizes m <= n cost
+   * O(m log(n/m)) comparisons.
+   */
+  private static int search(ValueVec elems, int from, Value elem) {
+    int sz = elems.size();
+    int low = from, high = from, bound = 1;
+    while (high < sz && elem.compareTo(elems.elementAt(high)) > 0) {
+      low = high + 1;
+      high = from + bound;
+      bound <<= 1;
+    }
+    if (high > sz) high = sz;
+    // elem is larger than the elements before low, not larger than the
+    // one at high (if any):
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int cmp = elem.compareTo(elems.elementAt(mid));
+      if (cmp == 0) return mid;
+      if (cmp < 0) {
+	high = mid;
+      }
+      else {
+	low = mid + 1;
+      }
+    }
+    if (low < sz && elem.compareTo(elems.elementAt(low)) == 0) return low;
+    return -low - 1;
+  }
+
+  /* Appends the elements of from in [start, end) to to. */
+  private static void copy(ValueVec from, int start, int end, ValueVec to) {
+    for (int i = start; i < end; i++) {
+      to.addElement(from.elementAt(i));
+    }
+  }
+
+  /**
+   * The following methods merge the sorted (and duplicate free) elements
+   * of two normalized sets into the sorted elements of their union,
+   * intersection and difference. They search for the elements of the
+   * smaller set in the larger one.
+   */
+  private static ValueVec cup(ValueVec a, ValueVec b) {
+    if (a.size() < b.size()) {
+      ValueVec tmp = a; a = b; b = tmp;
+    }
+    ValueVec res = new ValueVec(Math.min(a.size() + b.size(), TLCGlobals.setBound));
+    int i = 0;
+    for (int j = 0; j < b.size(); j++) {
+      Value elem = b.elementAt(j);
+      int idx = search(a, i, elem);
+      int end = (idx >= 0) ? idx : -idx - 1;
+      copy(a, i, end, res);
+      res.addElement(elem);
+      i = (idx >= 0) ? idx + 1 : end;
+    }
+    copy(a, i, a.size(), res);
+    return res;
+  }
+
+  private static ValueVec cap(ValueVec a, ValueVec b) {
+    if (a.size() < b.size()) {
+      ValueVec tmp = a; a = b; b = tmp;
+    }
+    ValueVec res = new ValueVec(b.size());
+    int i = 0;
+    for (int j = 0; j < b.size() && i < a.size(); j++) {
+      Value elem = b.elementAt(j);
+      int idx = search(a, i, elem);
+      if (idx >= 0) {
+	res.addElement(elem);
+	i = idx + 1;
+      }
+      else {
+	i = -idx - 1;
+      }
+    }
+    return res;
+  }
+
+  private static ValueVec diff(ValueVec a, ValueVec b) {
+    ValueVec res = new ValueVec(a.size());
+    if (a.size() <= b.size()) {
+      int j = 0;
+      for (int i = 0; i < a.size(); i++) {
+	Value elem = a.elementAt(i);
+	int idx = search(b, j, elem);
+	if (idx >= 0) {
+	  j = idx + 1;
+	}
+	else {
+	  res.addElement(elem);
+	  j = -idx - 1;
+	}
+      }
+    }
+    else {
+      int i = 0;
+      for (int j = 0; j < b.size() && i < a.size(); j++) {
+	int idx = search(a, i, b.elementAt(j));
+	int end = (idx >= 0) ? idx : -idx - 1;
+	copy(a, i, end, res);
+	i = (idx >= 0) ? idx + 1 : end;
+      }
+      copy(a, i, a.size(), res);
+    }
+    return res;
+  }
+
   /* This method normalizes (destructively) this set. */
   public final boolean isNormalized() { return this.isNorm; }
   
@@ -160,6 +361,8 @@ implements Enumerable, Reducible {
 	}
 	return new SetEnumValue(vals, true);
       }
+    case INTSETVALUE:
+      return ((IntSetValue)val).toSetEnum();
     case SETCAPVALUE:
       {
 	SetCapValue cap = (SetCapValue)val;
@@ -223,12 +426,12 @@ implements Enumerable, Reducible {
 	  return pset.pset;
 	}
 	ValueVec vals = new ValueVec(pset.size());
-	ValueEnumeration Enum = pset.elements();
+	ValueEnumeration Enum = pset.elementsNormalized();
 	Value elem;
 	while ((elem = Enum.nextElement()) != null) {
 	  vals.addElement(elem);
 	}
-	return new SetEnumValue(vals, false);
+	return new SetEnumValue(vals, true);
       }
     case SETOFRCDSVALUE:
       {
@@ -251,12 +454,12 @@ implements Enumerable, Reducible {
 	  return fcns.fcnSet;
 	}
 	ValueVec vals = new ValueVec();
-	ValueEnumeration Enum = fcns.elements();
+	ValueEnumeration Enum = fcns.elementsNormalized();
 	Value elem;
 	while ((elem = Enum.nextElement()) != null) {
 	  vals.addElement(elem);
 	}
-	return new SetEnumValue(vals, fcns.isNormalized());
+	return new SetEnumValue(vals, true);
       }
     case SETOFTUPLESVALUE:
       {
@@ -290,6 +493,69 @@ implements Enumerable, Reducible {
     }
   }
   
+  /**
+   * Returns an enumeration of the elements of set in the order of the
+   * normalized set, null if set cannot be converted into a SetEnumValue.
+   * SUBSET and function sets are enumerated without being materialized.
+   */
+  public static final ValueEnumeration elementsNormalized(Value set) {
+    switch (set.getKind()) {
+    case SUBSETVALUE:
+      return ((SubsetValue)set).elementsNormalized();
+    case SETOFFCNSVALUE:
+      return ((SetOfFcnsValue)set).elementsNormalized();
+    case INTERVALVALUE:
+      return ((IntervalValue)set).elements();
+    default:
+      {
+	SetEnumValue set1 = convert(set);
+	if (set1 == null) return null;
+	set1.normalize();
+	return set1.elements();
+      }
+    }
+  }
+
+  /**
+   * The following methods compare, test for equality and fingerprint a
+   * (lazy) set of size elements like the normalized SetEnumValue of its
+   * elements, which Enum enumerates in normalized order.
+   */
+  static final int compareTo(int size, ValueEnumeration Enum, SetEnumValue set) {
+    set.normalize();
+    int cmp = size - set.elems.size();
+    if (cmp != 0) return cmp;
+    for (int i = 0; i < size; i++) {
+      cmp = Enum.nextElement().compareTo(set.elems.elementAt(i));
+      if (cmp != 0) return cmp;
+    }
+    return 0;
+  }
+
+  static final boolean equals(Enumerable lazy, SetEnumValue set) {
+    set.normalize();
+    int sz = set.elems.size();
+    if (lazy.size() != sz) {
+      return false;
+    }
+    // The elements of set are distinct, all of them have to be members.
+    for (int i = 0; i < sz; i++) {
+      if (!lazy.member(set.elems.elementAt(i))) {
+	return false;
+      }
+    }
+    return true;
+  }
+
+  static final long fingerPrint(long fp, int size, ValueEnumeration Enum) {
+    fp = FP64.Extend(fp, SETENUMVALUE, size);
+    Value elem;
+    while ((elem = Enum.nextElement()) != null) {
+      fp = elem.fingerPrint(fp);
+    }
+    return fp;
+  }
+
   public final boolean isDefined() {
     boolean defined = true;
     int sz = this.elems.size();    
@@ -307,8 +573,7 @@ implements Enumerable, Reducible {
   public final long fingerPrint(long fp) {
     this.normalize();
     int sz = this.elems.size();    
-    fp = FP64.Extend(fp, SETENUMVALUE);
-    fp = FP64.Extend(fp, sz);
+    fp = FP64.Extend(fp, SETENUMVALUE, sz);
     for (int i = 0; i < sz; i++) {
       Value elem = this.elems.elementAt(i);
       fp = elem.fingerPrint(fp);
@@ -357,6 +622,60 @@ implements Enumerable, Reducible {
   }
 
   public final ValueEnumeration elements() { return new Enumerator(); }
+
+  /**
+   * The elements of a set hashed by their fingerprints (open addressing):
+   * A membership test costs one fingerprint and usually one equals. The
+   * index holds the elements themselves, a normalization of the set
+   * reorders its elements but does not invalidate the index.
+   */
+  static final class Index {
+    /* Marks a set whose elements cannot be fingerprinted. */
+    static final Index None = new Index(0);
+
+    private final long[] fps;
+    private final Value[] vals;    // null marks an empty slot
+    private final int mask;
+
+    private Index(int capacity) {
+      this.fps = new long[capacity];
+      this.vals = new Value[capacity];
+      this.mask = capacity - 1;
+    }
+
+    static Index build(ValueVec elems) {
+      int sz = elems.size();
+      Index res = new Index(Integer.highestOneBit(sz) << 2);
+      try {
+	for (int i = 0; i < sz; i++) {
+	  Value elem = elems.elementAt(i);
+	  long fp = elem.fingerPrint(FP64.New());
+	  int slot = (int)fp & res.mask;
+	  while (res.vals[slot] != null) {
+	    slot = (slot + 1) & res.mask;
+	  }
+	  res.fps[slot] = fp;
+	  res.vals[slot] = elem;
+	}
+      }
+      catch (RuntimeException e) {
+	return None;
+      }
+      return res;
+    }
+
+    final boolean contains(Value elem) {
+      long fp = elem.fingerPrint(FP64.New());
+      int slot = (int)fp & this.mask;
+      while (this.vals[slot] != null) {
+	if (this.fps[slot] == fp && this.vals[slot].equals(elem)) {
+	  return true;
+	}
+	slot = (slot + 1) & this.mask;
+      }
+      return false;
+    }
+  }
   
   final class Enumerator implements ValueEnumeration {
     int index = 0;
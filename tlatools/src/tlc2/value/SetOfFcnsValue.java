@@ -23,8 +23,12 @@ public class SetOfFcnsValue extends Value implements Enumerable {
   public final byte getKind() { return SETOFFCNSVALUE; }
 
   public final int compareTo(Object obj) {
-    this.convertAndCache();
-    return this.fcnSet.compareTo(obj);
+    SetEnumValue set = SetEnumValue.convert(obj);
+    if (set == null || this.isMaterialized()) {
+      this.convertAndCache();
+      return this.fcnSet.compareTo(obj);
+    }
+    return SetEnumValue.compareTo(this.size(), this.elementsNormalized(), set);
   }
   
   public final boolean equals(Object obj) {
@@ -33,8 +37,12 @@ public class SetOfFcnsValue extends Value implements Enumerable {
       return (this.domain.equals(fcns.domain) &&
 	      this.range.equals(fcns.range));
     }
-    this.convertAndCache();
-    return this.fcnSet.equals(obj);
+    SetEnumValue set = SetEnumValue.convert(obj);
+    if (set == null || this.isMaterialized()) {
+      this.convertAndCache();
+      return this.fcnSet.equals(obj);
+    }
+    return SetEnumValue.equals(this, set);
   }
 
   public final boolean member(Value elem) {
@@ -131,13 +139,30 @@ public class SetOfFcnsValue extends Value implements Enumerable {
 
   /* The fingerprint  */
   public final long fingerPrint(long fp) {
-    this.convertAndCache();
-    return this.fcnSet.fingerPrint(fp);
+    if (this.isMaterialized()) {
+      return this.fcnSet.fingerPrint(fp);
+    }
+    // The fingerprint of the normalized set, one function at a time:
+    return SetEnumValue.fingerPrint(fp, this.size(), this.elementsNormalized());
   }
 
   public final Value permute(MVPerm perm) {
-    this.convertAndCache();
-    return this.fcnSet.permute(perm);
+    if (this.isMaterialized()) {
+      return this.fcnSet.permute(perm);
+    }
+    // A permutation is a bijection, it maps the functions from domain to
+    // range to the functions from the permuted domain to the permuted
+    // range.
+    Value domain1 = this.domain.permute(perm);
+    Value range1 = this.range.permute(perm);
+    if (domain1 == this.domain && range1 == this.range) {
+      return this;
+    }
+    return new SetOfFcnsValue(domain1, range1);
+  }
+
+  private final boolean isMaterialized() {
+    return this.fcnSet != null && this.fcnSet != DummyEnum;
   }
 
   private final void convertAndCache() {
@@ -194,18 +219,35 @@ public class SetOfFcnsValue extends Value implements Enumerable {
     
   public final ValueEnumeration elements() {
     if (this.fcnSet == null || this.fcnSet == DummyEnum) {
-      return new Enumerator();
+      return new Enumerator(false);
     }
     return this.fcnSet.elements();    
   }
 
+  /**
+   * Enumerates the functions in the order of the normalized set, without
+   * materializing it.
+   */
+  public final ValueEnumeration elementsNormalized() {
+    if (this.fcnSet == null || this.fcnSet == DummyEnum) {
+      return new Enumerator(true);
+    }
+    this.fcnSet.normalize();
+    return this.fcnSet.elements();
+  }
+
   final class Enumerator implements ValueEnumeration {
     private Value[] dom;
     private ValueEnumeration[] enums;
     private Value[] currentElems;
     private boolean isDone;
     
-    public Enumerator() {
+    /**
+     * The functions are enumerated lexicographically (in the order of
+     * their values at the elements of the normalized domain) if the range
+     * is enumerated in its normalized order. With normalized true, it is.
+     */
+    public Enumerator(boolean normalized) {
       this.isDone = false;
       SetEnumValue domSet = SetEnumValue.convert(domain);
       if (domSet == null)
@@ -223,7 +265,7 @@ public class SetOfFcnsValue extends Value implements Enumerable {
 	// ValueEnumeration enumeration = ((Enumerable)domSet).elements();
 	for (int i = 0; i < sz; i++) {
 	  this.dom[i] = elems.elementAt(i);
-	  this.enums[i] = ((Enumerable)range).elements();
+	  this.enums[i] = normalized ? SetEnumValue.elementsNormalized(range) : ((Enumerable)range).elements();
 	  this.currentElems[i] = this.enums[i].nextElement();
 	  if (this.currentElems[i] == null) {
 	    this.enums = null;
@@ -99,10 +99,8 @@ public class StringValue extends Value {
   
   /* The fingerprint method */
   public final long fingerPrint(long fp) {
-    fp = FP64.Extend(fp, STRINGVALUE) ;
-    fp = FP64.Extend(fp, this.val.length()) ;
-    fp = FP64.Extend(fp, this.val.toString());
-    return fp;
+    fp = FP64.Extend(fp, STRINGVALUE, this.val.length());
+    return this.val.fingerPrintChars(fp);
   }
 
   public final Value permute(MVPerm perm) { return this; }
@@ -26,16 +26,24 @@ public class SubsetValue extends Value implements Enumerable {
     if (obj instanceof SubsetValue) {
       return this.set.compareTo(((SubsetValue)obj).set);
     }
-    this.convertAndCache();
-    return this.pset.compareTo(obj);    
+    SetEnumValue set1 = SetEnumValue.convert(obj);
+    if (set1 == null || this.isMaterialized()) {
+      this.convertAndCache();
+      return this.pset.compareTo(obj);
+    }
+    return SetEnumValue.compareTo(this.size(), this.elementsNormalized(), set1);
   }
   
   public final boolean equals(Object obj) {
     if (obj instanceof SubsetValue) {
       return this.set.equals(((SubsetValue)obj).set);
     }
-    this.convertAndCache();
-    return this.pset.equals(obj);
+    SetEnumValue set1 = SetEnumValue.convert(obj);
+    if (set1 == null || this.isMaterialized()) {
+      this.convertAndCache();
+      return this.pset.equals(obj);
+    }
+    return SetEnumValue.equals(this, set1);
   }
 
   public final boolean member(Value val) {
@@ -101,13 +109,25 @@ public class SubsetValue extends Value implements Enumerable {
 
   /* The fingerprint  */
   public final long fingerPrint(long fp) {
-    this.convertAndCache();
-    return this.pset.fingerPrint(fp);
+    if (this.isMaterialized()) {
+      return this.pset.fingerPrint(fp);
+    }
+    // The fingerprint of the normalized set, one subset at a time:
+    return SetEnumValue.fingerPrint(fp, this.size(), this.elementsNormalized());
   }
 
   public final Value permute(MVPerm perm) {
-    this.convertAndCache();
-    return this.pset.permute(perm);
+    if (this.isMaterialized()) {
+      return this.pset.permute(perm);
+    }
+    // A permutation is a bijection, it maps the subsets of set to the
+    // subsets of the permuted set.
+    Value set1 = this.set.permute(perm);
+    return (set1 == this.set) ? this : new SubsetValue(set1);
+  }
+
+  private final boolean isMaterialized() {
+    return this.pset != null && this.pset != DummyEnum;
   }
 
   private final void convertAndCache() {
@@ -156,6 +176,18 @@ public class SubsetValue extends Value implements Enumerable {
     return this.pset.elements();
   }
 
+  /**
+   * Enumerates the subsets in the order of the normalized set, without
+   * materializing it.
+   */
+  public final ValueEnumeration elementsNormalized() {
+    if (this.pset == null || this.pset == DummyEnum) {
+      return new NormalizedEnumerator();
+    }
+    this.pset.normalize();
+    return this.pset.elements();
+  }
+
   final class Enumerator implements ValueEnumeration {
     ValueVec elems;
     private BitSet descriptor;
@@ -198,7 +230,60 @@ public class SubsetValue extends Value implements Enumerable {
 	  }
 	}
       }
-      return new SetEnumValue(vals, true);
+      return IntSetValue.create(vals, true);
+    }
+    
+  }
+
+  /**
+   * Enumerates the subsets by cardinality, and the subsets of the same
+   * cardinality lexicographically: the order of SetEnumValue.compareTo.
+   */
+  final class NormalizedEnumerator implements ValueEnumeration {
+    ValueVec elems;
+    private int[] indices;    // of the elements of the next subset
+    
+    public NormalizedEnumerator() {
+      set = SetEnumValue.convert(set);
+      set.normalize();
+      this.elems = ((SetEnumValue)set).elems;
+      this.indices = new int[0];
+    }
+
+    public final void reset() {
+      this.indices = new int[0];
+    }
+    
+    public final Value nextElement() {
+      if (this.indices == null) return null;
+      int k = this.indices.length;
+      Value[] vals = new Value[k];
+      for (int i = 0; i < k; i++) {
+	vals[i] = this.elems.elementAt(this.indices[i]);
+      }
+      // Advance to the next combination of k indices, or to the first
+      // of k+1 indices:
+      int sz = this.elems.size();
+      int i = k - 1;
+      while (i >= 0 && this.indices[i] == sz - k + i) {
+	i--;
+      }
+      if (i >= 0) {
+	this.indices[i]++;
+	for (int j = i + 1; j < k; j++) {
+	  this.indices[j] = this.indices[j-1] + 1;
+	}
+      }
+      else if (k < sz) {
+	this.indices = new int[k+1];
+	for (int j = 0; j <= k; j++) {
+	  this.indices[j] = j;
+	}
+      }
+      else {
+	this.indices = null;
+      }
+      return IntSetValue.create(new ValueVec(vals), true);
     }
     
   }
@@ -50,6 +50,8 @@ public class TupleValue extends Value implements Applicable {
   }
 
   public final boolean equals(Object obj) {
+    // short-circuit for shared (e.g. interned, see ValueInterner) values
+    if (this == obj) return true;
     TupleValue tv = convert(obj);
     if (tv == null) {
       // Well, we have to convert this to function and compare.
@@ -241,11 +243,9 @@ public class TupleValue extends Value implements Applicable {
   /* The fingerprint method: tuples are functions. */
   public final long fingerPrint(long fp) {
     int len = this.elems.length;
-    fp = FP64.Extend(fp, FCNRCDVALUE);
-    fp = FP64.Extend(fp, len);
+    fp = FP64.Extend(fp, FCNRCDVALUE, len);
     for (int i = 0; i < len; i++) {
-      fp = FP64.Extend(fp, INTVALUE);
-      fp = FP64.Extend(fp, i+1);
+      fp = FP64.Extend(fp, INTVALUE, i+1);
       fp = this.elems[i].fingerPrint(fp);
     }
     return fp;
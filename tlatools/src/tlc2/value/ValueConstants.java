@@ -37,6 +37,7 @@ public interface ValueConstants {
   public final byte UNDEFVALUE       = INTERVALVALUE + 1;
   public final byte LAZYVALUE        = UNDEFVALUE + 1;
   public final byte DUMMYVALUE       = LAZYVALUE + 1;  
+  public final byte INTSETVALUE      = DUMMYVALUE + 1;
 
   public final String[] ValueImage = {
     "a Boolean value",                     // "BoolValue",
@@ -66,6 +67,7 @@ public interface ValueConstants {
     "an undefined value",                         // "UndefValue",
     "a value represented in lazy form",           // "LazyValue",
     "a dummy for not-a-value",                    // "DummyValue",    
+    "a set of the form {e1, ... ,eN}",            // "IntSetValue",
   };
 
   /* Value constants. */
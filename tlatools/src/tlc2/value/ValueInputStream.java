@@ -4,6 +4,8 @@ package tlc2.value;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
 import tlc2.TLCGlobals;
 import util.BufferedDataInputStream;
@@ -27,6 +29,26 @@ public final class ValueInputStream implements ValueConstants {
       this(new File(fname));
   }
 
+  /**
+   * Reads uncompressed from the given stream.
+   * @see ValueOutputStream#reset()
+   */
+  public ValueInputStream(InputStream is) throws IOException {
+    this.dis = new BufferedDataInputStream(is);
+    this.handles = new HandleTable();
+  }
+
+  /**
+   * Re-opens this stream on <code>is</code> without re-allocating the
+   * internal buffers. Values read before are forgotten.
+   * @see ValueOutputStream#reset()
+   */
+  public final void reset(InputStream is) throws IOException {
+    this.dis.close();
+    this.dis.open(is);
+    this.handles.clear();
+  }
+
   public final Value read() throws IOException {
     byte kind = this.dis.readByte();
 
@@ -60,6 +82,15 @@ public final class ValueInputStream implements ValueConstants {
 	int hi = this.dis.readInt();
 	return new IntervalValue(low, hi);
       }
+    case INTSETVALUE:
+      {
+	int low = this.dis.readInt();
+	long[] words = new long[this.readNat()];
+	for (int i = 0; i < words.length; i++) {
+	  words[i] = this.dis.readLong();
+	}
+	return IntSetValue.read(low, words);
+      }
     case RECORDVALUE:
       {
 	int index = this.handles.getIndex();
@@ -200,6 +231,11 @@ public final class ValueInputStream implements ValueConstants {
 
     final Object getValue(int idx) { return this.values[idx]; }
 
+    final void clear() {
+      Arrays.fill(this.values, 0, this.index, null);
+      this.index = 0;
+    }
+
   }
   
 }
@@ -0,0 +1,363 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import tlc2.output.EC;
+import tlc2.output.MP;
+
+/**
+ * A {@link ValueInterner} hash-conses normalized values: Structurally
+ * identical {@link RecordValue}s, {@link FcnRcdValue}s, {@link SetEnumValue}s
+ * and {@link TupleValue}s are replaced by a single canonical instance. States
+ * which have been built independently thus share their values, and
+ * {@link Object#equals(Object)} of two canonical values succeeds on identity.
+ * <p>
+ * Values are interned bottom-up. The components of a canonical value are
+ * canonical themselves, so that two values are structurally identical iff
+ * their components are identical (scalars are compared with equals). Neither
+ * hashing nor comparing a value has to traverse the value graph.
+ * <p>
+ * The table holds its values weakly. A canonical value which is no longer
+ * referenced by any state is garbage collected. The table is split into
+ * independently locked segments to let the workers intern concurrently.
+ * <p>
+ * Interning replaces the components of a value in place by equal values.
+ * Since normalized values are not modified otherwise, this is safe even if a
+ * value is shared with states that other workers read.
+ */
+public final class ValueInterner implements ValueConstants {
+
+	/**
+	 * Interning is off unless -Dtlc2.value.ValueInterner.enabled=true.
+	 */
+	private static final boolean ENABLED = Boolean.getBoolean(ValueInterner.class.getName() + ".enabled");
+
+	private static final ValueInterner Default = new ValueInterner(64);
+
+	/**
+	 * @return true iff the values of new states should be interned.
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * @return The table shared by all states.
+	 */
+	public static ValueInterner getDefault() {
+		return Default;
+	}
+
+	private final Segment[] segments;
+	private final int segmentShift;
+
+	/**
+	 * @param segmentCnt
+	 *            The number of segments, a power of two
+	 */
+	public ValueInterner(final int segmentCnt) {
+		this.segments = new Segment[segmentCnt];
+		for (int i = 0; i < segmentCnt; i++) {
+			this.segments[i] = new Segment();
+		}
+		this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCnt);
+	}
+
+	/**
+	 * @return The canonical value equal to val. This is val itself if no
+	 *         identical value has been interned before or if val is not (or
+	 *         not yet) normalized.
+	 */
+	public final Value intern(final Value val) {
+		int hash = val.getKind();
+		switch (val.getKind()) {
+		case RECORDVALUE: {
+			final RecordValue rcd = (RecordValue) val;
+			if (!rcd.isNormalized()) {
+				return val;
+			}
+			for (int i = 0; i < rcd.values.length; i++) {
+				rcd.values[i] = this.intern(rcd.values[i]);
+				hash = 31 * (31 * hash + System.identityHashCode(rcd.names[i])) + hashOf(rcd.values[i]);
+			}
+			break;
+		}
+		case FCNRCDVALUE: {
+			final FcnRcdValue fcn = (FcnRcdValue) val;
+			if (!fcn.isNormalized()) {
+				return val;
+			}
+			if (fcn.intv != null) {
+				hash = 31 * (31 * hash + fcn.intv.low) + fcn.intv.high;
+			} else {
+				for (int i = 0; i < fcn.domain.length; i++) {
+					fcn.domain[i] = this.intern(fcn.domain[i]);
+					hash = 31 * hash + hashOf(fcn.domain[i]);
+				}
+			}
+			for (int i = 0; i < fcn.values.length; i++) {
+				fcn.values[i] = this.intern(fcn.values[i]);
+				hash = 31 * hash + hashOf(fcn.values[i]);
+			}
+			break;
+		}
+		case SETENUMVALUE: {
+			final SetEnumValue set = (SetEnumValue) val;
+			if (!set.isNormalized()) {
+				return val;
+			}
+			final ValueVec elems = set.elems;
+			for (int i = 0; i < elems.size(); i++) {
+				final Value elem = this.intern(elems.elementAt(i));
+				elems.setElementAt(elem, i);
+				hash = 31 * hash + hashOf(elem);
+			}
+			break;
+		}
+		case TUPLEVALUE: {
+			final TupleValue tv = (TupleValue) val;
+			for (int i = 0; i < tv.elems.length; i++) {
+				tv.elems[i] = this.intern(tv.elems[i]);
+				hash = 31 * hash + hashOf(tv.elems[i]);
+			}
+			break;
+		}
+		default:
+			return val;
+		}
+		hash ^= (hash >>> 16);
+		return this.segments[(hash >>> this.segmentShift) & (this.segments.length - 1)].intern(hash, val);
+	}
+
+	/**
+	 * @return The number of values looked up in the table.
+	 */
+	public final long getLookups() {
+		long cnt = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				cnt += this.segments[i].lookups;
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * @return The number of values which have been replaced by a canonical
+	 *         value.
+	 */
+	public final long getShared() {
+		long cnt = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				cnt += this.segments[i].shared;
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * @return The number of canonical values (including those which have
+	 *         been collected but not yet expunged).
+	 */
+	public final long size() {
+		long cnt = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				cnt += this.segments[i].count;
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * Prints the number of lookups, shared values and canonical values.
+	 */
+	public final void printStats() {
+		MP.printMessage(EC.TLC_STATS_INTERNING, new String[] { String.valueOf(this.getLookups()),
+				String.valueOf(this.getShared()), String.valueOf(this.size()) });
+	}
+
+	private static boolean isScalar(final Value val) {
+		final byte kind = val.getKind();
+		return kind == INTVALUE || kind == BOOLVALUE || kind == STRINGVALUE || kind == MODELVALUE;
+	}
+
+	/**
+	 * Scalars are hashed by value, all other values by identity. Other values
+	 * than scalars and canonical values (e.g. lazily enumerated sets) could
+	 * be expensive to hash structurally.
+	 */
+	private static int hashOf(final Value val) {
+		return isScalar(val) ? val.hashCode() : System.identityHashCode(val);
+	}
+
+	private static boolean same(final Value v1, final Value v2) {
+		if (v1 == v2) {
+			return true;
+		}
+		return isScalar(v1) && v1.getKind() == v2.getKind() && v1.equals(v2);
+	}
+
+	/**
+	 * @return true iff the components of v1 and v2 are the same. Both values
+	 *         are of the same kind.
+	 */
+	private static boolean sameComponents(final Value v1, final Value v2) {
+		switch (v1.getKind()) {
+		case RECORDVALUE: {
+			final RecordValue r1 = (RecordValue) v1;
+			final RecordValue r2 = (RecordValue) v2;
+			if (r1.names.length != r2.names.length) {
+				return false;
+			}
+			for (int i = 0; i < r1.names.length; i++) {
+				if (r1.names[i] != r2.names[i] || !same(r1.values[i], r2.values[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+		case FCNRCDVALUE: {
+			final FcnRcdValue f1 = (FcnRcdValue) v1;
+			final FcnRcdValue f2 = (FcnRcdValue) v2;
+			if (f1.values.length != f2.values.length) {
+				return false;
+			}
+			if (f1.intv != null) {
+				if (f2.intv == null || f1.intv.low != f2.intv.low || f1.intv.high != f2.intv.high) {
+					return false;
+				}
+			} else {
+				if (f2.intv != null) {
+					return false;
+				}
+				for (int i = 0; i < f1.domain.length; i++) {
+					if (!same(f1.domain[i], f2.domain[i])) {
+						return false;
+					}
+				}
+			}
+			for (int i = 0; i < f1.values.length; i++) {
+				if (!same(f1.values[i], f2.values[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+		case SETENUMVALUE: {
+			final ValueVec e1 = ((SetEnumValue) v1).elems;
+			final ValueVec e2 = ((SetEnumValue) v2).elems;
+			if (e1.size() != e2.size()) {
+				return false;
+			}
+			for (int i = 0; i < e1.size(); i++) {
+				if (!same(e1.elementAt(i), e2.elementAt(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		case TUPLEVALUE: {
+			final Value[] e1 = ((TupleValue) v1).elems;
+			final Value[] e2 = ((TupleValue) v2).elems;
+			if (e1.length != e2.length) {
+				return false;
+			}
+			for (int i = 0; i < e1.length; i++) {
+				if (!same(e1[i], e2[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+		default:
+			return false;
+		}
+	}
+
+	private static final class Entry extends WeakReference<Value> {
+		private final int hash;
+		private Entry next;
+
+		Entry(final Value val, final int hash, final ReferenceQueue<Value> queue, final Entry next) {
+			super(val, queue);
+			this.hash = hash;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * A chained hash table whose operations are monitored.
+	 */
+	private static final class Segment {
+		private final ReferenceQueue<Value> queue = new ReferenceQueue<Value>();
+		private Entry[] table = new Entry[256];
+		private int count = 0;
+		private long lookups = 0;
+		private long shared = 0;
+
+		synchronized Value intern(final int hash, final Value val) {
+			this.expunge();
+			this.lookups++;
+			final int idx = hash & (this.table.length - 1);
+			for (Entry e = this.table[idx]; e != null; e = e.next) {
+				if (e.hash == hash) {
+					final Value canonical = e.get();
+					if (canonical != null && canonical.getKind() == val.getKind()
+							&& (canonical == val || sameComponents(canonical, val))) {
+						if (canonical != val) {
+							this.shared++;
+						}
+						return canonical;
+					}
+				}
+			}
+			this.table[idx] = new Entry(val, hash, this.queue, this.table[idx]);
+			if (++this.count > (this.table.length * 3) / 4) {
+				this.grow();
+			}
+			return val;
+		}
+
+		/**
+		 * Removes the entries of collected values.
+		 */
+		private void expunge() {
+			Entry stale;
+			while ((stale = (Entry) this.queue.poll()) != null) {
+				final int idx = stale.hash & (this.table.length - 1);
+				Entry prev = null;
+				for (Entry e = this.table[idx]; e != null; e = e.next) {
+					if (e == stale) {
+						if (prev == null) {
+							this.table[idx] = e.next;
+						} else {
+							prev.next = e.next;
+						}
+						this.count--;
+						break;
+					}
+					prev = e;
+				}
+			}
+		}
+
+		private void grow() {
+			final Entry[] newTable = new Entry[this.table.length * 2];
+			for (int i = 0; i < this.table.length; i++) {
+				Entry e = this.table[i];
+				while (e != null) {
+					final Entry next = e.next;
+					final int idx = e.hash & (newTable.length - 1);
+					e.next = newTable[idx];
+					newTable[idx] = e;
+					e = next;
+				}
+			}
+			this.table = newTable;
+		}
+	}
+}
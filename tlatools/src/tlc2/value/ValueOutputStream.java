@@ -3,14 +3,13 @@
 package tlc2.value;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
-import java.util.zip.GZIPOutputStream;
 
 import tlc2.TLCGlobals;
 import util.BufferedDataOutputStream;
+import util.FileUtil;
 import util.WrongInvocationException;
 
 public final class ValueOutputStream implements ValueConstants {
@@ -19,24 +18,20 @@ public final class ValueOutputStream implements ValueConstants {
   private HandleTable handles;
 
   public ValueOutputStream(File file) throws IOException {
-    if (TLCGlobals.useGZIP) {
-      OutputStream os = new GZIPOutputStream(new FileOutputStream(file));
-      this.dos = new BufferedDataOutputStream(os);
-    }
-    else {
-      this.dos = new BufferedDataOutputStream(file);
-    }
+    this.dos = FileUtil.newBdFOS(TLCGlobals.useGZIP, file);
     this.handles = new HandleTable();
   }
 
   public ValueOutputStream(String fname) throws IOException {
-    if (TLCGlobals.useGZIP) {
-      OutputStream os = new GZIPOutputStream(new FileOutputStream(fname));
-      this.dos = new BufferedDataOutputStream(os);
-    }
-    else {
-      this.dos = new BufferedDataOutputStream(fname);
-    }
+    this(new File(fname));
+  }
+
+  /**
+   * Writes uncompressed to the given stream. In combination with
+   * {@link #reset()}, a single stream can encode many independent records.
+   */
+  public ValueOutputStream(OutputStream os) {
+    this.dos = new BufferedDataOutputStream(os);
     this.handles = new HandleTable();
   }
 
@@ -73,6 +68,17 @@ public final class ValueOutputStream implements ValueConstants {
 	this.dos.writeShort((short)((ModelValue)val).index);
 	break;
       }
+    case INTSETVALUE:
+      {
+	IntSetValue set = (IntSetValue)val;
+	this.dos.writeByte(INTSETVALUE);
+	this.dos.writeInt(set.low);
+	this.writeNat(set.words.length);
+	for (int i = 0; i < set.words.length; i++) {
+	  this.dos.writeLong(set.words[i]);
+	}
+	break;
+      }
     case INTERVALVALUE:
       {
 	this.dos.writeByte(INTERVALVALUE);
@@ -263,6 +269,16 @@ public final class ValueOutputStream implements ValueConstants {
     this.dos.close();
   }
 
+  /**
+   * Flushes the buffered bytes to the underlying stream and forgets the
+   * values written so far. The bytes written after a reset thus do not refer
+   * back to earlier values and can be read by a fresh {@link ValueInputStream}.
+   */
+  public final void reset() throws IOException {
+    this.dos.flush();
+    this.handles.clear();
+  }
+
   /* Precondition: x is a non-negative int. */
   public final void writeNat(int x) throws IOException {
     if (x > 0x7fff) {
@@ -299,6 +315,14 @@ public final class ValueOutputStream implements ValueConstants {
       this.threshold = (int)(this.spine.length * 0.75);
     }
 
+    final void clear() {
+      if (this.size > 0) {
+	Arrays.fill(this.spine, -1);
+	Arrays.fill(this.values, 0, this.size, null);
+	this.size = 0;
+      }
+    }
+
 // SZ Jul 13, 2009: not used
 //    final int size() { return this.size; }
     
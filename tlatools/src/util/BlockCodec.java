@@ -0,0 +1,222 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package util;
+
+import java.io.IOException;
+import java.util.zip.Adler32;
+
+/**
+ * A {@link BlockCodec} (de-)compresses blocks of at most {@link #BlockSize}
+ * bytes. Contrary to gzip, a codec has no state that carries over from one
+ * block to the next. Blocks can thus be decoded independently, which is what
+ * {@link BlockOutputStream} and {@link tlc2.util.BlockRandomAccessFile} rely
+ * on.
+ * <p>
+ * A block is framed by a header of three ints: the raw length, the stored
+ * length and an {@link Adler32} checksum of the raw bytes. A block which does
+ * not compress is stored as is, which is indicated by equal lengths.
+ * <p>
+ * The codec used by TLC is configured with the system property
+ * {@link #IMPL_PROPERTY}. It takes precedence over gzip.
+ */
+public abstract class BlockCodec {
+
+	/**
+	 * System property with which a consumer defines the name of the codec to
+	 * use ("lz" or "none"). If the property is unset, no block codec is used.
+	 */
+	public static final String IMPL_PROPERTY = BlockCodec.class.getName() + ".impl";
+
+	/**
+	 * The maximum number of raw bytes in a block.
+	 */
+	public static final int BlockSize = 1 << 16;
+
+	/**
+	 * The length of a block header in bytes.
+	 */
+	public static final int HeaderSize = 12;
+
+	/**
+	 * Stores blocks uncompressed but still checksums them.
+	 */
+	public static final BlockCodec NONE = new BlockCodec() {
+		public byte getId() {
+			return 0;
+		}
+
+		public String getName() {
+			return "none";
+		}
+
+		public int maxCompressedLength(int len) {
+			return len;
+		}
+
+		public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+			// Equal lengths make the block be stored as is
+			return srcLen;
+		}
+
+		public void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+				throws IOException {
+			throw new IOException("Blocks of codec none are never compressed");
+		}
+	};
+
+	/**
+	 * A fast byte oriented LZ77 codec.
+	 */
+	public static final BlockCodec LZ = new LZBlockCodec();
+
+	private static final BlockCodec[] CODECS = { NONE, LZ };
+
+	private static final BlockCodec configured = get(System.getProperty(IMPL_PROPERTY));
+
+	/**
+	 * @return The codec defined by {@link #IMPL_PROPERTY} or null
+	 */
+	public static BlockCodec getConfigured() {
+		return configured;
+	}
+
+	/**
+	 * @return The codec with the given name or null if there is none
+	 */
+	public static BlockCodec get(final String name) {
+		for (int i = 0; i < CODECS.length; i++) {
+			if (CODECS[i].getName().equals(name)) {
+				return CODECS[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The codec with the given id
+	 */
+	public static BlockCodec get(final byte id) throws IOException {
+		for (int i = 0; i < CODECS.length; i++) {
+			if (CODECS[i].getId() == id) {
+				return CODECS[i];
+			}
+		}
+		throw new IOException("Unknown block codec " + id);
+	}
+
+	/**
+	 * @return The id by which a stream refers to this codec
+	 */
+	public abstract byte getId();
+
+	public abstract String getName();
+
+	/**
+	 * @return An upper bound on the compressed length of len bytes.
+	 */
+	public abstract int maxCompressedLength(int len);
+
+	/**
+	 * Compresses src[srcOff, srcOff + srcLen) into dst starting at dstOff.
+	 * dst has to have space for {@link #maxCompressedLength(int)} bytes.
+	 *
+	 * @return The compressed length
+	 */
+	public abstract int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff);
+
+	/**
+	 * Decompresses src[srcOff, srcOff + srcLen) into dst[dstOff, dstOff +
+	 * dstLen).
+	 *
+	 * @throws IOException
+	 *             if src is not a valid compressed block of dstLen bytes
+	 */
+	public abstract void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+			throws IOException;
+
+	/**
+	 * Encodes raw[0, len) as a framed block into frame.
+	 *
+	 * @param frame
+	 *            has to have space for {@link #maxFrameLength(int)} bytes
+	 * @return The length of the frame
+	 */
+	public final int encodeBlock(final byte[] raw, final int len, final byte[] frame) {
+		int stored = this.compress(raw, 0, len, frame, HeaderSize);
+		if (stored >= len) {
+			System.arraycopy(raw, 0, frame, HeaderSize, len);
+			stored = len;
+		}
+		final Adler32 checksum = new Adler32();
+		checksum.update(raw, 0, len);
+		putInt(frame, 0, len);
+		putInt(frame, 4, stored);
+		putInt(frame, 8, (int) checksum.getValue());
+		return HeaderSize + stored;
+	}
+
+	/**
+	 * @return The number of bytes a frame of len raw bytes can take
+	 */
+	public final int maxFrameLength(final int len) {
+		return HeaderSize + Math.max(len, this.maxCompressedLength(len));
+	}
+
+	/**
+	 * @return The raw length declared by the given block header
+	 */
+	public static int getRawLength(final byte[] header) throws IOException {
+		final int len = getInt(header, 0);
+		if (len < 0 || len > BlockSize) {
+			throw new IOException("Corrupt block header: raw length " + len);
+		}
+		return len;
+	}
+
+	/**
+	 * @return The stored length declared by the given block header
+	 */
+	public static int getStoredLength(final byte[] header) throws IOException {
+		final int stored = getInt(header, 4);
+		if (stored < 0 || stored > getRawLength(header)) {
+			throw new IOException("Corrupt block header: stored length " + stored);
+		}
+		return stored;
+	}
+
+	/**
+	 * Decodes the stored bytes of a block into raw and verifies the block's
+	 * checksum.
+	 *
+	 * @param header
+	 *            The {@link #HeaderSize} bytes preceding the stored bytes
+	 * @return The raw length of the block
+	 */
+	public final int decodeBlock(final byte[] header, final byte[] stored, final byte[] raw)
+			throws IOException {
+		final int len = getRawLength(header);
+		final int storedLen = getStoredLength(header);
+		if (storedLen == len) {
+			System.arraycopy(stored, 0, raw, 0, len);
+		} else {
+			this.decompress(stored, 0, storedLen, raw, 0, len);
+		}
+		final Adler32 checksum = new Adler32();
+		checksum.update(raw, 0, len);
+		if ((int) checksum.getValue() != getInt(header, 8)) {
+			throw new IOException("Block checksum mismatch");
+		}
+		return len;
+	}
+
+	static int getInt(final byte[] b, final int off) {
+		return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8)
+				| (b[off + 3] & 0xff);
+	}
+
+	static void putInt(final byte[] b, final int off, final int v) {
+		b[off] = (byte) (v >>> 24);
+		b[off + 1] = (byte) (v >>> 16);
+		b[off + 2] = (byte) (v >>> 8);
+		b[off + 3] = (byte) v;
+	}
+}
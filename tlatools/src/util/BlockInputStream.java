@@ -0,0 +1,110 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stream written by a {@link BlockOutputStream}. The checksum of each
+ * block is verified when the block is decoded.
+ */
+public class BlockInputStream extends InputStream {
+
+	private final InputStream in;
+	private final BlockCodec codec;
+	private final byte[] header;
+	private final byte[] stored;
+	private final byte[] raw;
+	private int pos;
+	private int len;
+
+	public BlockInputStream(final InputStream in) throws IOException {
+		this.in = in;
+		this.header = new byte[BlockCodec.HeaderSize];
+		this.readFully(this.header, 5);
+		if (BlockCodec.getInt(this.header, 0) != BlockOutputStream.MAGIC) {
+			throw new IOException("Not a block encoded stream");
+		}
+		this.codec = BlockCodec.get(this.header[4]);
+		this.raw = new byte[BlockCodec.BlockSize];
+		this.stored = new byte[this.codec.maxFrameLength(BlockCodec.BlockSize)];
+		this.pos = 0;
+		this.len = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() throws IOException {
+		if (this.pos == this.len && !this.readBlock()) {
+			return -1;
+		}
+		return this.raw[this.pos++] & 0xff;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] b, int off, int n) throws IOException {
+		if (n == 0) {
+			return 0;
+		}
+		if (this.pos == this.len && !this.readBlock()) {
+			return -1;
+		}
+		final int cnt = Math.min(n, this.len - this.pos);
+		System.arraycopy(this.raw, this.pos, b, off, cnt);
+		this.pos += cnt;
+		return cnt;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#available()
+	 */
+	public int available() throws IOException {
+		return this.len - this.pos;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#close()
+	 */
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	/**
+	 * @return false iff the underlying stream is exhausted
+	 */
+	private boolean readBlock() throws IOException {
+		final int first = this.in.read();
+		if (first == -1) {
+			return false;
+		}
+		this.header[0] = (byte) first;
+		this.readFully(this.header, 1, BlockCodec.HeaderSize - 1);
+		final int storedLen = BlockCodec.getStoredLength(this.header);
+		if (storedLen > this.stored.length) {
+			throw new IOException("Corrupt block header: stored length " + storedLen);
+		}
+		this.readFully(this.stored, storedLen);
+		this.len = this.codec.decodeBlock(this.header, this.stored, this.raw);
+		this.pos = 0;
+		return true;
+	}
+
+	private void readFully(final byte[] b, final int n) throws IOException {
+		this.readFully(b, 0, n);
+	}
+
+	private void readFully(final byte[] b, int off, int n) throws IOException {
+		while (n > 0) {
+			final int cnt = this.in.read(b, off, n);
+			if (cnt < 0) {
+				throw new EOFException("Truncated block");
+			}
+			off += cnt;
+			n -= cnt;
+		}
+	}
+}
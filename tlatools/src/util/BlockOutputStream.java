@@ -0,0 +1,88 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link BlockOutputStream} cuts the bytes written to it into blocks of
+ * {@link BlockCodec#BlockSize} bytes and writes each block encoded by a
+ * {@link BlockCodec} to the underlying stream. The stream starts with
+ * {@link #MAGIC} and the id of the codec, so that a {@link BlockInputStream}
+ * can decode it regardless of the configured codec.
+ */
+public class BlockOutputStream extends OutputStream {
+
+	public static final int MAGIC = 0x544c4243;
+
+	private final OutputStream out;
+	private final BlockCodec codec;
+	private final byte[] raw;
+	private final byte[] frame;
+	private int len;
+
+	public BlockOutputStream(final OutputStream out, final BlockCodec codec) throws IOException {
+		this.out = out;
+		this.codec = codec;
+		this.raw = new byte[BlockCodec.BlockSize];
+		this.frame = new byte[codec.maxFrameLength(BlockCodec.BlockSize)];
+		this.len = 0;
+		final byte[] header = new byte[5];
+		BlockCodec.putInt(header, 0, MAGIC);
+		header[4] = codec.getId();
+		this.out.write(header);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.OutputStream#write(int)
+	 */
+	public void write(int b) throws IOException {
+		if (this.len == this.raw.length) {
+			this.writeBlock();
+		}
+		this.raw[this.len++] = (byte) b;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	public void write(byte[] b, int off, int n) throws IOException {
+		while (n > 0) {
+			if (this.len == this.raw.length) {
+				this.writeBlock();
+			}
+			final int cnt = Math.min(n, this.raw.length - this.len);
+			System.arraycopy(b, off, this.raw, this.len, cnt);
+			this.len += cnt;
+			off += cnt;
+			n -= cnt;
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes as a (possibly short) block and flushes the
+	 * underlying stream.
+	 *
+	 * @see java.io.OutputStream#flush()
+	 */
+	public void flush() throws IOException {
+		this.writeBlock();
+		this.out.flush();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.OutputStream#close()
+	 */
+	public void close() throws IOException {
+		this.flush();
+		this.out.close();
+	}
+
+	private void writeBlock() throws IOException {
+		if (this.len > 0) {
+			final int n = this.codec.encodeBlock(this.raw, this.len, this.frame);
+			this.out.write(this.frame, 0, n);
+			this.len = 0;
+		}
+	}
+}
@@ -339,9 +339,16 @@ public class FileUtil
         return null;
     }
     
+    /**
+     * A {@link BlockCodec} configured by {@link BlockCodec#IMPL_PROPERTY}
+     * takes precedence over gzip.
+     */
     public static BufferedDataInputStream newBdFIS(boolean useGZIP, File file) throws IOException
     {
-        if (useGZIP) 
+        if (BlockCodec.getConfigured() != null)
+        {
+            return new BufferedDataInputStream(new BlockInputStream(new FileInputStream(file)));
+        } else if (useGZIP) 
         {
             return new BufferedDataInputStream(new GZIPInputStream(new FileInputStream(file)));   
         } else {
@@ -361,6 +368,8 @@ public class FileUtil
     }
 
     /**
+     * A {@link BlockCodec} configured by {@link BlockCodec#IMPL_PROPERTY}
+     * takes precedence over gzip.
      * @param b
      * @param poolFile
      * @return
@@ -369,7 +378,11 @@ public class FileUtil
      */
     public static BufferedDataOutputStream newBdFOS(boolean useGZIP, File file) throws FileNotFoundException, IOException
     {
-        if (useGZIP) 
+        final BlockCodec codec = BlockCodec.getConfigured();
+        if (codec != null)
+        {
+            return new BufferedDataOutputStream(new BlockOutputStream(new FileOutputStream(file), codec));
+        } else if (useGZIP) 
         {
             return new BufferedDataOutputStream(new GZIPOutputStream(new FileOutputStream(file)));   
         } else {
@@ -0,0 +1,190 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package util;
+
+import java.io.IOException;
+
+/**
+ * A byte oriented LZ77 codec in the spirit of LZ4. It trades compression ratio
+ * for speed: There is no entropy coding and matches are found with a single
+ * probe into a hash table of 4 byte sequences.
+ * <p>
+ * A compressed block is a sequence of sequences. A sequence starts with a
+ * token byte whose high nibble is the number of literals and whose low nibble
+ * is the match length minus {@link #MinMatch}. A nibble of 15 is followed by
+ * extension bytes which are added to it up to and including the first byte
+ * that is not 255. The literals follow, then the match offset as two bytes
+ * (little endian). The last sequence consists of literals only.
+ */
+final class LZBlockCodec extends BlockCodec {
+
+	private static final int MinMatch = 4;
+	private static final int HashLog = 12;
+	/**
+	 * Matches do not start in the last MFLimit bytes and the last LastLiterals
+	 * bytes are always literals. This keeps the encoder's loops simple.
+	 */
+	private static final int MFLimit = 12;
+	private static final int LastLiterals = 5;
+	private static final int MaxOffset = 0xffff;
+
+	/* (non-Javadoc)
+	 * @see util.BlockCodec#getId()
+	 */
+	public byte getId() {
+		return 1;
+	}
+
+	/* (non-Javadoc)
+	 * @see util.BlockCodec#getName()
+	 */
+	public String getName() {
+		return "lz";
+	}
+
+	/* (non-Javadoc)
+	 * @see util.BlockCodec#maxCompressedLength(int)
+	 */
+	public int maxCompressedLength(int len) {
+		return len + len / 255 + 16;
+	}
+
+	/* (non-Javadoc)
+	 * @see util.BlockCodec#compress(byte[], int, int, byte[], int)
+	 */
+	public int compress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff) {
+		final int srcEnd = srcOff + srcLen;
+		int op = dstOff;
+		int anchor = srcOff;
+
+		if (srcLen >= MFLimit + 1) {
+			// positions + 1 so that 0 denotes an empty slot
+			final int[] table = new int[1 << HashLog];
+			final int mfLimit = srcEnd - MFLimit;
+			final int matchLimit = srcEnd - LastLiterals;
+			int ip = srcOff;
+			while (ip < mfLimit) {
+				final int seq = readInt(src, ip);
+				final int h = hash(seq);
+				final int ref = table[h] - 1;
+				table[h] = ip + 1;
+				if (ref < 0 || ip - ref > MaxOffset || readInt(src, ref) != seq) {
+					// skip faster through incompressible data
+					ip += 1 + ((ip - anchor) >>> 6);
+					continue;
+				}
+				int len = MinMatch;
+				while (ip + len < matchLimit && src[ref + len] == src[ip + len]) {
+					len++;
+				}
+				op = this.writeSequence(src, anchor, ip - anchor, ip - ref, len, dst, op);
+				ip += len;
+				anchor = ip;
+			}
+		}
+		// last literals
+		final int litLen = srcEnd - anchor;
+		dst[op++] = (byte) (Math.min(litLen, 15) << 4);
+		op = writeLength(litLen, dst, op);
+		System.arraycopy(src, anchor, dst, op, litLen);
+		return op + litLen - dstOff;
+	}
+
+	private int writeSequence(final byte[] src, final int lit, final int litLen, final int offset,
+			final int matchLen, final byte[] dst, int op) {
+		final int ml = matchLen - MinMatch;
+		dst[op++] = (byte) ((Math.min(litLen, 15) << 4) | Math.min(ml, 15));
+		op = writeLength(litLen, dst, op);
+		System.arraycopy(src, lit, dst, op, litLen);
+		op += litLen;
+		dst[op++] = (byte) offset;
+		dst[op++] = (byte) (offset >>> 8);
+		return writeLength(ml, dst, op);
+	}
+
+	/**
+	 * Writes the extension bytes of a nibble.
+	 */
+	private static int writeLength(int len, final byte[] dst, int op) {
+		if (len >= 15) {
+			len -= 15;
+			while (len >= 255) {
+				dst[op++] = (byte) 255;
+				len -= 255;
+			}
+			dst[op++] = (byte) len;
+		}
+		return op;
+	}
+
+	/* (non-Javadoc)
+	 * @see util.BlockCodec#decompress(byte[], int, int, byte[], int, int)
+	 */
+	public void decompress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff,
+			final int dstLen) throws IOException {
+		final int srcEnd = srcOff + srcLen;
+		final int dstEnd = dstOff + dstLen;
+		int ip = srcOff;
+		int op = dstOff;
+		try {
+			while (true) {
+				final int token = src[ip++] & 0xff;
+				// literals
+				int litLen = token >>> 4;
+				if (litLen == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						litLen += b;
+					} while (b == 255);
+				}
+				if (litLen > srcEnd - ip || litLen > dstEnd - op) {
+					throw new IOException("Corrupt block: literals out of bounds");
+				}
+				System.arraycopy(src, ip, dst, op, litLen);
+				ip += litLen;
+				op += litLen;
+				if (ip == srcEnd) {
+					break;
+				}
+				// match
+				final int offset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+				ip += 2;
+				int matchLen = token & 0x0f;
+				if (matchLen == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						matchLen += b;
+					} while (b == 255);
+				}
+				matchLen += MinMatch;
+				int ref = op - offset;
+				if (offset == 0 || ref < dstOff || matchLen > dstEnd - op) {
+					throw new IOException("Corrupt block: match out of bounds");
+				}
+				if (offset >= matchLen) {
+					System.arraycopy(dst, ref, dst, op, matchLen);
+					op += matchLen;
+				} else {
+					// overlapping match repeats the last offset bytes
+					for (int i = 0; i < matchLen; i++) {
+						dst[op++] = dst[ref++];
+					}
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt block: truncated");
+		}
+		if (op != dstEnd) {
+			throw new IOException("Corrupt block: expected " + dstLen + " bytes but got " + (op - dstOff));
+		}
+	}
+
+	private static int readInt(final byte[] b, final int i) {
+		return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+	}
+
+	private static int hash(final int seq) {
+		return (seq * -1640531535) >>> (32 - HashLog);
+	}
+}
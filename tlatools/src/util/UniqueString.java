@@ -74,6 +74,13 @@ public final class UniqueString implements Serializable
      */
     private int tok;
 
+    /**
+     * FP64.Extend(FP64.Zero, s) under the polynomial charsPoly, see
+     * {@link #fingerPrintChars(long)}
+     */
+    private transient long charsFP;
+    private transient volatile long charsPoly;
+
     /**
      * If this unique string is a state variable, this is the location of this
      * variable in {@link TLCState}.  If this string is the name of an operator
@@ -247,6 +254,23 @@ public final class UniqueString implements Serializable
         return FP64.Extend(fp, this.tok);
     }
 
+    /**
+     * Extends the fingerprint fp by the characters of this string, i.e.
+     * returns FP64.Extend(fp, this.toString()). The fingerprint of the
+     * characters is computed once, which {@link FP64#Concat(long, long, int)}
+     * then appends to fp.
+     */
+    public long fingerPrintChars(long fp)
+    {
+        if (this.charsPoly != FP64.getIrredPoly())
+        {
+            // Not computed yet (or for another polynomial)
+            this.charsFP = FP64.Extend(FP64.Zero, this.s);
+            this.charsPoly = FP64.getIrredPoly();
+        }
+        return FP64.Concat(fp, this.charsFP, this.s.length());
+    }
+
     /**
      * Returns a unique object associated with string str.  That is,
      * the first time uniqueStringOf("foo") is called, it returns a
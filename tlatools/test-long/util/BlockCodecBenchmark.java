@@ -0,0 +1,145 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures the throughput (MB/s) and the compression ratio of the
+ * {@link BlockCodec}s and of gzip on real files, such as the state queue's
+ * pool files, checkpoints or the liveness checker's node files of a run. Run
+ * it with the files or directories (e.g. states/<date>) as arguments:
+ *
+ * <pre>
+ * java -cp ... util.BlockCodecBenchmark states/12-06-01-10-00-00
+ * </pre>
+ *
+ * Gzipped files (TLC's default for queue files) are uncompressed first.
+ */
+public class BlockCodecBenchmark {
+
+	private static final int Rounds = Integer.getInteger(BlockCodecBenchmark.class.getName() + ".rounds", 5);
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: BlockCodecBenchmark <file or directory>+");
+			System.exit(1);
+		}
+		final List<byte[]> inputs = new ArrayList<byte[]>();
+		for (int i = 0; i < args.length; i++) {
+			collect(new File(args[i]), inputs);
+		}
+		long total = 0;
+		for (byte[] input : inputs) {
+			total += input.length;
+		}
+		System.out.println(inputs.size() + " files, " + total + " bytes");
+		System.out.println("codec\tratio\tcompress MB/s\tdecompress MB/s");
+
+		final BlockCodec[] codecs = { BlockCodec.NONE, BlockCodec.LZ };
+		for (int c = 0; c < codecs.length; c++) {
+			final BlockCodec codec = codecs[c];
+			long stored = 0;
+			long compressNanos = Long.MAX_VALUE;
+			long decompressNanos = Long.MAX_VALUE;
+			for (int r = 0; r < Rounds; r++) {
+				stored = 0;
+				long start = System.nanoTime();
+				final List<byte[]> encoded = new ArrayList<byte[]>();
+				for (byte[] input : inputs) {
+					final ByteArrayOutputStream bytes = new ByteArrayOutputStream(input.length / 2);
+					final BlockOutputStream out = new BlockOutputStream(bytes, codec);
+					out.write(input, 0, input.length);
+					out.close();
+					encoded.add(bytes.toByteArray());
+					stored += bytes.size();
+				}
+				compressNanos = Math.min(compressNanos, System.nanoTime() - start);
+				start = System.nanoTime();
+				for (byte[] bytes : encoded) {
+					drain(new BlockInputStream(new ByteArrayInputStream(bytes)));
+				}
+				decompressNanos = Math.min(decompressNanos, System.nanoTime() - start);
+			}
+			print(codec.getName(), total, stored, compressNanos, decompressNanos);
+		}
+
+		long stored = 0;
+		long compressNanos = Long.MAX_VALUE;
+		long decompressNanos = Long.MAX_VALUE;
+		for (int r = 0; r < Rounds; r++) {
+			stored = 0;
+			long start = System.nanoTime();
+			final List<byte[]> encoded = new ArrayList<byte[]>();
+			for (byte[] input : inputs) {
+				final ByteArrayOutputStream bytes = new ByteArrayOutputStream(input.length / 2);
+				final GZIPOutputStream out = new GZIPOutputStream(bytes);
+				out.write(input, 0, input.length);
+				out.close();
+				encoded.add(bytes.toByteArray());
+				stored += bytes.size();
+			}
+			compressNanos = Math.min(compressNanos, System.nanoTime() - start);
+			start = System.nanoTime();
+			for (byte[] bytes : encoded) {
+				drain(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+			}
+			decompressNanos = Math.min(decompressNanos, System.nanoTime() - start);
+		}
+		print("gzip", total, stored, compressNanos, decompressNanos);
+	}
+
+	private static void print(final String name, final long total, final long stored, final long compressNanos,
+			final long decompressNanos) {
+		System.out.println(name + "\t" + format((double) total / Math.max(1, stored)) + "\t"
+				+ format(mbs(total, compressNanos)) + "\t\t" + format(mbs(total, decompressNanos)));
+	}
+
+	private static double mbs(final long bytes, final long nanos) {
+		return (bytes / (1024d * 1024d)) / (Math.max(1, nanos) / 1e9d);
+	}
+
+	private static String format(final double d) {
+		return String.valueOf(Math.round(d * 100) / 100d);
+	}
+
+	private static void collect(final File file, final List<byte[]> inputs) throws IOException {
+		if (file.isDirectory()) {
+			final File[] files = file.listFiles();
+			for (int i = 0; i < files.length; i++) {
+				collect(files[i], inputs);
+			}
+		} else if (file.length() > 0) {
+			InputStream in = new FileInputStream(file);
+			final int magic = in.read() | (in.read() << 8);
+			in.close();
+			in = new FileInputStream(file);
+			if (magic == GZIPInputStream.GZIP_MAGIC) {
+				in = new GZIPInputStream(in);
+			}
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+			final byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				bytes.write(buf, 0, n);
+			}
+			in.close();
+			inputs.add(bytes.toByteArray());
+		}
+	}
+
+	private static void drain(final InputStream in) throws IOException {
+		final byte[] buf = new byte[8192];
+		while (in.read(buf) > 0) {
+		}
+		in.close();
+	}
+}
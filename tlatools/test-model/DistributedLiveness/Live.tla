@@ -0,0 +1,16 @@
+------------------------------- MODULE Live -------------------------------
+EXTENDS Naturals
+VARIABLES x, y
+
+Init == x = 0 /\ y = 0
+
+Next == x' = (x + 1) % 10 /\ y' \in {y, 1 - y}
+
+Spec == Init /\ [][Next]_<<x, y>> /\ WF_<<x, y>>(Next)
+
+\* Holds since every behavior keeps incrementing x
+Progress == (x = 1) ~> (x = 2)
+
+\* Violated since y never equals 2
+Unreachable == (x = 1) ~> (y = 2)
+=============================================================================
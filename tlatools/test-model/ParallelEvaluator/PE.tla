@@ -0,0 +1,32 @@
+---------------------------- MODULE PE ----------------------------
+EXTENDS Naturals, TLC
+VARIABLE v
+
+Init == v = 0
+Next == v' = v
+
+\* Above the threshold of ParallelEvaluator
+N == 50000
+
+ExistsTrue == \E x \in 1..N : x = 30000
+ExistsFalse == \E x \in 1..N : x = 0
+ForallTrue == \A x \in 1..N : x > 0
+ForallFalse == \A x \in 1..N : x < 40000
+
+SetOfAll == {x % 7 : x \in 1..N}
+SubsetOf == {x \in 1..N : x % 3 = 0}
+
+\* x = 20000 decides before the failing x = 40000 is reached
+DecidedFirst == \E x \in 1..N : IF x = 40000 THEN Assert(FALSE, "late") ELSE x = 20000
+\* x = 20000 fails first
+FirstError == \A x \in 1..N : IF x \in {20000, 30000} THEN Assert(FALSE, x) ELSE TRUE
+
+\* S is bound to a lazy value shared by the chunks
+Shared(S) == \A x \in 1..N : 2 * x \in S
+Arg == {2 * x : x \in 1..N} \cup {0}
+
+\* Evaluated sequentially
+Counted(x) == TLCGet(1) + x
+Impure == \A x \in 1..N : TLCSet(1, x)
+ImpureIndirect == {Counted(x) : x \in 1..N}
+====================================================================
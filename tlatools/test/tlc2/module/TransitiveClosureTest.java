@@ -0,0 +1,142 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.module;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import tlc2.tool.EvalException;
+import tlc2.util.FP64;
+import tlc2.value.IntValue;
+import tlc2.value.SetEnumValue;
+import tlc2.value.StringValue;
+import tlc2.value.TupleValue;
+import tlc2.value.Value;
+
+public class TransitiveClosureTest extends TestCase {
+
+	private Random rnd;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		FP64.Init(0);
+		rnd = new Random(4711);
+	}
+
+	/**
+	 * @return A random relation with the given number of pairs of 0..n-1
+	 */
+	private boolean[][] randomRelation(final int n, final int pairs) {
+		final boolean[][] rel = new boolean[n][n];
+		for (int i = 0; i < pairs; i++) {
+			rel[rnd.nextInt(n)][rnd.nextInt(n)] = true;
+		}
+		return rel;
+	}
+
+	/**
+	 * @return The closure of rel computed by the naive Warshall algorithm
+	 */
+	private static boolean[][] close(final boolean[][] rel) {
+		final int n = rel.length;
+		final boolean[][] res = new boolean[n][];
+		for (int i = 0; i < n; i++) {
+			res[i] = (boolean[]) rel[i].clone();
+		}
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				if (res[x][y]) {
+					for (int z = 0; z < n; z++) {
+						res[x][z] |= res[y][z];
+					}
+				}
+			}
+		}
+		return res;
+	}
+
+	private static Value pair(final int i, final int j) {
+		return new TupleValue(new Value[] { IntValue.gen(i), IntValue.gen(j) });
+	}
+
+	private static SetEnumValue toSet(final boolean[][] rel) {
+		final List pairs = new ArrayList();
+		for (int i = 0; i < rel.length; i++) {
+			for (int j = 0; j < rel.length; j++) {
+				if (rel[i][j]) {
+					pairs.add(pair(i, j));
+				}
+			}
+		}
+		final SetEnumValue set = new SetEnumValue((Value[]) pairs.toArray(new Value[pairs.size()]), false);
+		set.normalize();
+		return set;
+	}
+
+	private static long[][] toMatrix(final boolean[][] rel) {
+		final long[][] matrix = new long[rel.length][(rel.length + 63) >>> 6];
+		for (int i = 0; i < rel.length; i++) {
+			for (int j = 0; j < rel.length; j++) {
+				if (rel[i][j]) {
+					matrix[i][j >>> 6] |= 1L << j;
+				}
+			}
+		}
+		return matrix;
+	}
+
+	public void testWarshall() {
+		final int[] sizes = new int[] { 1, 2, 10, 63, 64, 65, 200 };
+		for (int i = 0; i < sizes.length; i++) {
+			final int n = sizes[i];
+			for (int k = 0; k < 3; k++) {
+				final boolean[][] rel = randomRelation(n, (k + 1) * n / 2 + 1);
+				final Value closure = TransitiveClosure.Warshall(toSet(rel));
+				closure.normalize();
+				assertEquals(toSet(close(rel)), closure);
+				assertEquals(toSet(close(rel)).fingerPrint(FP64.New()), closure.fingerPrint(FP64.New()));
+			}
+		}
+	}
+
+	// The searches from each element (split among threads) close the
+	// relation as Warshall does
+	public void testCloseInParallel() {
+		final int[] sizes = new int[] { 1, 5, 64, 130, 300 };
+		for (int i = 0; i < sizes.length; i++) {
+			final int n = sizes[i];
+			final boolean[][] rel = randomRelation(n, n);
+			final long[][] expected = toMatrix(rel);
+			TransitiveClosure.warshall(expected, n);
+			final long[][] actual = TransitiveClosure.closeInParallel(toMatrix(rel), n, 3);
+			for (int j = 0; j < n; j++) {
+				assertTrue(Arrays.equals(expected[j], actual[j]));
+			}
+			assertTrue(Arrays.equals(toMatrix(close(rel))[n - 1], actual[n - 1]));
+		}
+	}
+
+	// Elements which are no integers
+	public void testStrings() {
+		final Value ab = new TupleValue(new Value[] { new StringValue("a"), new StringValue("b") });
+		final Value bc = new TupleValue(new Value[] { new StringValue("b"), new StringValue("c") });
+		final Value ac = new TupleValue(new Value[] { new StringValue("a"), new StringValue("c") });
+		final Value closure = TransitiveClosure.Warshall(new SetEnumValue(new Value[] { ab, bc }, false));
+		assertEquals(new SetEnumValue(new Value[] { ab, ac, bc }, false), closure);
+	}
+
+	public void testNoPair() {
+		try {
+			TransitiveClosure.Warshall(new SetEnumValue(new Value[] { pair(1, 2),
+					new TupleValue(new Value[] { IntValue.gen(1), IntValue.gen(2), IntValue.gen(3) }) }, false));
+			fail();
+		} catch (EvalException e) {
+			// expected
+		}
+	}
+}
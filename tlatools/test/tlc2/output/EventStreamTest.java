@@ -0,0 +1,143 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.output;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+public class EventStreamTest extends TestCase {
+
+	private StringWriter out;
+	private EventStream stream;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		out = new StringWriter();
+		stream = new EventStream(out, 16);
+	}
+
+	private String[] lines() {
+		stream.flush();
+		return out.toString().split("\n");
+	}
+
+	public void testProgress() {
+		stream.publish(MP.NONE, EC.TLC_PROGRESS_STATS, new String[] { "3", "100", "42", "7", "6000", "2520" }, "ignored");
+		final String[] lines = lines();
+		assertEquals(1, lines.length);
+		assertTrue(lines[0], lines[0].startsWith("{\"type\":\"progress\",\"time\":"));
+		assertTrue(lines[0], lines[0].endsWith(",\"code\":2200,\"diameter\":3,\"generated\":100,\"distinct\":42,"
+				+ "\"left\":7,\"spm\":6000,\"dspm\":2520}"));
+	}
+
+	public void testState() {
+		stream.publish(MP.STATE, EC.TLC_STATE_PRINT2, new String[] { "2", "<Next line 3>", "/\\ x = \"a\"\n/\\ y = 1" },
+				"ignored");
+		final String line = lines()[0];
+		assertTrue(line, line.startsWith("{\"type\":\"state\""));
+		assertTrue(line, line.endsWith(",\"num\":2,\"action\":\"<Next line 3>\",\"state\":\"/\\\\ x = \\\"a\\\"\\n/\\\\ y = 1\"}"));
+	}
+
+	public void testMessage() {
+		stream.publish(MP.ERROR, EC.UNIT_TEST, new String[] { "a", "b" }, "Error: [a][b]");
+		// -tool framing is stripped from the text
+		stream.publish(MP.NONE, EC.UNIT_TEST, new String[] { "c" }, MP.DELIM + MP.STARTMSG + EC.UNIT_TEST + MP.COLON
+				+ MP.NONE + " " + MP.DELIM + "\n[c][%2%]\n" + MP.DELIM + MP.ENDMSG + EC.UNIT_TEST + " " + MP.DELIM);
+		final String[] lines = lines();
+		assertEquals(2, lines.length);
+		assertTrue(lines[0], lines[0].startsWith("{\"type\":\"error\""));
+		assertTrue(lines[0], lines[0].endsWith(",\"params\":[\"a\",\"b\"],\"text\":\"Error: [a][b]\"}"));
+		assertTrue(lines[1], lines[1].startsWith("{\"type\":\"message\""));
+		assertTrue(lines[1], lines[1].endsWith(",\"params\":[\"c\"],\"text\":\"[c][%2%]\"}"));
+	}
+
+	// records are written in the order they have been published, also if
+	// the queue fills up (then records are dropped and counted)
+	public void testOrder() {
+		int dropped = 0;
+		for (int i = 0; i < 1000; i++) {
+			stream.publish(MP.NONE, EC.TLC_COVERAGE_VALUE, new String[] { "line " + i, String.valueOf(i) }, "ignored");
+		}
+		final String[] lines = lines();
+		int last = -1;
+		for (int i = 0; i < lines.length; i++) {
+			if (lines[i].startsWith("{\"type\":\"dropped\"")) {
+				final String cnt = lines[i].substring(lines[i].indexOf("\"count\":") + 8, lines[i].length() - 1);
+				dropped += Integer.parseInt(cnt);
+				continue;
+			}
+			assertTrue(lines[i], lines[i].startsWith("{\"type\":\"coverage\""));
+			final int idx = lines[i].indexOf("\"count\":");
+			final int cnt = Integer.parseInt(lines[i].substring(idx + 8, lines[i].length() - 1));
+			assertTrue(last < cnt);
+			assertTrue(lines[i], lines[i].indexOf("\"location\":\"line " + cnt + "\"") > 0);
+			last = cnt;
+		}
+		assertEquals(1000, lines.length - countDropped(lines) + dropped);
+	}
+
+	// errors and states are never dropped, not even if the queue is full
+	public void testNoErrorDropped() {
+		for (int i = 0; i < 1000; i++) {
+			stream.publish(MP.NONE, EC.TLC_PROGRESS_STATS, new String[] { "1", "2", "3", "4", "5", "6" }, "ignored");
+			stream.publish(MP.ERROR, EC.UNIT_TEST, new String[] { String.valueOf(i) }, "Error: " + i);
+			stream.publish(MP.STATE, EC.TLC_STATE_PRINT3, new String[] { String.valueOf(i) }, "ignored");
+		}
+		final String[] lines = lines();
+		int errors = 0;
+		int states = 0;
+		for (int i = 0; i < lines.length; i++) {
+			if (lines[i].startsWith("{\"type\":\"error\"")) {
+				assertTrue(lines[i], lines[i].endsWith(",\"params\":[\"" + errors + "\"],\"text\":\"Error: " + errors + "\"}"));
+				errors++;
+			} else if (lines[i].startsWith("{\"type\":\"state\"")) {
+				assertTrue(lines[i], lines[i].endsWith(",\"num\":" + states + ",\"stuttering\":true}"));
+				states++;
+			}
+		}
+		assertEquals(1000, errors);
+		assertEquals(1000, states);
+	}
+
+	// Once writing failed, publish and flush return rather than wait for
+	// the writer, also if the queue is full
+	public void testWriteFailed() throws Exception {
+		final EventStream failing = new EventStream(new Writer() {
+			public void write(char[] cbuf, int off, int len) throws IOException {
+				throw new IOException("disk full");
+			}
+
+			public void flush() throws IOException {
+			}
+
+			public void close() throws IOException {
+			}
+		}, 1);
+		final Thread publisher = new Thread() {
+			public void run() {
+				for (int i = 0; i < 100; i++) {
+					failing.publish(MP.ERROR, EC.UNIT_TEST, new String[] { String.valueOf(i) }, "Error: " + i);
+				}
+				failing.flush();
+			}
+		};
+		publisher.start();
+		publisher.join(10 * 1000);
+		assertFalse("publish or flush hangs", publisher.isAlive());
+	}
+
+	private static int countDropped(final String[] lines) {
+		int cnt = 0;
+		for (int i = 0; i < lines.length; i++) {
+			if (lines[i].startsWith("{\"type\":\"dropped\"")) {
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+}
@@ -0,0 +1,63 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import junit.framework.TestCase;
+import tlc2.util.IdThread;
+
+public class ActionMetricsTest extends TestCase {
+
+	private ActionMetrics metrics;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		metrics = new ActionMetrics(new String[] { "A", "B" }, new String[] { "Inv" }, 2);
+	}
+
+	// the stripes of the workers and of other threads add up
+	public void testStripes() throws InterruptedException {
+		final IdThread[] workers = new IdThread[2];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new IdThread(i) {
+				public void run() {
+					final ActionMetrics.Stripe stripe = metrics.getStripe();
+					for (int j = 0; j < 1000; j++) {
+						stripe.recordNextStates(0, 3, 100);
+						stripe.recordDistinct(0);
+						stripe.recordInvariant(0, 50);
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for (int i = 0; i < workers.length; i++) {
+			workers[i].join();
+		}
+		// not a worker
+		metrics.getStripe().recordNextStates(1, 1, 10);
+
+		assertEquals(6000, metrics.getStatesGenerated()[0]);
+		assertEquals(1, metrics.getStatesGenerated()[1]);
+		assertEquals(2000, metrics.getDistinctStates()[0]);
+		assertEquals(0, metrics.getDistinctStates()[1]);
+		assertEquals(100, metrics.getNextStatesMeanNanos()[0]);
+		assertEquals(10, metrics.getNextStatesMeanNanos()[1]);
+		assertEquals(2000, metrics.getInvariantEvaluations()[0]);
+		assertEquals(50, metrics.getInvariantMeanNanos()[0]);
+	}
+
+	// percentiles are the upper bounds of power-of-two buckets
+	public void testPercentile() {
+		final ActionMetrics.Stripe stripe = metrics.getStripe();
+		for (int i = 0; i < 99; i++) {
+			stripe.recordNextStates(0, 1, 100);
+		}
+		stripe.recordNextStates(0, 1, 5000);
+		assertEquals(127, metrics.getNextStatesPercentileNanos(0.99d)[0]);
+		assertEquals(8191, metrics.getNextStatesPercentileNanos(1d)[0]);
+		assertEquals(0, metrics.getNextStatesPercentileNanos(0.99d)[1]);
+		assertEquals(0, metrics.getInvariantPercentileNanos(0.99d)[0]);
+	}
+}
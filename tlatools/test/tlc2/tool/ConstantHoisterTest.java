@@ -0,0 +1,48 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import junit.framework.TestCase;
+import tlc2.util.FP64;
+import tlc2.value.IntValue;
+import tlc2.value.IntervalValue;
+import tlc2.value.SetEnumValue;
+import tlc2.value.SetOfFcnsValue;
+import tlc2.value.SubsetValue;
+import tlc2.value.Value;
+import tlc2.value.ValueConstants;
+
+public class ConstantHoisterTest extends TestCase implements ValueConstants {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		FP64.Init(0);
+	}
+
+	// Data is shared as is, normalized
+	public void testShareData() {
+		final SetEnumValue set = new SetEnumValue(new Value[] { IntValue.gen(2), IntValue.gen(1) }, false);
+		final Value shared = ConstantHoister.share(set);
+		assertSame(set, shared);
+		assertTrue(shared.isNormalized());
+	}
+
+	// Finite lazy sets are enumerated
+	public void testShareEnumerated() {
+		final Value set = new IntervalValue(1, 3);
+		final Value fcns = new SetOfFcnsValue(set, set);
+		final Value shared = ConstantHoister.share(fcns);
+		assertEquals(SETENUMVALUE, shared.getKind());
+		assertEquals(27, shared.size());
+		assertEquals(fcns.fingerPrint(FP64.New()), shared.fingerPrint(FP64.New()));
+	}
+
+	// Sets larger than the bound are computed anew each time
+	public void testShareTooLarge() {
+		final Value set = new SubsetValue(new IntervalValue(1, 20));
+		assertTrue(set.size() > ConstantHoister.BOUND);
+		assertNull(ConstantHoister.share(set));
+	}
+}
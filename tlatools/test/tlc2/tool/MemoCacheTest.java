@@ -0,0 +1,60 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import junit.framework.TestCase;
+import tlc2.util.FP64;
+import tlc2.value.IntValue;
+import tlc2.value.SetEnumValue;
+import tlc2.value.SetOfFcnsValue;
+import tlc2.value.Value;
+
+public class MemoCacheTest extends TestCase {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		FP64.Init(0);
+	}
+
+	public void testGetPut() {
+		final MemoCache cache = new MemoCache(4, 1000);
+		for (int i = 1; i <= 100; i++) {
+			assertNull(cache.get(i));
+			assertTrue(cache.put(i, IntValue.gen(2 * i)));
+		}
+		for (int i = 1; i <= 100; i++) {
+			assertEquals(IntValue.gen(2 * i), cache.get(i));
+		}
+		assertEquals(100, cache.size());
+		assertEquals(100, cache.getHits());
+		assertEquals(100, cache.getMisses());
+	}
+
+	// Each segment keeps its most recently used results
+	public void testEviction() {
+		final MemoCache cache = new MemoCache(1, 10);
+		for (int i = 1; i <= 10; i++) {
+			cache.put(i, IntValue.gen(i));
+		}
+		assertNotNull(cache.get(1));
+		cache.put(11, IntValue.gen(11));
+		assertEquals(10, cache.size());
+		assertNotNull(cache.get(1));
+		assertNull(cache.get(2));
+		assertNotNull(cache.get(11));
+	}
+
+	// Results are normalized before they are shared, lazy values not kept
+	public void testResults() {
+		final MemoCache cache = new MemoCache(1, 10);
+		final SetEnumValue set = new SetEnumValue(new Value[] { IntValue.gen(2), IntValue.gen(1) }, false);
+		assertTrue(cache.put(1, set));
+		assertTrue(cache.get(1).isNormalized());
+
+		final Value fcns = new SetOfFcnsValue(set, set);
+		assertFalse(cache.put(2, fcns));
+		assertNull(cache.get(2));
+	}
+}
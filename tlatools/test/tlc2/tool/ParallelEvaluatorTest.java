@@ -0,0 +1,146 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import tla2sany.semantic.FormalParamNode;
+import tla2sany.semantic.OpApplNode;
+import tla2sany.semantic.OpDefNode;
+import junit.framework.TestCase;
+import tlc2.util.Context;
+import tlc2.value.Enumerable;
+import tlc2.value.IntValue;
+import tlc2.value.LazyValue;
+import tlc2.value.Value;
+import tlc2.value.ValueConstants;
+import tlc2.value.ValueVec;
+import util.FileUtil;
+import util.SimpleFilenameToStream;
+import util.ToolIO;
+
+/**
+ * The quantifiers and comprehensions of test-model/ParallelEvaluator/PE.tla
+ * range over more than {@link ParallelEvaluator#THRESHOLD} elements. Their
+ * parallel evaluation has to equal the sequential one.
+ */
+public class ParallelEvaluatorTest extends TestCase implements ValueConstants {
+
+	private static final String DIR = "test-model" + FileUtil.separator + "ParallelEvaluator" + FileUtil.separator;
+
+	private Tool tool;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		assertTrue(ParallelEvaluator.THRESHOLD < 50000);
+		ToolIO.setUserDir(DIR);
+		tool = new Tool(DIR, "PE", "PE", new SimpleFilenameToStream());
+		tool.init(false, null);
+		ParallelEvaluator.prepare(tool);
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		ToolIO.setUserDir(null);
+		super.tearDown();
+	}
+
+	public void testExists() {
+		assertEquals(ValTrue, quantify("ExistsTrue", true));
+		assertEquals(ValFalse, quantify("ExistsFalse", true));
+	}
+
+	public void testForall() {
+		assertEquals(ValTrue, quantify("ForallTrue", false));
+		assertEquals(ValFalse, quantify("ForallFalse", false));
+	}
+
+	// The first element which decides the quantifier wins over an error
+	// of a later element, even if the latter is evaluated too.
+	public void testDecidedBeforeError() {
+		assertEquals(ValTrue, quantify("DecidedFirst", true));
+	}
+
+	// The first error in enumeration order is reported
+	public void testFirstError() {
+		try {
+			quantify("FirstError", false);
+			fail("Expected the failed assertion");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("20000"));
+			assertFalse(e.getMessage(), e.getMessage().contains("30000"));
+		}
+	}
+
+	// The elements are listed in the order of the domain
+	public void testSetOfAll() {
+		final OpApplNode expr = expr("SetOfAll");
+		final ContextEnumerator Enum = tool.contexts(expr, Context.Empty, TLCState.Empty, TLCState.Empty,
+				EvalControl.Clear);
+		final ValueVec vals = ParallelEvaluator.setOfAll(tool, expr, expr.getArgs()[0], Enum, TLCState.Empty,
+				TLCState.Empty, EvalControl.Clear);
+		assertEquals(50000, vals.size());
+		for (int i = 0; i < vals.size(); i++) {
+			assertEquals(IntValue.gen((i + 1) % 7), vals.elementAt(i));
+		}
+	}
+
+	public void testSubsetOf() {
+		final OpApplNode expr = expr("SubsetOf");
+		final Value inVal = tool.eval(expr.getBdedQuantBounds()[0], Context.Empty, TLCState.Empty);
+		final FormalParamNode[] bvars = expr.getBdedQuantSymbolLists()[0];
+		final ValueVec vals = ParallelEvaluator.subsetOf(tool, expr, expr.getArgs()[0],
+				((Enumerable) inVal).elements(), Context.Empty, bvars, expr.isBdedQuantATuple()[0], TLCState.Empty,
+				TLCState.Empty, EvalControl.Clear);
+		assertEquals(50000 / 3, vals.size());
+		for (int i = 0; i < vals.size(); i++) {
+			assertEquals(IntValue.gen(3 * (i + 1)), vals.elementAt(i));
+		}
+	}
+
+	// Each chunk evaluates its own copy of the lazy value bound to S
+	public void testLazyArgument() {
+		final OpDefNode def = opDef("Shared");
+		final Context c = Context.Empty.cons(def.getParams()[0], new LazyValue(opDef("Arg").getBody(),
+				Context.Empty));
+		assertEquals(ValTrue, quantify((OpApplNode) def.getBody(), c, false));
+	}
+
+	// Bodies which (transitively) apply TLCGet or TLCSet are not marked
+	public void testPrepare() {
+		assertNotNull(expr("ForallTrue").getToolObject(ParallelEvaluator.ToolId));
+		assertNotNull(expr("SubsetOf").getToolObject(ParallelEvaluator.ToolId));
+		assertNull(expr("Impure").getToolObject(ParallelEvaluator.ToolId));
+		assertNull(expr("ImpureIndirect").getToolObject(ParallelEvaluator.ToolId));
+	}
+
+	private Value quantify(final String name, final boolean exists) {
+		return quantify(expr(name), Context.Empty, exists);
+	}
+
+	private Value quantify(final OpApplNode expr, final Context c, final boolean exists) {
+		final ContextEnumerator Enum = tool.contexts(expr, c, TLCState.Empty, TLCState.Empty, EvalControl.Clear);
+		final Value res = ParallelEvaluator.quantify(tool, expr, expr.getArgs()[0], Enum, TLCState.Empty,
+				TLCState.Empty, EvalControl.Clear, exists);
+		// The same as sequentially
+		assertEquals(tool.eval(expr, c, TLCState.Empty), res);
+		return res;
+	}
+
+	private OpApplNode expr(final String name) {
+		return (OpApplNode) opDef(name).getBody();
+	}
+
+	private OpDefNode opDef(final String name) {
+		final OpDefNode[] opDefs = tool.rootModule.getOpDefs();
+		for (int i = 0; i < opDefs.length; i++) {
+			if (opDefs[i].getName().toString().equals(name)) {
+				return opDefs[i];
+			}
+		}
+		fail("No definition " + name);
+		return null;
+	}
+}
@@ -0,0 +1,191 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import tlc2.tool.queue.DummyTLCState;
+import tlc2.util.BufferedRandomAccessFile;
+import tlc2.util.LongVec;
+
+public class TLCTraceTest extends TestCase {
+
+	private File metadir;
+	private RecordingTraceApp app;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadir = File.createTempFile("TLCTraceTest", "");
+		metadir.delete();
+		metadir.mkdirs();
+		app = new RecordingTraceApp();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		final File[] files = metadir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		metadir.delete();
+		super.tearDown();
+	}
+
+	/**
+	 * The action which generated a state is passed on to reconstruct the trace.
+	 */
+	public void testActions() throws IOException {
+		final TLCTrace trace = new TLCTrace(metadir.getAbsolutePath(), "Spec", app);
+
+		final TLCState init = new DummyTLCState();
+		init.uid = trace.writeState(1L);
+		final TLCState s1 = new DummyTLCState();
+		s1.uid = trace.writeState(init, 2L, 3);
+		final TLCState s2 = new DummyTLCState();
+		s2.uid = trace.writeState(s1, 3L);
+
+		final TLCStateInfo[] infos = trace.getTrace(s2.uid, true);
+		assertEquals(3, infos.length);
+		assertEquals(1L, app.fps.elementAt(0));
+		assertEquals(2L, app.fps.elementAt(1));
+		assertEquals(3, app.actions.elementAt(1));
+		// unknown action
+		assertEquals(3L, app.fps.elementAt(2));
+		assertEquals(-1, app.actions.elementAt(2));
+		trace.close();
+	}
+
+	/**
+	 * A trace file written by an older version has no action indices.
+	 */
+	public void testReadWithoutActions() throws IOException {
+		final String filename = metadir.getAbsolutePath() + File.separator + "Spec.st";
+		final BufferedRandomAccessFile raf = new BufferedRandomAccessFile(filename, "rw");
+		raf.writeLongNat(1L); // init state
+		raf.writeLong(1L);
+		raf.writeLongNat(0L);
+		raf.writeLong(2L);
+		raf.writeLongNat(12L);
+		raf.writeLong(3L);
+		raf.close();
+
+		final TLCTrace trace = new TLCTrace(metadir.getAbsolutePath(), "Spec", app);
+		final TLCStateInfo[] infos = trace.getTrace(24L, true);
+		assertEquals(3, infos.length);
+		assertEquals(3, app.fps.size());
+		for (int i = 0; i < app.fps.size(); i++) {
+			assertEquals(i + 1L, app.fps.elementAt(i));
+			assertEquals(-1, app.actions.elementAt(i));
+		}
+		trace.close();
+	}
+
+	/**
+	 * The finger print set is recovered from trace files with and without
+	 * action indices.
+	 */
+	public void testRecoveryEnumerator() throws IOException {
+		final TLCTrace trace = new TLCTrace(metadir.getAbsolutePath(), "Spec", app);
+		final TLCState init = new DummyTLCState();
+		init.uid = trace.writeState(1L);
+		trace.writeState(init, 2L, 0);
+		trace.beginChkpt();
+		trace.commitChkpt();
+		// not part of the checkpoint
+		trace.writeState(init, 3L, 1);
+
+		final TLCTrace.RecoveryEnumerator elements = new TLCTrace.RecoveryEnumerator();
+		assertTrue(elements.hasMoreElements());
+		assertEquals(1L, elements.nextFP());
+		assertTrue(elements.hasMoreElements());
+		assertEquals(2L, elements.nextFP());
+		assertFalse(elements.hasMoreElements());
+		elements.close();
+		trace.close();
+	}
+
+	/**
+	 * All states are reconstructed level by level and streamed to the
+	 * listener after their predecessor.
+	 */
+	public void testReconstruct() throws IOException {
+		final TLCTrace trace = new TLCTrace(metadir.getAbsolutePath(), "Spec", app);
+
+		// two initial states with a binary tree of successors each
+		final int depth = 6;
+		final TLCState[] inits = new TLCState[2];
+		long fp = 1;
+		int cnt = 0;
+		for (int i = 0; i < inits.length; i++) {
+			inits[i] = new DummyTLCState();
+			inits[i].uid = trace.writeState(fp++);
+			cnt++;
+		}
+		TLCState[] level = inits;
+		for (int d = 1; d < depth; d++) {
+			final TLCState[] next = new TLCState[level.length * 2];
+			for (int i = 0; i < next.length; i++) {
+				next[i] = new DummyTLCState();
+				next[i].uid = trace.writeState(level[i / 2], fp++, i % 2);
+				cnt++;
+			}
+			level = next;
+		}
+
+		final Set<Long> seen = new HashSet<Long>();
+		final int[] levelOf = new int[cnt + 1];
+		trace.reconstruct(4, new TLCTrace.StateListener() {
+			public void reconstructed(TLCStateInfo state) {
+				final long sfp = ((Long) state.info).longValue();
+				assertTrue(seen.add(sfp));
+				if (state.predecessorState == null) {
+					assertTrue(sfp <= inits.length);
+				} else {
+					final long pfp = ((Long) state.predecessorState.info).longValue();
+					// the predecessor has been streamed before
+					assertTrue(seen.contains(pfp));
+					levelOf[(int) sfp] = levelOf[(int) pfp] + 1;
+				}
+				assertEquals(sfp - 1, state.stateNumber);
+			}
+		});
+		assertEquals(cnt, seen.size());
+		assertEquals(depth - 1, levelOf[cnt]);
+		assertEquals(cnt, trace.getTrace().length);
+		trace.close();
+	}
+
+	/**
+	 * Records the finger prints and actions of the states to reconstruct.
+	 */
+	private static class RecordingTraceApp implements TraceApp {
+		private final LongVec fps = new LongVec();
+		private final LongVec actions = new LongVec();
+
+		public TLCStateInfo getState(long fp) {
+			return getState(fp, null, -1);
+		}
+
+		public TLCStateInfo getState(long fp, TLCState s) {
+			return getState(fp, s, -1);
+		}
+
+		public synchronized TLCStateInfo getState(long fp, TLCState s, int action) {
+			fps.addElement(fp);
+			actions.addElement(action);
+			return new TLCStateInfo(new DummyTLCState(), new Long(fp));
+		}
+
+		public TLCStateInfo getState(TLCState s1, TLCState s) {
+			return null;
+		}
+	}
+}
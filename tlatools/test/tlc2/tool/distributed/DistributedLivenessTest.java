@@ -0,0 +1,153 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.distributed;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.rmi.NotBoundException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+
+import junit.framework.TestCase;
+import tlc2.TLCGlobals;
+import tlc2.output.EC;
+import tlc2.output.MP;
+import tlc2.tool.distributed.TLCWorker.TLCWorkerRunnable;
+import tlc2.tool.distributed.fp.IFPSetManager;
+import tlc2.tool.distributed.fp.NonDistributedFPSetManager;
+import tlc2.tool.fp.FPSet;
+import tlc2.tool.fp.FPSetFactory;
+import util.FileUtil;
+import util.ToolIO;
+
+/**
+ * Runs a {@link TLCServer} and a {@link TLCWorker} in this VM on a spec with
+ * a liveness property. The worker evaluates the liveness predicates into
+ * LiveRecords which the server adds to its behavior graph.
+ */
+public class DistributedLivenessTest extends TestCase {
+
+	private static final String SPEC = "test-model" + FileUtil.separator
+			+ "DistributedLiveness" + FileUtil.separator + "Live";
+
+	private static final String VIOLATED = MP.getMessage(
+			EC.TLC_TEMPORAL_PROPERTY_VIOLATED, new String[0]).trim();
+	private static final String SUCCESS = "Model checking completed. No error has been found.";
+
+	// Each run binds its own registry, which cannot be unexported
+	private static int port = 10997 + 100;
+
+	private File metadir;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadir = File.createTempFile(getName(), "");
+		metadir.delete();
+		ToolIO.reset();
+		ToolIO.setMode(ToolIO.TOOL);
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		ToolIO.setMode(ToolIO.SYSTEM);
+		ToolIO.setUserDir(null);
+		TLCGlobals.metaDir = null;
+		FileUtil.deleteDir(metadir, true);
+		super.tearDown();
+	}
+
+	public void testLivenessHolds() throws Exception {
+		final String messages = modelCheck(SPEC);
+		assertTrue(messages, messages.contains(SUCCESS));
+		assertFalse(messages, messages.contains(VIOLATED));
+	}
+
+	public void testLivenessViolated() throws Exception {
+		final String messages = modelCheck(SPEC, "-config", SPEC + "Violated");
+		assertTrue(messages, messages.contains(VIOLATED));
+		assertFalse(messages, messages.contains(SUCCESS));
+	}
+
+	private String modelCheck(final String... args) throws Exception {
+		TLCServer.Port = port++;
+		TLCGlobals.setNumWorkers(0);
+
+		final String[] argv = new String[args.length + 2];
+		argv[0] = "-metadir";
+		argv[1] = metadir.getPath();
+		System.arraycopy(args, 0, argv, 2, args.length);
+		final TLCApp app = TLCApp.create(argv);
+		assertNotNull(app);
+
+		final TLCServer server = new InVMTLCServer(app);
+		final Throwable[] failure = new Throwable[1];
+		final Thread serverThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					server.modelCheck();
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			}
+		}, "TLCServer");
+		serverThread.start();
+
+		// The server computes the initial states before it binds itself
+		final Registry registry = LocateRegistry.getRegistry(TLCServer.Port);
+		while (serverThread.isAlive()) {
+			try {
+				registry.lookup("TLCServer");
+				break;
+			} catch (Exception notYetBound) {
+				Thread.sleep(100);
+			}
+		}
+
+		// Server and worker share this VM and thus the spec (app) and the
+		// liveness properties processed by the server.
+		for (int i = 0; i < 2; i++) {
+			new TLCWorkerRunnable(i, server, server.getFPSetManager(), app).run();
+		}
+
+		serverThread.join(60 * 1000);
+		assertFalse("Model checking did not terminate", serverThread.isAlive());
+		assertNull(String.valueOf(failure[0]), failure[0]);
+
+		final StringBuffer buf = new StringBuffer();
+		for (String message : ToolIO.getAllMessages()) {
+			buf.append(message).append('\n');
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * The FPSet of a stand-alone server terminates the VM when it gets
+	 * closed at the end of model checking, which this one does not.
+	 */
+	private static class InVMTLCServer extends TLCServer {
+
+		public InVMTLCServer(final TLCApp work) throws IOException, NotBoundException {
+			super(work);
+		}
+
+		/* (non-Javadoc)
+		 * @see tlc2.tool.distributed.TLCServer#getFPSetManagerImpl(tlc2.tool.distributed.TLCApp, java.lang.String, int)
+		 */
+		protected IFPSetManager getFPSetManagerImpl(final TLCApp work,
+				final String metadir, final int fpsetCount) throws IOException {
+			final FPSet fpSet = FPSetFactory.getFPSet(work.getFPSetConfiguration());
+			fpSet.init(1, metadir, work.getFileName());
+			return new NonDistributedFPSetManager(fpSet, InetAddress.getLocalHost()
+					.getCanonicalHostName()) {
+				public void close(boolean cleanup) throws IOException {
+					fpSet.close();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,125 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+
+package tlc2.tool.distributed.fp;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ConsistentHashRingTest extends TestCase {
+
+	private static final int FINGERPRINTS = 100000;
+
+	/**
+	 * Test that an empty ring has no owners
+	 */
+	public void testEmpty() {
+		final ConsistentHashRing ring = new ConsistentHashRing(16);
+		assertEquals(0, ring.size());
+		assertEquals(-1, ring.getOwner(42L));
+	}
+
+	/**
+	 * Test that the ctor rejects invalid values.
+	 */
+	public void testCtorInvalid() {
+		try {
+			new ConsistentHashRing(0);
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		fail("Exception expected");
+	}
+
+	/**
+	 * Test that a server cannot join the ring twice
+	 */
+	public void testAddTwice() {
+		final ConsistentHashRing ring = new ConsistentHashRing(16).add(0);
+		try {
+			ring.add(0);
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		fail("Exception expected");
+	}
+
+	/**
+	 * Test that the fingerprint space is (roughly) evenly partitioned
+	 */
+	public void testBalanced() {
+		final int servers = 8;
+		final ConsistentHashRing ring = createRing(servers, 128);
+		assertEquals(servers, ring.size());
+
+		final int[] load = distribute(ring, servers);
+		for (int i = 0; i < servers; i++) {
+			assertTrue("Server " + i + " has load " + load[i], isAround(load[i], FINGERPRINTS / servers));
+		}
+	}
+
+	/**
+	 * Test that the range of a removed server spreads across all remaining
+	 * servers instead of doubling the load of a single server.
+	 */
+	public void testRemoveSpreadsLoad() {
+		final int servers = 8;
+		final ConsistentHashRing ring = createRing(servers, 128).remove(3);
+		assertEquals(servers - 1, ring.size());
+		assertFalse(ring.contains(3));
+
+		final int[] load = distribute(ring, servers);
+		assertEquals(0, load[3]);
+		for (int i = 0; i < servers; i++) {
+			if (i != 3) {
+				assertTrue("Server " + i + " has load " + load[i],
+						isAround(load[i], FINGERPRINTS / (servers - 1)));
+			}
+		}
+	}
+
+	/**
+	 * Test that a joining server only takes over fingerprints and does not
+	 * move fingerprints between existing servers.
+	 */
+	public void testAddOnlyMovesToNewServer() {
+		final int servers = 4;
+		final ConsistentHashRing ring = createRing(servers, 64);
+		final ConsistentHashRing grown = ring.add(servers);
+
+		final Random rnd = new Random(4711L);
+		int moved = 0;
+		for (int i = 0; i < FINGERPRINTS; i++) {
+			final long fp = rnd.nextLong();
+			final int before = ring.getOwner(fp);
+			final int after = grown.getOwner(fp);
+			if (before != after) {
+				assertEquals(servers, after);
+				moved++;
+			}
+		}
+		assertTrue(isAround(moved, FINGERPRINTS / (servers + 1)));
+	}
+
+	private static ConsistentHashRing createRing(final int servers, final int virtualNodes) {
+		ConsistentHashRing ring = new ConsistentHashRing(virtualNodes);
+		for (int i = 0; i < servers; i++) {
+			ring = ring.add(i);
+		}
+		return ring;
+	}
+
+	private static int[] distribute(final ConsistentHashRing ring, final int servers) {
+		final int[] load = new int[servers];
+		final Random rnd = new Random(15041977L);
+		for (int i = 0; i < FINGERPRINTS; i++) {
+			load[ring.getOwner(rnd.nextLong())]++;
+		}
+		return load;
+	}
+
+	// within 25% of the expected value
+	private static boolean isAround(final int actual, final int expected) {
+		return Math.abs(actual - expected) < expected / 4;
+	}
+}
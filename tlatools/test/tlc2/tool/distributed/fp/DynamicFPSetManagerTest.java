@@ -499,4 +499,145 @@ public class DynamicFPSetManagerTest extends TestCase {
 			es.shutdown();
 		}
 	}
+
+	/**
+	 * Tests that consistent hashing spreads the range of a failed FPSet across
+	 * all remaining FPSets.
+	 */
+	public void testConsistentHashingFailover() throws IOException {
+		int expectedNumOfServers = 4;
+		final DynamicFPSetManager dfm = new DynamicFPSetManager(expectedNumOfServers, 64);
+		assertTrue(dfm.isConsistentHashing());
+		dfm.register(new FaultyFPSet(), "TestFPSet");
+		for (int i = 1; i < expectedNumOfServers; i++) {
+			dfm.register(new MemFPSet(), "RegularFPSet" + i);
+		}
+
+		// Find a fingerprint owned by the faulty FPSet
+		long fp = 0L;
+		while (dfm.getFPSetIndex(fp) != 0) {
+			fp++;
+		}
+		
+		// First invocation works as expected
+		assertFalse(dfm.put(fp));
+		assertTrue(dfm.contains(fp));
+
+		// Second invocation fails over (the fingerprint is lost with the
+		// faulty FPSet)
+		assertFalse(dfm.put(fp));
+		assertTrue(dfm.contains(fp));
+		assertEquals(expectedNumOfServers - 1, dfm.numOfAliveServers());
+		
+		// The range of the faulty FPSet is now owned by all remaining FPSets
+		final boolean[] owners = new boolean[expectedNumOfServers];
+		for (long l = 0; l < 10000L; l++) {
+			owners[dfm.getFPSetIndex(l)] = true;
+		}
+		assertFalse(owners[0]);
+		for (int i = 1; i < expectedNumOfServers; i++) {
+			assertTrue(owners[i]);
+		}
+	}
+	
+	/**
+	 * Tests that a FPSet may join while model checking is running and that
+	 * fingerprints stored before are still found.
+	 */
+	public void testConsistentHashingJoin() throws IOException {
+		int expectedNumOfServers = 2;
+		final DynamicFPSetManager dfm = new DynamicFPSetManager(expectedNumOfServers, 64);
+		for (int i = 0; i < expectedNumOfServers; i++) {
+			dfm.register(new MemFPSet(), "localhost" + i);
+		}
+		
+		// Pre-sort fingerprints with the current generation (as a worker does)
+		final int numOfServers = dfm.numOfServers();
+		final LongVec[] fps = new LongVec[numOfServers];
+		for (int i = 0; i < numOfServers; i++) {
+			fps[i] = new LongVec();
+		}
+		for (long fp = 0; fp < 1000L; fp++) {
+			fps[dfm.getFPSetIndex(fp)].addElement(fp);
+		}
+		BitVector[] bvs = dfm.putBlock(fps);
+		assertEquals(fps[0].size(), bvs[0].trueCnt());
+		assertEquals(fps[1].size(), bvs[1].trueCnt());
+		
+		// A third FPSet joins beyond the expected number of servers
+		final MemFPSet joined = new MemFPSet();
+		dfm.register(joined, "localhost" + expectedNumOfServers);
+		assertEquals(expectedNumOfServers + 1, dfm.numOfServers());
+		
+		// The outdated pre-sorting is accepted and all fingerprints are known
+		final ExecutorService es = Executors.newCachedThreadPool();
+		try {
+			bvs = dfm.putBlock(fps, es);
+			assertEquals(0, bvs[0].trueCnt());
+			assertEquals(0, bvs[1].trueCnt());
+			bvs = dfm.containsBlock(fps, es);
+			assertEquals(0, bvs[0].trueCnt());
+			assertEquals(0, bvs[1].trueCnt());
+		} finally {
+			es.shutdown();
+		}
+		// ...and not stored twice
+		assertEquals(1000L, dfm.size());
+		
+		// New fingerprints go to the joined FPSet too
+		for (long fp = 1000L; fp < 2000L; fp++) {
+			assertFalse(dfm.put(fp));
+		}
+		assertEquals(2000L, dfm.size());
+		assertTrue(joined.size() > 0);
+	}
+
+	/**
+	 * Tests that killing a fingerprint server loses no fingerprints if they
+	 * are replicated.
+	 */
+	public void testReplicationKill() throws IOException {
+		int expectedNumOfServers = 4;
+		final DynamicFPSetManager dfm = new DynamicFPSetManager(expectedNumOfServers, 64, 2);
+		final KillableFPSet[] fpSets = new KillableFPSet[expectedNumOfServers];
+		for (int i = 0; i < expectedNumOfServers; i++) {
+			fpSets[i] = new KillableFPSet();
+			dfm.register(fpSets[i], "localhost" + i);
+		}
+		
+		final ExecutorService es = Executors.newCachedThreadPool();
+		try {
+			final LongVec[] fps = new LongVec[expectedNumOfServers];
+			for (int i = 0; i < expectedNumOfServers; i++) {
+				fps[i] = new LongVec();
+			}
+			for (long fp = 0; fp < 1000L; fp++) {
+				fps[dfm.getFPSetIndex(fp)].addElement(fp);
+			}
+			BitVector[] bvs = dfm.putBlock(fps, es);
+			for (int i = 0; i < expectedNumOfServers; i++) {
+				assertEquals(fps[i].size(), bvs[i].trueCnt());
+			}
+			assertEquals(1000L, dfm.size());
+
+			// Kill a server without waiting for its replicas to be written
+			fpSets[1].kill();
+			
+			// All fingerprints are still known...
+			bvs = dfm.putBlock(fps, es);
+			for (int i = 0; i < expectedNumOfServers; i++) {
+				assertEquals(0, bvs[i].trueCnt());
+			}
+			bvs = dfm.containsBlock(fps, es);
+			for (int i = 0; i < expectedNumOfServers; i++) {
+				assertEquals(0, bvs[i].trueCnt());
+			}
+			assertEquals(expectedNumOfServers - 1, dfm.numOfAliveServers());
+			// ...and the number of distinct fingerprints is unchanged.
+			assertEquals(1000L, dfm.size());
+		} finally {
+			dfm.flush();
+			es.shutdown();
+		}
+	}
 }
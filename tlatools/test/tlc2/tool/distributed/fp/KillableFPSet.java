@@ -0,0 +1,46 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+
+package tlc2.tool.distributed.fp;
+
+import java.rmi.RemoteException;
+
+import tlc2.tool.fp.FPSetConfiguration;
+import tlc2.tool.fp.MemFPSet;
+
+/**
+ * Simulates a fingerprint server whose process gets killed at an arbitrary
+ * point in time. Afterwards, all invocations fail.
+ */
+@SuppressWarnings("serial")
+public class KillableFPSet extends MemFPSet implements FPSetRMI {
+
+	private volatile boolean killed = false;
+
+	public KillableFPSet() throws RemoteException {
+		super(new FPSetConfiguration());
+	}
+
+	public void kill() {
+		killed = true;
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.fp.MemFPSet#put(long)
+	 */
+	public synchronized boolean put(long fp) {
+		if (killed) {
+			throw new RuntimeException("Killed FPSet");
+		}
+		return super.put(fp);
+	}
+
+	/* (non-Javadoc)
+	 * @see tlc2.tool.fp.MemFPSet#contains(long)
+	 */
+	public synchronized boolean contains(long fp) {
+		if (killed) {
+			throw new RuntimeException("Killed FPSet");
+		}
+		return super.contains(fp);
+	}
+}
@@ -525,4 +525,48 @@ public class ShortDiskFPSetTest extends AbstractFPSetTest {
 		// BitVector is false if fp is in set 
 		assertFalse(fpSet.putBlock(fpv).get(0));
 	}
+
+	/**
+	 * Tests that a checkpoint reflects the fingerprints at the time of
+	 * {@link DiskFPSet#beginChkpt(String)}, also if the set is flushed before
+	 * the checkpoint is committed or if the previous checkpoint is reused.
+	 * 
+	 * @throws IOException
+	 */
+	public void testIncrementalChkpt() throws IOException {
+		final DiskFPSet fpSet = (DiskFPSet) getFPSet(new FPSetConfiguration());
+		final String chkpt = "testIncrementalChkpt";
+		for (long fp = 1; fp <= 1000; fp++) {
+			fpSet.put(fp);
+		}
+		fpSet.beginChkpt(chkpt);
+		fpSet.commitChkpt(chkpt);
+		
+		// nothing new, reuses the previous checkpoint
+		fpSet.beginChkpt(chkpt);
+		fpSet.commitChkpt(chkpt);
+
+		for (long fp = 1001; fp <= 2000; fp++) {
+			fpSet.put(fp);
+		}
+		fpSet.beginChkpt(chkpt);
+		// not part of the checkpoint, but flushed before it is committed
+		for (long fp = 2001; fp <= 3000; fp++) {
+			fpSet.put(fp);
+		}
+		assertTrue(fpSet.checkInvariant());
+		fpSet.commitChkpt(chkpt);
+
+		for (long fp = 1; fp <= 3000; fp++) {
+			assertTrue(fpSet.contains(fp));
+		}
+
+		final DiskFPSet recovered = (DiskFPSet) getFPSet(new FPSetConfiguration());
+		recovered.recover(chkpt);
+		assertEquals(2000, recovered.size());
+		for (long fp = 1; fp <= 2000; fp++) {
+			assertTrue(recovered.contains(fp));
+		}
+		assertFalse(recovered.contains(2001));
+	}
 }
@@ -0,0 +1,140 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.fp.dfid;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class DiskFPIntSetTest extends TestCase {
+
+	// Exceeds the hash tables of the two segments many times
+	private static final int N = 20000;
+
+	private File metadir;
+	private long[] fps;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadir = new File(System.getProperty("java.io.tmpdir"), "DiskFPIntSetTest_" + System.currentTimeMillis());
+		metadir.mkdirs();
+		final Random rnd = new Random(4711);
+		fps = new long[N];
+		for (int i = 0; i < N; i++) {
+			fps[i] = rnd.nextLong();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		final File[] files = metadir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		metadir.delete();
+		super.tearDown();
+	}
+
+	private DiskFPIntSet newSet() throws IOException {
+		return newSet("test");
+	}
+
+	private DiskFPIntSet newSet(final String filename) throws IOException {
+		// The smallest hash tables possible
+		final DiskFPIntSet set = new DiskFPIntSet(0, 2);
+		set.init(1, metadir.getAbsolutePath(), filename);
+		return set;
+	}
+
+	public void testSetStatus() throws IOException {
+		final DiskFPIntSet set = newSet();
+		for (int i = 0; i < N; i++) {
+			assertEquals(FPIntSet.NEW, set.setStatus(fps[i], FPIntSet.NEW));
+		}
+		assertEquals(N, set.size());
+		for (int i = 0; i < N; i++) {
+			assertTrue(set.setStatus(fps[i], FPIntSet.NEW) != FPIntSet.NEW);
+			assertTrue(set.getStatus(fps[i]) != FPIntSet.NEW);
+		}
+		assertEquals(N, set.size());
+		final Random rnd = new Random(815);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(FPIntSet.NEW, set.getStatus(rnd.nextLong()));
+		}
+		set.close();
+	}
+
+	// DONE fingerprints are moved to disk first
+	public void testDone() throws IOException {
+		final DiskFPIntSet set = newSet();
+		for (int i = 0; i < N; i++) {
+			set.setStatus(fps[i], FPIntSet.NEW);
+			if (i % 3 == 0) {
+				set.setStatus(fps[i], FPIntSet.DONE);
+			}
+		}
+		for (int i = 0; i < N; i++) {
+			assertEquals("fp at " + i, i % 3 == 0, FPIntSet.isDone(set.getStatus(fps[i])));
+			assertTrue(FPIntSet.isCompleted(set.getStatus(fps[i])));
+		}
+		set.close();
+	}
+
+	public void testSetLeveled() throws IOException {
+		final DiskFPIntSet set = newSet();
+		for (int i = 0; i < N; i++) {
+			set.setStatus(fps[i], FPIntSet.NEW);
+			if (i % 3 == 0) {
+				set.setStatus(fps[i], FPIntSet.DONE);
+			}
+		}
+		FPIntSet.incLevel();
+		for (int i = 0; i < N; i++) {
+			assertEquals(i % 3 == 0, FPIntSet.isCompleted(set.getStatus(fps[i])));
+		}
+		assertFalse(set.allLeveled());
+		for (int i = 0; i < N; i++) {
+			set.setLeveled(fps[i]);
+		}
+		for (int i = 0; i < N; i++) {
+			assertTrue(FPIntSet.isCompleted(set.getStatus(fps[i])));
+		}
+		assertTrue(set.allLeveled());
+		set.close();
+	}
+
+	// A checkpoint can be recovered by DiskFPIntSet and MemFPIntSet alike
+	public void testCheckpoint() throws IOException {
+		final DiskFPIntSet set = newSet();
+		for (int i = 0; i < N; i++) {
+			set.setStatus(fps[i], FPIntSet.NEW);
+			if (i % 3 == 0) {
+				set.setStatus(fps[i], FPIntSet.DONE);
+			}
+		}
+		set.beginChkpt();
+		set.commitChkpt();
+
+		final DiskFPIntSet recovered = newSet("recovered");
+		recovered.recover("test");
+		assertEquals(N, recovered.size());
+
+		final MemFPIntSet mem = new MemFPIntSet();
+		mem.init(1, metadir.getAbsolutePath(), "test");
+		mem.recover();
+		assertEquals(N, mem.size());
+
+		for (int i = 0; i < N; i++) {
+			assertEquals(set.getStatus(fps[i]), recovered.getStatus(fps[i]));
+			assertEquals(set.getStatus(fps[i]), mem.getStatus(fps[i]));
+		}
+		set.close();
+		recovered.close();
+	}
+}
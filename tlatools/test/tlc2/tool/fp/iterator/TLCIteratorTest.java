@@ -94,4 +94,14 @@ public class TLCIteratorTest extends TestCase {
 	public void testGetLast() {
 		assertEquals(getLast(), itr.getLast());
 	}
+
+	/**
+	 * Test method for {@link tlc2.tool.fp.TLCIterator#getLast()} if the last
+	 * bucket only contains fingerprints flushed by a previous flush.
+	 */
+	public void testGetLastFlushedBucket() {
+		final long[][] buff = getBuffer();
+		buff[buff.length - 1] = new long[] { 42L | 0x8000000000000000L, 0L };
+		assertEquals(getLast(), new MSBDiskFPSet.TLCIterator(buff).getLast());
+	}
 }
@@ -0,0 +1,121 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.tool.queue;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import tlc2.tool.TLCState;
+
+public class SerializedStateQueueTest extends TestCase {
+
+	static {
+		// small segments to cross segment boundaries quickly
+		System.setProperty(SerializedStateQueue.class.getName() + ".SegmentSize", "1024");
+		System.setProperty(SerializedStateQueue.class.getName() + ".direct", "true");
+	}
+
+	private File metadir;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		metadir = File.createTempFile("SerializedStateQueueTest", "");
+		metadir.delete();
+		metadir.mkdirs();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		final File[] files = metadir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		metadir.delete();
+		super.tearDown();
+	}
+
+	// states are decoded in the order they have been enqueued, also across
+	// (recycled) segments
+	public void testFIFO() {
+		final IStateQueue queue = new SerializedStateQueue(metadir.getAbsolutePath());
+		long enq = 0;
+		long deq = 0;
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 1000; i++) {
+				final TLCState state = new DummyTLCState();
+				state.uid = enq++ * 7919L;
+				queue.sEnqueue(state);
+			}
+			for (int i = 0; i < 700; i++) {
+				assertEquals(deq++ * 7919L, queue.sDequeue().uid);
+			}
+		}
+		assertEquals(enq - deq, queue.size());
+		while (!queue.isEmpty()) {
+			assertEquals(deq++ * 7919L, queue.sDequeue().uid);
+		}
+		assertEquals(enq, deq);
+		assertNull(queue.sDequeue());
+	}
+
+	// the records of a checkpoint are recovered by a fresh queue
+	public void testCheckpointRecover() throws Exception {
+		final IStateQueue queue = new SerializedStateQueue(metadir.getAbsolutePath());
+		for (int i = 0; i < 500; i++) {
+			final TLCState state = new DummyTLCState();
+			state.uid = i;
+			queue.sEnqueue(state);
+		}
+		for (int i = 0; i < 100; i++) {
+			queue.sDequeue();
+		}
+		queue.beginChkpt();
+		queue.commitChkpt();
+		// not part of the checkpoint
+		queue.sEnqueue(new DummyTLCState());
+
+		final IStateQueue recovered = new SerializedStateQueue(metadir.getAbsolutePath());
+		recovered.recover();
+		assertEquals(400, recovered.size());
+		for (int i = 100; i < 500; i++) {
+			assertEquals(i, recovered.sDequeue().uid);
+		}
+		assertTrue(recovered.isEmpty());
+	}
+
+	// the workers continue between beginChkpt and commitChkpt, the segments
+	// of the checkpoint are neither recycled nor cleared meanwhile
+	public void testCheckpointWhileRunning() throws Exception {
+		final IStateQueue queue = new SerializedStateQueue(metadir.getAbsolutePath());
+		for (int i = 0; i < 500; i++) {
+			final TLCState state = new DummyTLCState();
+			state.uid = i;
+			queue.sEnqueue(state);
+		}
+		queue.beginChkpt();
+		// run the queue empty and refill it
+		for (int i = 0; i < 500; i++) {
+			assertEquals(i, queue.sDequeue().uid);
+		}
+		for (int i = 0; i < 500; i++) {
+			final TLCState state = new DummyTLCState();
+			state.uid = 1000 + i;
+			queue.sEnqueue(state);
+		}
+		queue.commitChkpt();
+		for (int i = 0; i < 500; i++) {
+			assertEquals(1000 + i, queue.sDequeue().uid);
+		}
+
+		final IStateQueue recovered = new SerializedStateQueue(metadir.getAbsolutePath());
+		recovered.recover();
+		assertEquals(500, recovered.size());
+		for (int i = 0; i < 500; i++) {
+			assertEquals(i, recovered.sDequeue().uid);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import util.BlockCodec;
+
+public class BlockRandomAccessFileTest extends TestCase {
+
+	private File file;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("BlockRandomAccessFileTest", "");
+		file.delete();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	/**
+	 * Records span blocks and are read back at random while the file grows,
+	 * both from the block being written and from blocks on disk.
+	 */
+	public void testReadWhileWriting() throws IOException {
+		final BlockRandomAccessFile raf = new BlockRandomAccessFile(file.getAbsolutePath(), BlockCodec.LZ);
+		final int cnt = 50000;
+		final long[] ptrs = new long[cnt];
+		for (int i = 0; i < cnt; i++) {
+			ptrs[i] = raf.getFilePointer();
+			raf.writeNat(i);
+			raf.writeInt(i % 7);
+			raf.writeLong(i * 31L);
+			if (i % 97 == 0) {
+				final int j = (i * 13) % (i + 1);
+				final long end = raf.getFilePointer();
+				raf.seek(ptrs[j]);
+				assertRecord(raf, j);
+				raf.seek(end);
+			}
+		}
+		for (int i = cnt - 1; i >= 0; i -= 101) {
+			raf.seek(ptrs[i]);
+			assertRecord(raf, i);
+		}
+		raf.close();
+		assertTrue(file.length() < cnt * 14);
+	}
+
+	/**
+	 * After a recovery, the file is truncated at the checkpointed pointer.
+	 */
+	public void testRecover() throws IOException {
+		BlockRandomAccessFile raf = new BlockRandomAccessFile(file.getAbsolutePath(), BlockCodec.LZ);
+		for (int i = 0; i < 1000; i++) {
+			raf.writeNat(i);
+			raf.writeInt(i % 7);
+			raf.writeLong(i * 31L);
+		}
+		raf.flush();
+		final long chkpt = raf.getFilePointer();
+		raf.writeNat(Integer.MAX_VALUE); // lost
+		raf.close();
+
+		// the codec of the existing file is used
+		raf = new BlockRandomAccessFile(file.getAbsolutePath(), BlockCodec.NONE);
+		final long start = raf.getFilePointer();
+		raf.seek(chkpt);
+		raf.writeNat(1000);
+		raf.writeInt(1000 % 7);
+		raf.writeLong(1000 * 31L);
+		raf.seek(start);
+		for (int i = 0; i <= 1000; i++) {
+			assertRecord(raf, i);
+		}
+		raf.close();
+	}
+
+	private void assertRecord(final BlockRandomAccessFile raf, final int i) throws IOException {
+		assertEquals(i, raf.readNat());
+		assertEquals(i % 7, raf.readInt());
+		assertEquals(i * 31L, raf.readLong());
+	}
+}
@@ -0,0 +1,99 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.UniqueString;
+
+/**
+ * The extensions of a fingerprint by several bytes at once have to equal
+ * the extensions by one byte after the other.
+ */
+public class FP64Test extends TestCase {
+
+	private final Random rnd = new Random(15041980L);
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		FP64.Init(0);
+		super.tearDown();
+	}
+
+	// The extension by the bytes of x, least significant first
+	private static long extendBytes(long fp, long x, final int n) {
+		for (int i = 0; i < n; i++) {
+			fp = FP64.Extend(fp, (byte) x);
+			x = x >>> 8;
+		}
+		return fp;
+	}
+
+	private static long extendChars(long fp, final String s) {
+		for (int i = 0; i < s.length(); i++) {
+			fp = FP64.Extend(fp, s.charAt(i));
+		}
+		return fp;
+	}
+
+	private String randomString(final int len) {
+		final char[] chars = new char[len];
+		for (int i = 0; i < len; i++) {
+			// Characters beyond a byte too, of which only the low byte counts
+			chars[i] = (char) this.rnd.nextInt(1024);
+		}
+		return new String(chars);
+	}
+
+	public void testPrimitives() {
+		for (int p = 0; p < 3; p++) {
+			FP64.Init(p);
+			for (int i = 0; i < 10000; i++) {
+				final long fp = this.rnd.nextLong();
+				final long x = this.rnd.nextLong();
+				final int y = this.rnd.nextInt();
+				final byte b = (byte) this.rnd.nextInt();
+				assertEquals(extendBytes(fp, x, 8), FP64.Extend(fp, x));
+				assertEquals(extendBytes(fp, y, 4), FP64.Extend(fp, y));
+				assertEquals(extendBytes(fp, b, 1), FP64.Extend(fp, b));
+				assertEquals(FP64.Extend(FP64.Extend(fp, b), y), FP64.Extend(fp, b, y));
+			}
+		}
+	}
+
+	public void testStrings() {
+		for (int p = 0; p < 3; p++) {
+			FP64.Init(p);
+			for (int len = 0; len < 40; len++) {
+				final String s = randomString(len);
+				final long fp = this.rnd.nextLong();
+				final long expected = extendChars(fp, s);
+				assertEquals(expected, FP64.Extend(fp, s));
+				assertEquals(expected, FP64.Extend(fp, s.toCharArray(), 0, len));
+				assertEquals(expected, FP64.Concat(fp, FP64.Extend(FP64.Zero, s), len));
+
+				final byte[] bytes = new byte[len];
+				this.rnd.nextBytes(bytes);
+				long fp1 = fp;
+				for (int i = 0; i < len; i++) {
+					fp1 = FP64.Extend(fp1, bytes[i]);
+				}
+				assertEquals(fp1, FP64.Extend(fp, bytes, 0, len));
+			}
+		}
+	}
+
+	// The fingerprint of the characters is recomputed for another polynomial
+	public void testFingerPrintChars() {
+		final UniqueString str = UniqueString.uniqueStringOf("fingerPrintChars");
+		for (int p = 0; p < 3; p++) {
+			FP64.Init(p);
+			for (int i = 0; i < 10; i++) {
+				final long fp = this.rnd.nextLong();
+				assertEquals(FP64.Extend(fp, str.toString()), str.fingerPrintChars(fp));
+			}
+		}
+	}
+}
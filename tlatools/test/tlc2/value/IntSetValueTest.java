@@ -0,0 +1,130 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import tlc2.util.FP64;
+
+public class IntSetValueTest extends TestCase {
+
+	private Random rnd;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		FP64.Init(0);
+		rnd = new Random(4711);
+	}
+
+	/**
+	 * @return size random ints (and duplicates) from low..low+range-1
+	 */
+	private ValueVec randomInts(final int size, final int low, final int range) {
+		final ValueVec elems = new ValueVec();
+		for (int i = 0; i < size; i++) {
+			elems.addElement(IntValue.gen(low + rnd.nextInt(range)));
+		}
+		return elems;
+	}
+
+	private static SetEnumValue setEnum(final ValueVec elems) {
+		final Value[] vals = new Value[elems.size()];
+		elems.copyInto(vals);
+		final SetEnumValue set = new SetEnumValue(vals, false);
+		set.normalize();
+		return set;
+	}
+
+	private static void assertSameSet(final SetEnumValue expected, final Value actual) {
+		assertEquals(expected.fingerPrint(FP64.New()), actual.fingerPrint(FP64.New()));
+		assertEquals(expected.size(), ((Enumerable) actual).size());
+		assertTrue(expected.equals(actual));
+		assertTrue(actual.equals(expected));
+		assertEquals(0, expected.compareTo(actual));
+		assertEquals(0, actual.compareTo(expected));
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	public void testCreate() {
+		final ValueVec dense = randomInts(100, -70, 200);
+		final Value set = IntSetValue.create(dense, false);
+		assertTrue(set instanceof IntSetValue);
+		assertSameSet(setEnum(dense), set);
+
+		// Too sparse and not only ints
+		assertTrue(IntSetValue.create(randomInts(10, 0, 100000), false) instanceof SetEnumValue);
+		final ValueVec mixed = randomInts(10, 0, 10);
+		mixed.addElement(new StringValue("a"));
+		assertTrue(IntSetValue.create(mixed, false) instanceof SetEnumValue);
+		assertTrue(IntSetValue.create(new ValueVec(), false) instanceof SetEnumValue);
+	}
+
+	public void testMember() {
+		final ValueVec elems = randomInts(100, 1000, 300);
+		final Value set = IntSetValue.create(elems, false);
+		final SetEnumValue expected = setEnum(elems);
+		for (int i = 900; i < 1400; i++) {
+			assertEquals(expected.member(IntValue.gen(i)), set.member(IntValue.gen(i)));
+		}
+	}
+
+	// \cup, \cap and \ against those of SetEnumValues, IntervalValues
+	public void testSetAlgebra() {
+		for (int n = 0; n < 200; n++) {
+			final ValueVec a = randomInts(1 + rnd.nextInt(200), rnd.nextInt(300) - 150, 1 + rnd.nextInt(300));
+			final ValueVec b = randomInts(1 + rnd.nextInt(200), rnd.nextInt(300) - 150, 1 + rnd.nextInt(300));
+			final Value ia = IntSetValue.create(a, false);
+			final Value ib = IntSetValue.create(b, false);
+			final int low = rnd.nextInt(300) - 150;
+			final IntervalValue intv = new IntervalValue(low, low + rnd.nextInt(100));
+
+			assertSameSet((SetEnumValue) setEnum(a).cup(setEnum(b)), ((Reducible) ia).cup(ib));
+			assertSameSet((SetEnumValue) setEnum(a).cap(setEnum(b)), ((Reducible) ia).cap(ib));
+			assertSameSet((SetEnumValue) setEnum(a).diff(setEnum(b)), ((Reducible) ia).diff(ib));
+
+			assertSameSet((SetEnumValue) setEnum(a).cup(intv), ((Reducible) ia).cup(intv));
+			assertSameSet((SetEnumValue) setEnum(a).cap(intv), ((Reducible) ia).cap(intv));
+			assertSameSet((SetEnumValue) setEnum(a).diff(intv), ((Reducible) ia).diff(intv));
+			// SetEnumValue operations with an IntSetValue
+			assertSameSet((SetEnumValue) setEnum(a).cup(setEnum(b)), setEnum(a).cup(ib));
+			assertSameSet((SetEnumValue) setEnum(a).cap(setEnum(b)), setEnum(a).cap(ib));
+			assertSameSet((SetEnumValue) setEnum(a).diff(setEnum(b)), setEnum(a).diff(ib));
+			assertSameSet(SetEnumValue.convert(intv.diff(setEnum(a))), intv.diff(ia));
+
+			assertEquals(setEnum(a).compareTo(setEnum(b)) > 0, ia.compareTo(ib) > 0);
+			assertEquals(setEnum(a).compareTo(setEnum(b)) < 0, ia.compareTo(ib) < 0);
+		}
+	}
+
+	// Far apart and extreme ints
+	public void testSparse() {
+		final Value a = IntSetValue.create(randomInts(100, Integer.MAX_VALUE - 99, 100), false);
+		final Value b = IntSetValue.create(randomInts(100, Integer.MIN_VALUE, 100), false);
+		assertTrue(a instanceof IntSetValue);
+		assertTrue(b instanceof IntSetValue);
+		final Value cup = ((Reducible) a).cup(b);
+		assertTrue(cup instanceof SetEnumValue);
+		assertEquals(((Enumerable) a).size() + ((Enumerable) b).size(), ((Enumerable) cup).size());
+		assertSameSet(SetEnumValue.convert(a), ((Reducible) a).diff(b));
+		assertSameSet(SetEnumValue.convert(b), ((Reducible) cup).diff(a));
+		assertEquals(0, ((Enumerable) ((Reducible) a).cap(b)).size());
+	}
+
+	public void testStream() throws IOException {
+		final Value set = IntSetValue.create(randomInts(500, -300, 600), false);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ValueOutputStream out = new ValueOutputStream(bytes);
+		out.write(set);
+		out.close();
+		final ValueInputStream in = new ValueInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		final Value read = in.read();
+		assertTrue(read instanceof IntSetValue);
+		assertSameSet(SetEnumValue.convert(set), read);
+	}
+}
@@ -0,0 +1,96 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import junit.framework.TestCase;
+import tlc2.module.Naturals;
+import tlc2.module.Sequences;
+import tlc2.tool.EvalControl;
+import tlc2.tool.EvalException;
+
+public class MethodValueTest extends TestCase {
+
+	private static final Value[] EmptyArgs = new Value[0];
+
+	private static MethodValue method(final Class cl, final String name) {
+		final Method[] mds = cl.getDeclaredMethods();
+		for (int i = 0; i < mds.length; i++) {
+			if (mds[i].getName().equals(name)) {
+				return new MethodValue(mds[i]);
+			}
+		}
+		fail("No method " + name);
+		return null;
+	}
+
+	private static TupleValue tuple(final int size) {
+		final Value[] elems = new Value[size];
+		for (int i = 0; i < size; i++) {
+			elems[i] = IntValue.gen(i);
+		}
+		return new TupleValue(elems);
+	}
+
+	// All overrides of the standard modules are invoked directly
+	public void testCreate() throws ClassNotFoundException {
+		final String[] modules = new String[] { "AnySet", "Bags", "FiniteSets", "Integers", "Naturals", "Sequences",
+				"Strings", "TLC" };
+		for (int i = 0; i < modules.length; i++) {
+			final Method[] mds = Class.forName("tlc2.module." + modules[i]).getDeclaredMethods();
+			for (int j = 0; j < mds.length; j++) {
+				final int mod = mds[j].getModifiers();
+				if (Modifier.isPublic(mod) && Modifier.isStatic(mod) && Value.class.isAssignableFrom(mds[j].getReturnType())) {
+					assertNotNull(mds[j].toString(), MethodAdapter.create(mds[j]));
+				}
+			}
+		}
+	}
+
+	public void testApply() {
+		final Value seq = method(Sequences.class, "Append").apply(new Value[] { tuple(3), IntValue.gen(3) },
+				EvalControl.Clear);
+		assertEquals(tuple(4), seq);
+		assertEquals(IntValue.gen(4), method(Sequences.class, "Len").apply(new Value[] { seq }, EvalControl.Clear));
+		assertEquals(IntValue.gen(5),
+				method(Naturals.class, "Plus").apply(new Value[] { IntValue.gen(2), IntValue.gen(3) }, EvalControl.Clear));
+		assertTrue(method(Naturals.class, "Nat").apply(EmptyArgs, EvalControl.Clear) instanceof UserValue);
+	}
+
+	// Exceptions of the method are reported as before
+	public void testException() {
+		try {
+			method(Sequences.class, "Append").apply(new Value[] { IntValue.gen(1), IntValue.gen(3) }, EvalControl.Clear);
+			fail();
+		} catch (EvalException e) {
+			assertTrue(e.getMessage(), e.getMessage().indexOf("Append") >= 0);
+		}
+	}
+
+	// Arguments which are no IntValues are rejected as by reflection
+	public void testWrongArguments() throws Exception {
+		final Method plus = Naturals.class.getMethod("Plus", new Class[] { IntValue.class, IntValue.class });
+		final Value[] args = new Value[] { IntValue.gen(1), new StringValue("a") };
+		String expected = null;
+		try {
+			plus.invoke(null, (Object[]) args);
+			fail();
+		} catch (IllegalArgumentException e) {
+			expected = e.getMessage();
+		}
+		try {
+			new MethodValue(plus).apply(args, EvalControl.Clear);
+			fail();
+		} catch (RuntimeException e) {
+			assertFalse(e instanceof EvalException);
+			assertTrue(e.getMessage(), expected == null || e.getMessage().indexOf(expected) >= 0);
+		}
+		try {
+			new MethodValue(plus).apply(new Value[] { IntValue.gen(1) }, EvalControl.Clear);
+			fail();
+		} catch (RuntimeException e) {
+			assertFalse(e instanceof EvalException);
+		}
+	}
+}
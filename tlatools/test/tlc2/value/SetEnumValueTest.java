@@ -0,0 +1,136 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import tlc2.util.FP64;
+
+public class SetEnumValueTest extends TestCase {
+
+	private Random rnd;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		FP64.Init(0);
+		rnd = new Random(4711);
+	}
+
+	/**
+	 * @return A new unnormalized set of size random ints (and
+	 *         duplicates) from 0..range-1
+	 */
+	private SetEnumValue randomSet(final int size, final int range) {
+		final Value[] elems = new Value[size];
+		for (int i = 0; i < size; i++) {
+			elems[i] = IntValue.gen(rnd.nextInt(range));
+		}
+		return new SetEnumValue(elems, false);
+	}
+
+	/**
+	 * @return The set of the elems normalized from scratch
+	 */
+	private static SetEnumValue normalized(final ValueVec elems) {
+		final Value[] vals = new Value[elems.size()];
+		elems.copyInto(vals);
+		final SetEnumValue set = new SetEnumValue(vals, false);
+		set.normalize();
+		return set;
+	}
+
+	private static void assertSameSet(final SetEnumValue expected, final Value actual) {
+		assertTrue(actual instanceof SetEnumValue);
+		final SetEnumValue set = (SetEnumValue) actual;
+		assertTrue(set.isNormalized());
+		assertEquals(expected.elems.size(), set.elems.size());
+		for (int i = 0; i < expected.elems.size(); i++) {
+			assertEquals(expected.elems.elementAt(i), set.elems.elementAt(i));
+		}
+		assertEquals(expected.fingerPrint(FP64.New()), set.fingerPrint(FP64.New()));
+	}
+
+	// cup, cap and diff of sets of (very) different sizes
+	public void testSetAlgebra() {
+		final int[] sizes = new int[] { 1, 2, 10, 100, 1000 };
+		for (int i = 0; i < sizes.length; i++) {
+			for (int j = 0; j < sizes.length; j++) {
+				final SetEnumValue a = randomSet(sizes[i], 2 * sizes[i] + sizes[j]);
+				final SetEnumValue b = randomSet(sizes[j], 2 * sizes[i] + sizes[j]);
+				a.normalize();
+				b.normalize();
+
+				final ValueVec cup = new ValueVec();
+				final ValueVec cap = new ValueVec();
+				final ValueVec diff = new ValueVec();
+				for (int k = 0; k < a.elems.size(); k++) {
+					final Value elem = a.elems.elementAt(k);
+					cup.addElement(elem);
+					if (b.elems.search(elem, true)) {
+						cap.addElement(elem);
+					} else {
+						diff.addElement(elem);
+					}
+				}
+				for (int k = 0; k < b.elems.size(); k++) {
+					cup.addElement(b.elems.elementAt(k));
+				}
+
+				assertSameSet(normalized(cup), a.cup(b));
+				assertSameSet(normalized(cup), b.cup(a));
+				assertSameSet(normalized(cap), a.cap(b));
+				assertSameSet(normalized(diff), a.diff(b));
+			}
+		}
+	}
+
+	// Operands which are not normalized yet
+	public void testUnnormalized() {
+		final SetEnumValue a = randomSet(500, 1000);
+		final SetEnumValue b = randomSet(50, 1000);
+		final Value cup = a.cup(b);
+		final Value diff = a.diff(b);
+		for (int i = 0; i < 1000; i++) {
+			final Value elem = IntValue.gen(i);
+			assertEquals(a.member(elem) || b.member(elem), cup.member(elem));
+			assertEquals(a.member(elem) && !b.member(elem), diff.member(elem));
+		}
+	}
+
+	// Membership tests via the hash index
+	public void testMember() {
+		final SetEnumValue set = randomSet(5000, 10000);
+		final boolean[] expected = new boolean[10000];
+		for (int i = 0; i < set.elems.size(); i++) {
+			expected[((IntValue) set.elems.elementAt(i)).val] = true;
+		}
+		// Enough queries for the index to be built, before and after
+		// normalization
+		for (int n = 0; n < 3; n++) {
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], set.member(IntValue.gen(i)));
+			}
+			set.normalize();
+		}
+	}
+
+	// Membership of values whose fingerprints differ from the elements'
+	public void testMemberOfSets() {
+		final Value[] elems = new Value[200];
+		for (int i = 0; i < elems.length; i++) {
+			elems[i] = new SetEnumValue(new Value[] { IntValue.gen(i), IntValue.gen(i + 1) }, true);
+		}
+		final SetEnumValue set = new SetEnumValue(elems, false);
+		for (int n = 0; n < 100; n++) {
+			for (int i = 0; i < elems.length; i++) {
+				// Unnormalized, but equal to the element
+				assertTrue(set.member(new SetEnumValue(new Value[] { IntValue.gen(i + 1), IntValue.gen(i) }, false)));
+				assertTrue(set.member(new IntervalValue(i, i + 1)));
+				assertFalse(set.member(new SetEnumValue(new Value[] { IntValue.gen(i) }, false)));
+			}
+		}
+	}
+}
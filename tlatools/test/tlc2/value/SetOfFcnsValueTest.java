@@ -0,0 +1,69 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import junit.framework.TestCase;
+import tlc2.util.FP64;
+
+public class SetOfFcnsValueTest extends TestCase {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		FP64.Init(0);
+	}
+
+	/**
+	 * @return [1..dsz -> SUBSET {"a", ..}] whose range is not
+	 *         enumerated in normalized order by its elements
+	 */
+	private static SetOfFcnsValue fcns(final int dsz, final int rsz) {
+		final Value[] range = new Value[rsz];
+		for (int i = 0; i < rsz; i++) {
+			range[i] = new StringValue(String.valueOf((char) ('a' + i)));
+		}
+		return new SetOfFcnsValue(new IntervalValue(1, dsz), new SubsetValue(new SetEnumValue(range, false)));
+	}
+
+	private static SetEnumValue materialize(final Enumerable set) {
+		final ValueVec vals = new ValueVec();
+		final ValueEnumeration Enum = set.elements();
+		Value elem;
+		while ((elem = Enum.nextElement()) != null) {
+			vals.addElement(elem);
+		}
+		final SetEnumValue res = new SetEnumValue(vals, false);
+		res.normalize();
+		return res;
+	}
+
+	public void testElementsNormalized() {
+		for (int d = 0; d < 4; d++) {
+			for (int r = 0; r < 3; r++) {
+				final SetEnumValue expected = materialize(fcns(d, r));
+				final ValueEnumeration Enum = fcns(d, r).elementsNormalized();
+				for (int i = 0; i < expected.elems.size(); i++) {
+					assertEquals(0, expected.elems.elementAt(i).compareTo(Enum.nextElement()));
+				}
+				assertNull(Enum.nextElement());
+			}
+		}
+	}
+
+	public void testFingerPrint() {
+		for (int d = 0; d < 4; d++) {
+			for (int r = 0; r < 3; r++) {
+				assertEquals(materialize(fcns(d, r)).fingerPrint(FP64.New()), fcns(d, r).fingerPrint(FP64.New()));
+			}
+		}
+	}
+
+	public void testCompareAndEquals() {
+		final SetEnumValue materialized = materialize(fcns(3, 2));
+		assertEquals(0, fcns(3, 2).compareTo(materialized));
+		assertTrue(fcns(3, 2).equals(materialized));
+		assertFalse(fcns(3, 2).equals(materialize(fcns(2, 2))));
+		assertEquals(materialized.compareTo(materialize(fcns(2, 3))), fcns(3, 2).compareTo(materialize(fcns(2, 3))));
+	}
+}
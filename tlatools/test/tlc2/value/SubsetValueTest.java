@@ -0,0 +1,85 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import junit.framework.TestCase;
+import tlc2.util.FP64;
+
+public class SubsetValueTest extends TestCase {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		FP64.Init(0);
+	}
+
+	/**
+	 * @return SUBSET of the (unnormalized) set of size ints
+	 */
+	private static SubsetValue subset(final int size) {
+		final Value[] elems = new Value[size];
+		for (int i = 0; i < size; i++) {
+			elems[i] = IntValue.gen((i * 7) % size);
+		}
+		return new SubsetValue(new SetEnumValue(elems, false));
+	}
+
+	/**
+	 * @return The subsets enumerated by elements, normalized
+	 */
+	private static SetEnumValue materialize(final Enumerable set) {
+		final ValueVec vals = new ValueVec();
+		final ValueEnumeration Enum = set.elements();
+		Value elem;
+		while ((elem = Enum.nextElement()) != null) {
+			vals.addElement(elem);
+		}
+		final SetEnumValue res = new SetEnumValue(vals, false);
+		res.normalize();
+		return res;
+	}
+
+	public void testElementsNormalized() {
+		for (int n = 0; n < 8; n++) {
+			final SetEnumValue expected = materialize(subset(n));
+			final ValueEnumeration Enum = subset(n).elementsNormalized();
+			for (int i = 0; i < expected.elems.size(); i++) {
+				assertEquals(0, expected.elems.elementAt(i).compareTo(Enum.nextElement()));
+			}
+			assertNull(Enum.nextElement());
+		}
+	}
+
+	public void testFingerPrint() {
+		for (int n = 0; n < 8; n++) {
+			assertEquals(materialize(subset(n)).fingerPrint(FP64.New()), subset(n).fingerPrint(FP64.New()));
+		}
+	}
+
+	public void testCompareAndEquals() {
+		for (int n = 0; n < 6; n++) {
+			final SetEnumValue materialized = materialize(subset(n));
+			assertEquals(0, subset(n).compareTo(materialized));
+			assertTrue(subset(n).equals(materialized));
+
+			// The same size, but one subset is missing
+			final ValueVec vals = new ValueVec();
+			for (int i = 0; i < materialized.elems.size() - 1; i++) {
+				vals.addElement(materialized.elems.elementAt(i));
+			}
+			vals.addElement(new SetEnumValue(new Value[] { IntValue.gen(n) }, true));
+			final SetEnumValue other = new SetEnumValue(vals, false);
+			assertFalse(subset(n).equals(other));
+			assertEquals(materialized.compareTo(other), subset(n).compareTo(other));
+			assertFalse(subset(n).equals(subset(n + 1)));
+		}
+	}
+
+	// A set with more elements than a SetEnumValue can have (setBound)
+	public void testFingerPrintLarge() {
+		final SubsetValue set = subset(20);
+		assertEquals(set.fingerPrint(FP64.New()), subset(20).fingerPrint(FP64.New()));
+		assertTrue(set.fingerPrint(FP64.New()) != subset(19).fingerPrint(FP64.New()));
+	}
+}
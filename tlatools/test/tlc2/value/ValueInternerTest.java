@@ -0,0 +1,74 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package tlc2.value;
+
+import junit.framework.TestCase;
+import tlc2.util.FP64;
+import util.UniqueString;
+
+public class ValueInternerTest extends TestCase {
+
+	private final UniqueString a = UniqueString.uniqueStringOf("a");
+	private final UniqueString b = UniqueString.uniqueStringOf("b");
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		// scalars are hashed by their fingerprint
+		FP64.Init(0);
+	}
+
+	// [a |-> {1, 2}, b |-> <<"x", i>>]
+	private Value record(final int i) {
+		final Value set = new SetEnumValue(new Value[] { IntValue.gen(1), IntValue.gen(2) }, true);
+		final Value tuple = new TupleValue(new Value[] { new StringValue("x"), IntValue.gen(i) });
+		return new RecordValue(new UniqueString[] { a, b }, new Value[] { set, tuple }, true);
+	}
+
+	// independently built identical values become a single instance
+	public void testIdentical() {
+		final ValueInterner interner = new ValueInterner(4);
+		final RecordValue r1 = (RecordValue) interner.intern(record(1));
+		final RecordValue r2 = (RecordValue) interner.intern(record(1));
+		assertSame(r1, r2);
+		// the set, the tuple and the record
+		assertEquals(3, interner.getShared());
+	}
+
+	// different values are not merged but share identical components
+	public void testComponentsShared() {
+		final ValueInterner interner = new ValueInterner(4);
+		final RecordValue r1 = (RecordValue) interner.intern(record(1));
+		final RecordValue r2 = (RecordValue) interner.intern(record(2));
+		assertNotSame(r1, r2);
+		assertFalse(r1.equals(r2));
+		// the sets {1, 2}
+		assertSame(r1.values[0], r2.values[0]);
+		assertNotSame(r1.values[1], r2.values[1]);
+	}
+
+	// functions with different domains are different
+	public void testFunctions() {
+		final ValueInterner interner = new ValueInterner(1);
+		final Value[] vals = new Value[] { IntValue.gen(7), IntValue.gen(8) };
+		final Value f1 = interner.intern(new FcnRcdValue(new IntervalValue(1, 2), vals.clone()));
+		final Value f2 = interner.intern(new FcnRcdValue(new IntervalValue(2, 3), vals.clone()));
+		final Value f3 = interner.intern(new FcnRcdValue(new Value[] { IntValue.gen(1), IntValue.gen(2) },
+				vals.clone(), true));
+		final Value f4 = interner.intern(new FcnRcdValue(new IntervalValue(1, 2), vals.clone()));
+		assertNotSame(f1, f2);
+		assertNotSame(f1, f3);
+		assertSame(f1, f4);
+	}
+
+	// values which are not normalized are not interned
+	public void testNotNormalized() {
+		final ValueInterner interner = new ValueInterner(4);
+		final Value s1 = new SetEnumValue(new Value[] { IntValue.gen(2), IntValue.gen(1) }, false);
+		final Value s2 = new SetEnumValue(new Value[] { IntValue.gen(2), IntValue.gen(1) }, false);
+		assertSame(s1, interner.intern(s1));
+		assertSame(s2, interner.intern(s2));
+		assertEquals(0, interner.getLookups());
+	}
+}
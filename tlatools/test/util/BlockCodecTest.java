@@ -0,0 +1,127 @@
+// Copyright (c) 2012 Microsoft Corporation.  All rights reserved.
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class BlockCodecTest extends TestCase {
+
+	private final Random random = new Random(4711);
+
+	// compressible input with short and long (overlapping) matches
+	private byte[] redundant(final int len) {
+		final byte[] b = new byte[len];
+		for (int i = 0; i < len; i++) {
+			if (i > 64 && random.nextInt(4) != 0) {
+				b[i] = b[i - 1 - random.nextInt(3) * 16];
+			} else {
+				b[i] = (byte) random.nextInt(8);
+			}
+		}
+		return b;
+	}
+
+	private byte[] noise(final int len) {
+		final byte[] b = new byte[len];
+		random.nextBytes(b);
+		return b;
+	}
+
+	private void roundtrip(final BlockCodec codec, final byte[] raw) throws IOException {
+		final byte[] frame = new byte[codec.maxFrameLength(raw.length)];
+		final int n = codec.encodeBlock(raw, raw.length, frame);
+		final byte[] header = new byte[BlockCodec.HeaderSize];
+		System.arraycopy(frame, 0, header, 0, header.length);
+		final byte[] stored = new byte[n - header.length];
+		System.arraycopy(frame, header.length, stored, 0, stored.length);
+		final byte[] decoded = new byte[BlockCodec.BlockSize];
+		assertEquals(raw.length, codec.decodeBlock(header, stored, decoded));
+		for (int i = 0; i < raw.length; i++) {
+			assertEquals(raw[i], decoded[i]);
+		}
+	}
+
+	public void testLZRoundtrip() throws IOException {
+		final int[] lens = { 0, 1, 12, 13, 100, 4096, BlockCodec.BlockSize };
+		for (int i = 0; i < lens.length; i++) {
+			roundtrip(BlockCodec.LZ, redundant(lens[i]));
+			roundtrip(BlockCodec.LZ, noise(lens[i]));
+			roundtrip(BlockCodec.LZ, new byte[lens[i]]);
+			roundtrip(BlockCodec.NONE, noise(lens[i]));
+		}
+	}
+
+	public void testLZCompresses() {
+		final byte[] raw = new byte[BlockCodec.BlockSize];
+		final byte[] frame = new byte[BlockCodec.LZ.maxFrameLength(raw.length)];
+		assertTrue(BlockCodec.LZ.encodeBlock(raw, raw.length, frame) < 1024);
+	}
+
+	public void testStream() throws IOException {
+		final byte[] raw = redundant(3 * BlockCodec.BlockSize + 17);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final BlockOutputStream out = new BlockOutputStream(bytes, BlockCodec.LZ);
+		out.write(raw, 0, 1000);
+		out.write(raw[1000]);
+		out.flush(); // a short block
+		out.write(raw, 1001, raw.length - 1001);
+		out.close();
+		assertTrue(bytes.size() < raw.length);
+
+		final BlockInputStream in = new BlockInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		final byte[] read = new byte[raw.length];
+		int off = 0;
+		int n;
+		while ((n = in.read(read, off, Math.min(5000, read.length - off))) > 0) {
+			off += n;
+		}
+		assertEquals(raw.length, off);
+		assertTrue(Arrays.equals(raw, read));
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	// a flipped bit is detected by the checksum or the decoder
+	public void testCorruption() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final BlockOutputStream out = new BlockOutputStream(bytes, BlockCodec.LZ);
+		out.write(redundant(10000));
+		out.close();
+		final byte[] b = bytes.toByteArray();
+		b[b.length - 100] ^= 0x10;
+
+		final BlockInputStream in = new BlockInputStream(new ByteArrayInputStream(b));
+		try {
+			while (in.read() != -1) {
+			}
+			fail("Expected a corrupt block");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	// a corrupt length in a block header is reported as such
+	public void testCorruptHeader() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final BlockOutputStream out = new BlockOutputStream(bytes, BlockCodec.LZ);
+		out.write(redundant(10000));
+		out.close();
+		final byte[] b = bytes.toByteArray();
+		// the stored length of the first block follows the stream header
+		// (magic and codec) and the block's raw length
+		b[5 + 4] = (byte) 0x7f;
+
+		final BlockInputStream in = new BlockInputStream(new ByteArrayInputStream(b));
+		try {
+			in.read();
+			fail("Expected a corrupt block header");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt block header"));
+		}
+	}
+}